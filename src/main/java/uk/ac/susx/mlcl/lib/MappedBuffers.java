@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Static utility class for releasing memory mapped and direct buffers
+ * explicitly, rather than waiting for the garbage collector to do it.</p>
+ *
+ * <p>There is no public API for unmapping a buffer, so this is done
+ * reflectively using either the buffer's internal cleaner (Java 6 to 8) or
+ * {@code sun.misc.Unsafe.invokeCleaner} (Java 9 onwards). If neither is
+ * available then release silently falls back to garbage collection.</p>
+ *
+ * <p>Releasing a buffer that is still in use will crash the virtual machine,
+ * so it must only be called on buffers that have never escaped the calling
+ * class.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class MappedBuffers {
+
+    /**
+     * {@code sun.misc.Unsafe} instance, if {@code invokeCleaner} is available.
+     */
+    private static final Object UNSAFE;
+
+    /**
+     * {@code sun.misc.Unsafe.invokeCleaner(ByteBuffer)}, or null.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod(
+                    "invokeCleaner", ByteBuffer.class);
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception ex) {
+            // Pre-Java 9; fallback to the buffer's own cleaner
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Attempt to immediately release the memory or mapping backing the given
+     * buffer. Has no effect for heap buffers, and null.
+     *
+     * @param buffer buffer to release
+     * @return true if the buffer was released, false otherwise
+     */
+    public static boolean unmap(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return false;
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return true;
+            }
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null)
+                return false;
+            final Method cleanMethod = cleaner.getClass().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleanMethod.invoke(cleaner);
+            return true;
+        } catch (Exception ex) {
+            // Not supported on this VM, or the buffer is a view (duplicate
+            // or slice) of some other buffer. Leave it to the GC.
+            return false;
+        }
+    }
+}
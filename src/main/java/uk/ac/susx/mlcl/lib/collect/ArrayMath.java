@@ -31,6 +31,10 @@
 package uk.ac.susx.mlcl.lib.collect;
 
 import uk.ac.susx.mlcl.lib.Checks;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Random;
 import static uk.ac.susx.mlcl.lib.collect.ArrayUtil.*;
@@ -39,6 +43,12 @@ import static uk.ac.susx.mlcl.lib.collect.ArrayUtil.*;
  * Static utility class for performing arithmetic operations on primitive
  * arrays.
  *
+ * <p>The int, long, float and double operations are also provided over NIO
+ * buffers, such as those mapped from files by
+ * {@link uk.ac.susx.mlcl.lib.io.ArrayFiles}. Buffer operations use absolute
+ * indexing over the elements between the position and limit of each buffer,
+ * and never change the position of any buffer.</p>
+ *
  * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 @SuppressWarnings("unchecked")
@@ -1683,6 +1693,90 @@ public final class ArrayMath {
 
 
 
+    public static int sum(IntBuffer buf) {
+        return sum(buf, buf.position(), buf.limit());
+    }
+
+    public static int sum(IntBuffer buf, int fromIndex, int toIndex) {
+        int sum = (int)0;
+        for (int i = fromIndex; i < toIndex; i++)
+            sum += buf.get(i);
+        return sum;
+    }
+
+    public static void mul(IntBuffer src, int scalar, IntBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src.get(s + i) * scalar));
+    }
+
+    public static void mul(IntBuffer src1, IntBuffer src2, IntBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src1.get(s1 + i) * src2.get(s2 + i)));
+    }
+
+    public static void div(IntBuffer src1, IntBuffer src2, IntBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src1.get(s1 + i) / src2.get(s2 + i)));
+    }
+
+    public static void add(IntBuffer src, int scalar, IntBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src.get(s + i) + scalar));
+    }
+
+    public static void add(IntBuffer src1, IntBuffer src2, IntBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src1.get(s1 + i) + src2.get(s2 + i)));
+    }
+
+    public static void sub(IntBuffer src1, IntBuffer src2, IntBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (int)(src1.get(s1 + i) - src2.get(s2 + i)));
+    }
+
+    public static int mean(IntBuffer values, int fromIndex, int toIndex) {
+        return (int)(sum(values, fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    public static int mean(IntBuffer values) {
+        return mean(values, values.position(), values.limit());
+    }
+
+    public static int variance(IntBuffer values, int fromIndex, int toIndex) {
+        int u = mean(values, fromIndex, toIndex);
+        int s2 = 0;
+        for (int i = fromIndex; i < toIndex; i++)
+            s2 += (values.get(i) - u) * (values.get(i) - u);
+        return (int)(s2 / (toIndex - fromIndex));
+    }
+
+    public static int variance(IntBuffer values) {
+        return variance(values, values.position(), values.limit());
+    }
+
+    public static int stddev(IntBuffer values) {
+        return (int)Math.sqrt(variance(values));
+    }
+
+
+
+
     public static long[] longZeros(int n) {
         return new long[n];
     }
@@ -2083,6 +2177,90 @@ public final class ArrayMath {
 
 
 
+    public static long sum(LongBuffer buf) {
+        return sum(buf, buf.position(), buf.limit());
+    }
+
+    public static long sum(LongBuffer buf, int fromIndex, int toIndex) {
+        long sum = (long)0;
+        for (int i = fromIndex; i < toIndex; i++)
+            sum += buf.get(i);
+        return sum;
+    }
+
+    public static void mul(LongBuffer src, long scalar, LongBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src.get(s + i) * scalar));
+    }
+
+    public static void mul(LongBuffer src1, LongBuffer src2, LongBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src1.get(s1 + i) * src2.get(s2 + i)));
+    }
+
+    public static void div(LongBuffer src1, LongBuffer src2, LongBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src1.get(s1 + i) / src2.get(s2 + i)));
+    }
+
+    public static void add(LongBuffer src, long scalar, LongBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src.get(s + i) + scalar));
+    }
+
+    public static void add(LongBuffer src1, LongBuffer src2, LongBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src1.get(s1 + i) + src2.get(s2 + i)));
+    }
+
+    public static void sub(LongBuffer src1, LongBuffer src2, LongBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (long)(src1.get(s1 + i) - src2.get(s2 + i)));
+    }
+
+    public static long mean(LongBuffer values, int fromIndex, int toIndex) {
+        return (long)(sum(values, fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    public static long mean(LongBuffer values) {
+        return mean(values, values.position(), values.limit());
+    }
+
+    public static long variance(LongBuffer values, int fromIndex, int toIndex) {
+        long u = mean(values, fromIndex, toIndex);
+        long s2 = 0;
+        for (int i = fromIndex; i < toIndex; i++)
+            s2 += (values.get(i) - u) * (values.get(i) - u);
+        return (long)(s2 / (toIndex - fromIndex));
+    }
+
+    public static long variance(LongBuffer values) {
+        return variance(values, values.position(), values.limit());
+    }
+
+    public static long stddev(LongBuffer values) {
+        return (long)Math.sqrt(variance(values));
+    }
+
+
+
+
     public static float[] floatZeros(int n) {
         return new float[n];
     }
@@ -2483,6 +2661,90 @@ public final class ArrayMath {
 
 
 
+    public static float sum(FloatBuffer buf) {
+        return sum(buf, buf.position(), buf.limit());
+    }
+
+    public static float sum(FloatBuffer buf, int fromIndex, int toIndex) {
+        float sum = (float)0;
+        for (int i = fromIndex; i < toIndex; i++)
+            sum += buf.get(i);
+        return sum;
+    }
+
+    public static void mul(FloatBuffer src, float scalar, FloatBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src.get(s + i) * scalar));
+    }
+
+    public static void mul(FloatBuffer src1, FloatBuffer src2, FloatBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src1.get(s1 + i) * src2.get(s2 + i)));
+    }
+
+    public static void div(FloatBuffer src1, FloatBuffer src2, FloatBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src1.get(s1 + i) / src2.get(s2 + i)));
+    }
+
+    public static void add(FloatBuffer src, float scalar, FloatBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src.get(s + i) + scalar));
+    }
+
+    public static void add(FloatBuffer src1, FloatBuffer src2, FloatBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src1.get(s1 + i) + src2.get(s2 + i)));
+    }
+
+    public static void sub(FloatBuffer src1, FloatBuffer src2, FloatBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (float)(src1.get(s1 + i) - src2.get(s2 + i)));
+    }
+
+    public static float mean(FloatBuffer values, int fromIndex, int toIndex) {
+        return (float)(sum(values, fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    public static float mean(FloatBuffer values) {
+        return mean(values, values.position(), values.limit());
+    }
+
+    public static float variance(FloatBuffer values, int fromIndex, int toIndex) {
+        float u = mean(values, fromIndex, toIndex);
+        float s2 = 0;
+        for (int i = fromIndex; i < toIndex; i++)
+            s2 += (values.get(i) - u) * (values.get(i) - u);
+        return (float)(s2 / (toIndex - fromIndex));
+    }
+
+    public static float variance(FloatBuffer values) {
+        return variance(values, values.position(), values.limit());
+    }
+
+    public static float stddev(FloatBuffer values) {
+        return (float)Math.sqrt(variance(values));
+    }
+
+
+
+
     public static float[] round(final float[] arr) {
         final float[] result = new float[arr.length];
         for (int i = 0; i < arr.length; i++)
@@ -2906,6 +3168,90 @@ public final class ArrayMath {
 
 
 
+    public static double sum(DoubleBuffer buf) {
+        return sum(buf, buf.position(), buf.limit());
+    }
+
+    public static double sum(DoubleBuffer buf, int fromIndex, int toIndex) {
+        double sum = (double)0;
+        for (int i = fromIndex; i < toIndex; i++)
+            sum += buf.get(i);
+        return sum;
+    }
+
+    public static void mul(DoubleBuffer src, double scalar, DoubleBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src.get(s + i) * scalar));
+    }
+
+    public static void mul(DoubleBuffer src1, DoubleBuffer src2, DoubleBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src1.get(s1 + i) * src2.get(s2 + i)));
+    }
+
+    public static void div(DoubleBuffer src1, DoubleBuffer src2, DoubleBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src1.get(s1 + i) / src2.get(s2 + i)));
+    }
+
+    public static void add(DoubleBuffer src, double scalar, DoubleBuffer dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src.get(s + i) + scalar));
+    }
+
+    public static void add(DoubleBuffer src1, DoubleBuffer src2, DoubleBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src1.get(s1 + i) + src2.get(s2 + i)));
+    }
+
+    public static void sub(DoubleBuffer src1, DoubleBuffer src2, DoubleBuffer dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (double)(src1.get(s1 + i) - src2.get(s2 + i)));
+    }
+
+    public static double mean(DoubleBuffer values, int fromIndex, int toIndex) {
+        return (double)(sum(values, fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    public static double mean(DoubleBuffer values) {
+        return mean(values, values.position(), values.limit());
+    }
+
+    public static double variance(DoubleBuffer values, int fromIndex, int toIndex) {
+        double u = mean(values, fromIndex, toIndex);
+        double s2 = 0;
+        for (int i = fromIndex; i < toIndex; i++)
+            s2 += (values.get(i) - u) * (values.get(i) - u);
+        return (double)(s2 / (toIndex - fromIndex));
+    }
+
+    public static double variance(DoubleBuffer values) {
+        return variance(values, values.position(), values.limit());
+    }
+
+    public static double stddev(DoubleBuffer values) {
+        return (double)Math.sqrt(variance(values));
+    }
+
+
+
+
     public static double[] round(final double[] arr) {
         final double[] result = new double[arr.length];
         for (int i = 0; i < arr.length; i++)
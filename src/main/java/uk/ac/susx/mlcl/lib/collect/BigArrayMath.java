@@ -0,0 +1,1013 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Static utility class for performing arithmetic operations on the long
+ * indexed arrays {@link BigDoubleArray}, {@link BigIntArray} and
+ * {@link BigLongArray}.</p>
+ *
+ * <p>Every operation works one segment at a time, and is provided in two
+ * forms: one that runs in the calling thread, and one that runs the
+ * segments concurrently on an {@link ExecutorService}. Reductions combine
+ * the per-segment results in segment order, so both forms produce exactly
+ * the same result. Element-wise operations require all arrays to have the
+ * same length and segment shift; the destination may be one of the
+ * sources. Sums of int arrays are accumulated as longs.</p>
+ *
+ * <p>This class is generated by genBigArray.sh; edit the script rather than
+ * this file.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class BigArrayMath {
+
+    private BigArrayMath() {
+    }
+
+    /**
+     * An operation applied independently to each segment of an array.
+     */
+    private interface SegmentOp {
+
+        void apply(int segment);
+    }
+
+    private static void forEach(int count, SegmentOp op) {
+        for (int i = 0; i < count; i++)
+            op.apply(i);
+    }
+
+    private static void forEach(int count, final SegmentOp op,
+                                ExecutorService executor)
+            throws InterruptedException {
+        Checks.checkNotNull("executor", executor);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final int segment = i;
+                futures.add(executor.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        op.apply(segment);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            // Only affects tasks that have not yet started, when returning
+            // early because of a failure or interruption.
+            for (Future<?> future : futures)
+                future.cancel(false);
+        }
+    }
+
+    private static double total(double[] partial) {
+        double total = 0;
+        for (int i = 0; i < partial.length; i++)
+            total += partial[i];
+        return total;
+    }
+
+    private static long total(long[] partial) {
+        long total = 0;
+        for (int i = 0; i < partial.length; i++)
+            total += partial[i];
+        return total;
+    }
+
+    private static void checkCompatible(long length1, int shift1,
+                                        long length2, int shift2) {
+        if (length1 != length2)
+            throw new IllegalArgumentException(
+                    "Array lengths differ: " + length1 + " != " + length2);
+        if (shift1 != shift2)
+            throw new IllegalArgumentException(
+                    "Segment shifts differ: " + shift1 + " != " + shift2);
+    }
+
+    private static void checkNotEmpty(long length) {
+        if (length == 0)
+            throw new IllegalArgumentException("Array is empty.");
+    }
+
+    private static void checkCompatible(BigDoubleArray a, BigDoubleArray b) {
+        checkCompatible(a.length(), a.getSegmentShift(),
+                        b.length(), b.getSegmentShift());
+    }
+
+    private static SegmentOp sumOp(final BigDoubleArray a,
+                                   final double[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final DoubleBuffer seg = a.segment(s);
+                double sum = 0;
+                for (int i = 0; i < seg.limit(); i++)
+                    sum += seg.get(i);
+                partial[s] = sum;
+            }
+        };
+    }
+
+    public static double sum(BigDoubleArray a) {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial));
+        return total(partial);
+    }
+
+    public static double sum(BigDoubleArray a, ExecutorService executor)
+            throws InterruptedException {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial), executor);
+        return total(partial);
+    }
+
+    public static double mean(BigDoubleArray a) {
+        return (double) sum(a) / a.length();
+    }
+
+    public static double mean(BigDoubleArray a, ExecutorService executor)
+            throws InterruptedException {
+        return (double) sum(a, executor) / a.length();
+    }
+
+    private static SegmentOp squaredDeviationOp(final BigDoubleArray a,
+                                                final double mean,
+                                                final double[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final DoubleBuffer seg = a.segment(s);
+                double s2 = 0;
+                for (int i = 0; i < seg.limit(); i++) {
+                    final double d = seg.get(i) - mean;
+                    s2 += d * d;
+                }
+                partial[s] = s2;
+            }
+        };
+    }
+
+    public static double variance(BigDoubleArray a) {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, squaredDeviationOp(a, mean(a), partial));
+        return total(partial) / a.length();
+    }
+
+    public static double variance(BigDoubleArray a, ExecutorService executor)
+            throws InterruptedException {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length,
+                squaredDeviationOp(a, mean(a, executor), partial), executor);
+        return total(partial) / a.length();
+    }
+
+    public static double stddev(BigDoubleArray a) {
+        return Math.sqrt(variance(a));
+    }
+
+    public static double stddev(BigDoubleArray a, ExecutorService executor)
+            throws InterruptedException {
+        return Math.sqrt(variance(a, executor));
+    }
+
+    private static SegmentOp minMaxOp(final BigDoubleArray a,
+                                      final double[] min,
+                                      final double[] max) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final DoubleBuffer seg = a.segment(s);
+                double lo = seg.get(0);
+                double hi = lo;
+                for (int i = 1; i < seg.limit(); i++) {
+                    final double v = seg.get(i);
+                    if (v < lo)
+                        lo = v;
+                    else if (v > hi)
+                        hi = v;
+                }
+                min[s] = lo;
+                max[s] = hi;
+            }
+        };
+    }
+
+    /**
+     * @param a non-empty array
+     * @return two element array containing the minimum and maximum values
+     * @throws IllegalArgumentException if the array is empty
+     */
+    public static double[] minmax(BigDoubleArray a) {
+        checkNotEmpty(a.length());
+        final double[] min = new double[a.getSegmentCount()];
+        final double[] max = new double[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max));
+        return new double[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    public static double[] minmax(BigDoubleArray a, ExecutorService executor)
+            throws InterruptedException {
+        checkNotEmpty(a.length());
+        final double[] min = new double[a.getSegmentCount()];
+        final double[] max = new double[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max), executor);
+        return new double[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    private static SegmentOp addOp(final BigDoubleArray src,
+                                  final double scalar,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigDoubleArray src, double scalar,
+                           BigDoubleArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst));
+    }
+
+    public static void add(BigDoubleArray src, double scalar,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigDoubleArray src,
+                                  final double scalar,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigDoubleArray src, double scalar,
+                           BigDoubleArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst));
+    }
+
+    public static void mul(BigDoubleArray src, double scalar,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp addOp(final BigDoubleArray src1,
+                                  final BigDoubleArray src2,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst));
+    }
+
+    public static void add(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp subOp(final BigDoubleArray src1,
+                                  final BigDoubleArray src2,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.sub(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void sub(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst));
+    }
+
+    public static void sub(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigDoubleArray src1,
+                                  final BigDoubleArray src2,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst));
+    }
+
+    public static void mul(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp divOp(final BigDoubleArray src1,
+                                  final BigDoubleArray src2,
+                                  final BigDoubleArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.div(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void div(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst));
+    }
+
+    public static void div(BigDoubleArray src1, BigDoubleArray src2,
+                           BigDoubleArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst), executor);
+    }
+
+    private static void checkCompatible(BigIntArray a, BigIntArray b) {
+        checkCompatible(a.length(), a.getSegmentShift(),
+                        b.length(), b.getSegmentShift());
+    }
+
+    private static SegmentOp sumOp(final BigIntArray a,
+                                   final long[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final IntBuffer seg = a.segment(s);
+                long sum = 0;
+                for (int i = 0; i < seg.limit(); i++)
+                    sum += seg.get(i);
+                partial[s] = sum;
+            }
+        };
+    }
+
+    public static long sum(BigIntArray a) {
+        final long[] partial = new long[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial));
+        return total(partial);
+    }
+
+    public static long sum(BigIntArray a, ExecutorService executor)
+            throws InterruptedException {
+        final long[] partial = new long[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial), executor);
+        return total(partial);
+    }
+
+    public static double mean(BigIntArray a) {
+        return (double) sum(a) / a.length();
+    }
+
+    public static double mean(BigIntArray a, ExecutorService executor)
+            throws InterruptedException {
+        return (double) sum(a, executor) / a.length();
+    }
+
+    private static SegmentOp squaredDeviationOp(final BigIntArray a,
+                                                final double mean,
+                                                final double[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final IntBuffer seg = a.segment(s);
+                double s2 = 0;
+                for (int i = 0; i < seg.limit(); i++) {
+                    final double d = seg.get(i) - mean;
+                    s2 += d * d;
+                }
+                partial[s] = s2;
+            }
+        };
+    }
+
+    public static double variance(BigIntArray a) {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, squaredDeviationOp(a, mean(a), partial));
+        return total(partial) / a.length();
+    }
+
+    public static double variance(BigIntArray a, ExecutorService executor)
+            throws InterruptedException {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length,
+                squaredDeviationOp(a, mean(a, executor), partial), executor);
+        return total(partial) / a.length();
+    }
+
+    public static double stddev(BigIntArray a) {
+        return Math.sqrt(variance(a));
+    }
+
+    public static double stddev(BigIntArray a, ExecutorService executor)
+            throws InterruptedException {
+        return Math.sqrt(variance(a, executor));
+    }
+
+    private static SegmentOp minMaxOp(final BigIntArray a,
+                                      final int[] min,
+                                      final int[] max) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final IntBuffer seg = a.segment(s);
+                int lo = seg.get(0);
+                int hi = lo;
+                for (int i = 1; i < seg.limit(); i++) {
+                    final int v = seg.get(i);
+                    if (v < lo)
+                        lo = v;
+                    else if (v > hi)
+                        hi = v;
+                }
+                min[s] = lo;
+                max[s] = hi;
+            }
+        };
+    }
+
+    /**
+     * @param a non-empty array
+     * @return two element array containing the minimum and maximum values
+     * @throws IllegalArgumentException if the array is empty
+     */
+    public static int[] minmax(BigIntArray a) {
+        checkNotEmpty(a.length());
+        final int[] min = new int[a.getSegmentCount()];
+        final int[] max = new int[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max));
+        return new int[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    public static int[] minmax(BigIntArray a, ExecutorService executor)
+            throws InterruptedException {
+        checkNotEmpty(a.length());
+        final int[] min = new int[a.getSegmentCount()];
+        final int[] max = new int[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max), executor);
+        return new int[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    private static SegmentOp addOp(final BigIntArray src,
+                                  final int scalar,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigIntArray src, int scalar,
+                           BigIntArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst));
+    }
+
+    public static void add(BigIntArray src, int scalar,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigIntArray src,
+                                  final int scalar,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigIntArray src, int scalar,
+                           BigIntArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst));
+    }
+
+    public static void mul(BigIntArray src, int scalar,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp addOp(final BigIntArray src1,
+                                  final BigIntArray src2,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst));
+    }
+
+    public static void add(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp subOp(final BigIntArray src1,
+                                  final BigIntArray src2,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.sub(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void sub(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst));
+    }
+
+    public static void sub(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigIntArray src1,
+                                  final BigIntArray src2,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst));
+    }
+
+    public static void mul(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp divOp(final BigIntArray src1,
+                                  final BigIntArray src2,
+                                  final BigIntArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.div(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void div(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst));
+    }
+
+    public static void div(BigIntArray src1, BigIntArray src2,
+                           BigIntArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst), executor);
+    }
+
+    private static void checkCompatible(BigLongArray a, BigLongArray b) {
+        checkCompatible(a.length(), a.getSegmentShift(),
+                        b.length(), b.getSegmentShift());
+    }
+
+    private static SegmentOp sumOp(final BigLongArray a,
+                                   final long[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final LongBuffer seg = a.segment(s);
+                long sum = 0;
+                for (int i = 0; i < seg.limit(); i++)
+                    sum += seg.get(i);
+                partial[s] = sum;
+            }
+        };
+    }
+
+    public static long sum(BigLongArray a) {
+        final long[] partial = new long[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial));
+        return total(partial);
+    }
+
+    public static long sum(BigLongArray a, ExecutorService executor)
+            throws InterruptedException {
+        final long[] partial = new long[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial), executor);
+        return total(partial);
+    }
+
+    public static double mean(BigLongArray a) {
+        return (double) sum(a) / a.length();
+    }
+
+    public static double mean(BigLongArray a, ExecutorService executor)
+            throws InterruptedException {
+        return (double) sum(a, executor) / a.length();
+    }
+
+    private static SegmentOp squaredDeviationOp(final BigLongArray a,
+                                                final double mean,
+                                                final double[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final LongBuffer seg = a.segment(s);
+                double s2 = 0;
+                for (int i = 0; i < seg.limit(); i++) {
+                    final double d = seg.get(i) - mean;
+                    s2 += d * d;
+                }
+                partial[s] = s2;
+            }
+        };
+    }
+
+    public static double variance(BigLongArray a) {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, squaredDeviationOp(a, mean(a), partial));
+        return total(partial) / a.length();
+    }
+
+    public static double variance(BigLongArray a, ExecutorService executor)
+            throws InterruptedException {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length,
+                squaredDeviationOp(a, mean(a, executor), partial), executor);
+        return total(partial) / a.length();
+    }
+
+    public static double stddev(BigLongArray a) {
+        return Math.sqrt(variance(a));
+    }
+
+    public static double stddev(BigLongArray a, ExecutorService executor)
+            throws InterruptedException {
+        return Math.sqrt(variance(a, executor));
+    }
+
+    private static SegmentOp minMaxOp(final BigLongArray a,
+                                      final long[] min,
+                                      final long[] max) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final LongBuffer seg = a.segment(s);
+                long lo = seg.get(0);
+                long hi = lo;
+                for (int i = 1; i < seg.limit(); i++) {
+                    final long v = seg.get(i);
+                    if (v < lo)
+                        lo = v;
+                    else if (v > hi)
+                        hi = v;
+                }
+                min[s] = lo;
+                max[s] = hi;
+            }
+        };
+    }
+
+    /**
+     * @param a non-empty array
+     * @return two element array containing the minimum and maximum values
+     * @throws IllegalArgumentException if the array is empty
+     */
+    public static long[] minmax(BigLongArray a) {
+        checkNotEmpty(a.length());
+        final long[] min = new long[a.getSegmentCount()];
+        final long[] max = new long[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max));
+        return new long[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    public static long[] minmax(BigLongArray a, ExecutorService executor)
+            throws InterruptedException {
+        checkNotEmpty(a.length());
+        final long[] min = new long[a.getSegmentCount()];
+        final long[] max = new long[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max), executor);
+        return new long[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    private static SegmentOp addOp(final BigLongArray src,
+                                  final long scalar,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigLongArray src, long scalar,
+                           BigLongArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst));
+    }
+
+    public static void add(BigLongArray src, long scalar,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigLongArray src,
+                                  final long scalar,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigLongArray src, long scalar,
+                           BigLongArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst));
+    }
+
+    public static void mul(BigLongArray src, long scalar,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp addOp(final BigLongArray src1,
+                                  final BigLongArray src2,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst));
+    }
+
+    public static void add(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp subOp(final BigLongArray src1,
+                                  final BigLongArray src2,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.sub(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void sub(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst));
+    }
+
+    public static void sub(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigLongArray src1,
+                                  final BigLongArray src2,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst));
+    }
+
+    public static void mul(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp divOp(final BigLongArray src1,
+                                  final BigLongArray src2,
+                                  final BigLongArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.div(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void div(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst));
+    }
+
+    public static void div(BigLongArray src1, BigLongArray src2,
+                           BigLongArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst), executor);
+    }
+}
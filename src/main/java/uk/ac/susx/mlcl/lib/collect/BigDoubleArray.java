@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>An array of {@code double} values indexed by {@code long}, so it may
+ * hold more than {@link Integer#MAX_VALUE} elements.</p>
+ *
+ * <p>Elements are stored in segments of 2<sup>segmentShift</sup> elements,
+ * so an index is split into a segment number and an offset with a shift and
+ * a mask. Segments are either heap arrays or, optionally, direct buffers
+ * allocated outside of the heap, which are never scanned or moved by the
+ * garbage collector. Growing the array with {@link #setLength(long)} only
+ * allocates new segments; existing full segments are never copied.</p>
+ *
+ * <p>Instances are not thread-safe, but distinct segments may be modified
+ * concurrently, as is done by the parallel operations of
+ * {@link BigArrayMath}.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class BigDoubleArray {
+
+    /**
+     * Default segment shift, giving segments of 2<sup>20</sup> elements.
+     */
+    public static final int DEFAULT_SEGMENT_SHIFT = 20;
+
+    /**
+     * Largest segment shift, such that a segment still fits in a single
+     * buffer.
+     */
+    public static final int MAX_SEGMENT_SHIFT = 27;
+
+    private final int segmentShift;
+
+    private final int segmentMask;
+
+    private final boolean direct;
+
+    private DoubleBuffer[] segments;
+
+    private long length;
+
+    /**
+     * Construct a new heap array of the given {@code length}, with all
+     * elements initially zero.
+     *
+     * @param length number of elements
+     */
+    public BigDoubleArray(long length) {
+        this(length, DEFAULT_SEGMENT_SHIFT, false);
+    }
+
+    /**
+     * Construct a new array of the given {@code length}, with all elements
+     * initially zero.
+     *
+     * @param length number of elements
+     * @param segmentShift base 2 logarithm of the number of elements in
+     *          each segment
+     * @param direct true if segments are allocated outside of the heap
+     */
+    public BigDoubleArray(long length, int segmentShift, boolean direct) {
+        Checks.checkRangeIncl("segmentShift", segmentShift,
+                              1, MAX_SEGMENT_SHIFT);
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.direct = direct;
+        this.segments = new DoubleBuffer[0];
+        this.length = 0;
+        setLength(length);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int getSegmentShift() {
+        return segmentShift;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public double get(long index) {
+        checkIndex(index);
+        return segments[(int) (index >>> segmentShift)]
+                .get((int) index & segmentMask);
+    }
+
+    public void set(long index, double value) {
+        checkIndex(index);
+        segments[(int) (index >>> segmentShift)]
+                .put((int) index & segmentMask, value);
+    }
+
+    /**
+     * Add {@code delta} to the element at {@code index}.
+     *
+     * @param index element index
+     * @param delta amount to add
+     * @return the new value of the element
+     */
+    public double add(long index, double delta) {
+        checkIndex(index);
+        final DoubleBuffer segment = segments[(int) (index >>> segmentShift)];
+        final int offset = (int) index & segmentMask;
+        final double value = (double) (segment.get(offset) + delta);
+        segment.put(offset, value);
+        return value;
+    }
+
+    public void fill(double value) {
+        for (int i = 0; i < segments.length; i++) {
+            final DoubleBuffer segment = segment(i);
+            if (segment.hasArray()) {
+                Arrays.fill(segment.array(), segment.arrayOffset(),
+                            segment.arrayOffset() + segment.limit(), value);
+            } else {
+                for (int j = 0; j < segment.limit(); j++)
+                    segment.put(j, value);
+            }
+        }
+    }
+
+    /**
+     * Return a view of the elements of segment {@code i}, with position
+     * zero and a limit of the number of elements in that segment. Changes
+     * made to the view are reflected in this array, but the view is
+     * invalidated if the array is subsequently resized.
+     *
+     * @param i segment number
+     * @return buffer view of the segment
+     */
+    public DoubleBuffer segment(int i) {
+        Checks.checkArrayIndex("i", i, segments.length);
+        final DoubleBuffer view = segments[i].duplicate();
+        view.clear();
+        view.limit((int) Math.min(
+                view.capacity(), length - ((long) i << segmentShift)));
+        return view;
+    }
+
+    /**
+     * Change the number of elements in the array. Elements added are zero;
+     * elements removed are discarded.
+     *
+     * @param newLength number of elements
+     */
+    public void setLength(long newLength) {
+        if (newLength < 0)
+            throw new IllegalArgumentException("newLength < 0");
+        final long segmentSize = 1L << segmentShift;
+        final long count = (newLength + segmentSize - 1) >>> segmentShift;
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                    "newLength is too large for segmentShift " + segmentShift);
+        final DoubleBuffer[] resized = Arrays.copyOf(segments, (int) count);
+        for (int i = 0; i < resized.length; i++) {
+            final int required = (int) Math.min(
+                    segmentSize, newLength - ((long) i << segmentShift));
+            if (resized[i] == null) {
+                resized[i] = allocate(required);
+            } else if (resized[i].capacity() < required) {
+                // Grow the partial last segment geometrically, so that a
+                // sequence of small increases takes amortised constant time.
+                final DoubleBuffer grown = allocate((int) Math.min(segmentSize,
+                        Math.max(required, 2L * resized[i].capacity())));
+                final DoubleBuffer old = resized[i].duplicate();
+                old.clear();
+                grown.put(old);
+                grown.clear();
+                resized[i] = grown;
+            }
+        }
+        if (newLength < length && resized.length > 0) {
+            // Zero elements discarded from the last segment, so they are not
+            // seen again if the array grows.
+            final DoubleBuffer last = resized[resized.length - 1];
+            final int from = (int) (newLength
+                    - ((long) (resized.length - 1) << segmentShift));
+            for (int j = from; j < last.capacity(); j++)
+                last.put(j, (double) 0);
+        }
+        segments = resized;
+        length = newLength;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "length=" + length
+                + ", segmentShift=" + segmentShift + ", direct=" + direct
+                + '}';
+    }
+
+    private DoubleBuffer allocate(int size) {
+        return direct
+                ? ByteBuffer.allocateDirect(size * 8)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer()
+                : DoubleBuffer.wrap(new double[size]);
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(
+                    "index " + index + " is out of bounds [0, " + length + ")");
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import uk.ac.susx.mlcl.lib.Checks;
+import uk.ac.susx.mlcl.lib.MappedBuffers;
+
+/**
+ * <p>Allocates blocks of memory outside of the Java heap, as direct byte
+ * buffers in native byte order.</p>
+ *
+ * <p>Small blocks are carved sequentially from large shared chunks, and are
+ * only returned to the operating system when the whole arena is closed.
+ * Blocks larger than a quarter of the chunk size are allocated on their own,
+ * and are freed immediately by {@link #free(ByteBuffer)}. An arena with a
+ * chunk size of zero therefore frees every block individually.</p>
+ *
+ * <p>Memory is released explicitly where the JVM permits it, rather than
+ * when the garbage collector happens to collect the buffer. Once memory has
+ * been released the buffers that referred to it must not be used again;
+ * users of this class, such as {@link DirectSparseDoubleVector}, check
+ * {@link #isClosed()} before every access.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class DirectMemoryArena implements Closeable {
+
+    /**
+     * Default size of the shared chunks; 16 MiB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    private static final int ALIGNMENT = 8;
+
+    private final int chunkSize;
+
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+    private final Set<ByteBuffer> dedicated = new IdentityHashSet<ByteBuffer>();
+
+    /**
+     * Unallocated remainder of the most recent chunk.
+     */
+    private ByteBuffer current = null;
+
+    private long reservedBytes = 0;
+
+    private volatile boolean closed = false;
+
+    public DirectMemoryArena(int chunkSize) {
+        Checks.checkRangeIncl("chunkSize", chunkSize, 0, Integer.MAX_VALUE);
+        this.chunkSize = chunkSize;
+    }
+
+    public DirectMemoryArena() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return number of bytes currently held outside of the heap
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Allocate a zeroed block of at least {@code bytes} bytes, aligned to 8
+     * bytes.
+     *
+     * @param bytes size of the block
+     * @return buffer of exactly {@code bytes} capacity, in native byte order
+     * @throws IllegalStateException if the arena has been closed
+     */
+    public synchronized ByteBuffer allocate(int bytes) {
+        Checks.checkRangeIncl("bytes", bytes, 0,
+                              Integer.MAX_VALUE - ALIGNMENT);
+        checkOpen();
+        if (bytes > chunkSize / 4) {
+            final ByteBuffer block = ByteBuffer.allocateDirect(bytes);
+            dedicated.add(block);
+            reservedBytes += bytes;
+            return block.order(ByteOrder.nativeOrder());
+        }
+        final int aligned = (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+        if (current == null || current.remaining() < aligned) {
+            current = ByteBuffer.allocateDirect(chunkSize);
+            chunks.add(current);
+            reservedBytes += chunkSize;
+        }
+        final int start = current.position();
+        current.limit(start + bytes);
+        final ByteBuffer block = current.slice().order(ByteOrder.nativeOrder());
+        current.limit(current.capacity());
+        current.position(Math.min(start + aligned, current.capacity()));
+        return block;
+    }
+
+    /**
+     * Release a block allocated by this arena. Blocks allocated on their own
+     * are returned to the operating system immediately; blocks carved from a
+     * shared chunk remain reserved until the arena is closed.
+     *
+     * @param block buffer returned by {@link #allocate(int)}
+     */
+    public synchronized void free(ByteBuffer block) {
+        Checks.checkNotNull("block", block);
+        if (!closed && dedicated.remove(block)) {
+            reservedBytes -= block.capacity();
+            release(block);
+        }
+    }
+
+    /**
+     * Release all memory held by the arena. Every block allocated from it
+     * becomes invalid.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer chunk : chunks)
+            release(chunk);
+        for (ByteBuffer block : dedicated)
+            release(block);
+        chunks.clear();
+        dedicated.clear();
+        current = null;
+        reservedBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "chunkSize=" + chunkSize
+                + ", reservedBytes=" + getReservedBytes()
+                + ", closed=" + closed + '}';
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Arena has been closed.");
+    }
+
+    /**
+     * Free the native memory of a direct buffer now, if the JVM provides a
+     * way to do so; otherwise leave it to the garbage collector.
+     */
+    private static void release(ByteBuffer buffer) {
+        MappedBuffers.unmap(buffer);
+    }
+}
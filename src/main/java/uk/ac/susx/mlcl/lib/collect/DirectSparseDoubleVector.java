@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>A sparse vector of double precision values, with the same semantics as
+ * {@link SparseDoubleVector}, but whose keys and values are stored outside
+ * of the Java heap in memory allocated from a {@link DirectMemoryArena}.</p>
+ *
+ * <p>The garbage collector never scans or copies the stored entries, so
+ * very large numbers of vectors can be held without long collection
+ * pauses. In exchange the memory must be released explicitly: either by
+ * {@link #release()}, or by closing the arena the vector was allocated
+ * from. A vector constructed without an arena owns its memory, and
+ * {@link #release()} frees it immediately. Any use of a vector after its
+ * memory has been released throws {@link IllegalStateException}.</p>
+ *
+ * <p>Each vector stores its values and keys in a single block of the
+ * arena. When the block must grow, or is trimmed by {@link #compact()}, a
+ * new block is allocated and the old one is freed; with a shared arena the
+ * old block is only reclaimed when the arena is closed, so vectors in a
+ * shared arena are best built to size, or built on the heap and copied
+ * with {@link #copyOf(SparseDoubleVector, DirectMemoryArena)}.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class DirectSparseDoubleVector {
+
+    private static final int DEFAULT_CAPACITY = SparseVector.DEFAULT_CAPACITY;
+
+    private static final double GROWTH_FACTOR = SparseVector.GROWTH_FACTOR;
+
+    /**
+     * Largest number of entries that fit in a single block.
+     */
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - 8) / 12;
+
+    private final DirectMemoryArena arena;
+
+    private final boolean ownsArena;
+
+    private ByteBuffer block;
+
+    private DoubleBuffer values;
+
+    private IntBuffer keys;
+
+    private int cardinality;
+
+    private int size;
+
+    private double sum;
+
+    private boolean released = false;
+
+    /**
+     * Construct a new empty vector in the given arena.
+     *
+     * @param cardinality dimensionality of the vector
+     * @param capacity number of entries that can be stored before the
+     *          storage must grow
+     * @param arena source of the off-heap storage
+     */
+    public DirectSparseDoubleVector(int cardinality, int capacity,
+                                    DirectMemoryArena arena) {
+        this(cardinality, capacity, arena, false);
+    }
+
+    public DirectSparseDoubleVector(int cardinality, DirectMemoryArena arena) {
+        this(cardinality, Math.min(cardinality, DEFAULT_CAPACITY), arena);
+    }
+
+    /**
+     * Construct a new empty vector that owns its off-heap storage.
+     *
+     * @param cardinality dimensionality of the vector
+     * @param capacity number of entries that can be stored before the
+     *          storage must grow
+     */
+    public DirectSparseDoubleVector(int cardinality, int capacity) {
+        this(cardinality, capacity, new DirectMemoryArena(0), true);
+    }
+
+    public DirectSparseDoubleVector(int cardinality) {
+        this(cardinality, Math.min(cardinality, DEFAULT_CAPACITY));
+    }
+
+    private DirectSparseDoubleVector(int cardinality, int capacity,
+                                     DirectMemoryArena arena,
+                                     boolean ownsArena) {
+        Checks.checkNotNull("arena", arena);
+        Checks.checkRangeIncl("cardinality", cardinality, 0,
+                              Integer.MAX_VALUE);
+        Checks.checkRangeIncl("capacity", capacity, 0, cardinality);
+        this.arena = arena;
+        this.ownsArena = ownsArena;
+        this.cardinality = cardinality;
+        this.size = 0;
+        this.sum = 0;
+        allocate(capacity);
+    }
+
+    /**
+     * Create an off-heap copy of the given heap vector.
+     *
+     * @param vec vector to copy
+     * @param arena source of the off-heap storage
+     * @return new vector, containing the same entries as {@code vec}
+     */
+    public static DirectSparseDoubleVector copyOf(SparseDoubleVector vec,
+                                                  DirectMemoryArena arena) {
+        Checks.checkNotNull("vec", vec);
+        final DirectSparseDoubleVector copy = new DirectSparseDoubleVector(
+                vec.cardinality, vec.size, arena);
+        copy.keys.put(vec.keys, 0, vec.size);
+        copy.values.put(vec.values, 0, vec.size);
+        copy.keys.clear();
+        copy.values.clear();
+        copy.size = vec.size;
+        copy.sum = vec.sum;
+        return copy;
+    }
+
+    /**
+     * @return a heap copy of this vector
+     */
+    public SparseDoubleVector toSparseDoubleVector() {
+        checkLive();
+        if (size == 0)
+            return new SparseDoubleVector(cardinality, 0);
+        final int[] k = new int[size];
+        final double[] v = new double[size];
+        keys.get(k);
+        values.get(v);
+        keys.clear();
+        values.clear();
+        final SparseDoubleVector vec =
+                new SparseDoubleVector(k, v, cardinality, size);
+        vec.sum = sum;
+        return vec;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        checkLive();
+        return keys.capacity();
+    }
+
+    public double density() {
+        return cardinality == 0 ? 0D : (double) size / (double) cardinality;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double getNoEntryValue() {
+        return 0;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @return true if the storage of this vector has been released
+     */
+    public boolean isReleased() {
+        return released || arena.isClosed();
+    }
+
+    public double get(int key) {
+        checkLive();
+        if (key < 0 || key >= cardinality)
+            throw new IndexOutOfBoundsException("key");
+        final int index = fetch(key);
+        return index < 0 ? 0d : values.get(index);
+    }
+
+    public void set(int key, double value) {
+        checkLive();
+        if (cardinality <= key)
+            cardinality = key + 1;
+
+        final int i = fetch(key);
+        if (i >= 0) {
+            sum -= values.get(i);
+            values.put(i, value);
+            sum += value;
+            return;
+        }
+        if (value == 0) {
+            // index did not exist so was previously zero, and the new value
+            // is zero so do nothing
+            return;
+        }
+
+        if (size == keys.capacity())
+            resize(Math.max(size + 1, (int) Math.min(
+                    MAX_CAPACITY, size * GROWTH_FACTOR + 1)));
+
+        final int insert = -i - 1;
+        for (int j = size; j > insert; j--) {
+            keys.put(j, keys.get(j - 1));
+            values.put(j, values.get(j - 1));
+        }
+        keys.put(insert, key);
+        values.put(insert, value);
+        sum += value;
+        size++;
+    }
+
+    public boolean contains(double entry) {
+        checkLive();
+        for (int i = 0; i < size; i++)
+            if (values.get(i) == entry)
+                return true;
+        return false;
+    }
+
+    /**
+     * Remove all zero valued entries, and trim the storage to the number of
+     * entries remaining.
+     */
+    public void compact() {
+        checkLive();
+        int to = 0;
+        for (int from = 0; from < size; from++) {
+            final double value = values.get(from);
+            if (value != 0.0) {
+                keys.put(to, keys.get(from));
+                values.put(to, value);
+                to++;
+            }
+        }
+        size = to;
+        if (size < keys.capacity())
+            resize(size);
+    }
+
+    /**
+     * Return a new vector, allocated from the same arena, holding the
+     * entries of this vector with keys in the range {@code fromIndex}
+     * (inclusive) to {@code toIndex} (exclusive).
+     *
+     * @param fromIndex smallest key to copy
+     * @param toIndex one more than the largest key to copy
+     * @return new vector of the same cardinality
+     */
+    public DirectSparseDoubleVector slice(int fromIndex, int toIndex) {
+        checkLive();
+        int key0 = fetch(fromIndex);
+        if (key0 < 0)
+            key0 = -key0 - 1;
+        int key1 = fetch(toIndex);
+        if (key1 < 0)
+            key1 = -key1 - 1;
+        final int n = key1 - key0;
+        final DirectSparseDoubleVector slice = ownsArena
+                ? new DirectSparseDoubleVector(cardinality, n)
+                : new DirectSparseDoubleVector(cardinality, n, arena);
+        double s = 0;
+        for (int i = 0; i < n; i++) {
+            final double value = values.get(key0 + i);
+            slice.keys.put(i, keys.get(key0 + i));
+            slice.values.put(i, value);
+            s += value;
+        }
+        slice.size = n;
+        slice.sum = s;
+        return slice;
+    }
+
+    public DirectSparseDoubleVector slice(int fromIndex) {
+        return slice(fromIndex, cardinality);
+    }
+
+    public double magnitude() {
+        checkLive();
+        double sqrSum = 0;
+        for (int i = 0; i < size; i++) {
+            final double value = values.get(i);
+            sqrSum += value * value;
+        }
+        return Math.sqrt(sqrSum);
+    }
+
+    /**
+     * Release the off-heap storage of this vector. If the vector owns its
+     * storage, or the storage is too large to share an arena chunk, it is
+     * returned to the operating system immediately.
+     */
+    public void release() {
+        if (released)
+            return;
+        released = true;
+        if (ownsArena) {
+            arena.close();
+        } else {
+            arena.free(block);
+        }
+        block = null;
+        keys = null;
+        values = null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        final DirectSparseDoubleVector other = (DirectSparseDoubleVector) obj;
+        checkLive();
+        other.checkLive();
+        if (this.cardinality != other.cardinality || this.size != other.size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (this.keys.get(i) != other.keys.get(i))
+                return false;
+            if (Double.doubleToLongBits(this.values.get(i))
+                    != Double.doubleToLongBits(other.values.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        checkLive();
+        int hash = 3;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + keys.get(i);
+            final long bits = Double.doubleToLongBits(values.get(i));
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        }
+        hash = 19 * hash + this.cardinality;
+        hash = 19 * hash + this.size;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "cardinality="
+                + cardinality + ", size=" + size + ", released="
+                + isReleased() + '}';
+    }
+
+    private int fetch(int key) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int midKey = keys.get(mid);
+            if (midKey < key)
+                lo = mid + 1;
+            else if (midKey > key)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Allocate a new block for {@code capacity} entries, without copying.
+     * Values are placed first so they are 8 byte aligned.
+     */
+    private void allocate(int capacity) {
+        if (capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException(
+                    "capacity exceeds " + MAX_CAPACITY + " entries");
+        block = arena.allocate(capacity * 12);
+        block.limit(capacity * 8);
+        values = block.slice().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        block.limit(capacity * 12).position(capacity * 8);
+        keys = block.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+        block.clear();
+    }
+
+    private void resize(int capacity) {
+        final ByteBuffer oldBlock = block;
+        final DoubleBuffer oldValues = values;
+        final IntBuffer oldKeys = keys;
+        allocate(capacity);
+        oldValues.limit(size);
+        oldKeys.limit(size);
+        values.put(oldValues);
+        keys.put(oldKeys);
+        values.clear();
+        keys.clear();
+        arena.free(oldBlock);
+    }
+
+    private void checkLive() {
+        if (released || arena.isClosed())
+            throw new IllegalStateException(
+                    "Storage of the vector has been released.");
+    }
+}
@@ -59,6 +59,8 @@ ordered=(1 1 1 1 1 1 1 1 1 1)
 numeric=(0 1 1 1 1 1 1 1 0 0)
 tooctal=(0 1 1 1 1 1 0 0 0 0)
 floatp=(0 0 0 0 0 0 1 1 0 0)
+buffered=(0 0 0 0 1 1 1 1 0 0)
+BUFTYPE=("" "" "" "" "IntBuffer" "LongBuffer" "FloatBuffer" "DoubleBuffer" "" "")
 
 
 perl -pe "s/__CLASS__/${class}/g;" << "---EOF---" >> ${outfile}
@@ -95,6 +97,10 @@ perl -pe "s/__CLASS__/${class}/g;" << "---EOF---" >> ${outfile}
 package uk.ac.susx.mlcl.lib.collect;
 
 import uk.ac.susx.mlcl.lib.Checks;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Random;
 import static uk.ac.susx.mlcl.lib.collect.ArrayUtil.*;
@@ -103,6 +109,12 @@ import static uk.ac.susx.mlcl.lib.collect.ArrayUtil.*;
  * Static utility class for performing arithmetic operations on primitive
  * arrays.
  *
+ * <p>The int, long, float and double operations are also provided over NIO
+ * buffers, such as those mapped from files by
+ * {@link uk.ac.susx.mlcl.lib.io.ArrayFiles}. Buffer operations use absolute
+ * indexing over the elements between the position and limit of each buffer,
+ * and never change the position of any buffer.</p>
+ *
  * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 @SuppressWarnings("unchecked")
@@ -558,6 +570,98 @@ cat << "---EOF---" \
 
 ---EOF---
 
+if (( ${buffered[i]} == 1 ))
+then
+cat << "---EOF---" \
+    | perl -pe "s/PRIMBUF/${BUFTYPE[i]}/g;" \
+    | perl -pe "s/PRIMTYP/${PRIMTYP[i]}/g;"
+
+
+    public static PRIMTYP sum(PRIMBUF buf) {
+        return sum(buf, buf.position(), buf.limit());
+    }
+
+    public static PRIMTYP sum(PRIMBUF buf, int fromIndex, int toIndex) {
+        PRIMTYP sum = (PRIMTYP)0;
+        for (int i = fromIndex; i < toIndex; i++)
+            sum += buf.get(i);
+        return sum;
+    }
+
+    public static void mul(PRIMBUF src, PRIMTYP scalar, PRIMBUF dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src.get(s + i) * scalar));
+    }
+
+    public static void mul(PRIMBUF src1, PRIMBUF src2, PRIMBUF dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src1.get(s1 + i) * src2.get(s2 + i)));
+    }
+
+    public static void div(PRIMBUF src1, PRIMBUF src2, PRIMBUF dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src1.get(s1 + i) / src2.get(s2 + i)));
+    }
+
+    public static void add(PRIMBUF src, PRIMTYP scalar, PRIMBUF dst) {
+        Checks.checkEqual(src.remaining(), dst.remaining());
+        final int n = src.remaining(), s = src.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src.get(s + i) + scalar));
+    }
+
+    public static void add(PRIMBUF src1, PRIMBUF src2, PRIMBUF dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src1.get(s1 + i) + src2.get(s2 + i)));
+    }
+
+    public static void sub(PRIMBUF src1, PRIMBUF src2, PRIMBUF dst) {
+        Checks.checkEquals(src1.remaining(), src2.remaining(), dst.remaining());
+        final int n = src1.remaining(), s1 = src1.position(),
+                s2 = src2.position(), d = dst.position();
+        for (int i = 0; i < n; i++)
+            dst.put(d + i, (PRIMTYP)(src1.get(s1 + i) - src2.get(s2 + i)));
+    }
+
+    public static PRIMTYP mean(PRIMBUF values, int fromIndex, int toIndex) {
+        return (PRIMTYP)(sum(values, fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    public static PRIMTYP mean(PRIMBUF values) {
+        return mean(values, values.position(), values.limit());
+    }
+
+    public static PRIMTYP variance(PRIMBUF values, int fromIndex, int toIndex) {
+        PRIMTYP u = mean(values, fromIndex, toIndex);
+        PRIMTYP s2 = 0;
+        for (int i = fromIndex; i < toIndex; i++)
+            s2 += (values.get(i) - u) * (values.get(i) - u);
+        return (PRIMTYP)(s2 / (toIndex - fromIndex));
+    }
+
+    public static PRIMTYP variance(PRIMBUF values) {
+        return variance(values, values.position(), values.limit());
+    }
+
+    public static PRIMTYP stddev(PRIMBUF values) {
+        return (PRIMTYP)Math.sqrt(variance(values));
+    }
+
+
+---EOF---
+fi
+
 if (( ${floatp[i]} == 1 ))
 then
 cat << "---EOF---" \
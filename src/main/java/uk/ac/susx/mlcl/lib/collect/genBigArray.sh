@@ -0,0 +1,740 @@
+#!/bin/bash
+#
+# Copyright (c) 2011-2012, University of Sussex
+# All rights reserved.
+#
+# Redistribution and use in source and binary forms, with or without
+# modification, are permitted provided that the following conditions are met:
+#
+#  * Redistributions of source code must retain the above copyright notice,
+#    this list of conditions and the following disclaimer.
+#
+#  * Redistributions in binary form must reproduce the above copyright notice,
+#    this list of conditions and the following disclaimer in the documentation
+#    and/or other materials provided with the distribution.
+#
+#  * Neither the name of the University of Sussex nor the names of its
+#    contributors may be used to endorse or promote products derived from this
+#    software without specific prior written permission.
+#
+# THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+# AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+# IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+# ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+# LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+# CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+# SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+# INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+# CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+# ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+# POSSIBILITY OF SUCH DAMAGE.
+#
+
+#
+# Generates the long indexed arrays BigIntArray, BigLongArray and
+# BigDoubleArray, and the BigArrayMath utility class operating on them.
+#
+# Run from this directory: ./genBigArray.sh
+#
+
+class=BigArrayMath
+outfile=${class}.java
+
+TYPNAME=("Double" "Int" "Long")
+PRIMTYP=("double" "int" "long")
+SUMTYP=("double" "long" "long")
+BYTES=(8 4 8)
+MAXSHIFT=(27 28 27)
+
+
+license() {
+cat << "---EOF---"
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+---EOF---
+}
+
+# Substitute the type of element i into the template read from stdin.
+subst() {
+    perl -pe "s/TYPNAME/${TYPNAME[$1]}/g;" \
+        | perl -pe "s/PRIMTYP/${PRIMTYP[$1]}/g;" \
+        | perl -pe "s/SUMTYP/${SUMTYP[$1]}/g;" \
+        | perl -pe "s/BYTES/${BYTES[$1]}/g;" \
+        | perl -pe "s/MAXSHIFT/${MAXSHIFT[$1]}/g;"
+}
+
+
+for ((i=0; i<${#PRIMTYP[@]}; i++))
+do
+license > Big${TYPNAME[i]}Array.java
+cat << "---EOF---" | subst $i >> Big${TYPNAME[i]}Array.java
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.TYPNAMEBuffer;
+import java.util.Arrays;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>An array of {@code PRIMTYP} values indexed by {@code long}, so it may
+ * hold more than {@link Integer#MAX_VALUE} elements.</p>
+ *
+ * <p>Elements are stored in segments of 2<sup>segmentShift</sup> elements,
+ * so an index is split into a segment number and an offset with a shift and
+ * a mask. Segments are either heap arrays or, optionally, direct buffers
+ * allocated outside of the heap, which are never scanned or moved by the
+ * garbage collector. Growing the array with {@link #setLength(long)} only
+ * allocates new segments; existing full segments are never copied.</p>
+ *
+ * <p>Instances are not thread-safe, but distinct segments may be modified
+ * concurrently, as is done by the parallel operations of
+ * {@link BigArrayMath}.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class BigTYPNAMEArray {
+
+    /**
+     * Default segment shift, giving segments of 2<sup>20</sup> elements.
+     */
+    public static final int DEFAULT_SEGMENT_SHIFT = 20;
+
+    /**
+     * Largest segment shift, such that a segment still fits in a single
+     * buffer.
+     */
+    public static final int MAX_SEGMENT_SHIFT = MAXSHIFT;
+
+    private final int segmentShift;
+
+    private final int segmentMask;
+
+    private final boolean direct;
+
+    private TYPNAMEBuffer[] segments;
+
+    private long length;
+
+    /**
+     * Construct a new heap array of the given {@code length}, with all
+     * elements initially zero.
+     *
+     * @param length number of elements
+     */
+    public BigTYPNAMEArray(long length) {
+        this(length, DEFAULT_SEGMENT_SHIFT, false);
+    }
+
+    /**
+     * Construct a new array of the given {@code length}, with all elements
+     * initially zero.
+     *
+     * @param length number of elements
+     * @param segmentShift base 2 logarithm of the number of elements in
+     *          each segment
+     * @param direct true if segments are allocated outside of the heap
+     */
+    public BigTYPNAMEArray(long length, int segmentShift, boolean direct) {
+        Checks.checkRangeIncl("segmentShift", segmentShift,
+                              1, MAX_SEGMENT_SHIFT);
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.direct = direct;
+        this.segments = new TYPNAMEBuffer[0];
+        this.length = 0;
+        setLength(length);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int getSegmentShift() {
+        return segmentShift;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public PRIMTYP get(long index) {
+        checkIndex(index);
+        return segments[(int) (index >>> segmentShift)]
+                .get((int) index & segmentMask);
+    }
+
+    public void set(long index, PRIMTYP value) {
+        checkIndex(index);
+        segments[(int) (index >>> segmentShift)]
+                .put((int) index & segmentMask, value);
+    }
+
+    /**
+     * Add {@code delta} to the element at {@code index}.
+     *
+     * @param index element index
+     * @param delta amount to add
+     * @return the new value of the element
+     */
+    public PRIMTYP add(long index, PRIMTYP delta) {
+        checkIndex(index);
+        final TYPNAMEBuffer segment = segments[(int) (index >>> segmentShift)];
+        final int offset = (int) index & segmentMask;
+        final PRIMTYP value = (PRIMTYP) (segment.get(offset) + delta);
+        segment.put(offset, value);
+        return value;
+    }
+
+    public void fill(PRIMTYP value) {
+        for (int i = 0; i < segments.length; i++) {
+            final TYPNAMEBuffer segment = segment(i);
+            if (segment.hasArray()) {
+                Arrays.fill(segment.array(), segment.arrayOffset(),
+                            segment.arrayOffset() + segment.limit(), value);
+            } else {
+                for (int j = 0; j < segment.limit(); j++)
+                    segment.put(j, value);
+            }
+        }
+    }
+
+    /**
+     * Return a view of the elements of segment {@code i}, with position
+     * zero and a limit of the number of elements in that segment. Changes
+     * made to the view are reflected in this array, but the view is
+     * invalidated if the array is subsequently resized.
+     *
+     * @param i segment number
+     * @return buffer view of the segment
+     */
+    public TYPNAMEBuffer segment(int i) {
+        Checks.checkArrayIndex("i", i, segments.length);
+        final TYPNAMEBuffer view = segments[i].duplicate();
+        view.clear();
+        view.limit((int) Math.min(
+                view.capacity(), length - ((long) i << segmentShift)));
+        return view;
+    }
+
+    /**
+     * Change the number of elements in the array. Elements added are zero;
+     * elements removed are discarded.
+     *
+     * @param newLength number of elements
+     */
+    public void setLength(long newLength) {
+        if (newLength < 0)
+            throw new IllegalArgumentException("newLength < 0");
+        final long segmentSize = 1L << segmentShift;
+        final long count = (newLength + segmentSize - 1) >>> segmentShift;
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                    "newLength is too large for segmentShift " + segmentShift);
+        final TYPNAMEBuffer[] resized = Arrays.copyOf(segments, (int) count);
+        for (int i = 0; i < resized.length; i++) {
+            final int required = (int) Math.min(
+                    segmentSize, newLength - ((long) i << segmentShift));
+            if (resized[i] == null) {
+                resized[i] = allocate(required);
+            } else if (resized[i].capacity() < required) {
+                // Grow the partial last segment geometrically, so that a
+                // sequence of small increases takes amortised constant time.
+                final TYPNAMEBuffer grown = allocate((int) Math.min(segmentSize,
+                        Math.max(required, 2L * resized[i].capacity())));
+                final TYPNAMEBuffer old = resized[i].duplicate();
+                old.clear();
+                grown.put(old);
+                grown.clear();
+                resized[i] = grown;
+            }
+        }
+        if (newLength < length && resized.length > 0) {
+            // Zero elements discarded from the last segment, so they are not
+            // seen again if the array grows.
+            final TYPNAMEBuffer last = resized[resized.length - 1];
+            final int from = (int) (newLength
+                    - ((long) (resized.length - 1) << segmentShift));
+            for (int j = from; j < last.capacity(); j++)
+                last.put(j, (PRIMTYP) 0);
+        }
+        segments = resized;
+        length = newLength;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "length=" + length
+                + ", segmentShift=" + segmentShift + ", direct=" + direct
+                + '}';
+    }
+
+    private TYPNAMEBuffer allocate(int size) {
+        return direct
+                ? ByteBuffer.allocateDirect(size * BYTES)
+                .order(ByteOrder.nativeOrder()).asTYPNAMEBuffer()
+                : TYPNAMEBuffer.wrap(new PRIMTYP[size]);
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(
+                    "index " + index + " is out of bounds [0, " + length + ")");
+    }
+}
+---EOF---
+done
+
+
+license > ${outfile}
+for ((i=0; i<${#PRIMTYP[@]}; i++))
+do
+    imports="${imports}import java.nio.${TYPNAME[i]}Buffer;\n"
+done
+perl -pe "s/BUFFER_IMPORTS/${imports}/g;" << "---EOF---" >> ${outfile}
+package uk.ac.susx.mlcl.lib.collect;
+
+BUFFER_IMPORTSimport java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Static utility class for performing arithmetic operations on the long
+ * indexed arrays {@link BigDoubleArray}, {@link BigIntArray} and
+ * {@link BigLongArray}.</p>
+ *
+ * <p>Every operation works one segment at a time, and is provided in two
+ * forms: one that runs in the calling thread, and one that runs the
+ * segments concurrently on an {@link ExecutorService}. Reductions combine
+ * the per-segment results in segment order, so both forms produce exactly
+ * the same result. Element-wise operations require all arrays to have the
+ * same length and segment shift; the destination may be one of the
+ * sources. Sums of int arrays are accumulated as longs.</p>
+ *
+ * <p>This class is generated by genBigArray.sh; edit the script rather than
+ * this file.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class BigArrayMath {
+
+    private BigArrayMath() {
+    }
+
+    /**
+     * An operation applied independently to each segment of an array.
+     */
+    private interface SegmentOp {
+
+        void apply(int segment);
+    }
+
+    private static void forEach(int count, SegmentOp op) {
+        for (int i = 0; i < count; i++)
+            op.apply(i);
+    }
+
+    private static void forEach(int count, final SegmentOp op,
+                                ExecutorService executor)
+            throws InterruptedException {
+        Checks.checkNotNull("executor", executor);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final int segment = i;
+                futures.add(executor.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        op.apply(segment);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            // Only affects tasks that have not yet started, when returning
+            // early because of a failure or interruption.
+            for (Future<?> future : futures)
+                future.cancel(false);
+        }
+    }
+
+    private static double total(double[] partial) {
+        double total = 0;
+        for (int i = 0; i < partial.length; i++)
+            total += partial[i];
+        return total;
+    }
+
+    private static long total(long[] partial) {
+        long total = 0;
+        for (int i = 0; i < partial.length; i++)
+            total += partial[i];
+        return total;
+    }
+
+    private static void checkCompatible(long length1, int shift1,
+                                        long length2, int shift2) {
+        if (length1 != length2)
+            throw new IllegalArgumentException(
+                    "Array lengths differ: " + length1 + " != " + length2);
+        if (shift1 != shift2)
+            throw new IllegalArgumentException(
+                    "Segment shifts differ: " + shift1 + " != " + shift2);
+    }
+
+    private static void checkNotEmpty(long length) {
+        if (length == 0)
+            throw new IllegalArgumentException("Array is empty.");
+    }
+
+---EOF---
+
+
+for ((i=0; i<${#PRIMTYP[@]}; i++))
+do
+if (( i > 0 )); then
+    echo
+fi
+cat << "---EOF---" | subst $i
+    private static void checkCompatible(BigTYPNAMEArray a, BigTYPNAMEArray b) {
+        checkCompatible(a.length(), a.getSegmentShift(),
+                        b.length(), b.getSegmentShift());
+    }
+
+    private static SegmentOp sumOp(final BigTYPNAMEArray a,
+                                   final SUMTYP[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final TYPNAMEBuffer seg = a.segment(s);
+                SUMTYP sum = 0;
+                for (int i = 0; i < seg.limit(); i++)
+                    sum += seg.get(i);
+                partial[s] = sum;
+            }
+        };
+    }
+
+    public static SUMTYP sum(BigTYPNAMEArray a) {
+        final SUMTYP[] partial = new SUMTYP[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial));
+        return total(partial);
+    }
+
+    public static SUMTYP sum(BigTYPNAMEArray a, ExecutorService executor)
+            throws InterruptedException {
+        final SUMTYP[] partial = new SUMTYP[a.getSegmentCount()];
+        forEach(partial.length, sumOp(a, partial), executor);
+        return total(partial);
+    }
+
+    public static double mean(BigTYPNAMEArray a) {
+        return (double) sum(a) / a.length();
+    }
+
+    public static double mean(BigTYPNAMEArray a, ExecutorService executor)
+            throws InterruptedException {
+        return (double) sum(a, executor) / a.length();
+    }
+
+    private static SegmentOp squaredDeviationOp(final BigTYPNAMEArray a,
+                                                final double mean,
+                                                final double[] partial) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final TYPNAMEBuffer seg = a.segment(s);
+                double s2 = 0;
+                for (int i = 0; i < seg.limit(); i++) {
+                    final double d = seg.get(i) - mean;
+                    s2 += d * d;
+                }
+                partial[s] = s2;
+            }
+        };
+    }
+
+    public static double variance(BigTYPNAMEArray a) {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length, squaredDeviationOp(a, mean(a), partial));
+        return total(partial) / a.length();
+    }
+
+    public static double variance(BigTYPNAMEArray a, ExecutorService executor)
+            throws InterruptedException {
+        final double[] partial = new double[a.getSegmentCount()];
+        forEach(partial.length,
+                squaredDeviationOp(a, mean(a, executor), partial), executor);
+        return total(partial) / a.length();
+    }
+
+    public static double stddev(BigTYPNAMEArray a) {
+        return Math.sqrt(variance(a));
+    }
+
+    public static double stddev(BigTYPNAMEArray a, ExecutorService executor)
+            throws InterruptedException {
+        return Math.sqrt(variance(a, executor));
+    }
+
+    private static SegmentOp minMaxOp(final BigTYPNAMEArray a,
+                                      final PRIMTYP[] min,
+                                      final PRIMTYP[] max) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                final TYPNAMEBuffer seg = a.segment(s);
+                PRIMTYP lo = seg.get(0);
+                PRIMTYP hi = lo;
+                for (int i = 1; i < seg.limit(); i++) {
+                    final PRIMTYP v = seg.get(i);
+                    if (v < lo)
+                        lo = v;
+                    else if (v > hi)
+                        hi = v;
+                }
+                min[s] = lo;
+                max[s] = hi;
+            }
+        };
+    }
+
+    /**
+     * @param a non-empty array
+     * @return two element array containing the minimum and maximum values
+     * @throws IllegalArgumentException if the array is empty
+     */
+    public static PRIMTYP[] minmax(BigTYPNAMEArray a) {
+        checkNotEmpty(a.length());
+        final PRIMTYP[] min = new PRIMTYP[a.getSegmentCount()];
+        final PRIMTYP[] max = new PRIMTYP[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max));
+        return new PRIMTYP[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    public static PRIMTYP[] minmax(BigTYPNAMEArray a, ExecutorService executor)
+            throws InterruptedException {
+        checkNotEmpty(a.length());
+        final PRIMTYP[] min = new PRIMTYP[a.getSegmentCount()];
+        final PRIMTYP[] max = new PRIMTYP[a.getSegmentCount()];
+        forEach(min.length, minMaxOp(a, min, max), executor);
+        return new PRIMTYP[]{ArrayUtil.min(min), ArrayUtil.max(max)};
+    }
+
+    private static SegmentOp addOp(final BigTYPNAMEArray src,
+                                  final PRIMTYP scalar,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigTYPNAMEArray src, PRIMTYP scalar,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst));
+    }
+
+    public static void add(BigTYPNAMEArray src, PRIMTYP scalar,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), addOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigTYPNAMEArray src,
+                                  final PRIMTYP scalar,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src.segment(s), scalar, dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigTYPNAMEArray src, PRIMTYP scalar,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst));
+    }
+
+    public static void mul(BigTYPNAMEArray src, PRIMTYP scalar,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src, dst);
+        forEach(dst.getSegmentCount(), mulOp(src, scalar, dst), executor);
+    }
+
+    private static SegmentOp addOp(final BigTYPNAMEArray src1,
+                                  final BigTYPNAMEArray src2,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.add(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void add(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst));
+    }
+
+    public static void add(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), addOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp subOp(final BigTYPNAMEArray src1,
+                                  final BigTYPNAMEArray src2,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.sub(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void sub(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst));
+    }
+
+    public static void sub(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), subOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp mulOp(final BigTYPNAMEArray src1,
+                                  final BigTYPNAMEArray src2,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.mul(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void mul(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst));
+    }
+
+    public static void mul(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), mulOp(src1, src2, dst), executor);
+    }
+
+    private static SegmentOp divOp(final BigTYPNAMEArray src1,
+                                  final BigTYPNAMEArray src2,
+                                  final BigTYPNAMEArray dst) {
+        return new SegmentOp() {
+
+            @Override
+            public void apply(int s) {
+                ArrayMath.div(src1.segment(s), src2.segment(s),
+                              dst.segment(s));
+            }
+        };
+    }
+
+    public static void div(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst) {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst));
+    }
+
+    public static void div(BigTYPNAMEArray src1, BigTYPNAMEArray src2,
+                           BigTYPNAMEArray dst, ExecutorService executor)
+            throws InterruptedException {
+        checkCompatible(src1, src2);
+        checkCompatible(src1, dst);
+        forEach(dst.getSegmentCount(), divOp(src1, src2, dst), executor);
+    }
+---EOF---
+done >> ${outfile}
+
+cat << "---EOF---" >> ${outfile}
+}
+---EOF---
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Policy that adapts the number of items in each chunk produced by a
+ * {@link Chunker}, so that each chunk approaches a target size in bytes,
+ * and/or a target processing time, within fixed bounds.</p>
+ *
+ * <p>The Chunker reports the size of the items it reads (when a
+ * {@link SizeEstimator} is given), and the time that the consumer spends
+ * between successive reads, which is taken to be the time spent processing
+ * the previous chunk. Both are smoothed into per-item averages with an
+ * exponentially weighted moving average. The next chunk size is then the
+ * number of items expected to meet the tightest of the enabled targets. To
+ * avoid oscillation the size is at most double, and at least half, that of
+ * the last chunk observed.</p>
+ *
+ * <p>Instances are thread-safe, since prefetching Chunkers read and consume
+ * chunks on different threads.</p>
+ *
+ * @param <T> The atomic type of items chunked
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class AdaptiveChunkSizer<T> {
+
+    /**
+     * Defines an estimate of the size of an item in bytes.
+     *
+     * @param <T> type of item
+     */
+    public interface SizeEstimator<T> {
+
+        long sizeOf(T item);
+    }
+
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16;
+
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Weight of each new observation in the moving averages.
+     */
+    private static final double ALPHA = 0.25;
+
+    private final int minChunkSize;
+
+    private final int maxChunkSize;
+
+    private final long targetBytes;
+
+    private final SizeEstimator<? super T> sizeEstimator;
+
+    private final long targetNanos;
+
+    private int chunkSize;
+
+    /**
+     * Moving average of bytes per item, or NaN before any observation.
+     */
+    private double bytesPerItem = Double.NaN;
+
+    /**
+     * Moving average of processing time per item, or NaN before any
+     * observation.
+     */
+    private double nanosPerItem = Double.NaN;
+
+    /**
+     * Construct a new AdaptiveChunkSizer.
+     *
+     * @param minChunkSize smallest chunk size
+     * @param maxChunkSize largest chunk size
+     * @param initialChunkSize size of the first chunk
+     * @param targetBytes target bytes per chunk, or 0 to disable
+     * @param sizeEstimator estimates the size of items, required if
+     *          targetBytes is greater than 0
+     * @param targetNanos target processing time per chunk, or 0 to disable
+     */
+    public AdaptiveChunkSizer(int minChunkSize, int maxChunkSize,
+                              int initialChunkSize,
+                              long targetBytes,
+                              SizeEstimator<? super T> sizeEstimator,
+                              long targetNanos) {
+        Checks.checkRangeIncl("minChunkSize", minChunkSize, 1, maxChunkSize);
+        Checks.checkRangeIncl("initialChunkSize", initialChunkSize,
+                              minChunkSize, maxChunkSize);
+        if (targetBytes < 0 || targetNanos < 0)
+            throw new IllegalArgumentException("targets must be >= 0");
+        if (targetBytes > 0 && sizeEstimator == null)
+            throw new NullPointerException(
+                    "sizeEstimator is required for a byte target");
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.chunkSize = initialChunkSize;
+        this.targetBytes = targetBytes;
+        this.sizeEstimator = targetBytes > 0 ? sizeEstimator : null;
+        this.targetNanos = targetNanos;
+    }
+
+    /**
+     * Construct a sizer that targets a number of bytes per chunk.
+     *
+     * @param targetBytes target bytes per chunk
+     * @param sizeEstimator estimates the size of items
+     * @return a new sizer
+     */
+    public static <T> AdaptiveChunkSizer<T> forBytes(
+            long targetBytes, SizeEstimator<? super T> sizeEstimator) {
+        Checks.checkNotNull("sizeEstimator", sizeEstimator);
+        return new AdaptiveChunkSizer<T>(
+                DEFAULT_MIN_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE,
+                DEFAULT_MIN_CHUNK_SIZE, targetBytes, sizeEstimator, 0);
+    }
+
+    /**
+     * Construct a sizer that targets a processing time per chunk.
+     *
+     * @param targetNanos target processing time per chunk
+     * @return a new sizer
+     */
+    public static <T> AdaptiveChunkSizer<T> forNanos(long targetNanos) {
+        return new AdaptiveChunkSizer<T>(
+                DEFAULT_MIN_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE,
+                DEFAULT_MIN_CHUNK_SIZE, 0, null, targetNanos);
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public long getTargetBytes() {
+        return targetBytes;
+    }
+
+    public long getTargetNanos() {
+        return targetNanos;
+    }
+
+    /**
+     * @return whether item sizes should be reported to
+     *          {@link #observeBytes(int, long) }
+     */
+    boolean isMeasuringBytes() {
+        return sizeEstimator != null;
+    }
+
+    long sizeOf(T item) {
+        return sizeEstimator.sizeOf(item);
+    }
+
+    /**
+     * @return the number of items that the next chunk should hold
+     */
+    public synchronized int getChunkSize() {
+        return chunkSize;
+    }
+
+    public synchronized double getBytesPerItem() {
+        return bytesPerItem;
+    }
+
+    public synchronized double getNanosPerItem() {
+        return nanosPerItem;
+    }
+
+    /**
+     * Report the total size of the items in a chunk.
+     *
+     * @param items number of items in the chunk
+     * @param bytes estimated size of the items
+     */
+    public synchronized void observeBytes(int items, long bytes) {
+        if (items == 0)
+            return;
+        bytesPerItem = smooth(bytesPerItem, (double) bytes / items);
+        adapt(items);
+    }
+
+    /**
+     * Report the time taken to process a chunk.
+     *
+     * @param items number of items in the chunk
+     * @param nanos processing time
+     */
+    public synchronized void observeNanos(int items, long nanos) {
+        if (items == 0)
+            return;
+        nanosPerItem = smooth(nanosPerItem, (double) nanos / items);
+        adapt(items);
+    }
+
+    private static double smooth(double average, double observation) {
+        return Double.isNaN(average)
+                ? observation
+                : average + ALPHA * (observation - average);
+    }
+
+    /**
+     * Set the chunk size that meets the tightest target, limited to between
+     * half and twice the size of the chunk that was observed.
+     */
+    private void adapt(int observedSize) {
+        double size = Double.POSITIVE_INFINITY;
+        if (targetBytes > 0 && bytesPerItem > 0)
+            size = Math.min(size, targetBytes / bytesPerItem);
+        if (targetNanos > 0 && nanosPerItem > 0)
+            size = Math.min(size, targetNanos / nanosPerItem);
+        if (Double.isInfinite(size))
+            return;
+        size = Math.max(size, observedSize / 2.0);
+        size = Math.min(size, observedSize * 2.0);
+        size = Math.max(size, minChunkSize);
+        size = Math.min(size, maxChunkSize);
+        chunkSize = (int) size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveChunkSizer{" + "chunkSize=" + chunkSize
+                + ", bounds=[" + minChunkSize + ", " + maxChunkSize + "]"
+                + ", targetBytes=" + targetBytes
+                + ", targetNanos=" + targetNanos
+                + ", bytesPerItem=" + bytesPerItem
+                + ", nanosPerItem=" + nanosPerItem + '}';
+    }
+}
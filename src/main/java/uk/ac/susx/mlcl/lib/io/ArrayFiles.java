@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Static utility class for storing primitive arrays in files that can be
+ * memory mapped, so a persisted array can be used almost immediately without
+ * first being copied onto the heap.</p>
+ *
+ * <p>A file consists of a 16 byte header followed by the raw elements. The
+ * header holds the magic number {@link #MAGIC}, a format version, a code
+ * identifying the element type, the byte order of the elements and the
+ * number of elements. Elements are written in the native byte order of the
+ * machine that stored them, and are mapped in whatever order is recorded in
+ * the header.</p>
+ *
+ * <p>The {@code map} methods return buffers backed by the page cache, so
+ * the data is shared between processes and only read from disk when it is
+ * touched. Such buffers can be passed directly to the buffer operations of
+ * {@link uk.ac.susx.mlcl.lib.collect.ArrayMath}. A single mapping is limited
+ * to {@link Integer#MAX_VALUE} bytes.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class ArrayFiles {
+
+    /**
+     * Magic number at the start of every file; the ASCII characters "MLCA".
+     */
+    public static final int MAGIC = 0x4D4C4341;
+
+    static final int HEADER_SIZE = 16;
+
+    private static final byte VERSION = 1;
+
+    private static final byte INT_TYPE = 'I';
+
+    private static final byte LONG_TYPE = 'J';
+
+    private static final byte FLOAT_TYPE = 'F';
+
+    private static final byte DOUBLE_TYPE = 'D';
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ArrayFiles() {
+    }
+
+    public static void write(File file, int[] arr) throws IOException {
+        Checks.checkNotNull("arr", arr);
+        write(file, IntBuffer.wrap(arr));
+    }
+
+    public static void write(File file, long[] arr) throws IOException {
+        Checks.checkNotNull("arr", arr);
+        write(file, LongBuffer.wrap(arr));
+    }
+
+    public static void write(File file, float[] arr) throws IOException {
+        Checks.checkNotNull("arr", arr);
+        write(file, FloatBuffer.wrap(arr));
+    }
+
+    public static void write(File file, double[] arr) throws IOException {
+        Checks.checkNotNull("arr", arr);
+        write(file, DoubleBuffer.wrap(arr));
+    }
+
+    /**
+     * Store the remaining elements of {@code src} to {@code file}. The
+     * position of {@code src} is not changed.
+     *
+     * @param file destination file, which is replaced if it exists
+     * @param src elements to store
+     * @throws IOException if the file can not be written
+     */
+    public static void write(File file, IntBuffer src) throws IOException {
+        Checks.checkNotNull("src", src);
+        final Writer out = new Writer(file, INT_TYPE, src.remaining());
+        try {
+            final IntBuffer view = out.buffer.asIntBuffer();
+            final IntBuffer in = src.duplicate();
+            while (in.hasRemaining()) {
+                view.clear();
+                final int n = Math.min(view.remaining(), in.remaining());
+                view.put(limit(in.duplicate(), n));
+                in.position(in.position() + n);
+                out.write(n * 4);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void write(File file, LongBuffer src) throws IOException {
+        Checks.checkNotNull("src", src);
+        final Writer out = new Writer(file, LONG_TYPE, src.remaining());
+        try {
+            final LongBuffer view = out.buffer.asLongBuffer();
+            final LongBuffer in = src.duplicate();
+            while (in.hasRemaining()) {
+                view.clear();
+                final int n = Math.min(view.remaining(), in.remaining());
+                view.put(limit(in.duplicate(), n));
+                in.position(in.position() + n);
+                out.write(n * 8);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void write(File file, FloatBuffer src) throws IOException {
+        Checks.checkNotNull("src", src);
+        final Writer out = new Writer(file, FLOAT_TYPE, src.remaining());
+        try {
+            final FloatBuffer view = out.buffer.asFloatBuffer();
+            final FloatBuffer in = src.duplicate();
+            while (in.hasRemaining()) {
+                view.clear();
+                final int n = Math.min(view.remaining(), in.remaining());
+                view.put(limit(in.duplicate(), n));
+                in.position(in.position() + n);
+                out.write(n * 4);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void write(File file, DoubleBuffer src) throws IOException {
+        Checks.checkNotNull("src", src);
+        final Writer out = new Writer(file, DOUBLE_TYPE, src.remaining());
+        try {
+            final DoubleBuffer view = out.buffer.asDoubleBuffer();
+            final DoubleBuffer in = src.duplicate();
+            while (in.hasRemaining()) {
+                view.clear();
+                final int n = Math.min(view.remaining(), in.remaining());
+                view.put(limit(in.duplicate(), n));
+                in.position(in.position() + n);
+                out.write(n * 8);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Map the elements of an int array file into memory, read only.
+     *
+     * @param file file written by {@link #write(File, int[])}
+     * @return buffer view of the stored elements
+     * @throws IOException if the file is not an int array file, or can not
+     *          be mapped
+     */
+    public static IntBuffer mapInts(File file) throws IOException {
+        return mapInts(file, false);
+    }
+
+    /**
+     * Map the elements of an int array file into memory. If the mapping is
+     * {@code writable}, changes made to the buffer are written back to the
+     * file.
+     *
+     * @param file file written by {@link #write(File, int[])}
+     * @param writable true if the buffer may be modified
+     * @return buffer view of the stored elements
+     * @throws IOException if the file is not an int array file, or can not
+     *          be mapped
+     */
+    public static IntBuffer mapInts(File file, boolean writable)
+            throws IOException {
+        return map(file, INT_TYPE, 4, writable).asIntBuffer();
+    }
+
+    public static LongBuffer mapLongs(File file) throws IOException {
+        return mapLongs(file, false);
+    }
+
+    public static LongBuffer mapLongs(File file, boolean writable)
+            throws IOException {
+        return map(file, LONG_TYPE, 8, writable).asLongBuffer();
+    }
+
+    public static FloatBuffer mapFloats(File file) throws IOException {
+        return mapFloats(file, false);
+    }
+
+    public static FloatBuffer mapFloats(File file, boolean writable)
+            throws IOException {
+        return map(file, FLOAT_TYPE, 4, writable).asFloatBuffer();
+    }
+
+    public static DoubleBuffer mapDoubles(File file) throws IOException {
+        return mapDoubles(file, false);
+    }
+
+    public static DoubleBuffer mapDoubles(File file, boolean writable)
+            throws IOException {
+        return map(file, DOUBLE_TYPE, 8, writable).asDoubleBuffer();
+    }
+
+    public static int[] readInts(File file) throws IOException {
+        final IntBuffer buf = mapInts(file);
+        final int[] arr = new int[buf.remaining()];
+        buf.get(arr);
+        return arr;
+    }
+
+    public static long[] readLongs(File file) throws IOException {
+        final LongBuffer buf = mapLongs(file);
+        final long[] arr = new long[buf.remaining()];
+        buf.get(arr);
+        return arr;
+    }
+
+    public static float[] readFloats(File file) throws IOException {
+        final FloatBuffer buf = mapFloats(file);
+        final float[] arr = new float[buf.remaining()];
+        buf.get(arr);
+        return arr;
+    }
+
+    public static double[] readDoubles(File file) throws IOException {
+        final DoubleBuffer buf = mapDoubles(file);
+        final double[] arr = new double[buf.remaining()];
+        buf.get(arr);
+        return arr;
+    }
+
+    private static <B extends Buffer> B limit(B buf, int n) {
+        buf.limit(buf.position() + n);
+        return buf;
+    }
+
+    private static ByteBuffer map(File file, byte type, int width,
+                                  boolean writable)
+            throws IOException {
+        Checks.checkNotNull("file", file);
+        final RandomAccessFile raf = new RandomAccessFile(
+                file, writable ? "rw" : "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    throw new EOFException(
+                            "Truncated array file header: " + file);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException("Not an array file: " + file);
+            if (header.get(4) != VERSION)
+                throw new IOException("Unsupported array file version "
+                        + header.get(4) + ": " + file);
+            if (header.get(5) != type)
+                throw new IOException("Expecting element type "
+                        + (char) type + " but found "
+                        + (char) header.get(5) + ": " + file);
+            final ByteOrder order = header.get(6) == 0
+                    ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            final long bytes = header.getLong(8) * width;
+            if (bytes > Integer.MAX_VALUE)
+                throw new IOException("Array of " + bytes
+                        + " bytes is too large to map: " + file);
+            if (channel.size() < HEADER_SIZE + bytes)
+                throw new EOFException("Truncated array file: " + file);
+            return channel.map(
+                    writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, bytes).order(order);
+        } finally {
+            // The mapping remains valid once the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the header, then stages elements through a direct buffer in
+     * native byte order.
+     */
+    private static final class Writer {
+
+        final ByteBuffer buffer;
+
+        private final FileOutputStream out;
+
+        private final FileChannel channel;
+
+        Writer(File file, byte type, long length) throws IOException {
+            Checks.checkNotNull("file", file);
+            this.out = new FileOutputStream(file);
+            this.channel = out.getChannel();
+            // The header is always big endian, regardless of element order.
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.put(type);
+            buffer.put(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+                       ? (byte) 0 : (byte) 1);
+            buffer.put((byte) 0);
+            buffer.putLong(length);
+            try {
+                write(HEADER_SIZE);
+            } catch (IOException ex) {
+                out.close();
+                throw ex;
+            }
+            buffer.order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Write the first {@code bytes} bytes of the buffer to the file.
+         */
+        void write(int bytes) throws IOException {
+            buffer.position(0);
+            buffer.limit(bytes);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Decorating ObjectSink that writes to the encapsulated instance on a
+ * background thread, so that encoding and output I/O do not stall the
+ * producer.</p>
+ *
+ * <p>Records are collected into a batch. When the batch is full it is handed
+ * to a background task that writes it to the encapsulated sink, while the
+ * producer continues to fill a second batch. The two batches alternate, so
+ * the producer only blocks when it fills a batch before the previous one has
+ * been written. The total time spent blocked is reported by
+ * {@link #getBlockedNanos()}.</p>
+ *
+ * <p>{@link #flush()} and {@link #close()} block until all records written so
+ * far have been passed to the encapsulated sink, which is then flushed or
+ * closed on the caller's thread. Any exception thrown by the background task
+ * is re-thrown from the first invocation of {@code write}, {@code flush} or
+ * {@code close} after the task has failed.</p>
+ *
+ * <p>Instances are not thread safe; they should be written to by a single
+ * producer.</p>
+ *
+ * @param <T> type of object consumed
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class AsyncObjectSink<T>
+        extends ForwardingObjectSink<ObjectSink<T>, T> {
+
+    public static final int DEFAULT_BATCH_SIZE = 1 << 12;
+
+    private final ExecutorService executor;
+
+    private Object[] batch;
+
+    private int size = 0;
+
+    private Object[] spare;
+
+    private Future<Object[]> pending = null;
+
+    private long blockedNanos = 0;
+
+    private long batchCount = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Construct a new AsyncObjectSink that writes batches of
+     * {@code batchSize} records using the given executor.
+     *
+     * @param inner sink that records are written to in the background
+     * @param batchSize number of records in each batch
+     * @param executor runs the background writing tasks
+     */
+    public AsyncObjectSink(ObjectSink<T> inner, int batchSize,
+                           ExecutorService executor) {
+        super(inner);
+        Checks.checkRangeIncl("batchSize", batchSize, 1, Integer.MAX_VALUE);
+        Checks.checkNotNull("executor", executor);
+        this.executor = executor;
+        this.batch = new Object[batchSize];
+        this.spare = new Object[batchSize];
+    }
+
+    public AsyncObjectSink(ObjectSink<T> inner, int batchSize) {
+        this(inner, batchSize, BackgroundTasks.executor());
+    }
+
+    public AsyncObjectSink(ObjectSink<T> inner) {
+        this(inner, DEFAULT_BATCH_SIZE);
+    }
+
+    public int getBatchSize() {
+        return batch.length;
+    }
+
+    /**
+     * @return total time in nanoseconds that the producer has spent waiting
+     *          for the background task to finish writing a batch
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * @return number of batches handed to the background task
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    @Override
+    public void write(T record) throws IOException {
+        if (closed)
+            throw new IOException("sink is closed");
+        checkPending();
+        batch[size++] = record;
+        if (size == batch.length)
+            submit();
+    }
+
+    @Override
+    public void write(Object[] src, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("sink is closed");
+        checkPending();
+        while (len > 0) {
+            final int n = Math.min(len, batch.length - size);
+            System.arraycopy(src, off, batch, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == batch.length)
+                submit();
+        }
+    }
+
+    /**
+     * Hand the current batch to the background task, once the previous batch
+     * has been written, and swap in the spare batch.
+     */
+    private void submit() throws IOException {
+        await();
+        final Object[] full = batch;
+        final int length = size;
+        batch = spare;
+        spare = null;
+        size = 0;
+        ++batchCount;
+        pending = executor.submit(new Callable<Object[]>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object[] call() throws IOException {
+                final ObjectSink<T> inner = getInner();
+                for (int i = 0; i < length; i++) {
+                    inner.write((T) full[i]);
+                    full[i] = null;
+                }
+                return full;
+            }
+
+        });
+    }
+
+    /**
+     * If the pending batch has already been written, or has failed, reclaim
+     * it or re-throw its failure, without waiting.
+     */
+    private void checkPending() throws IOException {
+        if (pending != null && pending.isDone())
+            await();
+    }
+
+    /**
+     * Wait for the pending batch, if any, to be written, and reclaim it as
+     * the spare batch.
+     */
+    private void await() throws IOException {
+        if (pending == null)
+            return;
+        final Future<Object[]> f = pending;
+        pending = null;
+        final long start = f.isDone() ? 0 : System.nanoTime();
+        try {
+            spare = BackgroundTasks.get(f);
+        } finally {
+            if (start != 0)
+                blockedNanos += System.nanoTime() - start;
+            // The failed batch is lost, but the sink remains usable
+            if (spare == null)
+                spare = new Object[batch.length];
+        }
+    }
+
+    /**
+     * Block until all records written so far have been passed to the
+     * encapsulated sink, then flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed)
+            return;
+        if (size > 0)
+            submit();
+        await();
+        super.flush();
+    }
+
+    /**
+     * Block until all records written so far have been passed to the
+     * encapsulated sink, then close it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (size > 0)
+                submit();
+            await();
+        } finally {
+            if (pending != null)
+                BackgroundTasks.discard(pending);
+            super.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "batchSize="
+                + batch.length + ", batches=" + batchCount
+                + ", blockedNanos=" + blockedNanos
+                + ", inner=" + getInner() + '}';
+    }
+}
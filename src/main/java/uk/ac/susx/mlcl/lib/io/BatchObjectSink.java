@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * An {@link ObjectSink} that can also consume a number of objects in a single
+ * invocation, so that pipelines of wrapping sinks pay the cost of method
+ * dispatch once per batch rather than once per object.
+ *
+ * Use {@link ObjectIO#write(ObjectSink, Object[], int, int)} to write a batch
+ * to any sink, whether or not it implements this interface.
+ *
+ * The batch is passed as an {@code Object[]}, because generic callers such
+ * as {@link ObjectIO#copy(ObjectSource, ObjectSink)} can not create an array
+ * of the type parameter. Callers must only pass elements of type {@code T};
+ * implementations cast each element, never the array itself.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @param <T> The type of object that the implementing class will provide.
+ */
+public interface BatchObjectSink<T> extends ObjectSink<T> {
+
+    /**
+     * Consume the {@code len} records in {@code src}, starting at offset
+     * {@code off}, in order. Equivalent to calling {@link #write(Object)} for
+     * each record.
+     *
+     * @param src array of records to consume, each of type {@code T}
+     * @param off offset into {@code src} of the first record
+     * @param len number of records to consume
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(Object[] src, int off, int len) throws IOException;
+
+}
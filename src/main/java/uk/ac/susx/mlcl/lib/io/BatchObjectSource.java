@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * An {@link ObjectSource} that can also produce a number of objects in a
+ * single invocation, so that pipelines of wrapping sources pay the cost of
+ * method dispatch once per batch rather than once per object.
+ *
+ * Use {@link ObjectIO#read(ObjectSource, Object[], int, int)} to read a batch
+ * from any source, whether or not it implements this interface.
+ *
+ * The batch is read into an {@code Object[]}, because generic callers such
+ * as {@link ObjectIO#copy(ObjectSource, ObjectSink)} can not create an array
+ * of the type parameter. Every element stored by an implementation must be
+ * of type {@code T}.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @param <T> The type of object that the implementing class will provide.
+ */
+public interface BatchObjectSource<T> extends ObjectSource<T> {
+
+    /**
+     * Read up to {@code len} records into {@code dst}, starting at offset
+     * {@code off}. Fewer than {@code len} records may be read; zero records
+     * are read only if {@code len} is zero or there are no more records
+     * available (i.e. {@link #hasNext()} is false).
+     *
+     * @param dst array to store the records in, each of type {@code T}
+     * @param off offset into {@code dst} of the first record read
+     * @param len maximum number of records to read
+     * @return number of records read
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    int read(Object[] dst, int off, int len) throws IOException;
+
+}
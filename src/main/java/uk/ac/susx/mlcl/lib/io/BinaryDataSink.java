@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>DataSink that writes a compact binary encoding to a byte channel, to be
+ * read back by {@link BinaryDataSource}.</p>
+ *
+ * <p>Each record is written as a varint byte length followed by the record's
+ * fields, so a reader can always tell where a record ends. Fields are encoded
+ * as follows:</p>
+ * <ul>
+ *  <li>{@code short}, {@code int} and {@code long} values are zigzag
+ *      encoded, then written as little-endian base-128 varints, so values of
+ *      small magnitude take few bytes.</li>
+ *  <li>{@code char} values are written as unsigned varints.</li>
+ *  <li>{@code byte}, {@code float} and {@code double} values are written as
+ *      raw (big-endian) bytes.</li>
+ *  <li>Strings are written as a varint byte length followed by the modified
+ *      UTF-8 encoding of their characters, as used by
+ *      {@link java.io.DataOutput#writeUTF(java.lang.String) }, but without the
+ *      64K length limit.</li>
+ * </ul>
+ *
+ * <p>Fields of the current record are staged in memory until
+ * {@link #endOfRecord()} is called, so a single record must fit in memory.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class BinaryDataSink implements DataSink, Closeable, Flushable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final int INITIAL_RECORD_SIZE = 64;
+
+    private final WritableByteChannel channel;
+
+    /**
+     * Buffer of completed records waiting to be written to the channel.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Fields of the record currently being written.
+     */
+    private ByteBuffer record;
+
+    public BinaryDataSink(WritableByteChannel channel, int bufferSize) {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkRangeIncl("bufferSize", bufferSize, 16, Integer.MAX_VALUE);
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.record = ByteBuffer.allocate(INITIAL_RECORD_SIZE);
+    }
+
+    public BinaryDataSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void endOfRecord() throws IOException {
+        record.flip();
+        ensureBuffered(10);
+        putVarint(buffer, record.remaining());
+        while (record.hasRemaining()) {
+            if (!buffer.hasRemaining())
+                writeBuffer();
+            final int limit = record.limit();
+            record.limit(record.position()
+                    + Math.min(record.remaining(), buffer.remaining()));
+            buffer.put(record);
+            record.limit(limit);
+        }
+        record.clear();
+    }
+
+    @Override
+    public void writeByte(byte val) throws IOException {
+        ensureStaged(1);
+        record.put(val);
+    }
+
+    @Override
+    public void writeChar(char val) throws IOException {
+        ensureStaged(3);
+        putVarint(record, val);
+    }
+
+    @Override
+    public void writeShort(short val) throws IOException {
+        writeInt(val);
+    }
+
+    @Override
+    public void writeInt(int val) throws IOException {
+        ensureStaged(5);
+        putVarint(record, (val << 1) ^ (val >> 31));
+    }
+
+    @Override
+    public void writeLong(long val) throws IOException {
+        ensureStaged(10);
+        putVarlong(record, (val << 1) ^ (val >> 63));
+    }
+
+    @Override
+    public void writeDouble(double val) throws IOException {
+        ensureStaged(8);
+        record.putDouble(val);
+    }
+
+    @Override
+    public void writeFloat(float val) throws IOException {
+        ensureStaged(4);
+        record.putFloat(val);
+    }
+
+    @Override
+    public void writeString(String str) throws IOException {
+        Checks.checkNotNull("str", str);
+        final int n = str.length();
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            final char c = str.charAt(i);
+            length += (c != 0 && c < 0x80) ? 1 : c < 0x800 ? 2 : 3;
+        }
+        ensureStaged(5 + length);
+        putVarint(record, length);
+        if (length == n) {
+            for (int i = 0; i < n; i++)
+                record.put((byte) str.charAt(i));
+        } else {
+            for (int i = 0; i < n; i++) {
+                final char c = str.charAt(i);
+                if (c != 0 && c < 0x80) {
+                    record.put((byte) c);
+                } else if (c < 0x800) {
+                    record.put((byte) (0xC0 | (c >> 6)));
+                    record.put((byte) (0x80 | (c & 0x3F)));
+                } else {
+                    record.put((byte) (0xE0 | (c >> 12)));
+                    record.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    record.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        if (channel instanceof FileChannel)
+            ((FileChannel) channel).force(false);
+        else if (channel instanceof Flushable)
+            ((Flushable) channel).flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (record.position() > 0)
+            endOfRecord();
+        writeBuffer();
+        channel.close();
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void ensureBuffered(int required) throws IOException {
+        if (buffer.remaining() < required)
+            writeBuffer();
+    }
+
+    private void ensureStaged(int required) {
+        if (record.remaining() < required) {
+            final ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                    record.capacity() * 2, record.position() + required));
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+    }
+
+    /**
+     * Write the given value as an unsigned base-128 varint.
+     */
+    static void putVarint(ByteBuffer buf, int val) {
+        while ((val & ~0x7F) != 0) {
+            buf.put((byte) ((val & 0x7F) | 0x80));
+            val >>>= 7;
+        }
+        buf.put((byte) val);
+    }
+
+    /**
+     * Write the given value as an unsigned base-128 varint.
+     */
+    static void putVarlong(ByteBuffer buf, long val) {
+        while ((val & ~0x7FL) != 0) {
+            buf.put((byte) ((val & 0x7F) | 0x80));
+            val >>>= 7;
+        }
+        buf.put((byte) val);
+    }
+}
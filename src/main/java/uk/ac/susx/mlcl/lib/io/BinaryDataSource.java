@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>SeekableDataSource that reads the binary encoding produced by
+ * {@link BinaryDataSink} from a byte channel.</p>
+ *
+ * <p>Positions are stored in the {@link Tell} as the byte offset in the
+ * channel, together with the number of bytes remaining in the current
+ * record. Seeking to positions outside of the current buffer requires the
+ * channel to be a {@link FileChannel} or a {@link BlockGzipChannel}; for the
+ * latter the offset is a virtual offset into the compressed file.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class BinaryDataSource implements SeekableDataSource, Closeable {
+
+    private final ReadableByteChannel channel;
+
+    /**
+     * Buffer of bytes read from the channel, always in read mode.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Offset in the channel of the first byte of buffer.
+     */
+    private long bufferOffset;
+
+    /**
+     * Number of bytes remaining to be read from the current record, or -1 if
+     * the record header has not yet been read.
+     */
+    private int recordRemaining = -1;
+
+    private boolean endOfInput = false;
+
+    /**
+     * Reusable storage for decoding strings.
+     */
+    private char[] chars = new char[64];
+
+    public BinaryDataSource(ReadableByteChannel channel, int bufferSize)
+            throws IOException {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkRangeIncl("bufferSize", bufferSize, 16, Integer.MAX_VALUE);
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+        if (channel instanceof BlockGzipChannel) {
+            ((BlockGzipChannel) channel).setRetainBytes(bufferSize);
+            this.bufferOffset =
+                    ((BlockGzipChannel) channel).uncompressedPosition();
+        } else {
+            this.bufferOffset = channel instanceof FileChannel
+                    ? ((FileChannel) channel).position() : 0;
+        }
+    }
+
+    public BinaryDataSource(ReadableByteChannel channel) throws IOException {
+        this(channel, BinaryDataSink.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void endOfRecord() throws IOException {
+        beginRecord();
+        if (recordRemaining != 0)
+            throw new IOException("Expecting end of record, but found "
+                    + recordRemaining + " more bytes.");
+        recordRemaining = -1;
+    }
+
+    @Override
+    public boolean isEndOfRecordNext() throws IOException {
+        beginRecord();
+        return recordRemaining == 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        beginField(1);
+        final byte val = buffer.get();
+        recordRemaining -= 1;
+        return val;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return (char) readVarint();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return (short) readInt();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        final int val = readVarint();
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        final int start = beginField(10);
+        long val = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63)
+                throw new IOException("Malformed varint.");
+            b = buffer.get();
+            val |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        endField(start);
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        final int start = beginField(4);
+        final float val = buffer.getFloat();
+        endField(start);
+        return val;
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        final int start = beginField(8);
+        final double val = buffer.getDouble();
+        endField(start);
+        return val;
+    }
+
+    @Override
+    public String readString() throws IOException {
+        int bytesLeft = readVarint();
+        if (bytesLeft > recordRemaining)
+            throw new IOException("String overruns the end of record.");
+        if (chars.length < bytesLeft)
+            chars = new char[Math.max(bytesLeft, chars.length * 2)];
+        int n = 0;
+        while (bytesLeft > 0) {
+            require(Math.min(bytesLeft, buffer.capacity()), true);
+            final int start = buffer.position();
+            final int end = start + Math.min(bytesLeft, buffer.remaining());
+            int pos = start;
+            while (pos < end) {
+                final int b = buffer.get(pos);
+                if (b >= 0) {
+                    chars[n++] = (char) b;
+                    ++pos;
+                } else if ((b & 0xE0) == 0xC0) {
+                    if (pos + 2 > end)
+                        break;
+                    chars[n++] = (char) (((b & 0x1F) << 6)
+                            | (buffer.get(pos + 1) & 0x3F));
+                    pos += 2;
+                } else if ((b & 0xF0) == 0xE0) {
+                    if (pos + 3 > end)
+                        break;
+                    chars[n++] = (char) (((b & 0x0F) << 12)
+                            | ((buffer.get(pos + 1) & 0x3F) << 6)
+                            | (buffer.get(pos + 2) & 0x3F));
+                    pos += 3;
+                } else {
+                    throw new UTFDataFormatException(
+                            "Malformed input at offset "
+                            + (bufferOffset + pos));
+                }
+            }
+            if (pos == start)
+                throw new UTFDataFormatException(
+                        "Truncated input at offset " + (bufferOffset + pos));
+            buffer.position(pos);
+            bytesLeft -= pos - start;
+            recordRemaining -= pos - start;
+        }
+        return new String(chars, 0, n);
+    }
+
+    @Override
+    public boolean canRead() throws IOException {
+        return recordRemaining > 0 || require(1, false);
+    }
+
+    @Override
+    public void position(Tell offset) throws IOException {
+        Checks.checkNotNull("offset", offset);
+        final int remaining = offset.value(Integer.class);
+        final long target = offset.next().value(Long.class);
+        if (channel instanceof BlockGzipChannel) {
+            final BlockGzipChannel bgz = (BlockGzipChannel) channel;
+            bgz.position(target);
+            buffer.clear();
+            buffer.flip();
+            bufferOffset = bgz.uncompressedPosition();
+            endOfInput = false;
+        } else if (target >= bufferOffset && target <= bufferOffset + buffer.limit()) {
+            buffer.position((int) (target - bufferOffset));
+        } else if (channel instanceof FileChannel) {
+            ((FileChannel) channel).position(target);
+            buffer.clear();
+            buffer.flip();
+            bufferOffset = target;
+            endOfInput = false;
+        } else {
+            throw new UnsupportedOperationException(
+                    "Seeking outside of the buffer requires a FileChannel.");
+        }
+        recordRemaining = remaining;
+    }
+
+    @Override
+    public Tell position() throws IOException {
+        long offset = bufferOffset + buffer.position();
+        if (channel instanceof BlockGzipChannel)
+            offset = ((BlockGzipChannel) channel).virtualOffset(offset);
+        return new Tell(Long.class, offset).push(
+                Integer.class, recordRemaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readVarint() throws IOException {
+        final int start = beginField(5);
+        int val = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 31)
+                throw new IOException("Malformed varint.");
+            b = buffer.get();
+            val |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        endField(start);
+        return val;
+    }
+
+    /**
+     * Read the header of the next record, if that has not already been done.
+     */
+    private void beginRecord() throws IOException {
+        if (recordRemaining != -1)
+            return;
+        if (!require(5, false) && !buffer.hasRemaining())
+            throw new EOFException();
+        int val = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 31 || !buffer.hasRemaining())
+                throw new IOException("Malformed record header.");
+            b = buffer.get();
+            val |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        recordRemaining = val;
+    }
+
+    /**
+     * Ensure that up to maxBytes of the current record are buffered.
+     *
+     * @return position in the buffer of the start of the field
+     */
+    private int beginField(int maxBytes) throws IOException {
+        beginRecord();
+        if (recordRemaining == 0)
+            throw new IOException("Attempt to read beyond the end of record.");
+        require(Math.min(maxBytes, recordRemaining), true);
+        return buffer.position();
+    }
+
+    private void endField(int start) throws IOException {
+        recordRemaining -= buffer.position() - start;
+        if (recordRemaining < 0)
+            throw new IOException("Field overruns the end of record.");
+    }
+
+    /**
+     * Attempt to ensure that at least the required number of bytes are
+     * available in the buffer, reading more from the channel if necessary.
+     *
+     * @param required number of bytes, no more than the buffer capacity
+     * @param strict throw an EOFException if the bytes are not available
+     * @return whether the required bytes are available
+     */
+    private boolean require(int required, boolean strict) throws IOException {
+        if (buffer.remaining() >= required)
+            return true;
+        if (!endOfInput) {
+            bufferOffset += buffer.position();
+            buffer.compact();
+            while (buffer.position() < required) {
+                if (channel.read(buffer) == -1) {
+                    endOfInput = true;
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() >= required)
+            return true;
+        if (strict)
+            throw new EOFException();
+        return false;
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Channel that reads the uncompressed data of a block gzip (BGZF) file, as
+ * written by {@link BlockGzipOutputStream} or {@code bgzip}, and supports
+ * seeking to virtual offsets.</p>
+ *
+ * <p>A virtual offset is the offset of the start of a member in the
+ * compressed file, shifted left 16 bits, combined with the offset into the
+ * uncompressed data of the member. Since each member is independent,
+ * reading can start at any member without decompressing those before
+ * it.</p>
+ *
+ * <p>The headers of upcoming members are read on the calling thread, but the
+ * members themselves are read and inflated in parallel; up to
+ * {@code readAhead} members are inflated ahead of the reader.</p>
+ *
+ * <p>A {@link BinaryDataSource} reading from this channel produces
+ * {@link Tell} positions holding virtual offsets, so records in a block
+ * compressed file can be randomly accessed.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see BlockGzipOutputStream
+ */
+public final class BlockGzipChannel
+        implements ReadableByteChannel, Seekable<Long> {
+
+    private static final int IN_BLOCK_BITS = 16;
+
+    private static final int IN_BLOCK_MASK = (1 << IN_BLOCK_BITS) - 1;
+
+    private static final int DEFAULT_RETAIN_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+
+    private final int readAhead;
+
+    private final ExecutorService executor;
+
+    private final Queue<Inflater> inflaters =
+            new ConcurrentLinkedQueue<Inflater>();
+
+    private final ArrayDeque<Future<Block>> ahead =
+            new ArrayDeque<Future<Block>>();
+
+    /**
+     * Compressed offset of the next member to be read ahead, or -1 at the end
+     * of the file.
+     */
+    private long nextMemberOffset;
+
+    /**
+     * Compressed offset of the first member read since the last seek.
+     */
+    private long startMemberOffset;
+
+    private Block current = null;
+
+    private int currentPos = 0;
+
+    /**
+     * Number of uncompressed bytes delivered by this channel.
+     */
+    private long uncompressedPosition = 0;
+
+    /**
+     * Pairs of uncompressed position and compressed offset for the start of
+     * the recently read members, so virtual offsets can be found for bytes
+     * that have already been read (but are still buffered by the caller).
+     */
+    private final ArrayDeque<long[]> history = new ArrayDeque<long[]>();
+
+    private long retainBytes = DEFAULT_RETAIN_BYTES;
+
+    private final ByteBuffer header =
+            ByteBuffer.allocate(ParallelGzipOutputStream.BLOCK_HEADER_SIZE);
+
+    private boolean open = true;
+
+    public BlockGzipChannel(FileChannel channel, int readAhead,
+                            ExecutorService executor) throws IOException {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkRangeIncl("readAhead", readAhead, 1, Integer.MAX_VALUE);
+        Checks.checkNotNull("executor", executor);
+        this.channel = channel;
+        this.readAhead = readAhead;
+        this.executor = executor;
+        this.nextMemberOffset = channel.position();
+        this.startMemberOffset = nextMemberOffset;
+    }
+
+    public BlockGzipChannel(FileChannel channel) throws IOException {
+        this(channel, Runtime.getRuntime().availableProcessors(),
+             BackgroundTasks.executor());
+    }
+
+    /**
+     * Combine the compressed offset of a member, and an offset into its
+     * uncompressed data, into a virtual offset.
+     *
+     * @param memberOffset offset of the start of the member in the file
+     * @param inMemberOffset offset into the uncompressed data of the member
+     * @return virtual offset
+     */
+    public static long virtualOffset(long memberOffset, int inMemberOffset) {
+        return (memberOffset << IN_BLOCK_BITS) | inMemberOffset;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        int count = 0;
+        while (dst.hasRemaining()) {
+            if (current == null || currentPos == current.length) {
+                if (!advance())
+                    return count > 0 ? count : -1;
+                continue;
+            }
+            final int n = Math.min(dst.remaining(), current.length - currentPos);
+            dst.put(current.data, currentPos, n);
+            currentPos += n;
+            uncompressedPosition += n;
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * @return virtual offset of the next byte to be read
+     */
+    @Override
+    public Long position() throws IOException {
+        return virtualOffset(uncompressedPosition);
+    }
+
+    /**
+     * Seek to the given virtual offset.
+     *
+     * @param offset virtual offset of the next byte to be read
+     */
+    @Override
+    public void position(Long offset) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        final long memberOffset = offset >>> IN_BLOCK_BITS;
+        final int inMemberOffset = (int) (offset & IN_BLOCK_MASK);
+        discardAhead();
+        current = null;
+        currentPos = 0;
+        history.clear();
+        nextMemberOffset = memberOffset;
+        startMemberOffset = memberOffset;
+        if (inMemberOffset > 0) {
+            if (!advance() || current.offset != memberOffset
+                    || current.length < inMemberOffset)
+                throw new IOException("Invalid virtual offset " + offset);
+            currentPos = inMemberOffset;
+            history.getLast()[0] -= inMemberOffset;
+        }
+    }
+
+    /**
+     * @return number of uncompressed bytes read since the channel was
+     *          opened
+     */
+    long uncompressedPosition() {
+        return uncompressedPosition;
+    }
+
+    /**
+     * Find the virtual offset of a byte that has been read recently, or is
+     * the next to be read.
+     *
+     * @param position uncompressed position, as given by
+     *          {@link #uncompressedPosition()}
+     * @return virtual offset of that byte
+     * @throws IllegalArgumentException if the position is not retained
+     */
+    long virtualOffset(long position) {
+        if (position > uncompressedPosition)
+            throw new IllegalArgumentException("position has not been read");
+        if (history.isEmpty()) {
+            if (position != uncompressedPosition)
+                throw new IllegalArgumentException("position not retained");
+            return virtualOffset(startMemberOffset, 0);
+        }
+        final Iterator<long[]> it = history.descendingIterator();
+        while (it.hasNext()) {
+            final long[] entry = it.next();
+            if (entry[0] <= position)
+                return virtualOffset(entry[1], (int) (position - entry[0]));
+        }
+        throw new IllegalArgumentException("position not retained");
+    }
+
+    /**
+     * Set the number of uncompressed bytes, before the current position, for
+     * which virtual offsets can be found. This should be at least as large as
+     * the buffer of the caller.
+     */
+    void setRetainBytes(long retainBytes) {
+        this.retainBytes = retainBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open)
+            return;
+        open = false;
+        try {
+            discardAhead();
+        } finally {
+            Inflater inflater;
+            while ((inflater = inflaters.poll()) != null)
+                inflater.end();
+            channel.close();
+        }
+    }
+
+    private void discardAhead() {
+        while (!ahead.isEmpty())
+            BackgroundTasks.discard(ahead.poll());
+    }
+
+    /**
+     * Move on to the next non-empty member.
+     *
+     * @return true if there was another member, false at the end of the file
+     */
+    private boolean advance() throws IOException {
+        do {
+            while (ahead.size() < readAhead && nextMemberOffset >= 0)
+                readAheadMember();
+            if (ahead.isEmpty())
+                return false;
+            current = BackgroundTasks.get(ahead.poll());
+            currentPos = 0;
+        } while (current.length == 0);
+
+        history.addLast(new long[]{uncompressedPosition, current.offset});
+        while (history.size() > 1) {
+            final Iterator<long[]> it = history.iterator();
+            it.next();
+            if (it.next()[0] > uncompressedPosition - retainBytes)
+                break;
+            history.removeFirst();
+        }
+        return true;
+    }
+
+    /**
+     * Read the header of the next member, and submit a task to read and
+     * inflate it.
+     */
+    private void readAheadMember() throws IOException {
+        final long offset = nextMemberOffset;
+        header.clear();
+        while (header.hasRemaining()) {
+            final int n = channel.read(header, offset + header.position());
+            if (n == -1)
+                break;
+        }
+        if (header.position() == 0) {
+            nextMemberOffset = -1;
+            return;
+        }
+        if (header.hasRemaining())
+            throw new EOFException("Truncated block gzip member at " + offset);
+        final int memberSize = memberSize(header, offset);
+        nextMemberOffset = offset + memberSize;
+        ahead.add(executor.submit(new Callable<Block>() {
+
+            @Override
+            public Block call() throws IOException {
+                return readMember(offset, memberSize);
+            }
+
+        }));
+    }
+
+    /**
+     * Whether the channel, from its current position, starts with a block
+     * gzip member. The position of the channel is not changed.
+     *
+     * @param channel channel to check
+     * @return true if the next bytes are a block gzip member header
+     * @throws IOException if some I/O error occurs
+     */
+    static boolean startsWithBlockGzip(FileChannel channel)
+            throws IOException {
+        final ByteBuffer h =
+                ByteBuffer.allocate(ParallelGzipOutputStream.BLOCK_HEADER_SIZE);
+        final long start = channel.position();
+        while (h.hasRemaining())
+            if (channel.read(h, start + h.position()) == -1)
+                return false;
+        try {
+            memberSize(h, start);
+            return true;
+        } catch (ZipException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Check the header of a member, and return the compressed size of the
+     * member given by its "BC" extra subfield.
+     */
+    private static int memberSize(ByteBuffer header, long offset)
+            throws IOException {
+        final byte[] h = header.array();
+        if ((h[0] & 0xff) != 0x1f || (h[1] & 0xff) != 0x8b || h[2] != 8
+                || (h[3] & 4) == 0 || (h[10] & 0xff | (h[11] & 0xff) << 8) != 6
+                || h[12] != 'B' || h[13] != 'C' || h[14] != 2 || h[15] != 0)
+            throw new ZipException("Not a block gzip member at " + offset);
+        return (h[16] & 0xff | (h[17] & 0xff) << 8) + 1;
+    }
+
+    private Block readMember(long offset, int memberSize) throws IOException {
+        final ByteBuffer raw = ByteBuffer.allocate(memberSize);
+        while (raw.hasRemaining()) {
+            if (channel.read(raw, offset + raw.position()) == -1)
+                throw new EOFException(
+                        "Truncated block gzip member at " + offset);
+        }
+        final byte[] r = raw.array();
+        final int trailer = memberSize - ParallelGzipOutputStream.TRAILER_SIZE;
+        final int crc = getIntLE(r, trailer);
+        final int length = getIntLE(r, trailer + 4);
+        if (length < 0 || length > 1 << 16
+                || trailer < ParallelGzipOutputStream.BLOCK_HEADER_SIZE)
+            throw new ZipException("Invalid block gzip member at " + offset);
+
+        final byte[] data = new byte[length];
+        Inflater inflater = inflaters.poll();
+        if (inflater == null)
+            inflater = new Inflater(true);
+        try {
+            final int start = ParallelGzipOutputStream.BLOCK_HEADER_SIZE;
+            inflater.setInput(r, start, trailer - start);
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                final int k = inflater.inflate(data, n, length - n);
+                // With no progress and nothing more to give it, the inflater
+                // would otherwise return 0 forever.
+                if (k == 0 && (inflater.needsInput()
+                               || inflater.needsDictionary()))
+                    throw new ZipException(
+                            "Truncated block gzip member at " + offset);
+                n += k;
+            }
+            if (n != length)
+                throw new ZipException(
+                        "Corrupt block gzip member at " + offset);
+        } catch (DataFormatException ex) {
+            final ZipException ze = new ZipException(
+                    "Corrupt block gzip member at " + offset);
+            ze.initCause(ex);
+            throw ze;
+        } finally {
+            inflater.reset();
+            inflaters.add(inflater);
+        }
+        final CRC32 check = new CRC32();
+        check.update(data, 0, length);
+        if ((int) check.getValue() != crc)
+            throw new ZipException("CRC mismatch in member at " + offset);
+        return new Block(offset, data, length);
+    }
+
+    private static int getIntLE(byte[] buf, int pos) {
+        return (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8
+                | (buf[pos + 2] & 0xff) << 16 | (buf[pos + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "readAhead="
+                + readAhead + ", channel=" + channel + '}';
+    }
+
+    private static final class Block {
+
+        final long offset;
+
+        final byte[] data;
+
+        final int length;
+
+        Block(long offset, byte[] data, int length) {
+            this.offset = offset;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * <p>OutputStream that writes the block gzip (BGZF) format, compressing
+ * blocks in parallel.</p>
+ *
+ * <p>The output is a multi-member gzip stream, so it can be read by any
+ * standard gunzip, in which each member holds at most
+ * {@link #MAX_BLOCK_SIZE} bytes of uncompressed data and at most 64 KiB of
+ * compressed data. The compressed size of each member is recorded in an
+ * extra header field, and an empty member marks the end of the file; the
+ * format is the same as that written by {@code bgzip}.</p>
+ *
+ * <p>Any position in the uncompressed data can be addressed by a virtual
+ * offset: the offset of the start of the member in the compressed file,
+ * shifted left 16 bits, combined with the offset into the uncompressed data
+ * of the member. Virtual offsets are returned by
+ * {@link #getVirtualOffset()}, and can be passed to
+ * {@link BlockGzipChannel#position(Long)} to seek to that position when
+ * reading.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see BlockGzipChannel
+ */
+public class BlockGzipOutputStream extends ParallelGzipOutputStream {
+
+    /**
+     * Maximum number of uncompressed bytes in each member; chosen so that
+     * the compressed member is always smaller than 64 KiB.
+     */
+    public static final int MAX_BLOCK_SIZE = 0xff00;
+
+    public BlockGzipOutputStream(OutputStream out, int threads, int level,
+                                 ExecutorService executor) {
+        super(out, MAX_BLOCK_SIZE, threads, level, executor, true);
+    }
+
+    public BlockGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION,
+             BackgroundTasks.executor());
+    }
+
+    public BlockGzipOutputStream(OutputStream out) {
+        this(out, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Return the virtual offset of the next byte to be written. This waits
+     * until all the preceding members have been compressed and written, so
+     * calling it frequently limits the parallelism of the compression.
+     *
+     * @return virtual offset of the next byte written
+     * @throws IOException if some I/O error occurs while writing the
+     *          preceding members
+     */
+    public long getVirtualOffset() throws IOException {
+        return BlockGzipChannel.virtualOffset(drain(), bufferedSize());
+    }
+}
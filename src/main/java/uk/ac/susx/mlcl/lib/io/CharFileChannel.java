@@ -34,7 +34,10 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.Callable;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.NonReadableChannelException;
@@ -42,9 +45,17 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import uk.ac.susx.mlcl.lib.MappedBuffers;
 
 /**
  * <p>A class that gets round the problem of very large, seekable character files
@@ -56,17 +67,37 @@ import java.nio.charset.UnmappableCharacterException;
  * confusing but there is simply no efficient way to determine these values in
  * characters.</p>
  *
+ * <p>Files are accessed through a sliding window; a region of at most
+ * {@code maxMappedBytes} is mapped at a time, and retired regions are
+ * unmapped explicitly rather than being left to the garbage collector. When
+ * read-ahead is enabled, the next window is mapped and loaded into physical
+ * memory on a background thread while the current window is being
+ * decoded.</p>
+ *
+ * <p>For character sets in which every byte below 0x80 is an ASCII character
+ * (UTF-8, US-ASCII and ISO-8859-1) reading takes a fast path: the mapped
+ * bytes are scanned a word at a time for bytes with the high bit set, and
+ * runs of pure ASCII are widened directly into the destination buffer. Only
+ * the non-ASCII sequences are passed to the {@link CharsetDecoder}, so the
+ * malformed and unmappable input behaviour is unchanged.</p>
+ *
+ * <p>Writing is performed by encoding characters directly into a
+ * {@link java.nio.channels.FileChannel.MapMode#READ_WRITE} mapped region of
+ * the file, which is grown geometrically (up to {@code maxMappedBytes}) as
+ * output proceeds. Because mapping past the end of a file extends it, the file
+ * is truncated back to the last byte actually written when the channel is
+ * closed. Writing requires that the encapsulated FileChannel was opened for
+ * both reading and writing, for example using
+ * {@link java.io.RandomAccessFile} with mode {@code "rw"}.</p>
+ *
  * <p>This is not a complete implementation. The following additional functions
  * would be required to be entirely compatible with the
  * {@link java.nio.channels.FileChannel} API:</p>
  * 
  * <ul>
- *  <li>Implementation of the WriteableCharChannel interface and
- *      write(CharBuffer) method. </li>
  *  <li>Locking methods. These could probably be simply encapsulated from the
  *      inner FileChannel object.</li>
- *  <li>Other miscellaneous methods including: {@code size()},
- *      {@code truncate()}, and {@code force(boolean)}.</li>
+ *  <li>Other miscellaneous methods including: {@code truncate()}.</li>
  * </ul>
  *
  * <p>If this code is ever ported to Java 7 then it will work for any Channel
@@ -77,11 +108,32 @@ import java.nio.charset.UnmappableCharacterException;
  */
 public class CharFileChannel implements CharChannel, Seekable<Long> {
 
-    private static final long DEFAULT_MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final long DEFAULT_MAX_MAPPED_BYTES = 1 << 27;
+
+    /**
+     * Read-ahead windows start on a multiple of this many bytes.
+     */
+    private static final long PAGE_SIZE = 1 << 12;
+
+    /**
+     * Mask of the high bit in each byte of a long.
+     */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * Shared pool of daemon threads that map and load read-ahead windows.
+     */
+    private static ExecutorService readAheadExecutor = null;
+
+    /**
+     * Size in bytes of the first region mapped for writing. Subsequent regions
+     * double in size, up to {@code maxMappedBytes}.
+     */
+    private static final long INITIAL_WRITE_MAPPED_BYTES = 1 << 20;
 
     /**
-     * Size in bytes of the mapped region of the file. Should between 1 and 
-     * Integer.MAX_VALUE.
+     * Size in bytes of the mapped region (window) of the file. Should between
+     * 1 and Integer.MAX_VALUE.
      */
     private long maxMappedBytes = DEFAULT_MAX_MAPPED_BYTES;
 
@@ -96,6 +148,17 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
      */
     private final CharsetDecoder decoder;
 
+    /**
+     * Character set encoding. Reused for every write.
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Whether bytes 0x00 to 0x7F always decode to the equivalent char, in
+     * which case the ASCII fast path can be used.
+     */
+    private final boolean asciiCompatible;
+
     /**
      * ByteBuffer over the currently mapped region of the file.
      */
@@ -112,6 +175,38 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
      */
     private long fileSize = -1;
 
+    /**
+     * Whether the current buffer was mapped READ_WRITE for output. Such a
+     * buffer may extend past the logical end of the file.
+     */
+    private boolean bufferWritable = false;
+
+    /**
+     * Size in bytes of the next region to be mapped for writing.
+     */
+    private long writeMappedBytes = INITIAL_WRITE_MAPPED_BYTES;
+
+    /**
+     * Whether any characters have been written, in which case the file must
+     * be truncated to {@code fileSize} on close.
+     */
+    private boolean written = false;
+
+    /**
+     * Whether the next window should be mapped and loaded in the background.
+     */
+    private boolean readAhead = false;
+
+    /**
+     * File offset of the window being prepared by the read-ahead task.
+     */
+    private long readAheadOffset = -1;
+
+    /**
+     * Pending read-ahead window, or null if none has been requested.
+     */
+    private Future<MappedByteBuffer> readAheadWindow = null;
+
     /**
      * Construct a new {@link CharFileChannel} object from the given 
      * {@link java.nio.channels.FileChannel} and 
@@ -126,15 +221,40 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
      */
     public CharFileChannel(FileChannel fileChannel, CharsetDecoder decoder)
             throws NullPointerException {
-        if (!fileChannel.isOpen())
-            throw new IllegalArgumentException("fileChannel is already closed");
+        this(fileChannel, decoder, Files.encoderFor(decoder.charset()));
+    }
+
+    /**
+     * Construct a new {@link CharFileChannel} object from the given 
+     * {@link java.nio.channels.FileChannel}, 
+     * {@link java.nio.charset.CharsetDecoder}, and
+     * {@link java.nio.charset.CharsetEncoder}. The decoder and encoder should
+     * be for the same character set.
+     *
+     * The FileChannel must have been opened from a stream with the desired
+     * read/write mode.
+     *
+     * @param fileChannel   byte based FileChannel to encapsulate
+     * @param decoder       desired character set decoder
+     * @param encoder       desired character set encoder
+     * @throws NullPointerException if any argument is null
+     */
+    public CharFileChannel(FileChannel fileChannel, CharsetDecoder decoder,
+                           CharsetEncoder encoder)
+            throws NullPointerException {
         if (fileChannel == null)
             throw new NullPointerException("byteChannel is null");
+        if (!fileChannel.isOpen())
+            throw new IllegalArgumentException("fileChannel is already closed");
         if (decoder == null)
             throw new NullPointerException("decoder is null");
+        if (encoder == null)
+            throw new NullPointerException("encoder is null");
 
         this.fileChannel = fileChannel;
         this.decoder = decoder;
+        this.encoder = encoder;
+        this.asciiCompatible = isAsciiCompatible(decoder.charset());
         this.buffer = null;
         this.bufferOffset = 0;
     }
@@ -166,7 +286,8 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
     }
 
     /**
-     * Return the character set that bytes will be decoded into.
+     * Return the character set that bytes will be decoded from, and encoded
+     * into.
      *
      * @return destination character set
      */
@@ -175,8 +296,8 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
     }
 
     /**
-     * Return the size in bytes of the mapped region of the file. Should 
-     * between 1 and Integer.MAX_VALUE.
+     * Return the size in bytes of the mapped region (window) of the file.
+     * Should between 1 and Integer.MAX_VALUE.
      * 
      * @return size in bytes of the mapped region of the file
      */
@@ -185,8 +306,9 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
     }
 
     /**
-     * Set the size in bytes of the mapped region of the file Should 
-     * between 1 and Integer.MAX_VALUE.
+     * Set the size in bytes of the mapped region (window) of the file. Should
+     * between 1 and Integer.MAX_VALUE. Larger windows require fewer re-mappings
+     * but consume more virtual address space.
      * 
      * @param maxMappedBytes  new mapped region size
      * @throws IllegalArgumentException if maxMappedBytes &lt; 1 or 
@@ -201,6 +323,29 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
         this.maxMappedBytes = maxMappedBytes;
     }
 
+    /**
+     * Return whether the next window of the file will be mapped, and loaded
+     * into physical memory, on a background thread.
+     *
+     * @return true if read-ahead is enabled, false otherwise
+     */
+    public boolean isReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Set whether the next window of the file will be mapped, and loaded
+     * into physical memory, on a background thread. This is only of benefit
+     * when the file is significantly larger than {@code maxMappedBytes}.
+     *
+     * @param readAhead true if read-ahead should be enabled, false otherwise
+     */
+    public void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+        if (!readAhead)
+            cancelReadAhead();
+    }
+
     /**
      * Return the size in byte of the encapsulated
      * {@link java.nio.channels.FileChannel}.
@@ -240,8 +385,8 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
         } else if (pos >= bufferOffset && pos < bufferOffset + buffer.limit()) {
             buffer.position((int) (pos - bufferOffset));
         } else {
+            releaseBuffer();
             bufferOffset = pos;
-            buffer = null;
         }
     }
 
@@ -258,14 +403,44 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
 
     /**
      * Close the encapsulated file channel, and release buffering resources to
-     * garbage collection.
+     * garbage collection. If any characters have been written then the encoder
+     * is flushed, and the file is truncated to the end of the written data.
      *
      * @throws IOException If an I/O error occurs
      */
     @Override
     public void close() throws IOException {
-        fileChannel.close();
-        buffer = null;
+        try {
+            cancelReadAhead();
+            if (written && fileChannel.isOpen()) {
+                flushEncoder();
+                releaseBuffer();
+                fileChannel.truncate(fileSize);
+            }
+        } finally {
+            fileChannel.close();
+            releaseBuffer();
+        }
+    }
+
+    /**
+     * Force any written characters to be stored on the device containing the
+     * file.
+     *
+     * @param metaData If true then this method is required to force changes to
+     *          both the file's content and metadata to be written to storage;
+     *          otherwise, it need only force content changes to be written
+     * @throws ClosedChannelException If this channel is closed
+     * @throws IOException If some other I/O error occurs
+     * @see FileChannel#force(boolean)
+     */
+    public void force(boolean metaData)
+            throws ClosedChannelException, IOException {
+        if (!isOpen())
+            throw new ClosedChannelException();
+        if (bufferWritable)
+            ((MappedByteBuffer) buffer).force();
+        fileChannel.force(metaData);
     }
 
     /**
@@ -315,7 +490,9 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
             // but since it doesn't - guess we will need up to 4 byes per char.)
             insureMapped((int) Math.ceil(dst.remaining() * 4));
 
-            coderResult = decoder.decode(buffer, dst, false);
+            coderResult = asciiCompatible
+                    ? decodeFast(dst)
+                    : decoder.decode(buffer, dst, false);
 
             if (coderResult.isError())
                 try {
@@ -326,13 +503,151 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
                     throw new AssertionError(ex);
                 }
 
+            if (coderResult.isUnderflow() && buffer.hasRemaining()
+                    && bufferOffset + buffer.limit() >= size()
+                    && !decodeTruncatedInput(dst))
+                break;
 
-        } while (hasBytesRemaining()
+        } while (dst.hasRemaining()
+                && hasBytesRemaining()
                 && coderResult.isUnderflow());
 
         return dst.position() - startChar;
     }
 
+    /**
+     * <p>Decode bytes from the mapped buffer into {@code dst}, copying runs of
+     * ASCII directly, and passing only the non-ASCII sequences to the decoder.
+     * Returns results consistent with
+     * {@link CharsetDecoder#decode(ByteBuffer, CharBuffer, boolean)}.</p>
+     *
+     * <p>Each non-ASCII run is passed to the decoder along with the following
+     * ASCII byte (if any), so that sequences truncated by an ASCII byte are
+     * reported as malformed exactly as they would be by the decoder alone.
+     * Sequences truncated by the end of the mapped buffer are left for the
+     * next call, as usual.</p>
+     *
+     * @param dst destination buffer
+     * @return the result of decoding
+     */
+    private CoderResult decodeFast(final CharBuffer dst) {
+        while (true) {
+            decodeAscii(buffer, dst);
+            if (!buffer.hasRemaining())
+                return CoderResult.UNDERFLOW;
+            if (!dst.hasRemaining())
+                return CoderResult.OVERFLOW;
+
+            final int limit = buffer.limit();
+            int runEnd = buffer.position();
+            while (runEnd < limit && buffer.get(runEnd) < 0)
+                ++runEnd;
+
+            buffer.limit(Math.min(runEnd + 1, limit));
+            final CoderResult coderResult;
+            try {
+                coderResult = decoder.decode(buffer, dst, false);
+            } finally {
+                buffer.limit(limit);
+            }
+            if (!coderResult.isUnderflow()
+                    || (runEnd == limit && buffer.hasRemaining()))
+                return coderResult;
+        }
+    }
+
+    /**
+     * Widen the longest possible run of ASCII bytes from {@code src} into
+     * {@code dst}, stopping at the first byte with the high bit set or when
+     * either buffer is exhausted. The source is scanned eight bytes at a time
+     * where possible.
+     *
+     * @param src source bytes
+     * @param dst destination characters
+     */
+    static void decodeAscii(final ByteBuffer src, final CharBuffer dst) {
+        final int start = src.position();
+        final int n = Math.min(src.remaining(), dst.remaining());
+        final boolean bigEndian = src.order() == ByteOrder.BIG_ENDIAN;
+        int i = 0;
+
+        if (dst.hasArray()) {
+            final char[] out = dst.array();
+            final int offset = dst.arrayOffset() + dst.position();
+            while (i + 8 <= n) {
+                final long word = src.getLong(start + i);
+                if ((word & HIGH_BITS) != 0)
+                    break;
+                for (int j = 0; j < 8; j++)
+                    out[offset + i + j] = (char) (bigEndian
+                            ? (word >>> (56 - 8 * j)) & 0xFF
+                            : (word >>> (8 * j)) & 0xFF);
+                i += 8;
+            }
+            byte b;
+            while (i < n && (b = src.get(start + i)) >= 0) {
+                out[offset + i] = (char) b;
+                ++i;
+            }
+            dst.position(dst.position() + i);
+        } else {
+            while (i + 8 <= n && (src.getLong(start + i) & HIGH_BITS) == 0) {
+                for (int j = 0; j < 8; j++)
+                    dst.put((char) src.get(start + i + j));
+                i += 8;
+            }
+            byte b;
+            while (i < n && (b = src.get(start + i)) >= 0) {
+                dst.put((char) b);
+                ++i;
+            }
+        }
+        src.position(start + i);
+    }
+
+    /**
+     * Whether every byte from 0x00 to 0x7F is decoded by the given character
+     * set to the char of the same value, independently of any other bytes.
+     *
+     * @param charset character set to test
+     * @return true if the ASCII fast path can be used, false otherwise
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        final String name = charset.name();
+        return name.equals("UTF-8")
+                || name.equals("US-ASCII")
+                || name.equals("ISO-8859-1");
+    }
+
+    /**
+     * <p>Handle the bytes left over by the decoder at the end of the file.
+     * These can only be a truncated multi-byte sequence, which is malformed.
+     * The configured malformed input action of the decoder is applied,
+     * consuming the remaining bytes.</p>
+     *
+     * <p>Without this the decoder would be perpetually fed the same truncated
+     * sequence, because it is never told that end of input has been
+     * reached.</p>
+     *
+     * @param dst destination buffer
+     * @return true if the bytes were consumed, false if there was not enough
+     *          space in {@code dst} for the replacement
+     * @throws MalformedInputException if the action is REPORT
+     */
+    private boolean decodeTruncatedInput(final CharBuffer dst)
+            throws MalformedInputException {
+        final CodingErrorAction action = decoder.malformedInputAction();
+        if (action == CodingErrorAction.REPORT) {
+            throw new MalformedInputException(buffer.remaining());
+        } else if (action == CodingErrorAction.REPLACE) {
+            if (dst.remaining() < decoder.replacement().length())
+                return false;
+            dst.put(decoder.replacement());
+        }
+        buffer.position(buffer.limit());
+        return true;
+    }
+
     /**
      * Return the number of bytes available for reading. Calculated as the file 
      * size, minus the offset of the mapped region, minus the read position 
@@ -381,39 +696,291 @@ public class CharFileChannel implements CharChannel, Seekable<Long> {
 
         if (buffer == null) {
             mappingRequired = true;
+        } else if (bufferWritable) {
+            // The writable region may extend past the logical end of file, so
+            // re-map the remainder read-only.
+            mappingRequired = true;
         } else if (hasBytesRemaining() && buffer.remaining() < requiredBytes) {
-            bufferOffset += buffer.position();
             mappingRequired = true;
         } else {
             mappingRequired = false;
         }
 
         if (mappingRequired) {
+            final long offset = position();
+            releaseBuffer();
+            bufferOffset = offset;
+
             // Ignore the buffer ammount since we will map as much as possible
             // and let the operating system sort out the efficiency
             long length = Math.max(Math.min(
                     size() - bufferOffset,
                     maxMappedBytes), 0);
             if (length == 0) {
+                cancelReadAhead();
                 buffer = ByteBuffer.allocateDirect(0);
                 return;
             }
 
-            buffer = fileChannel.map(
-                    FileChannel.MapMode.READ_ONLY, bufferOffset, length);
+            final MappedByteBuffer window = takeReadAhead(
+                    offset, Math.min(requiredBytes, length));
+            if (window != null) {
+                buffer = window;
+                bufferOffset = readAheadOffset;
+                buffer.position((int) (offset - readAheadOffset));
+            } else {
+                buffer = fileChannel.map(
+                        FileChannel.MapMode.READ_ONLY, bufferOffset, length);
+            }
+
+            if (readAhead)
+                startReadAhead(requiredBytes);
         }
     }
 
     /**
-     * <p><strong>Not yet implemented.</strong></p>
+     * Release the current buffer, unmapping it immediately if it is a mapped
+     * region of the file.
+     */
+    private void releaseBuffer() {
+        if (buffer instanceof MappedByteBuffer)
+            MappedBuffers.unmap(buffer);
+        buffer = null;
+        bufferWritable = false;
+    }
+
+    /**
+     * <p>Start mapping and loading the window that will be required once
+     * the current window has been consumed, on a background thread.</p>
      *
-     * @param src
-     * @return nothing
-     * @throws UnsupportedOperationException always
+     * <p>The current window is re-mapped when fewer than
+     * {@code requiredBytes} remain, so the next window starts at least that
+     * far before the end of the current one (rounded down to a page
+     * boundary.)</p>
+     *
+     * @param requiredBytes number of bytes that will be required on the next
+     *          call to insureMapped
+     * @throws IOException If some I/O error occurs
+     */
+    private void startReadAhead(int requiredBytes) throws IOException {
+        cancelReadAhead();
+        final long end = bufferOffset + buffer.limit();
+        if (end >= size())
+            return;
+        final long offset = Math.max(bufferOffset + buffer.position(),
+                                     end - requiredBytes) / PAGE_SIZE * PAGE_SIZE;
+        final long length = Math.min(size() - offset, maxMappedBytes);
+        readAheadOffset = offset;
+        readAheadWindow = getReadAheadExecutor().submit(
+                new Callable<MappedByteBuffer>() {
+
+                    @Override
+                    public MappedByteBuffer call() throws IOException {
+                        return fileChannel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                offset, length).load();
+                    }
+
+                });
+    }
+
+    /**
+     * Retrieve the read-ahead window, if one has been requested, and it
+     * contains the bytes from {@code offset} to {@code offset + requiredBytes}.
+     * Otherwise the window is discarded and null is returned.
+     *
+     * @param offset file offset of the next byte to be read
+     * @param requiredBytes number of bytes required
+     * @return the read-ahead window or null
+     * @throws IOException If the window could not be mapped
+     */
+    private MappedByteBuffer takeReadAhead(long offset, long requiredBytes)
+            throws IOException {
+        if (readAheadWindow == null)
+            return null;
+        final MappedByteBuffer window;
+        try {
+            window = readAheadWindow.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancelReadAhead();
+            return null;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new AssertionError(ex.getCause());
+        } finally {
+            readAheadWindow = null;
+        }
+        if (offset >= readAheadOffset
+                && offset + requiredBytes <= readAheadOffset + window.limit()) {
+            return window;
+        } else {
+            MappedBuffers.unmap(window);
+            return null;
+        }
+    }
+
+    /**
+     * Discard the read-ahead window, if one has been requested.
+     */
+    private void cancelReadAhead() {
+        if (readAheadWindow == null)
+            return;
+        if (!readAheadWindow.cancel(false) && readAheadWindow.isDone()) {
+            try {
+                MappedBuffers.unmap(readAheadWindow.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                // Ignore failures in a window that is no longer required
+            }
+        }
+        readAheadWindow = null;
+    }
+
+    private static synchronized ExecutorService getReadAheadExecutor() {
+        if (readAheadExecutor == null) {
+            readAheadExecutor = Executors.newCachedThreadPool(
+                    new ThreadFactory() {
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(
+                                    r, "CharFileChannel-read-ahead");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+
+                    });
+        }
+        return readAheadExecutor;
+    }
+
+    /**
+     * <p>Insure that at least {@code requiredBytes} are available for writing
+     * in a READ_WRITE mapped buffer, starting at the current position. If the
+     * current buffer is read-only, or has insufficient space remaining, then
+     * a new region is mapped. Regions grow geometrically, starting at
+     * {@code INITIAL_WRITE_MAPPED_BYTES} up to {@code maxMappedBytes}.</p>
+     *
+     * @param requiredBytes
+     * @throws NonWritableChannelException If the channel was not opened for
+     *          both reading and writing
+     * @throws ClosedChannelException If this channel is closed
+     * @throws IOException If some other I/O error occurs
+     */
+    private void insureMappedForWrite(long requiredBytes)
+            throws ClosedChannelException, IOException {
+        if (bufferWritable && buffer.remaining() >= requiredBytes)
+            return;
+
+        // Make sure the logical file size is cached before mapping, because
+        // mapping beyond the end of the file will extend it.
+        size();
+
+        final long offset = position();
+        final long length = Math.max(requiredBytes,
+                                     Math.min(writeMappedBytes, maxMappedBytes));
+        writeMappedBytes = Math.min(writeMappedBytes * 2, maxMappedBytes);
+
+        cancelReadAhead();
+        releaseBuffer();
+        buffer = fileChannel.map(
+                FileChannel.MapMode.READ_WRITE, offset, length);
+        bufferOffset = offset;
+        bufferWritable = true;
+    }
+
+    /**
+     * Record that bytes have been written up to the current position, growing
+     * the logical file size if necessary.
+     */
+    private void updateWritten() {
+        written = true;
+        final long end = bufferOffset + buffer.position();
+        if (end > fileSize)
+            fileSize = end;
+    }
+
+    /**
+     * Write any state held internally by the encoder to the file, and reset
+     * it.
+     *
+     * @throws IOException If some I/O error occurs
+     */
+    private void flushEncoder() throws IOException {
+        final long required = (long) Math.ceil(encoder.maxBytesPerChar()) * 2;
+        insureMappedForWrite(required);
+        CoderResult coderResult = encoder.encode(
+                CharBuffer.allocate(0), buffer, true);
+        if (!coderResult.isError())
+            coderResult = encoder.flush(buffer);
+        updateWritten();
+        encoder.reset();
+        if (coderResult.isError())
+            coderResult.throwException();
+    }
+
+    /**
+     * <p>Encode a sequence of characters from the source buffer, and write
+     * the bytes to the encapsulated {@link java.nio.channels.FileChannel}
+     * at the current position. Returns the number of characters that have
+     * been consumed from the source buffer.</p>
+     *
+     * <p>Characters that can not yet be encoded, such as a trailing high
+     * surrogate, are left in the source buffer.</p>
+     *
+     * @param src source buffer
+     * @return number of characters consumed from {@code src}
+     * @throws ClosedChannelException If this channel is closed
+     * @throws NonWritableChannelException If this channel was not opened for
+     *          both reading and writing
+     * @throws UnmappableCharacterException
+     * @throws CharacterCodingException
+     * @throws MalformedInputException
+     * @throws IOException If some other I/O error occurs
      */
     @Override
-    public int write(CharBuffer src) throws UnsupportedOperationException {
-        throw new UnsupportedOperationException("Not implemented yet.");
+    public int write(final CharBuffer src) throws MalformedInputException,
+            UnmappableCharacterException, ClosedChannelException,
+            CharacterCodingException, NonWritableChannelException,
+            IOException {
+
+        // sanity check the state
+        if (!isOpen())
+            throw new ClosedChannelException();
+        if (src == null)
+            throw new NullPointerException("src is null");
+
+        final int startChar = src.position();
+        final long bytesPerChar = (long) Math.ceil(encoder.maxBytesPerChar());
+
+        CoderResult coderResult;
+        do {
+            // Space for the whole of the remaining input if possible, but
+            // always enough for at least one (possibly surrogate pair) char.
+            insureMappedForWrite(Math.max(
+                    Math.min(src.remaining() * bytesPerChar, maxMappedBytes),
+                    bytesPerChar * 2));
+
+            coderResult = encoder.encode(src, buffer, false);
+            updateWritten();
+
+            if (coderResult.isError())
+                try {
+                    coderResult.throwException();
+                } catch (BufferOverflowException ex) {
+                    throw new AssertionError(ex);
+                } catch (BufferUnderflowException ex) {
+                    throw new AssertionError(ex);
+                }
+
+        } while (src.hasRemaining() && coderResult.isOverflow());
+
+        return src.position() - startChar;
     }
 
 }
@@ -52,11 +52,28 @@ public final class Chunk<T> extends AbstractList<T>
 
     private Integer nextIndex;
 
+    private long sequence = 0;
+
+    /**
+     * Pool that this chunk is returned to when closed, or null.
+     */
+    private final ChunkPool<T> pool;
+
+    /**
+     * Whether a pooled chunk has been closed since it was last acquired.
+     */
+    private boolean released = false;
+
     public Chunk(String name, List<T> items) {
+        this(name, items, null);
+    }
+
+    Chunk(String name, List<T> items, ChunkPool<T> pool) {
         Checks.checkNotNull(items);
 
         this.name = name;
         this.items = items;
+        this.pool = pool;
         nextIndex = 0;
     }
 
@@ -69,6 +86,32 @@ public final class Chunk<T> extends AbstractList<T>
         this.name = other.name;
         this.items = other.items;
         nextIndex = other.nextIndex;
+        sequence = other.sequence;
+        this.pool = null;
+    }
+
+    /**
+     * Clear a pooled chunk for reuse.
+     */
+    void reset(String name) {
+        this.name = name;
+        nextIndex = 0;
+        sequence = 0;
+        released = false;
+    }
+
+    /**
+     * @return the pool that this chunk is returned to when closed, or null
+     */
+    ChunkPool<T> getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the backing list of items, for filling a pooled chunk
+     */
+    List<T> getItems() {
+        return items;
     }
 
     public void setName(String name) {
@@ -79,6 +122,21 @@ public final class Chunk<T> extends AbstractList<T>
         return name;
     }
 
+    /**
+     * Set the position of this chunk in the sequence of chunks produced by
+     * some source, so that the original order can be restored after the
+     * chunks have been processed out of order.
+     *
+     * @param sequence position of this chunk
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
     @Override
     public Iterator<T> iterator() {
         return items.iterator();
@@ -119,15 +177,30 @@ public final class Chunk<T> extends AbstractList<T>
         return new Chunk<T>(this);
     }
     
+    /**
+     * Release the items of this chunk. If the chunk was acquired from a
+     * {@link ChunkPool} then it is cleared and returned to the pool, so it
+     * must not be used again by the caller. Closing a chunk more than once
+     * has no further effect.
+     */
     @Override
     public void close() throws IOException {
+        if (pool != null) {
+            if (released)
+                return;
+            released = true;
+            items.clear();
+            nextIndex = 0;
+            pool.release(this);
+            return;
+        }
     	nextIndex = null;
     	items = null;
     }
 
     @Override
     public String toString() {
-        return "Chunk{" + "name=" + name + '}';
+        return "Chunk{" + "name=" + name + ", sequence=" + sequence + '}';
     }
 
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>A bounded pool of {@link Chunk} instances, which can be reused to avoid
+ * allocating a new chunk and backing list for each batch of items.</p>
+ *
+ * <p>Chunks are taken from the pool with {@link #acquire(java.lang.String) },
+ * and returned to it when they are closed. A returned chunk is cleared, but
+ * keeps the capacity of its backing list, so it must not be used by the
+ * caller after it has been closed. If the pool is full, returned chunks are
+ * discarded.</p>
+ *
+ * <p>In debug mode the pool records the stack trace of every chunk that is
+ * acquired, until it is closed, so that chunks which are never closed can be
+ * found with {@link #getLeaks()}. Debug mode is slow and should be used only
+ * for testing.</p>
+ *
+ * <p>Closing a chunk a second time has no effect, so a chunk is never
+ * returned to the pool twice.</p>
+ *
+ * <p>The pool is thread-safe, so chunks can be closed on a different thread
+ * from that which acquired them.</p>
+ *
+ * @param <T> The atomic type of items in the chunks
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class ChunkPool<T> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final int capacity;
+
+    private final Deque<Chunk<T>> pool;
+
+    private volatile boolean debug = false;
+
+    /**
+     * Stack trace of the acquisition of each outstanding chunk, in debug
+     * mode.
+     */
+    private final Map<Chunk<T>, Throwable> outstanding =
+            new IdentityHashMap<Chunk<T>, Throwable>();
+
+    private final AtomicLong reuseCount = new AtomicLong(0);
+
+    private final AtomicLong missCount = new AtomicLong(0);
+
+    private final AtomicLong discardCount = new AtomicLong(0);
+
+    public ChunkPool(int capacity) {
+        Checks.checkRangeIncl("capacity", capacity, 0, Integer.MAX_VALUE);
+        this.capacity = capacity;
+        this.pool = new ArrayDeque<Chunk<T>>(Math.min(capacity, 1024));
+    }
+
+    public ChunkPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public void setDebug(boolean debug) {
+        synchronized (outstanding) {
+            this.debug = debug;
+            if (!debug)
+                outstanding.clear();
+        }
+    }
+
+    /**
+     * Take a chunk from the pool, or create a new one if the pool is empty.
+     * The chunk is empty, positioned at its start, and has a sequence of 0.
+     *
+     * @param name name of the chunk
+     * @return an empty chunk, that will be returned to this pool when closed
+     */
+    public Chunk<T> acquire(String name) {
+        Chunk<T> chunk;
+        synchronized (pool) {
+            chunk = pool.pollFirst();
+        }
+        if (chunk == null) {
+            missCount.incrementAndGet();
+            chunk = new Chunk<T>(name, new ArrayList<T>(), this);
+        } else {
+            reuseCount.incrementAndGet();
+            chunk.reset(name);
+        }
+        if (debug) {
+            synchronized (outstanding) {
+                outstanding.put(chunk, new Throwable(
+                        "Chunk acquired but never closed"));
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Return a closed chunk to the pool. Called by {@link Chunk#close()}.
+     *
+     * @param chunk chunk to return
+     */
+    void release(Chunk<T> chunk) {
+        if (chunk.getPool() != this)
+            throw new IllegalArgumentException(
+                    "Chunk not acquired from this pool: " + chunk);
+        if (debug) {
+            // Chunks acquired before debug mode was enabled are not
+            // outstanding, but are recycled all the same.
+            synchronized (outstanding) {
+                outstanding.remove(chunk);
+            }
+        }
+        synchronized (pool) {
+            if (pool.size() < capacity) {
+                pool.addFirst(chunk);
+                return;
+            }
+        }
+        discardCount.incrementAndGet();
+    }
+
+    /**
+     * @return number of chunks currently waiting in the pool
+     */
+    public int size() {
+        synchronized (pool) {
+            return pool.size();
+        }
+    }
+
+    /**
+     * @return number of acquisitions satisfied by a pooled chunk
+     */
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * @return number of acquisitions that required a new chunk
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of closed chunks discarded because the pool was full
+     */
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    /**
+     * @return fraction of acquisitions satisfied by a pooled chunk
+     */
+    public double getReuseRate() {
+        final long reuse = getReuseCount();
+        final long total = reuse + getMissCount();
+        return total == 0 ? 0 : (double) reuse / total;
+    }
+
+    /**
+     * Return the stack traces of acquisition for all the chunks that have
+     * been acquired, but not closed, since debug mode was enabled.
+     *
+     * @return stack traces of outstanding chunks
+     */
+    public List<Throwable> getLeaks() {
+        synchronized (outstanding) {
+            return new ArrayList<Throwable>(outstanding.values());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkPool{" + "capacity=" + capacity
+                + ", size=" + size()
+                + ", reused=" + getReuseCount()
+                + ", missed=" + getMissCount()
+                + ", discarded=" + getDiscardCount()
+                + ", debug=" + debug + '}';
+    }
+}
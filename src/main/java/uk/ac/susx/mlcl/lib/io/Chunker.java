@@ -32,8 +32,13 @@ package uk.ac.susx.mlcl.lib.io;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import uk.ac.susx.mlcl.lib.Checks;
 
 /**
@@ -49,10 +54,23 @@ public class Chunker<T, S extends ObjectSource<T>>
 
     private static final int DEFAULT_MAX_CHUNK_SIZE = 1000;
 
+    private static final int DEFAULT_PREFETCH_CAPACITY = 4;
+
     private int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
 
     private final S inner;
 
+    private ChunkPool<T> chunkPool = null;
+
+    private AdaptiveChunkSizer<T> chunkSizer = null;
+
+    /**
+     * Time at which the last chunk was returned to the consumer, or -1.
+     */
+    private long lastReadNanos = -1;
+
+    private int lastChunkSize = 0;
+
     private Chunker(S inner, int maxChunkSize) {
         this.inner = inner;
         this.maxChunkSize = maxChunkSize;
@@ -63,12 +81,74 @@ public class Chunker<T, S extends ObjectSource<T>>
         return new Chunker<T, ObjectSource<T>>(source, maxChunkSize);
     }
 
+    /**
+     * Create a Chunker that takes its chunks from the given pool, so that
+     * chunks are reused once they have been closed by the consumer.
+     *
+     * @param <T> The atomic data type
+     * @param source source of objects to chunk
+     * @param maxChunkSize maximum number of objects in each chunk
+     * @param chunkPool pool of reusable chunks
+     * @return source of chunks
+     */
+    public static <T> ObjectSource<Chunk<T>> newInstance(
+            ObjectSource<T> source, int maxChunkSize, ChunkPool<T> chunkPool) {
+        final Chunker<T, ObjectSource<T>> chunker =
+                new Chunker<T, ObjectSource<T>>(source, maxChunkSize);
+        chunker.setChunkPool(chunkPool);
+        return chunker;
+    }
+
+    /**
+     * Create a Chunker that varies the size of each chunk according to the
+     * given {@link AdaptiveChunkSizer}.
+     *
+     * @param <T> The atomic data type
+     * @param source source of objects to chunk
+     * @param chunkSizer policy determining the size of each chunk
+     * @return source of chunks
+     */
+    public static <T> ObjectSource<Chunk<T>> newAdaptiveInstance(
+            ObjectSource<T> source, AdaptiveChunkSizer<T> chunkSizer) {
+        Checks.checkNotNull("chunkSizer", chunkSizer);
+        final Chunker<T, ObjectSource<T>> chunker =
+                new Chunker<T, ObjectSource<T>>(
+                source, chunkSizer.getMaxChunkSize());
+        chunker.setChunkSizer(chunkSizer);
+        return chunker;
+    }
+
     public static <T, P> SeekableObjectSource<Chunk<T>, P> newSeekableInstance(
             SeekableObjectSource<T, P> source, int maxChunkSize) {
         return new SeekableChunker<T, P, SeekableObjectSource<T, P>>(
                 source, maxChunkSize);
     }
 
+    /**
+     * Create a Chunker that fills chunks on a dedicated reader thread, while
+     * the caller processes previous chunks. Up to {@code capacity} filled
+     * chunks are queued ahead of the caller. Any exception thrown by the
+     * inner source is re-thrown to the caller when the chunk it interrupted
+     * would have been read.
+     *
+     * @param <T> The atomic data type
+     * @param source source of objects to chunk
+     * @param maxChunkSize maximum number of objects in each chunk
+     * @param capacity maximum number of filled chunks waiting to be read
+     * @return source of chunks
+     */
+    public static <T> ObjectSource<Chunk<T>> newPrefetchingInstance(
+            ObjectSource<T> source, int maxChunkSize, int capacity) {
+        return new PrefetchingChunker<T, ObjectSource<T>>(
+                source, maxChunkSize, capacity);
+    }
+
+    public static <T> ObjectSource<Chunk<T>> newPrefetchingInstance(
+            ObjectSource<T> source, int maxChunkSize) {
+        return newPrefetchingInstance(source, maxChunkSize,
+                                      DEFAULT_PREFETCH_CAPACITY);
+    }
+
     public int getMaxChunkSize() {
         return maxChunkSize;
     }
@@ -78,19 +158,88 @@ public class Chunker<T, S extends ObjectSource<T>>
         this.maxChunkSize = maxChunkSize;
     }
 
+    public ChunkPool<T> getChunkPool() {
+        return chunkPool;
+    }
+
+    /**
+     * @param chunkPool pool to take chunks from, or null to allocate a new
+     *          chunk for every read
+     */
+    public void setChunkPool(ChunkPool<T> chunkPool) {
+        this.chunkPool = chunkPool;
+    }
+
+    public AdaptiveChunkSizer<T> getChunkSizer() {
+        return chunkSizer;
+    }
+
+    /**
+     * @param chunkSizer policy that determines the size of each chunk, or
+     *          null to use the fixed maxChunkSize
+     */
+    public void setChunkSizer(AdaptiveChunkSizer<T> chunkSizer) {
+        this.chunkSizer = chunkSizer;
+    }
+
     public S getInner() {
         return inner;
     }
 
     @Override
     public Chunk<T> read() throws IOException {
-        final List<T> items = new ArrayList<T>(maxChunkSize);
+        observeConsumer();
+        final Chunk<T> chunk = nextChunk();
+        consumerStarted(chunk);
+        return chunk;
+    }
+
+    /**
+     * Report the time the consumer spent on the previous chunk, which is the
+     * time since it was returned.
+     */
+    private void observeConsumer() {
+        if (chunkSizer != null && lastReadNanos != -1)
+            chunkSizer.observeNanos(lastChunkSize,
+                                    System.nanoTime() - lastReadNanos);
+    }
+
+    private void consumerStarted(Chunk<T> chunk) {
+        if (chunkSizer != null) {
+            lastChunkSize = chunk.size();
+            lastReadNanos = System.nanoTime();
+        }
+    }
+
+    private Chunk<T> nextChunk() throws IOException {
+        final AdaptiveChunkSizer<T> sizer = chunkSizer;
+        final int size = sizer != null ? sizer.getChunkSize() : maxChunkSize;
+        final Chunk<T> chunk;
+        final List<T> items;
+        if (chunkPool != null) {
+            chunk = chunkPool.acquire("");
+            items = chunk.getItems();
+        } else {
+            items = new ArrayList<T>(size);
+            chunk = new Chunk<T>("", items);
+        }
         int k = 0;
-        while (k < maxChunkSize && inner.hasNext()) {
-            items.add(inner.read());
-            ++k;
+        if (sizer != null && sizer.isMeasuringBytes()) {
+            long bytes = 0;
+            while (k < size && inner.hasNext()) {
+                final T item = inner.read();
+                bytes += sizer.sizeOf(item);
+                items.add(item);
+                ++k;
+            }
+            sizer.observeBytes(k, bytes);
+        } else {
+            while (k < size && inner.hasNext()) {
+                items.add(inner.read());
+                ++k;
+            }
         }
-        return new Chunk<T>("", items);
+        return chunk;
     }
 
     @Override
@@ -128,4 +277,182 @@ public class Chunker<T, S extends ObjectSource<T>>
         }
 
     }
+
+    /**
+     * Chunker that reads ahead on a dedicated daemon thread, passing filled
+     * chunks to the caller through a bounded queue.
+     */
+    private static class PrefetchingChunker<T, S extends ObjectSource<T>>
+            extends Chunker<T, S> implements Runnable {
+
+        /**
+         * Interval at which the reader thread checks for the chunker being
+         * closed, while waiting for space in the queue.
+         */
+        private static final long POLL_MILLIS = 10;
+
+        /**
+         * Queued after the last chunk.
+         */
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue;
+
+        private volatile boolean closed = false;
+
+        private Thread reader = null;
+
+        /**
+         * Next element taken from the queue, or null if none has been taken.
+         */
+        private Object next = null;
+
+        private PrefetchingChunker(S inner, int maxChunkSize, int capacity) {
+            super(inner, maxChunkSize);
+            Checks.checkRangeIncl("capacity", capacity, 1, Integer.MAX_VALUE);
+            this.queue = new ArrayBlockingQueue<Object>(capacity);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed && getInner().hasNext()) {
+                    final Chunk<T> chunk = super.nextChunk();
+                    if (!offer(chunk)) {
+                        chunk.close();
+                        return;
+                    }
+                }
+                offer(END);
+            } catch (Throwable t) {
+                offer(new Failure(t));
+            }
+        }
+
+        /**
+         * Wait for space in the queue, and add the element, unless the
+         * chunker is closed first.
+         *
+         * @return true if the element was added, false if closed
+         */
+        private boolean offer(Object element) {
+            try {
+                while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    if (closed)
+                        return false;
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (closed)
+                return false;
+            if (next == null) {
+                if (reader == null) {
+                    reader = new Thread(this, "Chunker-prefetch");
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+                try {
+                    next = queue.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    final InterruptedIOException ioe =
+                            new InterruptedIOException();
+                    ioe.initCause(ex);
+                    throw ioe;
+                }
+            }
+            if (next instanceof Failure)
+                ((Failure) next).rethrow();
+            return next != END;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Chunk<T> read() throws IOException {
+            super.observeConsumer();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final Chunk<T> chunk = (Chunk<T>) next;
+            next = null;
+            super.consumerStarted(chunk);
+            return chunk;
+        }
+
+        /**
+         * Stop the reader thread, waiting for it to finish any chunk it is
+         * filling, then close the inner source. Chunks that were read ahead
+         * but never returned are closed, so pooled chunks are not lost.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            discardQueued();
+            if (next instanceof Chunk)
+                ((Chunk<?>) next).close();
+            next = null;
+            if (reader != null) {
+                boolean interrupted = false;
+                while (reader.isAlive()) {
+                    try {
+                        reader.join();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            discardQueued();
+            super.close();
+        }
+
+        /**
+         * Remove all the elements from the queue, closing any chunks so that
+         * pooled chunks are returned to their pool.
+         */
+        private void discardQueued() throws IOException {
+            final List<Object> queued = new ArrayList<Object>(queue.size());
+            queue.drainTo(queued);
+            for (Object element : queued)
+                if (element instanceof Chunk)
+                    ((Chunk<?>) element).close();
+        }
+
+        @Override
+        public String toString() {
+            return "PrefetchingChunker{" + "maxChunkSize=" + getMaxChunkSize()
+                    + ", capacity=" + (queue.size() + queue.remainingCapacity())
+                    + ", inner=" + getInner() + '}';
+        }
+
+        /**
+         * Queued in place of a chunk when the inner source throws.
+         */
+        private static final class Failure {
+
+            private final Throwable cause;
+
+            Failure(Throwable cause) {
+                this.cause = cause;
+            }
+
+            void rethrow() throws IOException {
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+    }
 }
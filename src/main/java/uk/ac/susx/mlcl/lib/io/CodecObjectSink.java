@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * An ObjectSink that writes each object as a single record to a
+ * {@link DataSink}, using an {@link ObjectCodec}.
+ *
+ * @param <T> type of object consumed
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CodecObjectSink<T> implements ObjectSink<T>, Closeable, Flushable {
+
+    private final DataSink inner;
+
+    private final ObjectCodec<? super T> codec;
+
+    public CodecObjectSink(DataSink inner, ObjectCodec<? super T> codec) {
+        Checks.checkNotNull("inner", inner);
+        Checks.checkNotNull("codec", codec);
+        this.inner = inner;
+        this.codec = codec;
+    }
+
+    public DataSink getInner() {
+        return inner;
+    }
+
+    public ObjectCodec<? super T> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void write(T record) throws IOException {
+        codec.encode(record, inner);
+        inner.endOfRecord();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (inner instanceof Flushable)
+            ((Flushable) inner).flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner
+                + ", codec=" + codec + '}';
+    }
+}
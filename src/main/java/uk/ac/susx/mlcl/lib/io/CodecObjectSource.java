@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * An ObjectSource that reads each object from a single record of a
+ * {@link DataSource}, using an {@link ObjectCodec}.
+ *
+ * @param <S> type of the encapsulated DataSource
+ * @param <T> type of object produced
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CodecObjectSource<S extends DataSource, T>
+        implements ObjectSource<T>, Closeable {
+
+    private final S inner;
+
+    private final ObjectCodec<? extends T> codec;
+
+    public CodecObjectSource(S inner, ObjectCodec<? extends T> codec) {
+        Checks.checkNotNull("inner", inner);
+        Checks.checkNotNull("codec", codec);
+        this.inner = inner;
+        this.codec = codec;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    public ObjectCodec<? extends T> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public T read() throws IOException {
+        final T obj = codec.decode(inner);
+        inner.endOfRecord();
+        return obj;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.canRead();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner
+                + ", codec=" + codec + '}';
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import uk.ac.susx.mlcl.lib.Checks;
+import uk.ac.susx.mlcl.lib.collect.Indexed;
+import uk.ac.susx.mlcl.lib.collect.SparseDoubleVector;
+
+/**
+ * <p>An {@link ObjectCodec} for arbitrary objects, that dispatches on the
+ * runtime class of each object to a codec registered for that class.</p>
+ *
+ * <p>Each object is written as an integer type tag, identifying the codec
+ * used, followed by the fields produced by that codec. Objects of a class
+ * with no registered codec are written using Java serialization, provided
+ * they implement {@link Serializable}, so any object previously stored with
+ * {@link Files#writeSerialized(Object, java.io.File)} can also be stored here; only
+ * the registered types benefit from the compact encoding.</p>
+ *
+ * <p>Codecs are matched on the exact class of the object, not on its super
+ * types. Tags below {@link #MIN_USER_TAG} are reserved for the library; the
+ * same registrations must be made when reading as were made when writing.
+ * A registry is not thread-safe while it is being modified, but may be
+ * shared once all codecs have been registered.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CodecRegistry implements ObjectCodec<Object> {
+
+    /**
+     * Tag written for a {@code null} reference.
+     */
+    public static final int NULL_TAG = 0;
+
+    /**
+     * Tag written for objects stored using Java serialization.
+     */
+    public static final int SERIALIZABLE_TAG = 1;
+
+    /**
+     * Smallest tag that may be passed to {@link #register}.
+     */
+    public static final int MIN_USER_TAG = 64;
+
+    private static final int STRING_TAG = 2;
+
+    private static final int BOOLEAN_TAG = 3;
+
+    private static final int INTEGER_TAG = 4;
+
+    private static final int LONG_TAG = 5;
+
+    private static final int DOUBLE_TAG = 6;
+
+    private static final int BYTE_ARRAY_TAG = 8;
+
+    private static final int INT_ARRAY_TAG = 9;
+
+    private static final int LONG_ARRAY_TAG = 10;
+
+    private static final int FLOAT_ARRAY_TAG = 11;
+
+    private static final int DOUBLE_ARRAY_TAG = 12;
+
+    private static final int ARRAY_LIST_TAG = 16;
+
+    private static final int INDEXED_TAG = 17;
+
+    private static final int SPARSE_DOUBLE_VECTOR_TAG = 18;
+
+    private final Map<Class<?>, Entry<?>> byClass;
+
+    private final Map<Integer, Entry<?>> byTag;
+
+    private final ObjectCodec<Object> fallback;
+
+    /**
+     * Construct a registry that encodes the library's own types; that is the
+     * boxed primitives, strings, primitive arrays, {@link ArrayList},
+     * {@link Indexed} and {@link SparseDoubleVector}. Every other object
+     * must be {@link Serializable}, unless a codec is registered for it.
+     */
+    public CodecRegistry() {
+        this.byClass = new HashMap<Class<?>, Entry<?>>();
+        this.byTag = new HashMap<Integer, Entry<?>>();
+        this.fallback = new SerializableCodec();
+        put(STRING_TAG, String.class, new StringCodec());
+        put(BOOLEAN_TAG, Boolean.class, new BooleanCodec());
+        put(INTEGER_TAG, Integer.class, new IntegerCodec());
+        put(LONG_TAG, Long.class, new LongCodec());
+        put(DOUBLE_TAG, Double.class, new DoubleCodec());
+        put(BYTE_ARRAY_TAG, byte[].class, new ByteArrayCodec());
+        put(INT_ARRAY_TAG, int[].class, new IntArrayCodec());
+        put(LONG_ARRAY_TAG, long[].class, new LongArrayCodec());
+        put(FLOAT_ARRAY_TAG, float[].class, new FloatArrayCodec());
+        put(DOUBLE_ARRAY_TAG, double[].class, new DoubleArrayCodec());
+        put(ARRAY_LIST_TAG, ArrayList.class, new ArrayListCodec());
+        put(INDEXED_TAG, Indexed.class, new IndexedCodec());
+        put(SPARSE_DOUBLE_VECTOR_TAG, SparseDoubleVector.class,
+            new SparseDoubleVectorCodec());
+    }
+
+    /**
+     * Register a codec for all objects of exactly the class {@code type}.
+     *
+     * @param <T> type of object encoded
+     * @param tag integer written before every object of this type
+     * @param type class of objects encoded with {@code codec}
+     * @param codec codec for objects of type {@code type}
+     * @throws IllegalArgumentException if the tag or class is already
+     *          registered
+     */
+    public <T> void register(int tag, Class<T> type, ObjectCodec<T> codec) {
+        Checks.checkRangeIncl("tag", tag, MIN_USER_TAG, Integer.MAX_VALUE);
+        Checks.checkNotNull("type", type);
+        Checks.checkNotNull("codec", codec);
+        if (byTag.containsKey(tag))
+            throw new IllegalArgumentException(
+                    "Tag " + tag + " is already registered.");
+        if (byClass.containsKey(type))
+            throw new IllegalArgumentException(
+                    "Type " + type.getName() + " is already registered.");
+        put(tag, type, codec);
+    }
+
+    /**
+     * @param type class of objects to test
+     * @return true if objects of exactly the class {@code type} are encoded
+     *          by a registered codec, rather than by Java serialization
+     */
+    public boolean isRegistered(Class<?> type) {
+        return byClass.containsKey(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encode(Object obj, DataSink sink) throws IOException {
+        if (obj == null) {
+            sink.writeInt(NULL_TAG);
+            return;
+        }
+        final Entry<Object> entry = (Entry<Object>) byClass.get(obj.getClass());
+        if (entry != null) {
+            sink.writeInt(entry.tag);
+            entry.codec.encode(obj, sink);
+        } else {
+            sink.writeInt(SERIALIZABLE_TAG);
+            fallback.encode(obj, sink);
+        }
+    }
+
+    @Override
+    public Object decode(DataSource src) throws IOException {
+        final int tag = src.readInt();
+        if (tag == NULL_TAG)
+            return null;
+        if (tag == SERIALIZABLE_TAG)
+            return fallback.decode(src);
+        final Entry<?> entry = byTag.get(tag);
+        if (entry == null)
+            throw new IOException("No codec registered for tag " + tag);
+        return entry.codec.decode(src);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "{" + "types=" + byClass.keySet() + '}';
+    }
+
+    private <T> void put(int tag, Class<T> type, ObjectCodec<T> codec) {
+        final Entry<T> entry = new Entry<T>(tag, codec);
+        byClass.put(type, entry);
+        byTag.put(tag, entry);
+    }
+
+    private static final class Entry<T> {
+
+        final int tag;
+
+        final ObjectCodec<T> codec;
+
+        Entry(int tag, ObjectCodec<T> codec) {
+            this.tag = tag;
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * Stores objects as a length prefixed block of Java serialization
+     * stream bytes.
+     */
+    private static final class SerializableCodec
+            implements ObjectCodec<Object> {
+
+        @Override
+        public void encode(Object obj, DataSink sink) throws IOException {
+            if (!(obj instanceof Serializable))
+                throw new NotSerializableException(obj.getClass().getName());
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(obj);
+            oos.close();
+            final byte[] arr = bytes.toByteArray();
+            sink.writeInt(arr.length);
+            for (int i = 0; i < arr.length; i++)
+                sink.writeByte(arr[i]);
+        }
+
+        @Override
+        public Object decode(DataSource src) throws IOException {
+            final byte[] arr = new byte[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readByte();
+            final ObjectInputStream ois = new ObjectInputStream(
+                    new ByteArrayInputStream(arr));
+            try {
+                return ois.readObject();
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            } finally {
+                ois.close();
+            }
+        }
+    }
+
+    private static final class StringCodec implements ObjectCodec<String> {
+
+        @Override
+        public void encode(String obj, DataSink sink) throws IOException {
+            sink.writeString(obj);
+        }
+
+        @Override
+        public String decode(DataSource src) throws IOException {
+            return src.readString();
+        }
+    }
+
+    private static final class BooleanCodec implements ObjectCodec<Boolean> {
+
+        @Override
+        public void encode(Boolean obj, DataSink sink) throws IOException {
+            sink.writeByte(obj.booleanValue() ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        public Boolean decode(DataSource src) throws IOException {
+            return Boolean.valueOf(src.readByte() != 0);
+        }
+    }
+
+    private static final class IntegerCodec implements ObjectCodec<Integer> {
+
+        @Override
+        public void encode(Integer obj, DataSink sink) throws IOException {
+            sink.writeInt(obj);
+        }
+
+        @Override
+        public Integer decode(DataSource src) throws IOException {
+            return src.readInt();
+        }
+    }
+
+    private static final class LongCodec implements ObjectCodec<Long> {
+
+        @Override
+        public void encode(Long obj, DataSink sink) throws IOException {
+            sink.writeLong(obj);
+        }
+
+        @Override
+        public Long decode(DataSource src) throws IOException {
+            return src.readLong();
+        }
+    }
+
+    private static final class DoubleCodec implements ObjectCodec<Double> {
+
+        @Override
+        public void encode(Double obj, DataSink sink) throws IOException {
+            sink.writeDouble(obj);
+        }
+
+        @Override
+        public Double decode(DataSource src) throws IOException {
+            return src.readDouble();
+        }
+    }
+
+    private static final class ByteArrayCodec implements ObjectCodec<byte[]> {
+
+        @Override
+        public void encode(byte[] obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.length);
+            for (int i = 0; i < obj.length; i++)
+                sink.writeByte(obj[i]);
+        }
+
+        @Override
+        public byte[] decode(DataSource src) throws IOException {
+            final byte[] arr = new byte[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readByte();
+            return arr;
+        }
+    }
+
+    private static final class IntArrayCodec implements ObjectCodec<int[]> {
+
+        @Override
+        public void encode(int[] obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.length);
+            for (int i = 0; i < obj.length; i++)
+                sink.writeInt(obj[i]);
+        }
+
+        @Override
+        public int[] decode(DataSource src) throws IOException {
+            final int[] arr = new int[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readInt();
+            return arr;
+        }
+    }
+
+    private static final class LongArrayCodec implements ObjectCodec<long[]> {
+
+        @Override
+        public void encode(long[] obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.length);
+            for (int i = 0; i < obj.length; i++)
+                sink.writeLong(obj[i]);
+        }
+
+        @Override
+        public long[] decode(DataSource src) throws IOException {
+            final long[] arr = new long[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readLong();
+            return arr;
+        }
+    }
+
+    private static final class FloatArrayCodec implements ObjectCodec<float[]> {
+
+        @Override
+        public void encode(float[] obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.length);
+            for (int i = 0; i < obj.length; i++)
+                sink.writeFloat(obj[i]);
+        }
+
+        @Override
+        public float[] decode(DataSource src) throws IOException {
+            final float[] arr = new float[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readFloat();
+            return arr;
+        }
+    }
+
+    private static final class DoubleArrayCodec
+            implements ObjectCodec<double[]> {
+
+        @Override
+        public void encode(double[] obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.length);
+            for (int i = 0; i < obj.length; i++)
+                sink.writeDouble(obj[i]);
+        }
+
+        @Override
+        public double[] decode(DataSource src) throws IOException {
+            final double[] arr = new double[src.readInt()];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = src.readDouble();
+            return arr;
+        }
+    }
+
+    /**
+     * Stores the size of the list followed by each element, encoded using
+     * the outer registry.
+     */
+    @SuppressWarnings("rawtypes")
+    private final class ArrayListCodec implements ObjectCodec<ArrayList> {
+
+        @Override
+        public void encode(ArrayList obj, DataSink sink) throws IOException {
+            final int n = obj.size();
+            sink.writeInt(n);
+            for (int i = 0; i < n; i++)
+                CodecRegistry.this.encode(obj.get(i), sink);
+        }
+
+        @Override
+        public ArrayList decode(DataSource src) throws IOException {
+            final int n = src.readInt();
+            final ArrayList<Object> list = new ArrayList<Object>(n);
+            for (int i = 0; i < n; i++)
+                list.add(CodecRegistry.this.decode(src));
+            return list;
+        }
+    }
+
+    /**
+     * Stores the key followed by the value, encoded using the outer
+     * registry.
+     */
+    @SuppressWarnings("rawtypes")
+    private final class IndexedCodec implements ObjectCodec<Indexed> {
+
+        @Override
+        public void encode(Indexed obj, DataSink sink) throws IOException {
+            sink.writeInt(obj.key());
+            CodecRegistry.this.encode(obj.value(), sink);
+        }
+
+        @Override
+        public Indexed decode(DataSource src) throws IOException {
+            final int key = src.readInt();
+            return new Indexed<Object>(key, CodecRegistry.this.decode(src));
+        }
+    }
+
+    /**
+     * Stores only the occupied entries of the vector. Keys are strictly
+     * increasing, so each is written as the difference from the previous
+     * key, which is usually small enough to fit in a single byte.
+     */
+    private static final class SparseDoubleVectorCodec
+            implements ObjectCodec<SparseDoubleVector> {
+
+        @Override
+        public void encode(SparseDoubleVector obj, DataSink sink)
+                throws IOException {
+            sink.writeInt(obj.cardinality);
+            sink.writeInt(obj.size);
+            int prev = 0;
+            for (int i = 0; i < obj.size; i++) {
+                sink.writeInt(obj.keys[i] - prev);
+                prev = obj.keys[i];
+            }
+            for (int i = 0; i < obj.size; i++)
+                sink.writeDouble(obj.values[i]);
+            sink.writeDouble(obj.sum);
+        }
+
+        @Override
+        public SparseDoubleVector decode(DataSource src) throws IOException {
+            final int cardinality = src.readInt();
+            final int size = src.readInt();
+            if (size == 0) {
+                final SparseDoubleVector vec =
+                        new SparseDoubleVector(cardinality, 0);
+                vec.sum = src.readDouble();
+                return vec;
+            }
+            final int[] keys = new int[size];
+            int prev = 0;
+            for (int i = 0; i < size; i++) {
+                prev += src.readInt();
+                keys[i] = prev;
+            }
+            final double[] values = new double[size];
+            for (int i = 0; i < size; i++)
+                values[i] = src.readDouble();
+            final SparseDoubleVector vec =
+                    new SparseDoubleVector(keys, values, cardinality, size);
+            vec.sum = src.readDouble();
+            return vec;
+        }
+    }
+}
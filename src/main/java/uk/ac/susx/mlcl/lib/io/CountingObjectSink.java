@@ -60,4 +60,10 @@ public final class CountingObjectSink<S extends ObjectSink<T>, T> extends Forwar
         ++count;
     }
 
+    @Override
+    public void write(Object[] src, int off, int len) throws IOException {
+        ObjectIO.writeBatch(getInner(), src, off, len);
+        count += len;
+    }
+
 }
@@ -61,4 +61,11 @@ public class CountingObjectSource<S extends ObjectSource<T>, T> extends Forwardi
         return wt;
     }
 
+    @Override
+    public int read(Object[] dst, int off, int len) throws IOException {
+        final int n = ObjectIO.readBatch(getInner(), dst, off, len);
+        count += n;
+        return n;
+    }
+
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Sorts an {@link ObjectSource} of arbitrary size, using a bounded amount
+ * of memory, by spilling sorted runs to temporary files.</p>
+ *
+ * <p>Records are read into an in-memory run until it holds
+ * {@code maxRunSize} records. Each full run is then sorted and written to a
+ * file from the {@link FileFactory} by a background task, while the next run
+ * is read. Up to {@code maxConcurrentRuns} runs are sorted and written in
+ * parallel. Once the input is exhausted, the final run is sorted in memory,
+ * and all the runs are merged into a single sorted source.</p>
+ *
+ * <p>During the merge each run file is read in blocks of {@code blockSize}
+ * records, and the next block of every run is decoded in the background
+ * while the current blocks are being merged.</p>
+ *
+ * <p>At most {@code maxConcurrentRuns + 1} runs are held in memory during
+ * the sort, and {@code 2 * blockSize} records from each run during the
+ * merge.</p>
+ *
+ * <p>Records are written to the spill files using the given
+ * {@link ObjectCodec}, through a {@link BinaryDataSink}. The files are deleted
+ * when each run has been merged, or when the returned source is closed. They
+ * are opened by {@link Files}, so a file factory that gives them the ".lz4"
+ * suffix (see {@link TempFileFactory#TempFileFactory(String, String, File)})
+ * compresses the spills with {@link LZ4OutputStream}.</p>
+ *
+ * @param <T> type of records sorted
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ExternalSorter<T> {
+
+    public static final int DEFAULT_MAX_RUN_SIZE = 1 << 20;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 10;
+
+    private final Comparator<? super T> comparator;
+
+    private final ObjectCodec<T> codec;
+
+    private FileFactory fileFactory = new TempFileFactory("sort-run-");
+
+    private int maxRunSize = DEFAULT_MAX_RUN_SIZE;
+
+    private int maxConcurrentRuns = Runtime.getRuntime().availableProcessors();
+
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    private ExecutorService executor = null;
+
+    public ExternalSorter(Comparator<? super T> comparator,
+                          ObjectCodec<T> codec) {
+        Checks.checkNotNull("comparator", comparator);
+        Checks.checkNotNull("codec", codec);
+        this.comparator = comparator;
+        this.codec = codec;
+    }
+
+    public final Comparator<? super T> getComparator() {
+        return comparator;
+    }
+
+    public final ObjectCodec<T> getCodec() {
+        return codec;
+    }
+
+    public final FileFactory getFileFactory() {
+        return fileFactory;
+    }
+
+    public final void setFileFactory(FileFactory fileFactory) {
+        Checks.checkNotNull("fileFactory", fileFactory);
+        this.fileFactory = fileFactory;
+    }
+
+    /**
+     * @return maximum number of records held in each in-memory run
+     */
+    public final int getMaxRunSize() {
+        return maxRunSize;
+    }
+
+    public final void setMaxRunSize(int maxRunSize) {
+        Checks.checkRangeIncl("maxRunSize", maxRunSize, 1, Integer.MAX_VALUE);
+        this.maxRunSize = maxRunSize;
+    }
+
+    /**
+     * @return maximum number of runs being sorted and written at once
+     */
+    public final int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    public final void setMaxConcurrentRuns(int maxConcurrentRuns) {
+        Checks.checkRangeIncl("maxConcurrentRuns", maxConcurrentRuns,
+                              1, Integer.MAX_VALUE);
+        this.maxConcurrentRuns = maxConcurrentRuns;
+    }
+
+    /**
+     * @return number of records read from each run file at a time
+     */
+    public final int getBlockSize() {
+        return blockSize;
+    }
+
+    public final void setBlockSize(int blockSize) {
+        Checks.checkRangeIncl("blockSize", blockSize, 1, Integer.MAX_VALUE);
+        this.blockSize = blockSize;
+    }
+
+    public final ExecutorService getExecutor() {
+        return executor == null ? BackgroundTasks.executor() : executor;
+    }
+
+    /**
+     * Set the executor that runs sorting, spilling and read-ahead tasks. Since
+     * tasks may wait on each other, the executor must be able to run at least
+     * {@code maxConcurrentRuns} tasks at once. By default a shared executor
+     * of daemon threads is used.
+     *
+     * @param executor executor for background tasks
+     */
+    public final void setExecutor(ExecutorService executor) {
+        Checks.checkNotNull("executor", executor);
+        this.executor = executor;
+    }
+
+    /**
+     * Read all the records from {@code source}, and return a source that
+     * produces them in sorted order. The returned source implements
+     * {@link Closeable}, and should be closed if it is not read to the end,
+     * so that any remaining temporary files are deleted.
+     *
+     * @param source records to sort
+     * @return source of the sorted records
+     * @throws IOException if some I/O error occurs
+     */
+    public ObjectSource<T> sort(ObjectSource<? extends T> source)
+            throws IOException {
+        Checks.checkNotNull("source", source);
+        final List<Future<File>> spills = new ArrayList<Future<File>>();
+        final Semaphore permits = new Semaphore(maxConcurrentRuns);
+        boolean complete = false;
+        try {
+            List<T> run = new ArrayList<T>();
+            while (source.hasNext()) {
+                run.add(source.read());
+                if (run.size() >= maxRunSize) {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    spills.add(getExecutor().submit(
+                            new SpillTask(run, permits)));
+                    run = new ArrayList<T>();
+                }
+            }
+            Collections.sort(run, comparator);
+            if (spills.isEmpty()) {
+                complete = true;
+                return ObjectIO.asSource((Iterable<T>) run);
+            }
+
+            final List<ObjectSource<T>> runs =
+                    new ArrayList<ObjectSource<T>>(spills.size() + 1);
+            try {
+                for (Future<File> spill : spills)
+                    runs.add(new RunSource(BackgroundTasks.get(spill)));
+            } catch (IOException ex) {
+                for (ObjectSource<T> r : runs)
+                    ((RunSource) r).close();
+                throw ex;
+            }
+            runs.add(ObjectIO.asSource((Iterable<T>) run));
+            complete = true;
+            // The runs are already read in blocks, so the merge need not
+            return new MergingObjectSource<T>(runs, comparator, null, 1);
+        } finally {
+            if (!complete)
+                for (Future<File> spill : spills)
+                    discard(spill);
+        }
+    }
+
+    private static void discard(Future<File> spill) {
+        BackgroundTasks.discard(spill);
+        if (spill.isDone() && !spill.isCancelled()) {
+            try {
+                final File file = BackgroundTasks.get(spill);
+                file.delete();
+            } catch (IOException ex) {
+                // The task failed so there is no file to delete
+            } catch (RuntimeException ex) {
+                // As above
+            }
+        }
+    }
+
+    /**
+     * Task that sorts a run, and writes it to a new file.
+     */
+    private final class SpillTask implements Callable<File> {
+
+        private final List<T> run;
+
+        private final Semaphore permits;
+
+        SpillTask(List<T> run, Semaphore permits) {
+            this.run = run;
+            this.permits = permits;
+        }
+
+        @Override
+        public File call() throws IOException {
+            try {
+                Collections.sort(run, comparator);
+                final File file = fileFactory.createFile();
+                final CodecObjectSink<T> sink = new CodecObjectSink<T>(
+                        new BinaryDataSink(
+                        Files.openWritableByteChannel(file)), codec);
+                boolean written = false;
+                try {
+                    for (T record : run)
+                        sink.write(record);
+                    written = true;
+                } finally {
+                    sink.close();
+                    if (!written)
+                        file.delete();
+                }
+                return file;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Source of the records in a run file, which decodes the next block of
+     * records in the background.
+     */
+    private final class RunSource implements ObjectSource<T>, Closeable {
+
+        private final File file;
+
+        private final CodecObjectSource<BinaryDataSource, T> reader;
+
+        private List<T> block = Collections.emptyList();
+
+        private int index = 0;
+
+        private Future<List<T>> nextBlock;
+
+        private final Callable<List<T>> readBlock = new Callable<List<T>>() {
+
+            @Override
+            public List<T> call() throws IOException {
+                final List<T> records = new ArrayList<T>(blockSize);
+                while (records.size() < blockSize && reader.hasNext())
+                    records.add(reader.read());
+                return records;
+            }
+
+        };
+
+        RunSource(File file) throws IOException {
+            this.file = file;
+            this.reader = new CodecObjectSource<BinaryDataSource, T>(
+                    new BinaryDataSource(
+                    Files.openReadableByteChannel(file)), codec);
+            this.nextBlock = getExecutor().submit(readBlock);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (index < block.size())
+                return true;
+            if (nextBlock == null)
+                return false;
+            final Future<List<T>> pending = nextBlock;
+            nextBlock = null;
+            block = BackgroundTasks.get(pending);
+            index = 0;
+            if (block.size() < blockSize) {
+                close();
+            } else {
+                nextBlock = getExecutor().submit(readBlock);
+            }
+            return index < block.size();
+        }
+
+        @Override
+        public T read() throws IOException {
+            if (!hasNext())
+                throw new IllegalStateException("Run is exhausted.");
+            return block.get(index++);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (nextBlock != null) {
+                BackgroundTasks.discard(nextBlock);
+                nextBlock = null;
+            }
+            try {
+                reader.close();
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
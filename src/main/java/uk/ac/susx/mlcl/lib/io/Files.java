@@ -261,6 +261,108 @@ public final class Files {
         return file.getName().toLowerCase().endsWith(".gz");
     }
 
+    /**
+     * Whether the file has the suffix of the block gzip format (BGZF), which
+     * is read and written by {@link BlockGzipChannel} and
+     * {@link BlockGzipOutputStream}.
+     *
+     * @param file file to check
+     * @return true if the file name ends with ".bgz"
+     */
+    public static boolean isBlockGzip(File file) {
+        return file.getName().toLowerCase().endsWith(".bgz");
+    }
+
+    /**
+     * Whether the file has the suffix of the LZ4 frame format, which is read
+     * and written by {@link LZ4InputStream} and {@link LZ4OutputStream}.
+     *
+     * @param file file to check
+     * @return true if the file name ends with ".lz4"
+     */
+    public static boolean isLz4(File file) {
+        return file.getName().toLowerCase().endsWith(".lz4");
+    }
+
+    private static volatile int gzipThreads = 0;
+
+    public static int getGzipThreads() {
+        return gzipThreads;
+    }
+
+    /**
+     * Set the number of threads used to compress gzip output. When greater
+     * than zero, the streams and channels opened for gzip files compress
+     * blocks in parallel using a {@link ParallelGzipOutputStream}; otherwise
+     * (the default) a single threaded GZIPOutputStream is used.
+     *
+     * @param threads number of compression threads, or zero
+     */
+    public static void setGzipThreads(int threads) {
+        Checks.checkRangeIncl("threads", threads, 0, Integer.MAX_VALUE);
+        gzipThreads = threads;
+    }
+
+    private static volatile int gzipReadAheadBuffers =
+            ReadAheadInputStream.DEFAULT_BUFFER_COUNT;
+
+    public static int getGzipReadAheadBuffers() {
+        return gzipReadAheadBuffers;
+    }
+
+    /**
+     * Set the number of buffers that gzip input is inflated into ahead of
+     * the reader, by a background thread. Zero disables read-ahead, so that
+     * gzip input is inflated on the reading thread.
+     *
+     * @param buffers number of read-ahead buffers, or zero
+     */
+    public static void setGzipReadAheadBuffers(int buffers) {
+        Checks.checkRangeIncl("buffers", buffers, 0, Integer.MAX_VALUE);
+        gzipReadAheadBuffers = buffers;
+    }
+
+    /**
+     * Open a gzip file for reading. Block gzip files are inflated a member
+     * at a time, in parallel, by a {@link BlockGzipChannel}; other gzip files
+     * are inflated on a background thread by a {@link ReadAheadInputStream},
+     * unless read-ahead is disabled.
+     */
+    private static InputStream newGzipInputStream(File file)
+            throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            if (BlockGzipChannel.startsWithBlockGzip(in.getChannel()))
+                return new BufferedInputStream(Channels.newInputStream(
+                        new BlockGzipChannel(in.getChannel())), BUFFER_SIZE);
+            return newGzipInputStream(in);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private static InputStream newGzipInputStream(InputStream in)
+            throws IOException {
+        final InputStream gzip = new GZIPInputStream(in, 1 << 16);
+        final int buffers = gzipReadAheadBuffers;
+        return buffers > 0
+               ? new ReadAheadInputStream(
+                gzip, ReadAheadInputStream.DEFAULT_BUFFER_SIZE, buffers)
+               : gzip;
+    }
+
+    private static OutputStream newGzipOutputStream(OutputStream out)
+            throws IOException {
+        final int threads = gzipThreads;
+        return threads > 0
+               ? new ParallelGzipOutputStream(out, threads)
+               : new GZIPOutputStream(out);
+    }
+
     public static CharsetDecoder decoderFor(Charset charset) {
         return charset.newDecoder().
                 onMalformedInput(MALFORMED_INPUT_ACTION).
@@ -296,10 +398,24 @@ public final class Files {
 
         } else if (isStdin(file)) {
             return Channels.newChannel(System.in);
-        } else if (isGzip(file)) {
+        } else if (isBlockGzip(file)) {
+            return new BlockGzipChannel(new FileInputStream(file).getChannel());
+        } else if (isLz4(file)) {
             return Channels.newChannel(
-                    new GZIPInputStream(
-                    new FileInputStream(file)));
+                    new LZ4InputStream(new FileInputStream(file)));
+        } else if (isGzip(file)) {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                if (BlockGzipChannel.startsWithBlockGzip(in.getChannel()))
+                    return new BlockGzipChannel(in.getChannel());
+                return Channels.newChannel(newGzipInputStream(in));
+            } catch (IOException ex) {
+                in.close();
+                throw ex;
+            } catch (RuntimeException ex) {
+                in.close();
+                throw ex;
+            }
         } else {
             return new FileInputStream(file).getChannel();
         }
@@ -313,9 +429,15 @@ public final class Files {
 
         } else if (isStdout(file)) {
             return Channels.newChannel(System.out);
+        } else if (isBlockGzip(file)) {
+            return Channels.newChannel(
+                    new BlockGzipOutputStream(new FileOutputStream(file)));
+        } else if (isLz4(file)) {
+            return Channels.newChannel(
+                    new LZ4OutputStream(new FileOutputStream(file)));
         } else if (isGzip(file)) {
             return Channels.newChannel(
-                    new GZIPOutputStream(
+                    newGzipOutputStream(
                     new FileOutputStream(file)));
         } else {
             return new FileOutputStream(file).getChannel();
@@ -328,9 +450,14 @@ public final class Files {
             throw new NullPointerException();
         if (isStdin(file)) {
             return System.in;
+        } else if (isBlockGzip(file)) {
+            return new BufferedInputStream(Channels.newInputStream(
+                    new BlockGzipChannel(new FileInputStream(file).getChannel())));
+        } else if (isLz4(file)) {
+            return new BufferedInputStream(
+                    new LZ4InputStream(new FileInputStream(file)));
         } else if (isGzip(file)) {
-            return new GZIPInputStream(
-                    new FileInputStream(file));
+            return newGzipInputStream(file);
         } else {
             return new BufferedInputStream(new FileInputStream(file));
         }
@@ -342,8 +469,12 @@ public final class Files {
             throw new NullPointerException();
         if (isStdout(file)) {
             return System.out;
+        } else if (isBlockGzip(file)) {
+            return new BlockGzipOutputStream(new FileOutputStream(file));
+        } else if (isLz4(file)) {
+            return new LZ4OutputStream(new FileOutputStream(file));
         } else if (isGzip(file)) {
-            return new GZIPOutputStream(new FileOutputStream(file));
+            return newGzipOutputStream(new FileOutputStream(file));
         } else {
             return new BufferedOutputStream(new FileOutputStream(file));
         }
@@ -524,4 +655,94 @@ public final class Files {
         return ois.readObject();
 
     }
+
+    /**
+     * Open a sink that writes each object as one record to {@code file},
+     * using the compact tagged format of {@code registry}. Compression is
+     * chosen from the file suffix, as with
+     * {@link #openWritableByteChannel(File)}.
+     *
+     * @param file destination file
+     * @param registry codecs used to encode each object
+     * @return sink of objects, which must be closed once finished
+     * @throws IOException if the file can not be opened
+     */
+    public static CodecObjectSink<Object> openEncodedSink(
+            File file, CodecRegistry registry)
+            throws IOException {
+        Checks.checkNotNull("file", file);
+        Checks.checkNotNull("registry", registry);
+        return new CodecObjectSink<Object>(
+                new BinaryDataSink(openWritableByteChannel(file)), registry);
+    }
+
+    /**
+     * Open a source that reads objects from a file written by
+     * {@link #openEncodedSink(File, CodecRegistry)}.
+     *
+     * @param file source file
+     * @param registry codecs used to decode each object
+     * @return source of objects, which must be closed once finished
+     * @throws IOException if the file can not be opened
+     */
+    public static CodecObjectSource<BinaryDataSource, Object> openEncodedSource(
+            File file, CodecRegistry registry)
+            throws IOException {
+        Checks.checkNotNull("file", file);
+        Checks.checkNotNull("registry", registry);
+        return new CodecObjectSource<BinaryDataSource, Object>(
+                new BinaryDataSource(openReadableByteChannel(file)), registry);
+    }
+
+    /**
+     * Store a single object to {@code file} using the default
+     * {@link CodecRegistry}. This is a faster and more compact replacement
+     * for {@link #writeSerialized(Object, File)}; objects without a
+     * registered codec are still stored using Java serialization.
+     *
+     * @param obj object to store
+     * @param file destination file
+     * @throws IOException if the object can not be written
+     */
+    public static void writeEncoded(Object obj, File file)
+            throws IOException {
+        writeEncoded(obj, file, new CodecRegistry());
+    }
+
+    public static void writeEncoded(Object obj, File file,
+                                    CodecRegistry registry)
+            throws IOException {
+        Checks.checkNotNull("obj", obj);
+        final CodecObjectSink<Object> sink = openEncodedSink(file, registry);
+        try {
+            sink.write(obj);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Read a single object from a file written by
+     * {@link #writeEncoded(Object, File)}.
+     *
+     * @param file source file
+     * @return the stored object
+     * @throws IOException if the object can not be read
+     */
+    public static Object readEncoded(File file) throws IOException {
+        return readEncoded(file, new CodecRegistry());
+    }
+
+    public static Object readEncoded(File file, CodecRegistry registry)
+            throws IOException {
+        final CodecObjectSource<BinaryDataSource, Object> src =
+                openEncodedSource(file, registry);
+        try {
+            if (!src.hasNext())
+                throw new EOFException("No object stored in " + file);
+            return src.read();
+        } finally {
+            src.close();
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * DoubleSource adapter that forwards all method invocations to an
+ * encapsulated inner instance.
+ *
+ * Batch reads are made by calling {@link #hasNext()} and {@link #read()} for
+ * each value, so a subclass need only override those methods to modify or
+ * observe the values. Subclasses that pass values through unchanged may
+ * override {@link #read(double[], int, int)} to forward the whole batch to
+ * the inner instance.
+ *
+ * @param <S> type of the encapsulated instance
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public abstract class ForwardingDoubleSource<S extends DoubleSource>
+        implements DoubleSource, Closeable {
+
+    private final S inner;
+
+    public ForwardingDoubleSource(S inner) {
+        Checks.checkNotNull("inner", inner);
+        this.inner = inner;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public double read() throws IOException {
+        return inner.read();
+    }
+
+    @Override
+    public int read(double[] dst, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len && hasNext())
+            dst[off + n++] = read();
+        return n;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner + '}';
+    }
+}
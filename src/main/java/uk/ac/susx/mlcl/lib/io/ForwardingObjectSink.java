@@ -39,12 +39,18 @@ import uk.ac.susx.mlcl.lib.Checks;
  * ObjectSink adapter that forwards all method invocations to some
  * encapsulated instance.
  *
+ * Batch writes are passed to {@link #write(Object)} one record at a time, so
+ * a subclass need only override that method to modify or observe the
+ * records. Subclasses that pass records through unchanged may override
+ * {@link #write(Object[], int, int)} to forward the whole batch to the inner
+ * instance.
+ *
  * @param <S> type of the ObjectSink encapsulated
  * @param <T> type of object consumed
  * @author Hamish I A Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 public abstract class ForwardingObjectSink<S extends ObjectSink<T>, T>
-        implements ObjectSink<T>, Closeable, Flushable {
+        implements BatchObjectSink<T>, Closeable, Flushable {
 
     private final S inner;
 
@@ -62,6 +68,13 @@ public abstract class ForwardingObjectSink<S extends ObjectSink<T>, T>
         inner.write(record);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(Object[] src, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            write((T) src[i]);
+    }
+
     @Override
     public void close() throws IOException {
         if (inner instanceof Closeable)
@@ -38,12 +38,18 @@ import uk.ac.susx.mlcl.lib.Checks;
  * An ObjectSource adapter that forwards all method invocations to an
  * encapsulated inner instance.
  *
+ * Batch reads are made by calling {@link #hasNext()} and {@link #read()} for
+ * each record, so a subclass need only override those methods to modify or
+ * observe the records. Subclasses that pass records through unchanged may
+ * override {@link #read(Object[], int, int)} to forward the whole batch to
+ * the inner instance.
+ *
  * @param <S> type of the encapsulated instance
  * @param <T> type of the object consumed
  * @author Hamish I A Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 public abstract class ForwardingObjectSource<S extends ObjectSource<T>, T>
-        implements ObjectSource<T>, Closeable {
+        implements BatchObjectSource<T>, Closeable {
 
     private final S inner;
 
@@ -61,6 +67,14 @@ public abstract class ForwardingObjectSource<S extends ObjectSource<T>, T>
         return inner.read();
     }
 
+    @Override
+    public int read(Object[] dst, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len && hasNext())
+            dst[off + n++] = read();
+        return n;
+    }
+
     @Override
     public boolean hasNext() throws IOException {
         return inner.hasNext();
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Interface defining the acceptance of ({@code int}, {@code double}) pairs.
+ * The primitive counterpart of {@code ObjectSink<Indexed<Double>>}, which
+ * avoids allocating an {@code Indexed} instance for each pair.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface IntDoubleSink {
+
+    /**
+     * Consume the pair ({@code key}, {@code value}).
+     *
+     * @param key The key of the pair to be consumed.
+     * @param value The value of the pair to be consumed.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(int key, double value) throws IOException;
+
+    /**
+     * Consume the {@code len} pairs held in {@code keys} and {@code values},
+     * starting at offset {@code off} in both, in order.
+     *
+     * @param keys array of keys to consume
+     * @param values array of values to consume
+     * @param off offset into both arrays of the first pair
+     * @param len number of pairs to consume
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(int[] keys, double[] values, int off, int len)
+            throws IOException;
+
+}
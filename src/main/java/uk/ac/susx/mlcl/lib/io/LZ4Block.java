@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Compression and decompression of the LZ4 block format, in pure Java.
+ *
+ * The compressor is the greedy single-probe hash table algorithm of the
+ * reference implementation's fast mode, which favours speed over ratio. The
+ * decompressor checks all offsets and lengths, so corrupt input causes a
+ * DataFormatException rather than reading or writing out of bounds.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+final class LZ4Block {
+
+    static final int MIN_MATCH = 4;
+
+    static final int MAX_DISTANCE = 1 << 16;
+
+    /**
+     * The last match must start at least this many bytes before the end of
+     * the block.
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * The last this many bytes of a block are always literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    static final int HASH_LOG = 14;
+
+    /**
+     * Controls how quickly the compressor skips ahead through data in which
+     * it finds no matches.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    private LZ4Block() {
+    }
+
+    /**
+     * @param length number of bytes to compress
+     * @return the largest size that compressing that many bytes can produce
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @return a hash table suitable for passing to {@link #compress}
+     */
+    static int[] newHashTable() {
+        return new int[1 << HASH_LOG];
+    }
+
+    private static int hash(byte[] b, int i) {
+        return (XXHash32.getIntLE(b, i) * 0x9E3779B1) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Compress {@code len} bytes from {@code src} as an LZ4 block.
+     *
+     * @param src data to compress
+     * @param off offset of the first byte to compress
+     * @param len number of bytes to compress
+     * @param dst destination, with at least {@code maxCompressedLength(len)}
+     *          bytes available from {@code dstOff}
+     * @param dstOff offset in {@code dst} of the compressed block
+     * @param table hash table, from {@link #newHashTable()}, which is
+     *          overwritten
+     * @return size of the compressed block
+     */
+    static int compress(byte[] src, int off, int len, byte[] dst, int dstOff,
+                        int[] table) {
+        final int end = off + len;
+        int anchor = off;
+        int op = dstOff;
+
+        if (len >= MF_LIMIT + 1) {
+            final int limit = end - MF_LIMIT;
+            final int matchLimit = end - LAST_LITERALS;
+            Arrays.fill(table, off);
+            int ip = off + 1;
+
+            search:
+            while (true) {
+                // Find a match of at least MIN_MATCH bytes
+                int ref;
+                int attempts = 1 << SKIP_TRIGGER;
+                while (true) {
+                    if (ip > limit)
+                        break search;
+                    final int h = hash(src, ip);
+                    ref = table[h];
+                    table[h] = ip;
+                    if (ip - ref < MAX_DISTANCE
+                            && XXHash32.getIntLE(src, ref)
+                            == XXHash32.getIntLE(src, ip))
+                        break;
+                    ip += attempts++ >>> SKIP_TRIGGER;
+                }
+
+                // Extend the match backwards and forwards
+                while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+                    --ip;
+                    --ref;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit
+                        && src[ip + matchLength] == src[ref + matchLength])
+                    ++matchLength;
+
+                // Encode the literals and the match
+                final int literals = ip - anchor;
+                final int tokenPos = op++;
+                int token;
+                if (literals >= 15) {
+                    token = 15 << 4;
+                    op = writeLength(dst, op, literals - 15);
+                } else {
+                    token = literals << 4;
+                }
+                System.arraycopy(src, anchor, dst, op, literals);
+                op += literals;
+                final int distance = ip - ref;
+                dst[op++] = (byte) distance;
+                dst[op++] = (byte) (distance >>> 8);
+                final int length = matchLength - MIN_MATCH;
+                if (length >= 15) {
+                    token |= 15;
+                    op = writeLength(dst, op, length - 15);
+                } else {
+                    token |= length;
+                }
+                dst[tokenPos] = (byte) token;
+
+                ip += matchLength;
+                anchor = ip;
+                if (ip > limit)
+                    break;
+                table[hash(src, ip - 2)] = ip - 2;
+            }
+        }
+
+        // The remaining bytes are literals
+        final int literals = end - anchor;
+        if (literals >= 15) {
+            dst[op++] = (byte) (15 << 4);
+            op = writeLength(dst, op, literals - 15);
+        } else {
+            dst[op++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        return op - dstOff;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * Decompress an LZ4 block. Matches may refer back to data before
+     * {@code dstOff}, as far as {@code dictStart}, which allows blocks that
+     * depend on previous blocks to be decompressed.
+     *
+     * @param src compressed data
+     * @param off offset of the compressed block
+     * @param len size of the compressed block
+     * @param dst destination for the decompressed data
+     * @param dstOff offset at which to write the decompressed data
+     * @param dstEnd offset in {@code dst} that must not be written past
+     * @param dictStart earliest offset in {@code dst} that matches may copy
+     *          from
+     * @return offset in {@code dst} following the last decompressed byte
+     * @throws DataFormatException if the compressed block is invalid
+     */
+    static int decompress(byte[] src, int off, int len, byte[] dst,
+                          int dstOff, int dstEnd, int dictStart)
+            throws DataFormatException {
+        final int end = off + len;
+        int ip = off;
+        int op = dstOff;
+        try {
+            while (true) {
+                final int token = src[ip++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literals += b;
+                    } while (b == 255 && ip < end);
+                }
+                if (literals > end - ip || literals > dstEnd - op)
+                    throw new DataFormatException("Invalid literal length");
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == end)
+                    return op;
+
+                final int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int length = token & 15;
+                if (length == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        length += b;
+                    } while (b == 255 && ip < end);
+                }
+                length += MIN_MATCH;
+                final int ref = op - distance;
+                if (distance == 0 || ref < dictStart || length > dstEnd - op
+                        || ip >= end)
+                    throw new DataFormatException("Invalid match");
+                if (distance >= length) {
+                    System.arraycopy(dst, ref, dst, op, length);
+                    op += length;
+                } else if (distance == 1) {
+                    Arrays.fill(dst, op, op + length, dst[ref]);
+                    op += length;
+                } else {
+                    // Overlapping match; copy the repeating pattern, which
+                    // doubles in length with each copy
+                    final int matchEnd = op + length;
+                    while (op < matchEnd) {
+                        final int n = Math.min(op - ref, matchEnd - op);
+                        System.arraycopy(dst, ref, dst, op, n);
+                        op += n;
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            final DataFormatException dfe =
+                    new DataFormatException("Truncated block");
+            dfe.initCause(ex);
+            throw dfe;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
+
+/**
+ * <p>InputStream that decompresses data in the LZ4 frame format, as written
+ * by {@link LZ4OutputStream} or the {@code lz4} command line tool. The
+ * implementation is pure Java.</p>
+ *
+ * <p>Concatenated frames are read as a single stream and skippable frames are
+ * ignored. Both independent and linked blocks are supported, and block and
+ * content checksums are verified when present. Frames that require an
+ * external dictionary are not supported, nor is the legacy frame
+ * format.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see LZ4OutputStream
+ */
+public class LZ4InputStream extends InputStream {
+
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+    /**
+     * Linked blocks may refer back this many bytes into previous blocks.
+     */
+    private static final int HISTORY_SIZE = LZ4Block.MAX_DISTANCE;
+
+    private final InputStream in;
+
+    private final byte[] small = new byte[15];
+
+    private boolean inFrame = false;
+
+    private int flags;
+
+    private int blockMax = 0;
+
+    private byte[] compressed = null;
+
+    /**
+     * Decompressed data, preceded by up to HISTORY_SIZE bytes of the previous
+     * blocks when the blocks are linked.
+     */
+    private byte[] window = null;
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private final XXHash32 contentChecksum = new XXHash32();
+
+    private boolean closed = false;
+
+    public LZ4InputStream(InputStream in) {
+        if (in == null)
+            throw new NullPointerException("in is null");
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !nextBlock())
+            return -1;
+        return window[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (pos == limit && !nextBlock())
+            return -1;
+        final int n = Math.min(len, limit - pos);
+        System.arraycopy(window, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        window = null;
+        compressed = null;
+        pos = limit = 0;
+        in.close();
+    }
+
+    /**
+     * Decompress the next non-empty block into the window.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed)
+            throw new IOException("stream is closed");
+        while (true) {
+            if (!inFrame && !readFrameHeader())
+                return false;
+
+            final int size = readIntLE();
+            if (size == 0) {
+                // End mark
+                if ((flags & LZ4OutputStream.FLAG_CONTENT_CHECKSUM) != 0
+                        && readIntLE() != contentChecksum.getValue())
+                    throw new ZipException("LZ4 content checksum mismatch");
+                inFrame = false;
+                continue;
+            }
+            final int length = size & ~LZ4OutputStream.UNCOMPRESSED_BLOCK;
+            if (length > blockMax)
+                throw new ZipException("LZ4 block is larger than maximum");
+            readFully(compressed, 0, length);
+            if ((flags & LZ4OutputStream.FLAG_BLOCK_CHECKSUM) != 0
+                    && readIntLE() != XXHash32.hash(compressed, 0, length, 0))
+                throw new ZipException("LZ4 block checksum mismatch");
+
+            int start = 0;
+            if ((flags & LZ4OutputStream.FLAG_BLOCK_INDEPENDENCE) == 0) {
+                if (limit > HISTORY_SIZE) {
+                    System.arraycopy(window, limit - HISTORY_SIZE,
+                                     window, 0, HISTORY_SIZE);
+                    start = HISTORY_SIZE;
+                } else {
+                    start = limit;
+                }
+            }
+            final int end;
+            if ((size & LZ4OutputStream.UNCOMPRESSED_BLOCK) != 0) {
+                System.arraycopy(compressed, 0, window, start, length);
+                end = start + length;
+            } else {
+                try {
+                    end = LZ4Block.decompress(compressed, 0, length, window,
+                                              start, start + blockMax, 0);
+                } catch (DataFormatException ex) {
+                    final ZipException ze = new ZipException(
+                            "Corrupt LZ4 block: " + ex.getMessage());
+                    ze.initCause(ex);
+                    throw ze;
+                }
+            }
+            if ((flags & LZ4OutputStream.FLAG_CONTENT_CHECKSUM) != 0)
+                contentChecksum.update(window, start, end - start);
+            pos = start;
+            limit = end;
+            if (pos < limit)
+                return true;
+        }
+    }
+
+    /**
+     * Read the header of the next frame, skipping any skippable frames.
+     *
+     * @return false if the end of the stream was reached instead
+     */
+    private boolean readFrameHeader() throws IOException {
+        while (true) {
+            final int first = in.read();
+            if (first == -1)
+                return false;
+            small[0] = (byte) first;
+            readFully(small, 1, 3);
+            final int magic = XXHash32.getIntLE(small, 0);
+            if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+                skipFully(readIntLE() & 0xffffffffL);
+                continue;
+            }
+            if (magic != LZ4OutputStream.MAGIC)
+                throw new ZipException("Not in LZ4 frame format");
+
+            readFully(small, 0, 2);
+            flags = small[0] & 0xff;
+            if ((flags >>> 6) != 1)
+                throw new ZipException("Unsupported LZ4 frame version");
+            if ((flags & LZ4OutputStream.FLAG_DICTIONARY_ID) != 0)
+                throw new ZipException(
+                        "LZ4 frames with a dictionary are not supported");
+            final int code = (small[1] >>> 4) & 7;
+            if (code < 4)
+                throw new ZipException("Invalid LZ4 block size");
+            int length = 2;
+            if ((flags & LZ4OutputStream.FLAG_CONTENT_SIZE) != 0) {
+                readFully(small, length, 8);
+                length += 8;
+            }
+            final int checksum = in.read();
+            if (checksum == -1)
+                throw new EOFException();
+            if ((byte) checksum
+                    != LZ4OutputStream.headerChecksum(small, 0, length))
+                throw new ZipException("LZ4 frame header checksum mismatch");
+
+            final int max = 1 << (8 + 2 * code);
+            if (max != blockMax) {
+                blockMax = max;
+                compressed = new byte[max];
+                window = new byte[HISTORY_SIZE + max];
+            }
+            pos = limit = 0;
+            contentChecksum.reset();
+            inFrame = true;
+            return true;
+        }
+    }
+
+    private int readIntLE() throws IOException {
+        readFully(small, 0, 4);
+        return XXHash32.getIntLE(small, 0);
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int n = in.read(b, off, len);
+            if (n == -1)
+                throw new EOFException("Truncated LZ4 frame");
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            final long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() == -1)
+                    throw new EOFException("Truncated skippable frame");
+                --n;
+            } else {
+                n -= skipped;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "in=" + in + '}';
+    }
+}
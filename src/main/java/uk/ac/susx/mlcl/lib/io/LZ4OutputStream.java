@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>OutputStream that compresses data in the LZ4 frame format, which can be
+ * read by the {@code lz4} command line tool, or by {@link LZ4InputStream}.
+ * The implementation is pure Java.</p>
+ *
+ * <p>LZ4 compresses and decompresses several times faster than gzip, at the
+ * cost of a lower compression ratio, which makes it suitable for temporary
+ * files such as the spills of an {@link ExternalSorter}. {@link Files} uses
+ * this format for files with the ".lz4" suffix.</p>
+ *
+ * <p>Blocks are compressed independently, and the frame ends with a
+ * checksum of the uncompressed content.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see LZ4InputStream
+ */
+public class LZ4OutputStream extends OutputStream {
+
+    static final int MAGIC = 0x184D2204;
+
+    static final int FLAG_VERSION = 1 << 6;
+
+    static final int FLAG_BLOCK_INDEPENDENCE = 1 << 5;
+
+    static final int FLAG_BLOCK_CHECKSUM = 1 << 4;
+
+    static final int FLAG_CONTENT_SIZE = 1 << 3;
+
+    static final int FLAG_CONTENT_CHECKSUM = 1 << 2;
+
+    static final int FLAG_DICTIONARY_ID = 1;
+
+    /**
+     * Set in the size of a block that is stored uncompressed.
+     */
+    static final int UNCOMPRESSED_BLOCK = 0x80000000;
+
+    public static final int BLOCK_SIZE_64KB = 1 << 16;
+
+    public static final int BLOCK_SIZE_256KB = 1 << 18;
+
+    public static final int BLOCK_SIZE_1MB = 1 << 20;
+
+    public static final int BLOCK_SIZE_4MB = 1 << 22;
+
+    public static final int DEFAULT_BLOCK_SIZE = BLOCK_SIZE_256KB;
+
+    private final OutputStream out;
+
+    private final byte[] block;
+
+    private int size = 0;
+
+    private final byte[] compressed;
+
+    private final int[] table = LZ4Block.newHashTable();
+
+    private final XXHash32 contentChecksum = new XXHash32();
+
+    private boolean closed = false;
+
+    /**
+     * Construct a new LZ4OutputStream, and write the frame header.
+     *
+     * @param out stream the compressed frame is written to
+     * @param blockSize maximum number of uncompressed bytes in each block:
+     *          one of the {@code BLOCK_SIZE_*} constants
+     * @throws IOException if the header can not be written
+     */
+    public LZ4OutputStream(OutputStream out, int blockSize)
+            throws IOException {
+        final int code = blockSizeCode(blockSize);
+        if (out == null)
+            throw new NullPointerException("out is null");
+        this.out = out;
+        this.block = new byte[blockSize];
+        this.compressed = new byte[4 + LZ4Block.maxCompressedLength(blockSize)];
+
+        final byte[] header = new byte[7];
+        putIntLE(header, 0, MAGIC);
+        header[4] = (byte) (FLAG_VERSION | FLAG_BLOCK_INDEPENDENCE
+                            | FLAG_CONTENT_CHECKSUM);
+        header[5] = (byte) (code << 4);
+        header[6] = headerChecksum(header, 4, 2);
+        out.write(header);
+    }
+
+    public LZ4OutputStream(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @return the code recorded in the frame header for the block size
+     */
+    static int blockSizeCode(int blockSize) {
+        switch (blockSize) {
+            case BLOCK_SIZE_64KB:
+                return 4;
+            case BLOCK_SIZE_256KB:
+                return 5;
+            case BLOCK_SIZE_1MB:
+                return 6;
+            case BLOCK_SIZE_4MB:
+                return 7;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported block size " + blockSize);
+        }
+    }
+
+    /**
+     * @return the checksum byte of the frame descriptor
+     */
+    static byte headerChecksum(byte[] b, int off, int len) {
+        return (byte) (XXHash32.hash(b, off, len, 0) >>> 8);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[size++] = (byte) b;
+        if (size == block.length)
+            writeBlock();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            final int n = Math.min(len, block.length - size);
+            System.arraycopy(b, off, block, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == block.length)
+                writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (size == 0)
+            return;
+        contentChecksum.update(block, 0, size);
+        final int n = LZ4Block.compress(block, 0, size, compressed, 4, table);
+        if (n < size) {
+            putIntLE(compressed, 0, n);
+            out.write(compressed, 0, 4 + n);
+        } else {
+            putIntLE(compressed, 0, size | UNCOMPRESSED_BLOCK);
+            out.write(compressed, 0, 4);
+            out.write(block, 0, size);
+        }
+        size = 0;
+    }
+
+    /**
+     * Compress and write the buffered data as a block, then flush the
+     * underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    /**
+     * Write the remaining data, the end mark and the content checksum, then
+     * close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            writeBlock();
+            final byte[] trailer = new byte[8];
+            putIntLE(trailer, 4, contentChecksum.getValue());
+            out.write(trailer);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("stream is closed");
+    }
+
+    static void putIntLE(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >>> 8);
+        buf[pos + 2] = (byte) (value >>> 16);
+        buf[pos + 3] = (byte) (value >>> 24);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "blockSize="
+                + block.length + ", out=" + out + '}';
+    }
+}
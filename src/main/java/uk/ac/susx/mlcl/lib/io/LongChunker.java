@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * LongChunker is a LongSource adapter that buffers values into arrays
+ * of at most {@code maxChunkSize} values. The primitive counterpart of
+ * {@link Chunker}. Each chunk is newly allocated and exactly as long as the
+ * number of values it holds, so the consumer is free to retain it.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @param <S> Type of encapsulated LongSource
+ */
+public class LongChunker<S extends LongSource>
+        implements ObjectSource<long[]>, Closeable {
+
+    private int maxChunkSize;
+
+    private final S inner;
+
+    private LongChunker(S inner, int maxChunkSize) {
+        this.inner = inner;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public static ObjectSource<long[]> newInstance(
+            LongSource source, int maxChunkSize) {
+        Checks.checkNotNull("source", source);
+        Checks.checkRangeIncl("maxChunkSize", maxChunkSize, 1,
+                              Integer.MAX_VALUE);
+        return new LongChunker<LongSource>(source, maxChunkSize);
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        Checks.checkRangeIncl("maxChunkSize", maxChunkSize, 1,
+                              Integer.MAX_VALUE);
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public long[] read() throws IOException {
+        final long[] chunk = new long[maxChunkSize];
+        int size = 0;
+        int n;
+        while (size < chunk.length
+                && (n = inner.read(chunk, size, chunk.length - size)) > 0)
+            size += n;
+        if (size == 0)
+            throw new NoSuchElementException();
+        return size == chunk.length ? chunk : Arrays.copyOf(chunk, size);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return "LongChunker{" + "maxChunkSize=" + maxChunkSize
+                + ", inner=" + inner + '}';
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * A source of primitive {@code long} values. The primitive counterpart of
+ * {@code ObjectSource<Long>}, which avoids boxing each value.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface LongSource {
+
+    /**
+     * Retrieve the next available value.
+     *
+     * @return The next value
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    long read() throws IOException;
+
+    /**
+     * Read up to {@code len} values into {@code dst}, starting at offset
+     * {@code off}. Fewer than {@code len} values may be read; zero values
+     * are read only if {@code len} is zero or there are no more values
+     * available (i.e. {@link #hasNext()} is false).
+     *
+     * @param dst array to store the values in
+     * @param off offset into {@code dst} of the first value read
+     * @param len maximum number of values to read
+     * @return number of values read
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    int read(long[] dst, int off, int len) throws IOException;
+
+    /**
+     * Whether or not another value can be read.
+     *
+     * @return true if a value can be read, false otherwise.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    boolean hasNext() throws IOException;
+
+}
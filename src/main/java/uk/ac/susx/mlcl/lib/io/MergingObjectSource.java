@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>ObjectSource that merges a number of sorted sources into a single sorted
+ * source.</p>
+ *
+ * <p>The next record of each source is held in a tournament (loser) tree, so
+ * producing each record requires about log<sub>2</sub>(k) comparisons, where
+ * k is the number of sources. Records that compare equal are produced in the
+ * order of their sources in the list, so the merge is stable.</p>
+ *
+ * <p>Records are read from each source in blocks of {@code blockSize}, so
+ * that sources backed by files are read sequentially in reasonably large
+ * amounts.</p>
+ *
+ * <p>If a {@link Reducer} is given, then runs of records that compare equal
+ * are combined into a single record before being produced.</p>
+ *
+ * @param <T> type of object produced
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class MergingObjectSource<T> implements ObjectSource<T>, Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private final ObjectSource<? extends T>[] sources;
+
+    private final Comparator<? super T> comparator;
+
+    private final Reducer<T> reducer;
+
+    private final int blockSize;
+
+    /**
+     * Number of sources, and leaves of the tree.
+     */
+    private final int k;
+
+    /**
+     * Internal nodes of the tree, each holding the index of the source that
+     * lost the comparison at that node. Element 0 holds the overall winner.
+     */
+    private final int[] tree;
+
+    /**
+     * Next record of each source.
+     */
+    private final Object[] heads;
+
+    /**
+     * Whether each source has been exhausted.
+     */
+    private final boolean[] done;
+
+    private final Object[][] blocks;
+
+    private final int[] blockPos;
+
+    private final int[] blockLen;
+
+    @SuppressWarnings("unchecked")
+    public MergingObjectSource(List<? extends ObjectSource<? extends T>> sources,
+                               Comparator<? super T> comparator,
+                               Reducer<T> reducer, int blockSize)
+            throws IOException {
+        Checks.checkNotNull("sources", sources);
+        Checks.checkNotNull("comparator", comparator);
+        Checks.checkRangeIncl("blockSize", blockSize, 1, Integer.MAX_VALUE);
+        this.sources = sources.toArray(new ObjectSource[sources.size()]);
+        this.comparator = comparator;
+        this.reducer = reducer;
+        this.blockSize = blockSize;
+        this.k = this.sources.length;
+        this.tree = new int[Math.max(1, k)];
+        this.heads = new Object[k];
+        this.done = new boolean[k];
+        this.blocks = new Object[k][];
+        this.blockPos = new int[k];
+        this.blockLen = new int[k];
+
+        for (int i = 0; i < k; i++) {
+            Checks.checkNotNull("sources[" + i + "]", this.sources[i]);
+            advance(i);
+        }
+
+        // Initially every node holds a virtual leaf k, which beats all others,
+        // so that each real leaf displaces one as it is played up the tree.
+        Arrays.fill(tree, k);
+        for (int i = k - 1; i >= 0; i--)
+            replay(i);
+    }
+
+    public MergingObjectSource(List<? extends ObjectSource<? extends T>> sources,
+                               Comparator<? super T> comparator,
+                               Reducer<T> reducer)
+            throws IOException {
+        this(sources, comparator, reducer, DEFAULT_BLOCK_SIZE);
+    }
+
+    public MergingObjectSource(List<? extends ObjectSource<? extends T>> sources,
+                               Comparator<? super T> comparator)
+            throws IOException {
+        this(sources, comparator, null, DEFAULT_BLOCK_SIZE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return k > 0 && !done[tree[0]];
+    }
+
+    @Override
+    public T read() throws IOException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        int winner = tree[0];
+        T record = head(winner);
+        advance(winner);
+        replay(winner);
+        if (reducer != null) {
+            winner = tree[0];
+            while (!done[winner]
+                    && comparator.compare(record, head(winner)) == 0) {
+                record = reducer.reduce(record, head(winner));
+                advance(winner);
+                replay(winner);
+                winner = tree[0];
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException ex = null;
+        for (int i = 0; i < k; i++) {
+            done[i] = true;
+            heads[i] = null;
+            blocks[i] = null;
+            if (sources[i] instanceof Closeable) {
+                try {
+                    ((Closeable) sources[i]).close();
+                } catch (IOException e) {
+                    ex = e;
+                }
+            }
+        }
+        if (ex != null)
+            throw ex;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T head(int i) {
+        return (T) heads[i];
+    }
+
+    /**
+     * Replace the head of source {@code i} with its next record, reading a
+     * new block if necessary, or mark it done.
+     */
+    private void advance(int i) throws IOException {
+        if (blockPos[i] == blockLen[i]) {
+            if (done[i] || !sources[i].hasNext()) {
+                done[i] = true;
+                heads[i] = null;
+                blocks[i] = null;
+                return;
+            }
+            if (blocks[i] == null)
+                blocks[i] = new Object[blockSize];
+            final Object[] block = blocks[i];
+            int n = 0;
+            do {
+                block[n++] = sources[i].read();
+            } while (n < blockSize && sources[i].hasNext());
+            blockPos[i] = 0;
+            blockLen[i] = n;
+        }
+        heads[i] = blocks[i][blockPos[i]];
+        blocks[i][blockPos[i]++] = null;
+    }
+
+    /**
+     * Play leaf {@code s} up the tree from the bottom, storing the loser at
+     * each node, and the overall winner at the root.
+     */
+    private void replay(int s) {
+        for (int t = (s + k) >>> 1; t > 0; t >>>= 1) {
+            if (beats(tree[t], s)) {
+                final int loser = s;
+                s = tree[t];
+                tree[t] = loser;
+            }
+        }
+        tree[0] = s;
+    }
+
+    private boolean beats(int a, int b) {
+        if (a == k || b == k)
+            return a == k;
+        if (done[a] || done[b])
+            return !done[a];
+        final int c = comparator.compare(head(a), head(b));
+        return c < 0 || (c == 0 && a < b);
+    }
+}
@@ -33,6 +33,7 @@ package uk.ac.susx.mlcl.lib.io;
 import java.io.Flushable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -47,9 +48,89 @@ import uk.ac.susx.mlcl.lib.Checks;
  */
 public final class ObjectIO {
 
+    /**
+     * Number of records moved in each batch when copying between sources and
+     * sinks that support batch operations.
+     */
+    public static final int COPY_BATCH_SIZE = 256;
+
     private ObjectIO() {
     }
 
+    /**
+     * Read up to {@code len} records from {@code src} into {@code dst},
+     * starting at offset {@code off}. If the source is a
+     * {@link BatchObjectSource} the batch is read in a single invocation,
+     * otherwise records are read one at a time until the batch is full or the
+     * source is exhausted.
+     *
+     * @param <T> type of object produced
+     * @param src source to read from
+     * @param dst array to store the records in
+     * @param off offset into {@code dst} of the first record read
+     * @param len maximum number of records to read
+     * @return number of records read; zero only if {@code len} is zero or
+     *          the source is exhausted
+     * @throws IOException if some I/O error occurs
+     */
+    public static <T> int read(ObjectSource<? extends T> src, T[] dst,
+                               int off, int len) throws IOException {
+        return readBatch(src, dst, off, len);
+    }
+
+    /**
+     * Read a batch of records into an untyped array; each record stored is an
+     * instance of the source's type parameter.
+     */
+    static int readBatch(ObjectSource<?> src, Object[] dst, int off, int len)
+            throws IOException {
+        if (off < 0 || len < 0 || off + len > dst.length)
+            throw new IndexOutOfBoundsException(
+                    "off=" + off + ", len=" + len + ", length=" + dst.length);
+        if (src instanceof BatchObjectSource)
+            return ((BatchObjectSource<?>) src).read(dst, off, len);
+        int n = 0;
+        while (n < len && src.hasNext())
+            dst[off + n++] = src.read();
+        return n;
+    }
+
+    /**
+     * Write the {@code len} records in {@code src}, starting at offset
+     * {@code off}, to {@code sink}. If the sink is a {@link BatchObjectSink}
+     * the batch is written in a single invocation, otherwise records are
+     * written one at a time.
+     *
+     * @param <T> type of object consumed
+     * @param sink sink to write to
+     * @param src array of records to write
+     * @param off offset into {@code src} of the first record
+     * @param len number of records to write
+     * @throws IOException if some I/O error occurs
+     */
+    public static <T> void write(ObjectSink<? super T> sink, T[] src,
+                                 int off, int len) throws IOException {
+        writeBatch(sink, src, off, len);
+    }
+
+    /**
+     * Write a batch of records from an untyped array. The caller must ensure
+     * that every record in the range is an instance of {@code T}.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void writeBatch(ObjectSink<T> sink, Object[] src,
+                               int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > src.length)
+            throw new IndexOutOfBoundsException(
+                    "off=" + off + ", len=" + len + ", length=" + src.length);
+        if (sink instanceof BatchObjectSink) {
+            ((BatchObjectSink<T>) sink).write(src, off, len);
+        } else {
+            for (int i = off; i < off + len; i++)
+                sink.write((T) src[i]);
+        }
+    }
+
     
     public static <T> ObjectSink<T> nullSink() {
         return new ObjectSink<T>() {
@@ -105,13 +186,20 @@ public final class ObjectIO {
     }
 
     public static <T> ObjectSink<T> asSink(final Collection<T> collection) {
-        return new ObjectSink<T>() {
+        return new BatchObjectSink<T>() {
 
             @Override
             public void write(T record) throws IOException {
                 collection.add(record);
             }
 
+            @Override
+            @SuppressWarnings("unchecked")
+            public void write(Object[] src, int off, int len) throws IOException {
+                final List<T> batch = (List<T>) Arrays.asList(src);
+                collection.addAll(batch.subList(off, off + len));
+            }
+
         };
     }
 
@@ -199,9 +287,54 @@ public final class ObjectIO {
         return copy(source, sink, Integer.MAX_VALUE);
     }
 
+    /**
+     * Merge a number of sorted sources into a single sorted source, using a
+     * {@link MergingObjectSource}.
+     *
+     * @param <T> type of object produced
+     * @param sources sources to merge, each sorted according to comparator
+     * @param comparator order of the sources
+     * @return source producing the records of all sources in sorted order
+     * @throws IOException if some I/O error occurs
+     */
+    public static <T> MergingObjectSource<T> merge(
+            List<? extends ObjectSource<? extends T>> sources,
+            Comparator<? super T> comparator) throws IOException {
+        return new MergingObjectSource<T>(sources, comparator);
+    }
+
+    /**
+     * Merge a number of sorted sources into a single sorted source, using a
+     * {@link MergingObjectSource}. Records that are equal according to the
+     * comparator are combined using the reducer, so each record produced is
+     * distinct.
+     *
+     * @param <T> type of object produced
+     * @param sources sources to merge, each sorted according to comparator
+     * @param comparator order of the sources
+     * @param reducer combines records that are equal according to comparator
+     * @return source producing the reduced records in sorted order
+     * @throws IOException if some I/O error occurs
+     */
+    public static <T> MergingObjectSource<T> merge(
+            List<? extends ObjectSource<? extends T>> sources,
+            Comparator<? super T> comparator, Reducer<T> reducer)
+            throws IOException {
+        Checks.checkNotNull("reducer", reducer);
+        return new MergingObjectSource<T>(sources, comparator, reducer);
+    }
+
     public static <T> void copy(ObjectSource<? extends T> src, ObjectSink<? super T> sink) throws IOException {
-        while (src.hasNext()) {
-            sink.write(src.read());
+        if (src instanceof BatchObjectSource || sink instanceof BatchObjectSink) {
+            // Every record read from src is a T, so may be written to sink
+            final Object[] batch = new Object[COPY_BATCH_SIZE];
+            int n;
+            while ((n = readBatch(src, batch, 0, batch.length)) > 0)
+                writeBatch(sink, batch, 0, n);
+        } else {
+            while (src.hasNext()) {
+                sink.write(src.read());
+            }
         }
         if (sink instanceof Flushable)
             ((Flushable) sink).flush();
@@ -209,9 +342,16 @@ public final class ObjectIO {
 
     public static long flush(ObjectSource<?> src) throws IOException {
         long count = 0;
-        while (src.hasNext()) {
-            src.read();
-            ++count;
+        if (src instanceof BatchObjectSource) {
+            final Object[] batch = new Object[COPY_BATCH_SIZE];
+            int n;
+            while ((n = readBatch(src, batch, 0, batch.length)) > 0)
+                count += n;
+        } else {
+            while (src.hasNext()) {
+                src.read();
+                ++count;
+            }
         }
         return count;
     }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Pipeline stage that applies a function to each chunk from a source of
+ * chunks (such as a {@link Chunker}) in parallel, and writes the results to a
+ * sink in the original order.</p>
+ *
+ * <p>Chunks are read on the calling thread and stamped with consecutive
+ * sequence numbers (see {@link Chunk#setSequence(long) }) before being
+ * submitted to the executor. At most {@code maxInFlight} chunks are
+ * read but not yet written; when the limit is reached the caller waits
+ * for the oldest chunk to complete and writes its results, which provides
+ * back-pressure on the source and bounds memory use.</p>
+ *
+ * <p>Statistics are kept for each of the three stages: reading chunks from
+ * the source, applying the function, and writing the results to the sink.</p>
+ *
+ * @param <T> type of items consumed
+ * @param <R> type of results produced
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ParallelChunkProcessor<T, R> {
+
+    /**
+     * Defines the processing applied to each chunk. Implementations must be
+     * thread-safe, since many chunks are processed at once. The chunk is
+     * closed once the function returns, returning it to its
+     * {@link ChunkPool} if it has one, so the result must not refer to it.
+     *
+     * @param <T> type of items consumed
+     * @param <R> type of results produced
+     */
+    public interface ChunkFunction<T, R> {
+
+        List<R> apply(Chunk<T> chunk) throws IOException;
+    }
+
+    private final ChunkFunction<T, ? extends R> function;
+
+    private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService executor = null;
+
+    private final StageStatistics readStatistics = new StageStatistics("read");
+
+    private final StageStatistics processStatistics =
+            new StageStatistics("process");
+
+    private final StageStatistics writeStatistics =
+            new StageStatistics("write");
+
+    public ParallelChunkProcessor(ChunkFunction<T, ? extends R> function) {
+        Checks.checkNotNull("function", function);
+        this.function = function;
+    }
+
+    public final int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight maximum number of chunks that have been read, but
+     *          whose results have not yet been written
+     */
+    public final void setMaxInFlight(int maxInFlight) {
+        Checks.checkRangeIncl("maxInFlight", maxInFlight, 1, Integer.MAX_VALUE);
+        this.maxInFlight = maxInFlight;
+    }
+
+    public final ExecutorService getExecutor() {
+        return executor == null ? BackgroundTasks.executor() : executor;
+    }
+
+    /**
+     * Set the executor that the function is applied on. By default a shared
+     * executor of daemon threads is used, and the parallelism is limited by
+     * {@code maxInFlight}.
+     *
+     * @param executor executor for processing chunks
+     */
+    public final void setExecutor(ExecutorService executor) {
+        Checks.checkNotNull("executor", executor);
+        this.executor = executor;
+    }
+
+    public final StageStatistics getReadStatistics() {
+        return readStatistics;
+    }
+
+    public final StageStatistics getProcessStatistics() {
+        return processStatistics;
+    }
+
+    public final StageStatistics getWriteStatistics() {
+        return writeStatistics;
+    }
+
+    /**
+     * Process every chunk from the {@code source}, writing the results to
+     * the {@code sink} in the order of the chunks. Neither the source nor
+     * the sink is closed, but the sink is flushed if it is
+     * {@link Flushable}.
+     *
+     * @param source source of chunks to process
+     * @param sink destination of the results
+     * @return number of chunks processed
+     * @throws IOException if the source, sink, or function throws one
+     */
+    public long run(ObjectSource<Chunk<T>> source, ObjectSink<? super R> sink)
+            throws IOException {
+        Checks.checkNotNull("source", source);
+        Checks.checkNotNull("sink", sink);
+        final Deque<Future<Result<R>>> inFlight =
+                new ArrayDeque<Future<Result<R>>>(maxInFlight);
+        long nextRead = 0;
+        long nextWrite = 0;
+        boolean complete = false;
+        try {
+            while (true) {
+                // Make room before reading, so that no more than maxInFlight
+                // chunks are held at once.
+                if (inFlight.size() >= maxInFlight)
+                    write(BackgroundTasks.get(inFlight.removeFirst()),
+                          nextWrite++, sink);
+
+                final long start = System.nanoTime();
+                if (!source.hasNext())
+                    break;
+                final Chunk<T> chunk = source.read();
+                readStatistics.record(chunk.size(), System.nanoTime() - start);
+                chunk.setSequence(nextRead++);
+                inFlight.addLast(getExecutor().submit(new Task(chunk)));
+            }
+            while (!inFlight.isEmpty())
+                write(BackgroundTasks.get(inFlight.removeFirst()),
+                      nextWrite++, sink);
+            if (sink instanceof Flushable)
+                ((Flushable) sink).flush();
+            complete = true;
+        } finally {
+            if (!complete)
+                for (Future<Result<R>> future : inFlight)
+                    BackgroundTasks.discard(future);
+        }
+        return nextWrite;
+    }
+
+    private void write(Result<R> result, long expectedSequence,
+                       ObjectSink<? super R> sink) throws IOException {
+        assert result.sequence == expectedSequence;
+        final long start = System.nanoTime();
+        for (R item : result.items)
+            sink.write(item);
+        writeStatistics.record(result.items.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelChunkProcessor{" + "function=" + function
+                + ", maxInFlight=" + maxInFlight
+                + ", read=" + readStatistics
+                + ", process=" + processStatistics
+                + ", write=" + writeStatistics + '}';
+    }
+
+    private static final class Result<R> {
+
+        final long sequence;
+
+        final List<? extends R> items;
+
+        Result(long sequence, List<? extends R> items) {
+            this.sequence = sequence;
+            this.items = items;
+        }
+    }
+
+    private final class Task implements Callable<Result<R>> {
+
+        private final Chunk<T> chunk;
+
+        Task(Chunk<T> chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Result<R> call() throws IOException {
+            final int size = chunk.size();
+            final long sequence = chunk.getSequence();
+            final long start = System.nanoTime();
+            final List<? extends R> items;
+            try {
+                items = function.apply(chunk);
+            } finally {
+                chunk.close();
+            }
+            processStatistics.record(size, System.nanoTime() - start);
+            return new Result<R>(sequence, items);
+        }
+    }
+}
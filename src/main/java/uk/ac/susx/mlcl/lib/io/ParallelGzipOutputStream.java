@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>OutputStream that gzip compresses data in parallel, in the style of
+ * pigz.</p>
+ *
+ * <p>The data is divided into fixed size blocks, and each block is compressed
+ * as an independent gzip member on a pool of threads. The compressed members
+ * are written to the underlying stream in order, so the output is a valid
+ * multi-member gzip stream that can be read by any standard gunzip, or by
+ * {@link java.util.zip.GZIPInputStream}.</p>
+ *
+ * <p>At most {@code threads} blocks are compressed at once; when the limit is
+ * reached the writer waits for the oldest block to complete, which bounds the
+ * memory used to about {@code 2 * threads * blockSize} bytes.</p>
+ *
+ * <p>Since the blocks are compressed independently the compression ratio is
+ * slightly worse than that of a single gzip stream; the difference is small
+ * for the default block size.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+
+    static final int GZIP_MAGIC = 0x8b1f;
+
+    static final int HEADER_SIZE = 10;
+
+    static final int TRAILER_SIZE = 8;
+
+    /**
+     * Size of the header of a block gzip member, which holds the "BC" extra
+     * subfield recording the compressed size of the member.
+     */
+    static final int BLOCK_HEADER_SIZE = 18;
+
+    /**
+     * Maximum compressed size of a block gzip member.
+     */
+    static final int MAX_BLOCK_MEMBER_SIZE = 1 << 16;
+
+    /**
+     * Empty block gzip member that marks the end of a block gzip file.
+     */
+    static final byte[] BLOCK_EOF_MARKER = {
+        0x1f, (byte) 0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte) 0xff, 0x06, 0,
+        0x42, 0x43, 0x02, 0, 0x1b, 0, 0x03, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private final OutputStream out;
+
+    private final int blockSize;
+
+    private final int threads;
+
+    private final int level;
+
+    private final ExecutorService executor;
+
+    private final boolean blockGzip;
+
+    private final Queue<Deflater> deflaters =
+            new ConcurrentLinkedQueue<Deflater>();
+
+    private final ArrayDeque<Future<byte[]>> pending =
+            new ArrayDeque<Future<byte[]>>();
+
+    private byte[] block;
+
+    private int size = 0;
+
+    private long memberCount = 0;
+
+    private long compressedBytes = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Construct a new ParallelGzipOutputStream.
+     *
+     * @param out stream the compressed data is written to
+     * @param blockSize number of uncompressed bytes in each gzip member
+     * @param threads maximum number of blocks compressed at once
+     * @param level deflate compression level, from 0 to 9, or
+     *          {@link Deflater#DEFAULT_COMPRESSION}
+     * @param executor runs the compression tasks
+     */
+    public ParallelGzipOutputStream(OutputStream out, int blockSize,
+                                    int threads, int level,
+                                    ExecutorService executor) {
+        this(out, blockSize, threads, level, executor, false);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, int blockSize, int threads,
+                             int level, ExecutorService executor,
+                             boolean blockGzip) {
+        Checks.checkNotNull("out", out);
+        Checks.checkRangeIncl("blockSize", blockSize, 1, Integer.MAX_VALUE);
+        Checks.checkRangeIncl("threads", threads, 1, Integer.MAX_VALUE);
+        Checks.checkRangeIncl("level", level, -1, 9);
+        Checks.checkNotNull("executor", executor);
+        this.out = out;
+        this.blockSize = blockSize;
+        this.threads = threads;
+        this.level = level;
+        this.executor = executor;
+        this.blockGzip = blockGzip;
+        this.block = new byte[blockSize];
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, DEFAULT_BLOCK_SIZE, threads, Deflater.DEFAULT_COMPRESSION,
+             BackgroundTasks.executor());
+    }
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, Runtime.getRuntime().availableProcessors());
+    }
+
+    public final int getBlockSize() {
+        return blockSize;
+    }
+
+    public final int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return number of gzip members written, or being compressed
+     */
+    public final long getMemberCount() {
+        return memberCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[size++] = (byte) b;
+        if (size == blockSize)
+            submit();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            final int n = Math.min(len, blockSize - size);
+            System.arraycopy(b, off, block, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == blockSize)
+                submit();
+        }
+    }
+
+    /**
+     * Compress the buffered data as a gzip member, and write all the members
+     * to the underlying stream, then flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (size > 0)
+            submit();
+        while (!pending.isEmpty())
+            drainOne();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            if (size > 0 || (memberCount == 0 && !blockGzip))
+                submit();
+            while (!pending.isEmpty())
+                drainOne();
+            if (blockGzip)
+                out.write(BLOCK_EOF_MARKER);
+        } finally {
+            closed = true;
+            while (!pending.isEmpty())
+                BackgroundTasks.discard(pending.poll());
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null)
+                deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Wait for all the pending members to be written to the underlying
+     * stream.
+     *
+     * @return number of compressed bytes written to the underlying stream
+     */
+    final long drain() throws IOException {
+        ensureOpen();
+        while (!pending.isEmpty())
+            drainOne();
+        return compressedBytes;
+    }
+
+    /**
+     * @return number of bytes buffered for the next member
+     */
+    final int bufferedSize() {
+        return size;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("stream is closed");
+    }
+
+    private void submit() throws IOException {
+        while (pending.size() >= threads)
+            drainOne();
+        final byte[] data = block;
+        final int length = size;
+        block = new byte[blockSize];
+        size = 0;
+        ++memberCount;
+        pending.add(executor.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+                Deflater deflater = deflaters.poll();
+                if (deflater == null)
+                    deflater = new Deflater(level, true);
+                try {
+                    return compressMember(deflater, data, 0, length,
+                                          blockGzip);
+                } finally {
+                    deflater.reset();
+                    deflaters.add(deflater);
+                }
+            }
+
+        }));
+    }
+
+    private void drainOne() throws IOException {
+        final byte[] member = BackgroundTasks.get(pending.poll());
+        out.write(member);
+        compressedBytes += member.length;
+    }
+
+    /**
+     * Compress the given data as a single gzip member.
+     *
+     * @param deflater a raw (nowrap) deflater in its initial state
+     * @param data uncompressed data
+     * @param off offset of the first byte in {@code data}
+     * @param len number of bytes to compress
+     * @param blockGzip whether to write a block gzip member, with the
+     *          compressed size recorded in the header
+     * @return the complete gzip member, including header and trailer
+     */
+    static byte[] compressMember(Deflater deflater, byte[] data,
+                                 int off, int len, boolean blockGzip) {
+        final byte[] header = blockGzip ? blockMemberHeader() : memberHeader();
+        byte[] buf = new byte[header.length + len + (len >>> 3) + 64];
+        System.arraycopy(header, 0, buf, 0, header.length);
+        int pos = header.length;
+
+        deflater.setInput(data, off, len);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (buf.length - pos < TRAILER_SIZE + 16)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            pos += deflater.deflate(buf, pos, buf.length - pos - TRAILER_SIZE);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        putIntLE(buf, pos, (int) crc.getValue());
+        putIntLE(buf, pos + 4, len);
+        pos += TRAILER_SIZE;
+
+        if (blockGzip) {
+            if (pos > MAX_BLOCK_MEMBER_SIZE) {
+                // Incompressible data; store it instead, which always fits
+                final Deflater store = new Deflater(Deflater.NO_COMPRESSION,
+                                                    true);
+                try {
+                    return compressMember(store, data, off, len, true);
+                } finally {
+                    store.end();
+                }
+            }
+            buf[16] = (byte) (pos - 1);
+            buf[17] = (byte) ((pos - 1) >>> 8);
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private static byte[] memberHeader() {
+        return new byte[]{
+                    (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8),
+                    Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    }
+
+    private static byte[] blockMemberHeader() {
+        return new byte[]{
+                    (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8),
+                    Deflater.DEFLATED, 4, 0, 0, 0, 0, 0, (byte) 0xff,
+                    6, 0, 'B', 'C', 2, 0, 0, 0};
+    }
+
+    static void putIntLE(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >>> 8);
+        buf[pos + 2] = (byte) (value >>> 16);
+        buf[pos + 3] = (byte) (value >>> 24);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "blockSize="
+                + blockSize + ", threads=" + threads + ", level=" + level
+                + ", members=" + memberCount + ", out=" + out + '}';
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>ObjectSink that distributes records between a number of partitions on
+ * disk, according to the hash of a key extracted from each record. All the
+ * records with equal keys are written to the same partition, so the
+ * partitions can subsequently be processed independently (and in
+ * parallel.)</p>
+ *
+ * <p>A file is created for each partition using the {@link FileFactory}.
+ * Records are encoded using the given {@link ObjectCodec} into a separate
+ * write buffer for each partition, which is only written to the file when it
+ * is full, so that the disk sees a small number of large writes rather than
+ * rapidly alternating between files. The files are opened through
+ * {@link Files}, so they are compressed according to the suffix given to
+ * the FileFactory (e.g. ".lz4", ".gz" or ".bgz").</p>
+ *
+ * <p>Once the sink has been closed, {@link #openPartitions()} returns a
+ * {@link SeekableObjectSource} over each partition. Seeking beyond the read
+ * buffer is only supported by uncompressed and block gzip partitions. The
+ * partition files are not deleted by this class.</p>
+ *
+ * @param <T> type of record consumed
+ * @param <K> type of key that records are partitioned by
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class PartitioningObjectSink<T, K>
+        implements ObjectSink<T>, Closeable, Flushable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+
+    /**
+     * Defines the hash of a key that is used to choose its partition.
+     *
+     * @param <K> type of key
+     */
+    public interface HashFunction<K> {
+
+        int hash(K key);
+    }
+
+    private final KeyFunction<? super T, ? extends K> keyFunction;
+
+    private final HashFunction<? super K> hashFunction;
+
+    private final ObjectCodec<T> codec;
+
+    private final File[] files;
+
+    private final CodecObjectSink<T>[] sinks;
+
+    private final long[] counts;
+
+    private boolean closed = false;
+
+    /**
+     * Construct a new PartitioningObjectSink.
+     *
+     * @param partitions number of partitions
+     * @param keyFunction defines the key of each record
+     * @param hashFunction defines the hash of each key, or null to use the
+     *          key's {@link Object#hashCode()}
+     * @param codec encodes the records into the partition files
+     * @param fileFactory creates the partition files
+     * @param bufferSize size in bytes of each partition's write buffer
+     * @throws IOException if the partition files could not be created
+     */
+    @SuppressWarnings("unchecked")
+    public PartitioningObjectSink(int partitions,
+                                  KeyFunction<? super T, ? extends K> keyFunction,
+                                  HashFunction<? super K> hashFunction,
+                                  ObjectCodec<T> codec,
+                                  FileFactory fileFactory,
+                                  int bufferSize)
+            throws IOException {
+        Checks.checkRangeIncl("partitions", partitions, 1, Integer.MAX_VALUE);
+        Checks.checkNotNull("keyFunction", keyFunction);
+        Checks.checkNotNull("codec", codec);
+        Checks.checkNotNull("fileFactory", fileFactory);
+        this.keyFunction = keyFunction;
+        this.hashFunction = hashFunction;
+        this.codec = codec;
+        this.files = new File[partitions];
+        this.sinks = new CodecObjectSink[partitions];
+        this.counts = new long[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                files[i] = fileFactory.createFile();
+                sinks[i] = new CodecObjectSink<T>(new BinaryDataSink(
+                        Files.openWritableByteChannel(files[i]),
+                        bufferSize), codec);
+            }
+        } catch (IOException ex) {
+            for (int i = 0; i < partitions && files[i] != null; i++) {
+                try {
+                    if (sinks[i] != null)
+                        sinks[i].close();
+                } catch (IOException e) {
+                    // Clean up the remaining partitions, and report the
+                    // original failure
+                } finally {
+                    files[i].delete();
+                }
+            }
+            throw ex;
+        }
+    }
+
+    public PartitioningObjectSink(int partitions,
+                                  KeyFunction<? super T, ? extends K> keyFunction,
+                                  ObjectCodec<T> codec,
+                                  FileFactory fileFactory)
+            throws IOException {
+        this(partitions, keyFunction, null, codec, fileFactory,
+             DEFAULT_BUFFER_SIZE);
+    }
+
+    public final int getPartitionCount() {
+        return files.length;
+    }
+
+    /**
+     * @return the partition files, indexed by partition
+     */
+    public final List<File> getFiles() {
+        return Collections.unmodifiableList(Arrays.asList(files));
+    }
+
+    /**
+     * @param partition index of a partition
+     * @return number of records written to the partition
+     */
+    public final long getCount(int partition) {
+        return counts[partition];
+    }
+
+    /**
+     * Return the partition that a record with the given {@code key} is
+     * written to.
+     *
+     * @param key the key of a record
+     * @return index of the partition
+     */
+    public int partitionOf(K key) {
+        final int hash;
+        if (hashFunction != null) {
+            hash = hashFunction.hash(key);
+        } else {
+            // Spread the bits of hashCode(), which are often poor in the low
+            // bits, using the MurmurHash3 finalizer.
+            int h = key == null ? 0 : key.hashCode();
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            hash = h;
+        }
+        return (hash & Integer.MAX_VALUE) % files.length;
+    }
+
+    @Override
+    public void write(T record) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Sink has been closed.");
+        final int partition = partitionOf(keyFunction.keyOf(record));
+        sinks[partition].write(record);
+        ++counts[partition];
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (CodecObjectSink<T> sink : sinks)
+            sink.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        IOException ex = null;
+        for (CodecObjectSink<T> sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                ex = e;
+            }
+        }
+        if (ex != null)
+            throw ex;
+    }
+
+    /**
+     * Open a source over the records of each partition. The sink must have
+     * been closed.
+     *
+     * @return a source for each partition, indexed by partition
+     * @throws IOException if the partition files could not be opened
+     */
+    public List<SeekableObjectSource<T, Tell>> openPartitions()
+            throws IOException {
+        if (!closed)
+            throw new IllegalStateException("Sink has not been closed.");
+        final List<SeekableObjectSource<T, Tell>> sources =
+                new ArrayList<SeekableObjectSource<T, Tell>>(files.length);
+        try {
+            for (File file : files)
+                sources.add(new SeekableCodecObjectSource<T>(
+                        new BinaryDataSource(
+                        Files.openReadableByteChannel(file)), codec));
+        } catch (IOException ex) {
+            for (SeekableObjectSource<T, Tell> src : sources)
+                ((Closeable) src).close();
+            throw ex;
+        }
+        return sources;
+    }
+}
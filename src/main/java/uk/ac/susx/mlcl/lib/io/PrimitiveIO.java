@@ -0,0 +1,964 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import uk.ac.susx.mlcl.lib.Checks;
+import uk.ac.susx.mlcl.lib.collect.Indexed;
+
+/**
+ * Static utility class for use with the primitive sources and sinks, such as
+ * {@link IntSource} and {@link IntSink}, and the pair streams, such as
+ * {@link IntDoubleSource} and {@link IntDoubleSink}.
+ *
+ * This class is generated by genPrimitiveIO.sh; edit the script rather than
+ * this file.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class PrimitiveIO {
+
+    private PrimitiveIO() {
+    }
+
+    private static void checkBounds(int off, int len, int length) {
+        if (off < 0 || len < 0 || off + len > length)
+            throw new IndexOutOfBoundsException(
+                    "off=" + off + ", len=" + len + ", length=" + length);
+    }
+
+    /**
+     * Produce the {@code len} values of {@code values} starting at offset
+     * {@code off}. The array is not copied.
+     *
+     * @param values array of values to produce
+     * @param off offset of the first value
+     * @param len number of values to produce
+     * @return source of the values
+     */
+    public static IntSource asSource(final int[] values, final int off,
+                                         final int len) {
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, values.length);
+        return new IntSource() {
+
+            private int pos = off;
+
+            @Override
+            public int read() {
+                if (pos >= off + len)
+                    throw new NoSuchElementException();
+                return values[pos++];
+            }
+
+            @Override
+            public int read(int[] dst, int dstOff, int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(values, pos, dst, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static IntSource asSource(final int[] values) {
+        return asSource(values, 0, values.length);
+    }
+
+    /**
+     * Unbox the values produced by the given ObjectSource.
+     *
+     * @param src source of boxed values
+     * @return source of primitive values
+     */
+    public static IntSource asIntSource(final ObjectSource<Integer> src) {
+        Checks.checkNotNull("src", src);
+        return new IntSource() {
+
+            @Override
+            public int read() throws IOException {
+                return src.read();
+            }
+
+            @Override
+            public int read(int[] dst, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext())
+                    dst[off + n++] = src.read();
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Box the values produced by the given IntSource.
+     *
+     * @param src source of primitive values
+     * @return source of boxed values
+     */
+    public static BatchObjectSource<Integer> asObjectSource(final IntSource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingIntSource(src);
+    }
+
+    private static final class BoxingIntSource
+            implements BatchObjectSource<Integer> {
+
+        private final IntSource src;
+
+        private int[] buffer = null;
+
+        BoxingIntSource(IntSource src) {
+            this.src = src;
+        }
+
+        @Override
+        public Integer read() throws IOException {
+            return Integer.valueOf(src.read());
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new int[len];
+            final int n = src.read(buffer, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = Integer.valueOf(buffer[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Box the values consumed by the returned sink, and write them to the
+     * given ObjectSink.
+     *
+     * @param sink sink of boxed values
+     * @return sink of primitive values
+     */
+    public static IntSink asIntSink(final ObjectSink<? super Integer> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new IntSink() {
+
+            @Override
+            public void write(int value) throws IOException {
+                sink.write(value);
+            }
+
+            @Override
+            public void write(int[] src, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(src[i]);
+            }
+
+        };
+    }
+
+    /**
+     * Unbox the values consumed by the returned sink, and write them to the
+     * given IntSink.
+     *
+     * @param sink sink of primitive values
+     * @return sink of boxed values
+     */
+    public static BatchObjectSink<Integer> asObjectSink(final IntSink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingIntSink(sink);
+    }
+
+    private static final class UnboxingIntSink
+            implements BatchObjectSink<Integer> {
+
+        private final IntSink sink;
+
+        private int[] buffer = null;
+
+        UnboxingIntSink(IntSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Integer record) throws IOException {
+            sink.write(record);
+        }
+
+        @Override
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new int[len];
+            for (int i = 0; i < len; i++)
+                buffer[i] = (Integer) src[off + i];
+            sink.write(buffer, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the values from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of values copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(IntSource src, IntSink sink) throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final int[] batch = new int[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(batch, 0, batch.length)) > 0) {
+            sink.write(batch, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Read all the remaining values from {@code src} into an array.
+     *
+     * @param src source to read from
+     * @return array of all the values read
+     * @throws IOException if some I/O error occurs
+     */
+    public static int[] readAll(IntSource src) throws IOException {
+        Checks.checkNotNull("src", src);
+        int[] values = new int[ObjectIO.COPY_BATCH_SIZE];
+        int size = 0;
+        int n;
+        while ((n = src.read(values, size, values.length - size)) > 0) {
+            size += n;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Produce the {@code len} values of {@code values} starting at offset
+     * {@code off}. The array is not copied.
+     *
+     * @param values array of values to produce
+     * @param off offset of the first value
+     * @param len number of values to produce
+     * @return source of the values
+     */
+    public static LongSource asSource(final long[] values, final int off,
+                                         final int len) {
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, values.length);
+        return new LongSource() {
+
+            private int pos = off;
+
+            @Override
+            public long read() {
+                if (pos >= off + len)
+                    throw new NoSuchElementException();
+                return values[pos++];
+            }
+
+            @Override
+            public int read(long[] dst, int dstOff, int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(values, pos, dst, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static LongSource asSource(final long[] values) {
+        return asSource(values, 0, values.length);
+    }
+
+    /**
+     * Unbox the values produced by the given ObjectSource.
+     *
+     * @param src source of boxed values
+     * @return source of primitive values
+     */
+    public static LongSource asLongSource(final ObjectSource<Long> src) {
+        Checks.checkNotNull("src", src);
+        return new LongSource() {
+
+            @Override
+            public long read() throws IOException {
+                return src.read();
+            }
+
+            @Override
+            public int read(long[] dst, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext())
+                    dst[off + n++] = src.read();
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Box the values produced by the given LongSource.
+     *
+     * @param src source of primitive values
+     * @return source of boxed values
+     */
+    public static BatchObjectSource<Long> asObjectSource(final LongSource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingLongSource(src);
+    }
+
+    private static final class BoxingLongSource
+            implements BatchObjectSource<Long> {
+
+        private final LongSource src;
+
+        private long[] buffer = null;
+
+        BoxingLongSource(LongSource src) {
+            this.src = src;
+        }
+
+        @Override
+        public Long read() throws IOException {
+            return Long.valueOf(src.read());
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new long[len];
+            final int n = src.read(buffer, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = Long.valueOf(buffer[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Box the values consumed by the returned sink, and write them to the
+     * given ObjectSink.
+     *
+     * @param sink sink of boxed values
+     * @return sink of primitive values
+     */
+    public static LongSink asLongSink(final ObjectSink<? super Long> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new LongSink() {
+
+            @Override
+            public void write(long value) throws IOException {
+                sink.write(value);
+            }
+
+            @Override
+            public void write(long[] src, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(src[i]);
+            }
+
+        };
+    }
+
+    /**
+     * Unbox the values consumed by the returned sink, and write them to the
+     * given LongSink.
+     *
+     * @param sink sink of primitive values
+     * @return sink of boxed values
+     */
+    public static BatchObjectSink<Long> asObjectSink(final LongSink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingLongSink(sink);
+    }
+
+    private static final class UnboxingLongSink
+            implements BatchObjectSink<Long> {
+
+        private final LongSink sink;
+
+        private long[] buffer = null;
+
+        UnboxingLongSink(LongSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Long record) throws IOException {
+            sink.write(record);
+        }
+
+        @Override
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new long[len];
+            for (int i = 0; i < len; i++)
+                buffer[i] = (Long) src[off + i];
+            sink.write(buffer, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the values from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of values copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(LongSource src, LongSink sink) throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final long[] batch = new long[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(batch, 0, batch.length)) > 0) {
+            sink.write(batch, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Read all the remaining values from {@code src} into an array.
+     *
+     * @param src source to read from
+     * @return array of all the values read
+     * @throws IOException if some I/O error occurs
+     */
+    public static long[] readAll(LongSource src) throws IOException {
+        Checks.checkNotNull("src", src);
+        long[] values = new long[ObjectIO.COPY_BATCH_SIZE];
+        int size = 0;
+        int n;
+        while ((n = src.read(values, size, values.length - size)) > 0) {
+            size += n;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Produce the {@code len} values of {@code values} starting at offset
+     * {@code off}. The array is not copied.
+     *
+     * @param values array of values to produce
+     * @param off offset of the first value
+     * @param len number of values to produce
+     * @return source of the values
+     */
+    public static DoubleSource asSource(final double[] values, final int off,
+                                         final int len) {
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, values.length);
+        return new DoubleSource() {
+
+            private int pos = off;
+
+            @Override
+            public double read() {
+                if (pos >= off + len)
+                    throw new NoSuchElementException();
+                return values[pos++];
+            }
+
+            @Override
+            public int read(double[] dst, int dstOff, int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(values, pos, dst, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static DoubleSource asSource(final double[] values) {
+        return asSource(values, 0, values.length);
+    }
+
+    /**
+     * Unbox the values produced by the given ObjectSource.
+     *
+     * @param src source of boxed values
+     * @return source of primitive values
+     */
+    public static DoubleSource asDoubleSource(final ObjectSource<Double> src) {
+        Checks.checkNotNull("src", src);
+        return new DoubleSource() {
+
+            @Override
+            public double read() throws IOException {
+                return src.read();
+            }
+
+            @Override
+            public int read(double[] dst, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext())
+                    dst[off + n++] = src.read();
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Box the values produced by the given DoubleSource.
+     *
+     * @param src source of primitive values
+     * @return source of boxed values
+     */
+    public static BatchObjectSource<Double> asObjectSource(final DoubleSource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingDoubleSource(src);
+    }
+
+    private static final class BoxingDoubleSource
+            implements BatchObjectSource<Double> {
+
+        private final DoubleSource src;
+
+        private double[] buffer = null;
+
+        BoxingDoubleSource(DoubleSource src) {
+            this.src = src;
+        }
+
+        @Override
+        public Double read() throws IOException {
+            return Double.valueOf(src.read());
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new double[len];
+            final int n = src.read(buffer, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = Double.valueOf(buffer[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Box the values consumed by the returned sink, and write them to the
+     * given ObjectSink.
+     *
+     * @param sink sink of boxed values
+     * @return sink of primitive values
+     */
+    public static DoubleSink asDoubleSink(final ObjectSink<? super Double> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new DoubleSink() {
+
+            @Override
+            public void write(double value) throws IOException {
+                sink.write(value);
+            }
+
+            @Override
+            public void write(double[] src, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(src[i]);
+            }
+
+        };
+    }
+
+    /**
+     * Unbox the values consumed by the returned sink, and write them to the
+     * given DoubleSink.
+     *
+     * @param sink sink of primitive values
+     * @return sink of boxed values
+     */
+    public static BatchObjectSink<Double> asObjectSink(final DoubleSink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingDoubleSink(sink);
+    }
+
+    private static final class UnboxingDoubleSink
+            implements BatchObjectSink<Double> {
+
+        private final DoubleSink sink;
+
+        private double[] buffer = null;
+
+        UnboxingDoubleSink(DoubleSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Double record) throws IOException {
+            sink.write(record);
+        }
+
+        @Override
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new double[len];
+            for (int i = 0; i < len; i++)
+                buffer[i] = (Double) src[off + i];
+            sink.write(buffer, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the values from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of values copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(DoubleSource src, DoubleSink sink) throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final double[] batch = new double[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(batch, 0, batch.length)) > 0) {
+            sink.write(batch, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Read all the remaining values from {@code src} into an array.
+     *
+     * @param src source to read from
+     * @return array of all the values read
+     * @throws IOException if some I/O error occurs
+     */
+    public static double[] readAll(DoubleSource src) throws IOException {
+        Checks.checkNotNull("src", src);
+        double[] values = new double[ObjectIO.COPY_BATCH_SIZE];
+        int size = 0;
+        int n;
+        while ((n = src.read(values, size, values.length - size)) > 0) {
+            size += n;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Produce the {@code len} pairs held in {@code keys} and {@code values},
+     * starting at offset {@code off} in both. The arrays are not copied.
+     *
+     * @param keys array of keys to produce
+     * @param values array of values to produce
+     * @param off offset of the first pair
+     * @param len number of pairs to produce
+     * @return source of the pairs
+     */
+    public static IntDoubleSource asSource(final int[] keys,
+                                            final double[] values,
+                                            final int off, final int len) {
+        Checks.checkNotNull("keys", keys);
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, keys.length);
+        checkBounds(off, len, values.length);
+        return new IntDoubleSource() {
+
+            private int pos = off;
+
+            @Override
+            public int read(int[] dstKeys, double[] dstValues, int dstOff,
+                            int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(keys, pos, dstKeys, dstOff, n);
+                System.arraycopy(values, pos, dstValues, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static IntDoubleSource asSource(final int[] keys,
+                                            final double[] values) {
+        Checks.checkNotNull("keys", keys);
+        return asSource(keys, values, 0, keys.length);
+    }
+
+    /**
+     * Unwrap the Indexed pairs produced by the given ObjectSource.
+     *
+     * @param src source of Indexed pairs
+     * @return source of primitive pairs
+     */
+    public static IntDoubleSource asIntDoubleSource(
+            final ObjectSource<Indexed<Double>> src) {
+        Checks.checkNotNull("src", src);
+        return new IntDoubleSource() {
+
+            @Override
+            public int read(int[] keys, double[] values, int off, int len)
+                    throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext()) {
+                    final Indexed<Double> pair = src.read();
+                    keys[off + n] = pair.key();
+                    values[off + n] = pair.value();
+                    ++n;
+                }
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Wrap the pairs produced by the given IntDoubleSource in Indexed
+     * instances.
+     *
+     * @param src source of primitive pairs
+     * @return source of Indexed pairs
+     */
+    public static BatchObjectSource<Indexed<Double>> asObjectSource(
+            final IntDoubleSource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingIntDoubleSource(src);
+    }
+
+    private static final class BoxingIntDoubleSource
+            implements BatchObjectSource<Indexed<Double>> {
+
+        private final IntDoubleSource src;
+
+        private int[] keys = null;
+
+        private double[] values = null;
+
+        BoxingIntDoubleSource(IntDoubleSource src) {
+            this.src = src;
+        }
+
+        private void ensureCapacity(int len) {
+            if (keys == null || keys.length < len) {
+                keys = new int[len];
+                values = new double[len];
+            }
+        }
+
+        @Override
+        public Indexed<Double> read() throws IOException {
+            ensureCapacity(1);
+            if (src.read(keys, values, 0, 1) == 0)
+                throw new NoSuchElementException();
+            return new Indexed<Double>(keys[0], values[0]);
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            ensureCapacity(len);
+            final int n = src.read(keys, values, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = new Indexed<Double>(keys[i], values[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Wrap the pairs consumed by the returned sink in Indexed instances, and
+     * write them to the given ObjectSink.
+     *
+     * @param sink sink of Indexed pairs
+     * @return sink of primitive pairs
+     */
+    public static IntDoubleSink asIntDoubleSink(
+            final ObjectSink<? super Indexed<Double>> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new IntDoubleSink() {
+
+            @Override
+            public void write(int key, double value) throws IOException {
+                sink.write(new Indexed<Double>(key, value));
+            }
+
+            @Override
+            public void write(int[] keys, double[] values, int off, int len)
+                    throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(new Indexed<Double>(keys[i], values[i]));
+            }
+
+        };
+    }
+
+    /**
+     * Unwrap the Indexed pairs consumed by the returned sink, and write them
+     * to the given IntDoubleSink.
+     *
+     * @param sink sink of primitive pairs
+     * @return sink of Indexed pairs
+     */
+    public static BatchObjectSink<Indexed<Double>> asObjectSink(
+            final IntDoubleSink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingIntDoubleSink(sink);
+    }
+
+    private static final class UnboxingIntDoubleSink
+            implements BatchObjectSink<Indexed<Double>> {
+
+        private final IntDoubleSink sink;
+
+        private int[] keys = null;
+
+        private double[] values = null;
+
+        UnboxingIntDoubleSink(IntDoubleSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Indexed<Double> record) throws IOException {
+            sink.write(record.key(), record.value());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (keys == null || keys.length < len) {
+                keys = new int[len];
+                values = new double[len];
+            }
+            for (int i = 0; i < len; i++) {
+                final Indexed<Double> pair = (Indexed<Double>) src[off + i];
+                keys[i] = pair.key();
+                values[i] = pair.value();
+            }
+            sink.write(keys, values, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the pairs from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of pairs copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(IntDoubleSource src, IntDoubleSink sink)
+            throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final int[] keys = new int[ObjectIO.COPY_BATCH_SIZE];
+        final double[] values = new double[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(keys, values, 0, keys.length)) > 0) {
+            sink.write(keys, values, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>InputStream that reads ahead from an encapsulated stream on a background
+ * thread, so that the work done by the encapsulated stream (such as
+ * inflating compressed data) overlaps with the work of the reader.</p>
+ *
+ * <p>The background thread fills a ring of {@code buffers} large buffers,
+ * which are handed to the reader as they are filled and returned to the
+ * background thread once they have been read. The thread is started by the
+ * first read, and stopped by {@link #close()}. Any exception thrown by the
+ * encapsulated stream is re-thrown by the read that reaches it.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class ReadAheadInputStream extends InputStream
+        implements Runnable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /**
+     * Interval at which the background thread checks for the stream being
+     * closed, while waiting for a buffer to be returned.
+     */
+    private static final long POLL_MILLIS = 10;
+
+    /**
+     * Queued after the last buffer.
+     */
+    private static final Buffer END = new Buffer(0);
+
+    private final InputStream inner;
+
+    private final int bufferSize;
+
+    private final int bufferCount;
+
+    private final BlockingQueue<Buffer> full;
+
+    private final BlockingQueue<Buffer> free;
+
+    private int allocated = 0;
+
+    private volatile boolean closed = false;
+
+    private volatile Throwable failure = null;
+
+    private Thread reader = null;
+
+    /**
+     * Buffer currently being read, or null if none has been taken.
+     */
+    private Buffer current = null;
+
+    public ReadAheadInputStream(InputStream inner, int bufferSize,
+                                int bufferCount) {
+        Checks.checkNotNull("inner", inner);
+        Checks.checkRangeIncl("bufferSize", bufferSize, 1, Integer.MAX_VALUE);
+        Checks.checkRangeIncl("bufferCount", bufferCount, 1,
+                              Integer.MAX_VALUE);
+        this.inner = inner;
+        this.bufferSize = bufferSize;
+        this.bufferCount = bufferCount;
+        this.full = new ArrayBlockingQueue<Buffer>(bufferCount + 1);
+        this.free = new ArrayBlockingQueue<Buffer>(bufferCount);
+    }
+
+    public ReadAheadInputStream(InputStream inner) {
+        this(inner, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                final Buffer buffer = takeFree();
+                if (buffer == null)
+                    return;
+                buffer.position = 0;
+                buffer.limit = 0;
+                int n = 0;
+                while (buffer.limit < bufferSize
+                        && (n = inner.read(buffer.data, buffer.limit,
+                                           bufferSize - buffer.limit)) != -1)
+                    buffer.limit += n;
+                if (buffer.limit > 0)
+                    full.put(buffer);
+                if (n == -1)
+                    break;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        full.offer(END);
+    }
+
+    /**
+     * Wait for a free buffer, or allocate a new one if fewer than
+     * {@code bufferCount} have been allocated.
+     *
+     * @return a free buffer, or null if the stream is closed first
+     */
+    private Buffer takeFree() throws InterruptedException {
+        Buffer buffer = free.poll();
+        if (buffer != null)
+            return buffer;
+        if (allocated < bufferCount) {
+            ++allocated;
+            return new Buffer(bufferSize);
+        }
+        while ((buffer = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null)
+            if (closed)
+                return null;
+        return buffer;
+    }
+
+    /**
+     * Make sure that the current buffer has data remaining, taking the next
+     * full buffer if necessary.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (closed)
+            throw new IOException("stream is closed");
+        if (current != null && current.position < current.limit)
+            return true;
+        if (current == END) {
+            checkFailure();
+            return false;
+        }
+        if (reader == null) {
+            reader = new Thread(this, "ReadAheadInputStream");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        if (current != null)
+            free.offer(current);
+        try {
+            current = full.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException ioe = new InterruptedIOException();
+            ioe.initCause(ex);
+            throw ioe;
+        }
+        if (current == END) {
+            checkFailure();
+            return false;
+        }
+        return true;
+    }
+
+    private void checkFailure() throws IOException {
+        final Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof IOException)
+            throw (IOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        throw new IOException(t);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return current.data[current.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        int count = 0;
+        while (count < len) {
+            // Only block for more data if nothing has been read yet
+            if (count > 0 && (current.position == current.limit)
+                    && full.isEmpty())
+                break;
+            if (!fill())
+                break;
+            final int n = Math.min(len - count,
+                                   current.limit - current.position);
+            System.arraycopy(current.data, current.position, b, off + count, n);
+            current.position += n;
+            count += n;
+        }
+        return count > 0 ? count : -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed || current == null || current == END)
+            return 0;
+        return current.limit - current.position;
+    }
+
+    /**
+     * Stop the background thread, waiting for it to finish filling any
+     * buffer, then close the encapsulated stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (reader != null) {
+            boolean interrupted = false;
+            while (reader.isAlive()) {
+                full.clear();
+                try {
+                    reader.join(POLL_MILLIS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        full.clear();
+        free.clear();
+        current = null;
+        inner.close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "bufferSize="
+                + bufferSize + ", bufferCount=" + bufferCount
+                + ", inner=" + inner + '}';
+    }
+
+    private static final class Buffer {
+
+        final byte[] data;
+
+        int position = 0;
+
+        int limit = 0;
+
+        Buffer(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import uk.ac.susx.mlcl.lib.Checks;
+import uk.ac.susx.mlcl.lib.MappedBuffers;
+
+/**
+ * <p>Scans a file for records separated by a single byte delimiter (by default
+ * the newline character) without creating a String for each record.</p>
+ *
+ * <p>The file is memory mapped in windows of {@code windowBytes}, and each
+ * window is searched for delimiters eight bytes at a time. Callers are handed
+ * a reusable {@link ByteBuffer} view of each record's bytes (excluding the
+ * delimiter), or a reusable {@link CharSequence} of the decoded characters.
+ * Both views are only valid until the next call to {@link #next()}, so they
+ * must be copied if they are required for longer.</p>
+ *
+ * <p>The delimiter must not occur inside any multi-byte character sequence
+ * of the file's encoding. This is true of ASCII delimiters for UTF-8 and the
+ * ISO-8859 family of character sets, but not for UTF-16 or UTF-32.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>
+ *     RecordScanner scanner = new RecordScanner(file);
+ *     try {
+ *         while (scanner.next()) {
+ *             CharSequence line = scanner.text();
+ *             ...
+ *         }
+ *     } finally {
+ *         scanner.close();
+ *     }
+ * </pre>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class RecordScanner implements Closeable {
+
+    public static final byte DEFAULT_DELIMITER = '\n';
+
+    private static final long DEFAULT_WINDOW_BYTES = 1 << 26;
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final long SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private final FileChannel channel;
+
+    private final byte delimiter;
+
+    /**
+     * The delimiter repeated in every byte of a long.
+     */
+    private final long pattern;
+
+    private final CharsetDecoder decoder;
+
+    private final boolean asciiCompatible;
+
+    private final long size;
+
+    private long windowBytes = DEFAULT_WINDOW_BYTES;
+
+    /**
+     * Currently mapped region of the file.
+     */
+    private ByteBuffer window = null;
+
+    /**
+     * Offset of the mapped region from the start of the file.
+     */
+    private long windowOffset = 0;
+
+    /**
+     * View of window that is positioned over the current record.
+     */
+    private ByteBuffer record = null;
+
+    /**
+     * Index in the window of the first byte of the current record.
+     */
+    private int recordStart = 0;
+
+    /**
+     * Index in the window of the first byte after the current record's
+     * delimiter, where scanning for the next record will begin.
+     */
+    private int next = 0;
+
+    /**
+     * Reusable decoded characters of the current record, or null if not yet
+     * decoded.
+     */
+    private CharBuffer chars = null;
+
+    private boolean charsValid = false;
+
+    /**
+     * Construct a new RecordScanner that reads records from the given
+     * {@code channel}, separated by the given {@code delimiter}, and decodes
+     * them using {@code charset}.
+     *
+     * @param channel FileChannel to scan, from it's current position
+     * @param delimiter byte value that terminates each record
+     * @param charset character set used to decode records in {@link #text()}
+     * @throws IOException if some I/O error occurs
+     */
+    public RecordScanner(FileChannel channel, byte delimiter, Charset charset)
+            throws IOException {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkNotNull("charset", charset);
+        this.channel = channel;
+        this.delimiter = delimiter;
+        this.pattern = (delimiter & 0xFFL) * LOW_BITS;
+        this.decoder = Files.decoderFor(charset);
+        this.asciiCompatible = CharFileChannel.isAsciiCompatible(charset);
+        this.size = channel.size();
+        this.windowOffset = channel.position();
+    }
+
+    /**
+     * Construct a new RecordScanner that reads lines from the given
+     * {@code file}, decoding them using the default character set.
+     *
+     * @param file file to scan
+     * @throws IOException if some I/O error occurs
+     */
+    public RecordScanner(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), DEFAULT_DELIMITER,
+             Files.DEFAULT_CHARSET);
+    }
+
+    /**
+     * @return size in bytes of the regions of the file that are mapped
+     */
+    public long getWindowBytes() {
+        return windowBytes;
+    }
+
+    /**
+     * Set the size in bytes of the regions of the file that are mapped. The
+     * window will be temporarily grown if a single record is larger.
+     *
+     * @param windowBytes size of the mapped regions
+     */
+    public void setWindowBytes(long windowBytes) {
+        Checks.checkRangeIncl("windowBytes", windowBytes, 1, Integer.MAX_VALUE);
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return true if there is another record, false if the end of the file
+     *          has been reached
+     * @throws IOException if some I/O error occurs
+     */
+    public boolean next() throws IOException {
+        charsValid = false;
+        if (window == null && !map(windowOffset, windowBytes))
+            return false;
+
+        recordStart = next;
+        int from = next;
+        while (true) {
+            final int end = indexOf(window, from, window.limit());
+            if (end != -1) {
+                setRecord(recordStart, end);
+                next = end + 1;
+                return true;
+            }
+
+            final long windowEnd = windowOffset + window.limit();
+            if (windowEnd >= size) {
+                if (recordStart == window.limit())
+                    return false;
+                // The final record is not terminated by a delimiter
+                setRecord(recordStart, window.limit());
+                next = window.limit();
+                return true;
+            }
+
+            // The record is split by the end of the window; map a new window
+            // starting at the record, large enough to contain some more of it
+            final int scanned = window.limit() - recordStart;
+            final long length = Math.max(windowBytes, 2L * scanned);
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Record at offset "
+                        + (windowOffset + recordStart) + " exceeds "
+                        + Integer.MAX_VALUE + " bytes.");
+            map(windowOffset + recordStart, length);
+            recordStart = 0;
+            from = scanned;
+        }
+    }
+
+    /**
+     * Return a view over the bytes of the current record, excluding the
+     * delimiter. The view remains valid only until the next call to
+     * {@link #next()}.
+     *
+     * @return bytes of the current record
+     */
+    public ByteBuffer record() {
+        if (record == null)
+            throw new IllegalStateException("next() has not been called.");
+        return record;
+    }
+
+    /**
+     * Return the current record decoded into characters. The returned
+     * sequence is reused, so it remains valid only until the next call to
+     * {@link #next()}.
+     *
+     * @return characters of the current record
+     * @throws CharacterCodingException if the record is malformed and the
+     *          decoder is configured to report errors
+     */
+    public CharSequence text() throws CharacterCodingException {
+        if (charsValid)
+            return chars;
+        final ByteBuffer src = record().duplicate();
+        if (chars == null || chars.capacity() < src.remaining())
+            chars = CharBuffer.allocate(Math.max(src.remaining(), 64));
+        chars.clear();
+        if (asciiCompatible)
+            CharFileChannel.decodeAscii(src, chars);
+        if (src.hasRemaining()) {
+            decoder.reset();
+            CoderResult coderResult;
+            while ((coderResult = decoder.decode(src, chars, true)).isOverflow()
+                    || (coderResult.isUnderflow()
+                        && (coderResult = decoder.flush(chars)).isOverflow())) {
+                final CharBuffer larger = CharBuffer.allocate(
+                        chars.capacity() * 2);
+                chars.flip();
+                larger.put(chars);
+                chars = larger;
+            }
+            if (coderResult.isError())
+                coderResult.throwException();
+        }
+        chars.flip();
+        charsValid = true;
+        return chars;
+    }
+
+    /**
+     * @return byte offset in the file of the start of the current record
+     */
+    public long recordOffset() {
+        return windowOffset + recordStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        record = null;
+        chars = null;
+        channel.close();
+    }
+
+    private void setRecord(int start, int end) {
+        record.limit(end).position(start);
+    }
+
+    private boolean map(long offset, long length) throws IOException {
+        length = Math.min(length, size - offset);
+        if (length <= 0)
+            return false;
+        // Retired windows are left to the garbage collector (rather than
+        // unmapped explicitly) since the caller may still hold a view.
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowOffset = offset;
+        record = window.duplicate();
+        next = 0;
+        return true;
+    }
+
+    /**
+     * Find the index of the first occurrence of the delimiter in the
+     * given range of a little-endian buffer, eight bytes at a time.
+     *
+     * @return index of the delimiter, or -1 if it does not occur
+     */
+    private int indexOf(final ByteBuffer buf, final int from, final int to) {
+        int i = from;
+        while (i + 8 <= to) {
+            final long x = buf.getLong(i) ^ pattern;
+            // Sets the high bit of the lowest zero byte (and possibly some
+            // higher bytes, but never any lower ones.)
+            final long found = (x - LOW_BITS) & ~x & HIGH_BITS;
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            i += 8;
+        }
+        while (i < to) {
+            if (buf.get(i) == delimiter)
+                return i;
+            ++i;
+        }
+        return -1;
+    }
+
+    /**
+     * Count the number of occurrences of the delimiter in the given range of
+     * a buffer, eight bytes at a time.
+     */
+    private static long count(final ByteBuffer buf, final long pattern,
+                              final byte delimiter) {
+        final int to = buf.limit();
+        long count = 0;
+        int i = 0;
+        while (i + 8 <= to) {
+            final long x = buf.getLong(i) ^ pattern;
+            // Sets the high bit of exactly those bytes that are zero
+            final long found = ~(((x & SEVEN_BITS) + SEVEN_BITS) | x | SEVEN_BITS);
+            count += Long.bitCount(found);
+            i += 8;
+        }
+        while (i < to) {
+            if (buf.get(i) == delimiter)
+                ++count;
+            ++i;
+        }
+        return count;
+    }
+
+    /**
+     * Count the number of records in the file, without decoding any
+     * characters. A trailing record that is not terminated by the delimiter
+     * is counted.
+     *
+     * @param channel FileChannel to scan, from the start
+     * @param delimiter byte value that terminates each record
+     * @return number of records
+     * @throws IOException if some I/O error occurs
+     */
+    public static long countRecords(FileChannel channel, byte delimiter)
+            throws IOException {
+        final long pattern = (delimiter & 0xFFL) * LOW_BITS;
+        final long size = channel.size();
+        long count = 0;
+        long offset = 0;
+        byte last = delimiter;
+        while (offset < size) {
+            final long length = Math.min(size - offset, DEFAULT_WINDOW_BYTES);
+            final MappedByteBuffer buf = channel.map(
+                    FileChannel.MapMode.READ_ONLY, offset, length);
+            count += count(buf, pattern, delimiter);
+            last = buf.get(buf.limit() - 1);
+            MappedBuffers.unmap(buf);
+            offset += length;
+        }
+        if (last != delimiter)
+            ++count;
+        return count;
+    }
+
+    /**
+     * Count the number of lines in the file, without decoding any characters.
+     * Lines are terminated by a newline character; a final line that is not
+     * terminated is also counted.
+     *
+     * @param file file to count lines in
+     * @return number of lines
+     * @throws IOException if some I/O error occurs
+     */
+    public static long countLines(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            return countRecords(in.getChannel(), DEFAULT_DELIMITER);
+        } finally {
+            in.close();
+        }
+    }
+}
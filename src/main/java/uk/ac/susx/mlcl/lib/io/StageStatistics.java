@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters of the work done by one stage of a pipeline: the
+ * number of chunks and items that passed through it, and the time spent on
+ * them.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class StageStatistics {
+
+    private final String name;
+
+    private final AtomicLong chunkCount = new AtomicLong(0);
+
+    private final AtomicLong itemCount = new AtomicLong(0);
+
+    private final AtomicLong totalNanos = new AtomicLong(0);
+
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    public StageStatistics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record that a chunk passed through the stage.
+     *
+     * @param items number of items in the chunk
+     * @param nanos time spent on the chunk, in nanoseconds
+     */
+    public void record(int items, long nanos) {
+        chunkCount.incrementAndGet();
+        itemCount.addAndGet(items);
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())
+                && !maxNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    public long getChunkCount() {
+        return chunkCount.get();
+    }
+
+    public long getItemCount() {
+        return itemCount.get();
+    }
+
+    /**
+     * @return total time spent in the stage, summed over all threads
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return the longest time spent on any one chunk
+     */
+    public long getMaxLatencyNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return mean time spent on each chunk
+     */
+    public double getMeanLatencyNanos() {
+        final long chunks = getChunkCount();
+        return chunks == 0 ? 0 : (double) getTotalNanos() / chunks;
+    }
+
+    /**
+     * @return items processed per second of time spent in the stage
+     */
+    public double getThroughput() {
+        final long nanos = getTotalNanos();
+        return nanos == 0 ? 0
+                : getItemCount() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "StageStatistics{" + "name=" + name
+                + ", chunks=" + getChunkCount()
+                + ", items=" + getItemCount()
+                + ", meanLatencyMillis=" + getMeanLatencyNanos() / 1e6
+                + ", maxLatencyMillis=" + getMaxLatencyNanos() / 1e6
+                + ", itemsPerSecond=" + getThroughput() + '}';
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>DataSink that writes Tab-Separated-Values to a
+ * {@link WritableCharChannel}, to be read back by {@link TSVDataSource}.</p>
+ *
+ * <p>Fields are separated by tab characters, and records are terminated by
+ * newline characters. Tab, newline, carriage-return and backslash characters
+ * in string fields are escaped as {@code \t}, {@code \n}, {@code \r} and
+ * {@code \\} respectively.</p>
+ *
+ * <p>Numbers are formatted directly into the output buffer. Doubles are
+ * written as the shortest decimal fraction {@code m / 10^k} that converts
+ * back to exactly the same value, which is found without creating any
+ * Strings; the few values for which no such fraction exists with a small
+ * {@code m} and {@code k} are formatted by {@link Double#toString(double) }.
+ * </p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class TSVDataSink implements DataSink, Closeable, Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 13;
+
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private static final long MAX_EXACT_FLOAT = 1L << 24;
+
+    private static final int MAX_FLOAT_EXPONENT = 10;
+
+    private static final int MAX_DOUBLE_EXPONENT = 17;
+
+    private static final long[] LONG_POW10 = new long[MAX_DOUBLE_EXPONENT + 1];
+
+    static {
+        LONG_POW10[0] = 1;
+        for (int i = 1; i < LONG_POW10.length; i++)
+            LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+    }
+
+    private final WritableCharChannel channel;
+
+    private final CharBuffer buffer;
+
+    /**
+     * Storage for formatting numbers in reverse order.
+     */
+    private final char[] digits = new char[20];
+
+    private boolean startOfRecord = true;
+
+    public TSVDataSink(WritableCharChannel channel, int bufferSize) {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkRangeIncl("bufferSize", bufferSize, 64, Integer.MAX_VALUE);
+        this.channel = channel;
+        this.buffer = CharBuffer.allocate(bufferSize);
+    }
+
+    public TSVDataSink(WritableCharChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void endOfRecord() throws IOException {
+        ensure(1);
+        buffer.put(TSVDataSource.RECORD_DELIMITER);
+        startOfRecord = true;
+    }
+
+    @Override
+    public void writeByte(byte val) throws IOException {
+        writeLong(val);
+    }
+
+    @Override
+    public void writeChar(char val) throws IOException {
+        beginField(2);
+        putEscaped(val);
+    }
+
+    @Override
+    public void writeShort(short val) throws IOException {
+        writeLong(val);
+    }
+
+    @Override
+    public void writeInt(int val) throws IOException {
+        writeLong(val);
+    }
+
+    @Override
+    public void writeLong(long val) throws IOException {
+        beginField(20);
+        putLong(val);
+    }
+
+    @Override
+    public void writeDouble(double val) throws IOException {
+        beginField(2 * digits.length);
+        final double abs = Math.abs(val);
+        if (!Double.isNaN(val) && !Double.isInfinite(val)) {
+            for (int k = 0; k <= MAX_DOUBLE_EXPONENT; k++) {
+                final double scaled = abs * TSVDataSource.POW10[k];
+                if (scaled >= MAX_EXACT_DOUBLE)
+                    break;
+                final long m = (long) Math.rint(scaled);
+                if (m / TSVDataSource.POW10[k] == abs) {
+                    putDecimal(Double.doubleToRawLongBits(val) < 0, m, k);
+                    return;
+                }
+            }
+        }
+        putString(Double.toString(val));
+    }
+
+    @Override
+    public void writeFloat(float val) throws IOException {
+        beginField(2 * digits.length);
+        final float abs = Math.abs(val);
+        if (!Float.isNaN(val) && !Float.isInfinite(val)) {
+            for (int k = 0; k <= MAX_FLOAT_EXPONENT; k++) {
+                final float pow10 = (float) TSVDataSource.POW10[k];
+                final float scaled = abs * pow10;
+                if (scaled >= MAX_EXACT_FLOAT)
+                    break;
+                final long m = (long) Math.rint(scaled);
+                if ((float) m / pow10 == abs) {
+                    putDecimal(Float.floatToRawIntBits(val) < 0, m, k);
+                    return;
+                }
+            }
+        }
+        putString(Float.toString(val));
+    }
+
+    @Override
+    public void writeString(String str) throws IOException {
+        Checks.checkNotNull("str", str);
+        beginField(0);
+        final int n = str.length();
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < 2)
+                writeBuffer();
+            putEscaped(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeBuffer();
+        channel.close();
+    }
+
+    private void beginField(int required) throws IOException {
+        ensure(required + 1);
+        if (startOfRecord)
+            startOfRecord = false;
+        else
+            buffer.put(TSVDataSource.FIELD_DELIMITER);
+    }
+
+    private void putEscaped(char c) {
+        switch (c) {
+            case '\t':
+                buffer.put(TSVDataSource.ESCAPE).put('t');
+                break;
+            case '\n':
+                buffer.put(TSVDataSource.ESCAPE).put('n');
+                break;
+            case '\r':
+                buffer.put(TSVDataSource.ESCAPE).put('r');
+                break;
+            case TSVDataSource.ESCAPE:
+                buffer.put(TSVDataSource.ESCAPE).put(TSVDataSource.ESCAPE);
+                break;
+            default:
+                buffer.put(c);
+        }
+    }
+
+    /**
+     * Put a string that requires no escaping.
+     */
+    private void putString(String str) throws IOException {
+        ensure(str.length());
+        buffer.put(str);
+    }
+
+    private void putLong(long val) {
+        if (val == Long.MIN_VALUE) {
+            buffer.put(Long.toString(val));
+            return;
+        }
+        if (val < 0) {
+            buffer.put('-');
+            val = -val;
+        }
+        putDigits(val, 1);
+    }
+
+    /**
+     * Put the decimal digits of a non-negative value, left padded with zeros
+     * to at least {@code minDigits}.
+     */
+    private void putDigits(long val, int minDigits) {
+        int n = 0;
+        do {
+            digits[n++] = (char) ('0' + (val % 10));
+            val /= 10;
+        } while (val != 0);
+        while (n < minDigits)
+            digits[n++] = '0';
+        while (n > 0)
+            buffer.put(digits[--n]);
+    }
+
+    /**
+     * Put the decimal fraction {@code m / 10^k}, with at least one digit
+     * after the decimal point.
+     */
+    private void putDecimal(boolean negative, long m, int k) {
+        if (negative)
+            buffer.put('-');
+        putDigits(m / LONG_POW10[k], 1);
+        buffer.put('.');
+        if (k == 0)
+            buffer.put('0');
+        else
+            putDigits(m % LONG_POW10[k], k);
+    }
+
+    private void ensure(int required) throws IOException {
+        if (buffer.remaining() < required)
+            writeBuffer();
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
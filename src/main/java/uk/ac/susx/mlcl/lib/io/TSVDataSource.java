@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>SeekableDataSource that reads Tab-Separated-Values from a
+ * {@link CharFileChannel}, as written by {@link TSVDataSink}.</p>
+ *
+ * <p>Fields are separated by tab characters, and records are terminated by
+ * newline characters. Numeric fields are parsed directly from the decoded
+ * character buffer, without creating intermediate Strings, except in rare
+ * cases (such as numbers with more than 15 significant digits) where the
+ * standard library parser is needed for a correctly rounded result. String
+ * fields are unescaped as described in {@link TSVDataSink}.</p>
+ *
+ * <p>Positions are stored in the {@link Tell} as the byte offset of the next
+ * field in the underlying channel, suitable for
+ * {@link CharFileChannel#position(java.lang.Long) }. The offset is calculated
+ * by re-encoding the buffered (but unread) characters, so it is only accurate
+ * when the file contains no malformed input, and for character sets that do
+ * not use a byte order mark.</p>
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class TSVDataSource implements SeekableDataSource, Closeable {
+
+    static final char FIELD_DELIMITER = '\t';
+
+    static final char RECORD_DELIMITER = '\n';
+
+    static final char ESCAPE = '\\';
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 13;
+
+    /**
+     * Largest integer such that every integer of smaller magnitude can be
+     * represented exactly as a double.
+     */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    /**
+     * Powers of ten that are represented exactly as doubles.
+     */
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharFileChannel channel;
+
+    private final CharsetEncoder encoder;
+
+    private final boolean utf8;
+
+    private final boolean singleByte;
+
+    /**
+     * Buffer of decoded characters, always in read mode.
+     */
+    private CharBuffer buffer;
+
+    private boolean endOfInput = false;
+
+    private final StringBuilder builder = new StringBuilder();
+
+    public TSVDataSource(CharFileChannel channel, int bufferSize) {
+        Checks.checkNotNull("channel", channel);
+        Checks.checkRangeIncl("bufferSize", bufferSize, 1, Integer.MAX_VALUE);
+        this.channel = channel;
+        final Charset charset = channel.getCharset();
+        this.encoder = Files.encoderFor(charset);
+        this.utf8 = charset.name().equals("UTF-8");
+        this.singleByte = !utf8 && CharFileChannel.isAsciiCompatible(charset);
+        this.buffer = CharBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    public TSVDataSource(CharFileChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void endOfRecord() throws IOException {
+        if (!isEndOfRecordNext())
+            throw new IOException("Expecting end of record, but found "
+                    + (canRead() ? "more fields." : "end of input."));
+        buffer.get();
+    }
+
+    @Override
+    public boolean isEndOfRecordNext() throws IOException {
+        return fill(1) && buffer.get(buffer.position()) == RECORD_DELIMITER;
+    }
+
+    @Override
+    public boolean canRead() throws IOException {
+        return fill(1);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        final int val = readInt();
+        if (val < Byte.MIN_VALUE || val > Byte.MAX_VALUE)
+            throw new NumberFormatException(
+                    "Value out of range for byte: " + val);
+        return (byte) val;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        final String str = readString();
+        if (str.length() != 1)
+            throw new IOException(
+                    "Expecting a single character but found \"" + str + "\"");
+        return str.charAt(0);
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        final int val = readInt();
+        if (val < Short.MIN_VALUE || val > Short.MAX_VALUE)
+            throw new NumberFormatException(
+                    "Value out of range for short: " + val);
+        return (short) val;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        final long val = readLong();
+        if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE)
+            throw new NumberFormatException(
+                    "Value out of range for int: " + val);
+        return (int) val;
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        final int end = fieldEnd();
+        final char[] a = buffer.array();
+        final int off = buffer.arrayOffset();
+        int i = buffer.position();
+        final boolean negative = i < end && a[off + i] == '-';
+        if (negative || (i < end && a[off + i] == '+'))
+            ++i;
+        if (i == end || end - i > 18)
+            return Long.parseLong(fallback(end));
+        long val = 0;
+        for (; i < end; i++) {
+            final int digit = a[off + i] - '0';
+            if (digit < 0 || digit > 9)
+                return Long.parseLong(fallback(end));
+            val = val * 10 + digit;
+        }
+        endField(end);
+        return negative ? -val : val;
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.parseFloat(fallback(fieldEnd()));
+    }
+
+    /**
+     * Read a double, using the fast path described by Clinger (1990) where
+     * possible: when the decimal significand and the power of ten are both
+     * exactly representable as doubles, a single correctly rounded
+     * multiplication or division gives the correctly rounded result.
+     */
+    @Override
+    public double readDouble() throws IOException {
+        final int end = fieldEnd();
+        final char[] a = buffer.array();
+        final int off = buffer.arrayOffset();
+        int i = buffer.position();
+        final boolean negative = i < end && a[off + i] == '-';
+        if (negative || (i < end && a[off + i] == '+'))
+            ++i;
+
+        long significand = 0;
+        int digits = 0;
+        boolean empty = true;
+        int exponent = 0;
+        boolean point = false;
+        int c = 0;
+        for (; i < end; i++) {
+            c = a[off + i];
+            if (c >= '0' && c <= '9') {
+                empty = false;
+                if (digits > 0 || c != '0')
+                    ++digits;
+                significand = significand * 10 + (c - '0');
+                if (point)
+                    --exponent;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+            if (digits > 15)
+                return Double.parseDouble(fallback(end));
+        }
+        if (i < end && (c == 'e' || c == 'E')) {
+            ++i;
+            final boolean negativeExp = i < end && a[off + i] == '-';
+            if (negativeExp || (i < end && a[off + i] == '+'))
+                ++i;
+            int exp = 0;
+            final int expStart = i;
+            for (; i < end && i - expStart < 4; i++) {
+                final int digit = a[off + i] - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+                exp = exp * 10 + digit;
+            }
+            if (i == expStart)
+                return Double.parseDouble(fallback(end));
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (i != end || empty || significand >= MAX_EXACT_DOUBLE
+                || exponent < -22 || exponent > 22)
+            return Double.parseDouble(fallback(end));
+
+        endField(end);
+        final double val = exponent < 0
+                ? significand / POW10[-exponent]
+                : significand * POW10[exponent];
+        return negative ? -val : val;
+    }
+
+    @Override
+    public String readString() throws IOException {
+        final int end = fieldEnd();
+        final char[] a = buffer.array();
+        final int off = buffer.arrayOffset();
+        final int start = buffer.position();
+        int i = start;
+        while (i < end && a[off + i] != ESCAPE)
+            ++i;
+        final String str;
+        if (i == end) {
+            str = new String(a, off + start, end - start);
+        } else {
+            builder.setLength(0);
+            builder.append(a, off + start, i - start);
+            for (; i < end; i++) {
+                char c = a[off + i];
+                if (c == ESCAPE && i + 1 < end) {
+                    c = a[off + ++i];
+                    if (c == 't')
+                        c = '\t';
+                    else if (c == 'n')
+                        c = '\n';
+                    else if (c == 'r')
+                        c = '\r';
+                }
+                builder.append(c);
+            }
+            str = builder.toString();
+        }
+        endField(end);
+        return str;
+    }
+
+    @Override
+    public void position(Tell offset) throws IOException {
+        Checks.checkNotNull("offset", offset);
+        channel.position(offset.value(Long.class));
+        buffer.clear();
+        buffer.flip();
+        endOfInput = false;
+    }
+
+    @Override
+    public Tell position() throws IOException {
+        return new Tell(Long.class, channel.position() - encodedLength(buffer));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Create a String from the current field, so it can be passed to the
+     * standard library parsers, and consume it.
+     */
+    private String fallback(int end) throws IOException {
+        final String str = new String(buffer.array(),
+                                      buffer.arrayOffset() + buffer.position(),
+                                      end - buffer.position());
+        endField(end);
+        return str;
+    }
+
+    /**
+     * Consume the current field, and the following field delimiter if there
+     * is one.
+     */
+    private void endField(int end) {
+        buffer.position(end);
+        if (end < buffer.limit() && buffer.get(end) == FIELD_DELIMITER)
+            buffer.position(end + 1);
+    }
+
+    /**
+     * Find the end of the next field, reading more characters until the
+     * field is entirely contained in the buffer.
+     *
+     * @return index in the buffer of the first character after the field
+     */
+    private int fieldEnd() throws IOException {
+        if (!fill(1))
+            throw new EOFException();
+        int i = buffer.position();
+        while (true) {
+            final char[] a = buffer.array();
+            final int off = buffer.arrayOffset();
+            final int limit = buffer.limit();
+            for (; i < limit; i++) {
+                final char c = a[off + i];
+                if (c == FIELD_DELIMITER || c == RECORD_DELIMITER)
+                    return i;
+            }
+            final int position = buffer.position();
+            if (!fill(limit - position + 1))
+                return buffer.limit();
+            i -= position - buffer.position();
+        }
+    }
+
+    /**
+     * Attempt to ensure that at least the required number of characters are
+     * buffered, growing the buffer if necessary.
+     *
+     * @return whether the required characters are available
+     */
+    private boolean fill(int required) throws IOException {
+        if (buffer.remaining() >= required)
+            return true;
+        if (endOfInput)
+            return false;
+        if (buffer.capacity() < required) {
+            final CharBuffer larger = CharBuffer.allocate(
+                    Math.max(required, buffer.capacity() * 2));
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < required) {
+            if (channel.read(buffer) == 0 && !channel.hasBytesRemaining()) {
+                endOfInput = true;
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= required;
+    }
+
+    /**
+     * Calculate the number of bytes that encode the remaining characters in
+     * {@code chars}.
+     */
+    private long encodedLength(CharBuffer chars) throws IOException {
+        if (singleByte)
+            return chars.remaining();
+        if (utf8) {
+            long length = 0;
+            for (int i = chars.position(); i < chars.limit(); i++) {
+                final char c = chars.get(i);
+                // surrogates encode to 4 bytes per pair
+                length += c < 0x80 ? 1 : c < 0x800 ? 2
+                        : c >= Character.MIN_SURROGATE
+                          && c <= Character.MAX_SURROGATE ? 2 : 3;
+            }
+            return length;
+        }
+        final CharBuffer src = chars.duplicate();
+        final ByteBuffer dst = ByteBuffer.allocate(
+                Math.max(16, (int) (src.remaining() * encoder.maxBytesPerChar())));
+        encoder.reset();
+        CoderResult coderResult = encoder.encode(src, dst, true);
+        if (!coderResult.isUnderflow())
+            coderResult.throwException();
+        coderResult = encoder.flush(dst);
+        if (!coderResult.isUnderflow())
+            coderResult.throwException();
+        return dst.position();
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * <p>Decorating ObjectSink that groups the objects being consumed by key, and
+ * forwards only the first K objects of each group, according to a ranking
+ * comparator, to the encapsulated instance.</p>
+ *
+ * <p>Unlike {@link KFirstReducingObjectSink} the input does not need to be
+ * grouped (or sorted) by key. Instead the best K objects seen so far for each
+ * key are held in a bounded heap, in a hash map. The retained objects are
+ * forwarded, best first for each key, when the sink is closed.</p>
+ *
+ * <p>If a spill configuration is given then, whenever the number of objects
+ * held exceeds {@code maxHeldRecords}, they are sorted by key then rank and
+ * written to a temporary file, and the map is cleared. On close the spilled
+ * runs are merged with the objects still in memory, and the first K objects
+ * of each key are forwarded in key order. Without a spill configuration the
+ * number of objects held is unbounded, and keys are forwarded in no
+ * particular order.</p>
+ *
+ * @param <T> type of object consumed
+ * @param <K> type of key objects are grouped by
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class TopKReducingObjectSink<T, K>
+        extends ForwardingObjectSink<ObjectSink<T>, T> {
+
+    private final KeyFunction<? super T, ? extends K> keyFunction;
+
+    private final Comparator<? super T> rankComparator;
+
+    private final int limit;
+
+    private final Map<K, Heap<T>> heaps = new HashMap<K, Heap<T>>();
+
+    private long held = 0;
+
+    private final Comparator<? super K> keyComparator;
+
+    private final ObjectCodec<T> codec;
+
+    private final FileFactory fileFactory;
+
+    private final long maxHeldRecords;
+
+    private final List<File> spills = new ArrayList<File>();
+
+    /**
+     * Construct a new TopKReducingObjectSink that holds all the retained
+     * objects in memory.
+     *
+     * @param inner sink that retained objects are forwarded to
+     * @param keyFunction defines the key of each object
+     * @param rankComparator objects that sort first are retained
+     * @param limit number of objects retained for each key
+     */
+    public TopKReducingObjectSink(ObjectSink<T> inner,
+                                  KeyFunction<? super T, ? extends K> keyFunction,
+                                  Comparator<? super T> rankComparator,
+                                  int limit) {
+        super(inner);
+        Checks.checkNotNull("keyFunction", keyFunction);
+        Checks.checkNotNull("rankComparator", rankComparator);
+        Checks.checkRangeIncl("limit", limit, 1, Integer.MAX_VALUE);
+        this.keyFunction = keyFunction;
+        this.rankComparator = rankComparator;
+        this.limit = limit;
+        this.keyComparator = null;
+        this.codec = null;
+        this.fileFactory = null;
+        this.maxHeldRecords = Long.MAX_VALUE;
+    }
+
+    /**
+     * Construct a new TopKReducingObjectSink that spills the retained objects
+     * to disk when more than {@code maxHeldRecords} are held.
+     *
+     * @param inner sink that retained objects are forwarded to
+     * @param keyFunction defines the key of each object
+     * @param rankComparator objects that sort first are retained
+     * @param limit number of objects retained for each key
+     * @param keyComparator order of the keys, consistent with their equality
+     * @param codec encodes objects into the spill files
+     * @param fileFactory creates the spill files
+     * @param maxHeldRecords number of objects held in memory before spilling
+     */
+    public TopKReducingObjectSink(ObjectSink<T> inner,
+                                  KeyFunction<? super T, ? extends K> keyFunction,
+                                  Comparator<? super T> rankComparator,
+                                  int limit,
+                                  Comparator<? super K> keyComparator,
+                                  ObjectCodec<T> codec,
+                                  FileFactory fileFactory,
+                                  long maxHeldRecords) {
+        super(inner);
+        Checks.checkNotNull("keyFunction", keyFunction);
+        Checks.checkNotNull("rankComparator", rankComparator);
+        Checks.checkRangeIncl("limit", limit, 1, Integer.MAX_VALUE);
+        Checks.checkNotNull("keyComparator", keyComparator);
+        Checks.checkNotNull("codec", codec);
+        Checks.checkNotNull("fileFactory", fileFactory);
+        if (maxHeldRecords < 1)
+            throw new IllegalArgumentException("maxHeldRecords < 1");
+        this.keyFunction = keyFunction;
+        this.rankComparator = rankComparator;
+        this.limit = limit;
+        this.keyComparator = keyComparator;
+        this.codec = codec;
+        this.fileFactory = fileFactory;
+        this.maxHeldRecords = maxHeldRecords;
+    }
+
+    /**
+     * @return number of objects currently held in memory
+     */
+    public long getHeldCount() {
+        return held;
+    }
+
+    /**
+     * @return number of times the held objects have been spilled to disk
+     */
+    public int getSpillCount() {
+        return spills.size();
+    }
+
+    @Override
+    public void write(T o) throws IOException {
+        final K key = keyFunction.keyOf(o);
+        Heap<T> heap = heaps.get(key);
+        if (heap == null) {
+            heap = new Heap<T>(rankComparator, limit);
+            heaps.put(key, heap);
+        }
+        held += heap.offer(o);
+        if (held > maxHeldRecords)
+            spill();
+    }
+
+
+    /**
+     * Forward the retained objects to the encapsulated sink, then close it.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (spills.isEmpty()) {
+                for (Heap<T> heap : heaps.values())
+                    heap.drainTo(getInner());
+                heaps.clear();
+                held = 0;
+            } else {
+                mergeSpills();
+            }
+        } finally {
+            for (File file : spills)
+                file.delete();
+            spills.clear();
+        }
+        super.close();
+    }
+
+    /**
+     * Order of objects by key then rank.
+     */
+    private Comparator<T> spillComparator() {
+        return new Comparator<T>() {
+
+            @Override
+            public int compare(T a, T b) {
+                final int c = keyComparator.compare(
+                        keyFunction.keyOf(a), keyFunction.keyOf(b));
+                return c != 0 ? c : rankComparator.compare(a, b);
+            }
+
+        };
+    }
+
+    /**
+     * Sort the held objects and drain them into a new run.
+     */
+    private List<T> drainSorted() {
+        final List<T> run = new ArrayList<T>((int) Math.min(held,
+                                                            Integer.MAX_VALUE));
+        for (Heap<T> heap : heaps.values())
+            heap.drainTo(run);
+        heaps.clear();
+        held = 0;
+        Collections.sort(run, spillComparator());
+        return run;
+    }
+
+    private void spill() throws IOException {
+        final List<T> run = drainSorted();
+        final File file = fileFactory.createFile();
+        spills.add(file);
+        final CodecObjectSink<T> sink = new CodecObjectSink<T>(
+                new BinaryDataSink(Files.openWritableByteChannel(file)),
+                codec);
+        try {
+            for (T record : run)
+                sink.write(record);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Merge the spilled runs with the objects held in memory, and forward the
+     * first K objects of each key.
+     */
+    private void mergeSpills() throws IOException {
+        final List<ObjectSource<T>> runs = new ArrayList<ObjectSource<T>>();
+        try {
+            for (File file : spills)
+                runs.add(new CodecObjectSource<BinaryDataSource, T>(
+                        new BinaryDataSource(
+                        Files.openReadableByteChannel(file)), codec));
+            runs.add(ObjectIO.asSource((Iterable<T>) drainSorted()));
+
+            final MergingObjectSource<T> merged =
+                    new MergingObjectSource<T>(runs, spillComparator());
+            K currentKey = null;
+            int count = 0;
+            while (merged.hasNext()) {
+                final T record = merged.read();
+                final K key = keyFunction.keyOf(record);
+                if (count == 0 || keyComparator.compare(currentKey, key) != 0) {
+                    currentKey = key;
+                    count = 0;
+                }
+                if (count++ < limit)
+                    getInner().write(record);
+            }
+        } finally {
+            for (ObjectSource<T> run : runs)
+                if (run instanceof Closeable)
+                    ((Closeable) run).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "limit=" + limit
+                + ", keys=" + heaps.size() + ", held=" + held
+                + ", spills=" + spills.size() + ", inner=" + getInner() + '}';
+    }
+
+    /**
+     * Array based binary heap that retains the {@code limit} objects that
+     * sort first, with the worst retained object at the root.
+     */
+    private static final class Heap<T> {
+
+        private static final int INITIAL_CAPACITY = 4;
+
+        private final Comparator<? super T> comparator;
+
+        private final int limit;
+
+        private Object[] elements;
+
+        private int size = 0;
+
+        Heap(Comparator<? super T> comparator, int limit) {
+            this.comparator = comparator;
+            this.limit = limit;
+            this.elements = new Object[Math.min(limit, INITIAL_CAPACITY)];
+        }
+
+        /**
+         * Offer an object to the heap.
+         *
+         * @return the change in the number of objects held: 1 if the object
+         *          was added, otherwise 0
+         */
+        int offer(T o) {
+            if (size < limit) {
+                if (size == elements.length)
+                    elements = Arrays.copyOf(elements,
+                                             Math.min(limit, size * 2));
+                elements[size] = o;
+                siftUp(size++);
+                return 1;
+            } else if (comparator.compare(o, get(0)) < 0) {
+                elements[0] = o;
+                siftDown(0);
+            }
+            return 0;
+        }
+
+        /**
+         * Add the retained objects to the sink in order, and clear the heap.
+         */
+        @SuppressWarnings("unchecked")
+        void drainTo(ObjectSink<? super T> sink) throws IOException {
+            Arrays.sort(elements, 0, size, (Comparator<Object>) comparator);
+            for (int i = 0; i < size; i++)
+                sink.write(get(i));
+            elements = null;
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        void drainTo(List<? super T> list) {
+            for (int i = 0; i < size; i++)
+                list.add(get(i));
+            elements = null;
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T get(int i) {
+            return (T) elements[i];
+        }
+
+        private void siftUp(int i) {
+            final Object x = elements[i];
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (comparator.compare(get(parent), cast(x)) >= 0)
+                    break;
+                elements[i] = elements[parent];
+                i = parent;
+            }
+            elements[i] = x;
+        }
+
+        private void siftDown(int i) {
+            final Object x = elements[i];
+            final int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size
+                        && comparator.compare(get(child + 1), get(child)) > 0)
+                    ++child;
+                if (comparator.compare(cast(x), get(child)) >= 0)
+                    break;
+                elements[i] = elements[child];
+                i = child;
+            }
+            elements[i] = x;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T cast(Object x) {
+            return (T) x;
+        }
+    }
+}
@@ -48,8 +48,8 @@ public interface WritableCharChannel extends Channel {
     /**
      * Writes a sequence of chars to this channel from the given buffer.
      * 
-     * @param src buffer from which bytes are to be retrieved
-     * @return number of bytes written, possibly zero
+     * @param src buffer from which chars are to be retrieved
+     * @return number of chars written, possibly zero
      * @throws NonWritableChannelException - If this channel was not opened for writing
      * @throws ClosedChannelException - If this channel is closed
      * @throws AsynchronousCloseException - If another thread closes this 
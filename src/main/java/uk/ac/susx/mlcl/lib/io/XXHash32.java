@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+/**
+ * Implementation of the 32 bit xxHash algorithm, as used for the checksums
+ * of the LZ4 frame format. Hashes can be computed in one go, with
+ * {@link #hash(byte[], int, int, int)}, or incrementally by an instance.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+final class XXHash32 {
+
+    private static final int PRIME1 = 0x9E3779B1;
+
+    private static final int PRIME2 = 0x85EBCA77;
+
+    private static final int PRIME3 = 0xC2B2AE3D;
+
+    private static final int PRIME4 = 0x27D4EB2F;
+
+    private static final int PRIME5 = 0x165667B1;
+
+    private final int seed;
+
+    private int v1;
+
+    private int v2;
+
+    private int v3;
+
+    private int v4;
+
+    private final byte[] memory = new byte[16];
+
+    private int memorySize;
+
+    private long totalLength;
+
+    XXHash32(int seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    XXHash32() {
+        this(0);
+    }
+
+    void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        memorySize = 0;
+        totalLength = 0;
+    }
+
+    void update(byte[] b, int off, int len) {
+        totalLength += len;
+        if (memorySize + len < 16) {
+            System.arraycopy(b, off, memory, memorySize, len);
+            memorySize += len;
+            return;
+        }
+        final int end = off + len;
+        if (memorySize > 0) {
+            final int n = 16 - memorySize;
+            System.arraycopy(b, off, memory, memorySize, n);
+            off += n;
+            v1 = round(v1, getIntLE(memory, 0));
+            v2 = round(v2, getIntLE(memory, 4));
+            v3 = round(v3, getIntLE(memory, 8));
+            v4 = round(v4, getIntLE(memory, 12));
+            memorySize = 0;
+        }
+        while (off <= end - 16) {
+            v1 = round(v1, getIntLE(b, off));
+            v2 = round(v2, getIntLE(b, off + 4));
+            v3 = round(v3, getIntLE(b, off + 8));
+            v4 = round(v4, getIntLE(b, off + 12));
+            off += 16;
+        }
+        memorySize = end - off;
+        System.arraycopy(b, off, memory, 0, memorySize);
+    }
+
+    int getValue() {
+        int h;
+        if (totalLength >= 16)
+            h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        else
+            h = seed + PRIME5;
+        h += (int) totalLength;
+        return finish(h, memory, 0, memorySize);
+    }
+
+    static int hash(byte[] b, int off, int len, int seed) {
+        final int end = off + len;
+        int h;
+        if (len >= 16) {
+            int a1 = seed + PRIME1 + PRIME2;
+            int a2 = seed + PRIME2;
+            int a3 = seed;
+            int a4 = seed - PRIME1;
+            while (off <= end - 16) {
+                a1 = round(a1, getIntLE(b, off));
+                a2 = round(a2, getIntLE(b, off + 4));
+                a3 = round(a3, getIntLE(b, off + 8));
+                a4 = round(a4, getIntLE(b, off + 12));
+                off += 16;
+            }
+            h = Integer.rotateLeft(a1, 1) + Integer.rotateLeft(a2, 7)
+                    + Integer.rotateLeft(a3, 12) + Integer.rotateLeft(a4, 18);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += len;
+        return finish(h, b, off, end - off);
+    }
+
+    private static int finish(int h, byte[] b, int off, int len) {
+        final int end = off + len;
+        while (off <= end - 4) {
+            h += getIntLE(b, off) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+            off += 4;
+        }
+        while (off < end) {
+            h += (b[off] & 0xff) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+            ++off;
+        }
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int round(int acc, int input) {
+        acc += input * PRIME2;
+        acc = Integer.rotateLeft(acc, 13);
+        return acc * PRIME1;
+    }
+
+    static int getIntLE(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+                | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+}
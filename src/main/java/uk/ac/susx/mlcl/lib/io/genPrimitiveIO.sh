@@ -0,0 +1,1293 @@
+#!/bin/bash
+#
+# Copyright (c) 2011-2012, University of Sussex
+# All rights reserved.
+#
+# Redistribution and use in source and binary forms, with or without
+# modification, are permitted provided that the following conditions are met:
+#
+#  * Redistributions of source code must retain the above copyright notice,
+#    this list of conditions and the following disclaimer.
+#
+#  * Redistributions in binary form must reproduce the above copyright notice,
+#    this list of conditions and the following disclaimer in the documentation
+#    and/or other materials provided with the distribution.
+#
+#  * Neither the name of the University of Sussex nor the names of its
+#    contributors may be used to endorse or promote products derived from this
+#    software without specific prior written permission.
+#
+# THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+# AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+# IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+# ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+# LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+# CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+# SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+# INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+# CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+# ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+# POSSIBILITY OF SUCH DAMAGE.
+#
+
+#
+# Generates the primitive sources and sinks, their forwarding, counting and
+# chunking wrappers, and the PrimitiveIO utility class. For each type flagged
+# as paired, an (int, type) pair stream is generated as well.
+#
+# Run from this directory: ./genPrimitiveIO.sh
+#
+
+class=PrimitiveIO
+outfile=${class}.java
+
+TYPNAME=("Int" "Long" "Double")
+PRIMTYP=("int" "long" "double")
+BOXTYPE=("Integer" "Long" "Double")
+
+paired=(0 0 1)
+
+
+license() {
+cat << "---EOF---"
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+---EOF---
+}
+
+# Substitute the type of element i into the template read from stdin.
+subst() {
+    perl -pe "s/TYPNAME/${TYPNAME[$1]}/g;" \
+        | perl -pe "s/PRIMTYP/${PRIMTYP[$1]}/g;" \
+        | perl -pe "s/BOXTYPE/${BOXTYPE[$1]}/g;"
+}
+
+
+for ((i=0; i<${#PRIMTYP[@]}; i++))
+do
+
+license > ${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> ${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * A source of primitive {@code PRIMTYP} values. The primitive counterpart of
+ * {@code ObjectSource<BOXTYPE>}, which avoids boxing each value.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface TYPNAMESource {
+
+    /**
+     * Retrieve the next available value.
+     *
+     * @return The next value
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    PRIMTYP read() throws IOException;
+
+    /**
+     * Read up to {@code len} values into {@code dst}, starting at offset
+     * {@code off}. Fewer than {@code len} values may be read; zero values
+     * are read only if {@code len} is zero or there are no more values
+     * available (i.e. {@link #hasNext()} is false).
+     *
+     * @param dst array to store the values in
+     * @param off offset into {@code dst} of the first value read
+     * @param len maximum number of values to read
+     * @return number of values read
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    int read(PRIMTYP[] dst, int off, int len) throws IOException;
+
+    /**
+     * Whether or not another value can be read.
+     *
+     * @return true if a value can be read, false otherwise.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    boolean hasNext() throws IOException;
+
+}
+---EOF---
+
+license > ${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> ${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Interface defining the acceptance of primitive {@code PRIMTYP} values. The
+ * primitive counterpart of {@code ObjectSink<BOXTYPE>}, which avoids boxing
+ * each value.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface TYPNAMESink {
+
+    /**
+     * Consume the given {@code value}.
+     *
+     * @param value The value to be consumed.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(PRIMTYP value) throws IOException;
+
+    /**
+     * Consume the {@code len} values in {@code src}, starting at offset
+     * {@code off}, in order.
+     *
+     * @param src array of values to consume
+     * @param off offset into {@code src} of the first value
+     * @param len number of values to consume
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(PRIMTYP[] src, int off, int len) throws IOException;
+
+}
+---EOF---
+
+license > Forwarding${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> Forwarding${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * TYPNAMESource adapter that forwards all method invocations to an
+ * encapsulated inner instance.
+ *
+ * Batch reads are made by calling {@link #hasNext()} and {@link #read()} for
+ * each value, so a subclass need only override those methods to modify or
+ * observe the values. Subclasses that pass values through unchanged may
+ * override {@link #read(PRIMTYP[], int, int)} to forward the whole batch to
+ * the inner instance.
+ *
+ * @param <S> type of the encapsulated instance
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public abstract class ForwardingTYPNAMESource<S extends TYPNAMESource>
+        implements TYPNAMESource, Closeable {
+
+    private final S inner;
+
+    public ForwardingTYPNAMESource(S inner) {
+        Checks.checkNotNull("inner", inner);
+        this.inner = inner;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public PRIMTYP read() throws IOException {
+        return inner.read();
+    }
+
+    @Override
+    public int read(PRIMTYP[] dst, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len && hasNext())
+            dst[off + n++] = read();
+        return n;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner + '}';
+    }
+}
+---EOF---
+
+license > Forwarding${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> Forwarding${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * TYPNAMESink adapter that forwards all method invocations to an
+ * encapsulated inner instance.
+ *
+ * Batch writes are passed to {@link #write(PRIMTYP)} one value at a time, so
+ * a subclass need only override that method to modify or observe the
+ * values. Subclasses that pass values through unchanged may override
+ * {@link #write(PRIMTYP[], int, int)} to forward the whole batch to the inner
+ * instance.
+ *
+ * @param <S> type of the encapsulated instance
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public abstract class ForwardingTYPNAMESink<S extends TYPNAMESink>
+        implements TYPNAMESink, Closeable, Flushable {
+
+    private final S inner;
+
+    public ForwardingTYPNAMESink(S inner) {
+        Checks.checkNotNull("inner", inner);
+        this.inner = inner;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public void write(PRIMTYP value) throws IOException {
+        inner.write(value);
+    }
+
+    @Override
+    public void write(PRIMTYP[] src, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            write(src[i]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (inner instanceof Flushable)
+            ((Flushable) inner).flush();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner + '}';
+    }
+}
+---EOF---
+
+license > Counting${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> Counting${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Wrapper source that counts the number of values produced.
+ *
+ * @param <S> type of source being wrapped
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CountingTYPNAMESource<S extends TYPNAMESource>
+        extends ForwardingTYPNAMESource<S> {
+
+    private long count = 0;
+
+    public CountingTYPNAMESource(S inner) {
+        super(inner);
+    }
+
+    /**
+     * @return number of values produced
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public PRIMTYP read() throws IOException {
+        final PRIMTYP value = super.read();
+        ++count;
+        return value;
+    }
+
+    @Override
+    public int read(PRIMTYP[] dst, int off, int len) throws IOException {
+        final int n = getInner().read(dst, off, len);
+        count += n;
+        return n;
+    }
+
+}
+---EOF---
+
+license > Counting${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> Counting${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Wrapper sink that counts the number of values consumed.
+ *
+ * @param <S> type of sink being wrapped
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class CountingTYPNAMESink<S extends TYPNAMESink>
+        extends ForwardingTYPNAMESink<S> {
+
+    private long count = 0;
+
+    public CountingTYPNAMESink(S inner) {
+        super(inner);
+    }
+
+    /**
+     * @return number of values consumed
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(PRIMTYP value) throws IOException {
+        super.write(value);
+        ++count;
+    }
+
+    @Override
+    public void write(PRIMTYP[] src, int off, int len) throws IOException {
+        getInner().write(src, off, len);
+        count += len;
+    }
+
+}
+---EOF---
+
+license > ${TYPNAME[i]}Chunker.java
+cat << "---EOF---" | subst $i >> ${TYPNAME[i]}Chunker.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * TYPNAMEChunker is a TYPNAMESource adapter that buffers values into arrays
+ * of at most {@code maxChunkSize} values. The primitive counterpart of
+ * {@link Chunker}. Each chunk is newly allocated and exactly as long as the
+ * number of values it holds, so the consumer is free to retain it.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @param <S> Type of encapsulated TYPNAMESource
+ */
+public class TYPNAMEChunker<S extends TYPNAMESource>
+        implements ObjectSource<PRIMTYP[]>, Closeable {
+
+    private int maxChunkSize;
+
+    private final S inner;
+
+    private TYPNAMEChunker(S inner, int maxChunkSize) {
+        this.inner = inner;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public static ObjectSource<PRIMTYP[]> newInstance(
+            TYPNAMESource source, int maxChunkSize) {
+        Checks.checkNotNull("source", source);
+        Checks.checkRangeIncl("maxChunkSize", maxChunkSize, 1,
+                              Integer.MAX_VALUE);
+        return new TYPNAMEChunker<TYPNAMESource>(source, maxChunkSize);
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        Checks.checkRangeIncl("maxChunkSize", maxChunkSize, 1,
+                              Integer.MAX_VALUE);
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public PRIMTYP[] read() throws IOException {
+        final PRIMTYP[] chunk = new PRIMTYP[maxChunkSize];
+        int size = 0;
+        int n;
+        while (size < chunk.length
+                && (n = inner.read(chunk, size, chunk.length - size)) > 0)
+            size += n;
+        if (size == 0)
+            throw new NoSuchElementException();
+        return size == chunk.length ? chunk : Arrays.copyOf(chunk, size);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return "TYPNAMEChunker{" + "maxChunkSize=" + maxChunkSize
+                + ", inner=" + inner + '}';
+    }
+
+}
+---EOF---
+
+
+if (( ${paired[i]} == 1 ))
+then
+
+license > Int${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> Int${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * A source of ({@code int}, {@code PRIMTYP}) pairs, such as feature ids and
+ * their weights. The primitive counterpart of
+ * {@code ObjectSource<Indexed<BOXTYPE>>}, which avoids allocating an
+ * {@code Indexed} instance for each pair. Pairs are read in batches, into
+ * parallel arrays of keys and values.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface IntTYPNAMESource {
+
+    /**
+     * Read up to {@code len} pairs into {@code keys} and {@code values},
+     * starting at offset {@code off} in both. Fewer than {@code len} pairs
+     * may be read; zero pairs are read only if {@code len} is zero or there
+     * are no more pairs available (i.e. {@link #hasNext()} is false).
+     *
+     * @param keys array to store the keys in
+     * @param values array to store the values in
+     * @param off offset into both arrays of the first pair read
+     * @param len maximum number of pairs to read
+     * @return number of pairs read
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    int read(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException;
+
+    /**
+     * Whether or not another pair can be read.
+     *
+     * @return true if a pair can be read, false otherwise.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    boolean hasNext() throws IOException;
+
+}
+---EOF---
+
+license > Int${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> Int${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Interface defining the acceptance of ({@code int}, {@code PRIMTYP}) pairs.
+ * The primitive counterpart of {@code ObjectSink<Indexed<BOXTYPE>>}, which
+ * avoids allocating an {@code Indexed} instance for each pair.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ * @see PrimitiveIO
+ */
+public interface IntTYPNAMESink {
+
+    /**
+     * Consume the pair ({@code key}, {@code value}).
+     *
+     * @param key The key of the pair to be consumed.
+     * @param value The value of the pair to be consumed.
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(int key, PRIMTYP value) throws IOException;
+
+    /**
+     * Consume the {@code len} pairs held in {@code keys} and {@code values},
+     * starting at offset {@code off} in both, in order.
+     *
+     * @param keys array of keys to consume
+     * @param values array of values to consume
+     * @param off offset into both arrays of the first pair
+     * @param len number of pairs to consume
+     * @throws IOException something has gone wrong with the underlying store
+     */
+    void write(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException;
+
+}
+---EOF---
+
+license > ForwardingInt${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> ForwardingInt${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * An IntTYPNAMESource adapter that forwards all method invocations to an
+ * encapsulated inner instance.
+ *
+ * @param <S> type of the encapsulated instance
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public abstract class ForwardingIntTYPNAMESource<S extends IntTYPNAMESource>
+        implements IntTYPNAMESource, Closeable {
+
+    private final S inner;
+
+    public ForwardingIntTYPNAMESource(S inner) {
+        Checks.checkNotNull("inner", inner);
+        this.inner = inner;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public int read(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException {
+        return inner.read(keys, values, off, len);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return inner.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner + '}';
+    }
+}
+---EOF---
+
+license > ForwardingInt${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> ForwardingInt${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import uk.ac.susx.mlcl.lib.Checks;
+
+/**
+ * An IntTYPNAMESink adapter that forwards all method invocations to an
+ * encapsulated inner instance.
+ *
+ * Batch writes are passed to {@link #write(int, PRIMTYP)} one pair at a
+ * time, so a subclass need only override that method to modify or observe
+ * the pairs. Subclasses that pass pairs through unchanged may override
+ * {@link #write(int[], PRIMTYP[], int, int)} to forward the whole batch to
+ * the inner instance.
+ *
+ * @param <S> type of the encapsulated instance
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public abstract class ForwardingIntTYPNAMESink<S extends IntTYPNAMESink>
+        implements IntTYPNAMESink, Closeable, Flushable {
+
+    private final S inner;
+
+    public ForwardingIntTYPNAMESink(S inner) {
+        Checks.checkNotNull("inner", inner);
+        this.inner = inner;
+    }
+
+    public S getInner() {
+        return inner;
+    }
+
+    @Override
+    public void write(int key, PRIMTYP value) throws IOException {
+        inner.write(key, value);
+    }
+
+    @Override
+    public void write(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException {
+        for (int i = off; i < off + len; i++)
+            write(keys[i], values[i]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inner instanceof Closeable)
+            ((Closeable) inner).close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (inner instanceof Flushable)
+            ((Flushable) inner).flush();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "{" + "inner=" + inner + '}';
+    }
+}
+---EOF---
+
+license > CountingInt${TYPNAME[i]}Source.java
+cat << "---EOF---" | subst $i >> CountingInt${TYPNAME[i]}Source.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Wrapper source that counts the number of pairs produced.
+ *
+ * @param <S> type of source being wrapped
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CountingIntTYPNAMESource<S extends IntTYPNAMESource>
+        extends ForwardingIntTYPNAMESource<S> {
+
+    private long count = 0;
+
+    public CountingIntTYPNAMESource(S inner) {
+        super(inner);
+    }
+
+    /**
+     * @return number of pairs produced
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException {
+        final int n = super.read(keys, values, off, len);
+        count += n;
+        return n;
+    }
+
+}
+---EOF---
+
+license > CountingInt${TYPNAME[i]}Sink.java
+cat << "---EOF---" | subst $i >> CountingInt${TYPNAME[i]}Sink.java
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+
+/**
+ * Wrapper sink that counts the number of pairs consumed.
+ *
+ * @param <S> type of sink being wrapped
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class CountingIntTYPNAMESink<S extends IntTYPNAMESink>
+        extends ForwardingIntTYPNAMESink<S> {
+
+    private long count = 0;
+
+    public CountingIntTYPNAMESink(S inner) {
+        super(inner);
+    }
+
+    /**
+     * @return number of pairs consumed
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int key, PRIMTYP value) throws IOException {
+        super.write(key, value);
+        ++count;
+    }
+
+    @Override
+    public void write(int[] keys, PRIMTYP[] values, int off, int len)
+            throws IOException {
+        getInner().write(keys, values, off, len);
+        count += len;
+    }
+
+}
+---EOF---
+
+fi
+done
+
+
+license > ${outfile}
+perl -pe "s/__CLASS__/${class}/g;" << "---EOF---" >> ${outfile}
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import uk.ac.susx.mlcl.lib.Checks;
+import uk.ac.susx.mlcl.lib.collect.Indexed;
+
+/**
+ * Static utility class for use with the primitive sources and sinks, such as
+ * {@link IntSource} and {@link IntSink}, and the pair streams, such as
+ * {@link IntDoubleSource} and {@link IntDoubleSink}.
+ *
+ * This class is generated by genPrimitiveIO.sh; edit the script rather than
+ * this file.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public final class __CLASS__ {
+
+    private __CLASS__() {
+    }
+
+    private static void checkBounds(int off, int len, int length) {
+        if (off < 0 || len < 0 || off + len > length)
+            throw new IndexOutOfBoundsException(
+                    "off=" + off + ", len=" + len + ", length=" + length);
+    }
+
+---EOF---
+
+
+for ((i=0; i<${#PRIMTYP[@]}; i++))
+do
+
+cat << "---EOF---" | subst $i
+    /**
+     * Produce the {@code len} values of {@code values} starting at offset
+     * {@code off}. The array is not copied.
+     *
+     * @param values array of values to produce
+     * @param off offset of the first value
+     * @param len number of values to produce
+     * @return source of the values
+     */
+    public static TYPNAMESource asSource(final PRIMTYP[] values, final int off,
+                                         final int len) {
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, values.length);
+        return new TYPNAMESource() {
+
+            private int pos = off;
+
+            @Override
+            public PRIMTYP read() {
+                if (pos >= off + len)
+                    throw new NoSuchElementException();
+                return values[pos++];
+            }
+
+            @Override
+            public int read(PRIMTYP[] dst, int dstOff, int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(values, pos, dst, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static TYPNAMESource asSource(final PRIMTYP[] values) {
+        return asSource(values, 0, values.length);
+    }
+
+    /**
+     * Unbox the values produced by the given ObjectSource.
+     *
+     * @param src source of boxed values
+     * @return source of primitive values
+     */
+    public static TYPNAMESource asTYPNAMESource(final ObjectSource<BOXTYPE> src) {
+        Checks.checkNotNull("src", src);
+        return new TYPNAMESource() {
+
+            @Override
+            public PRIMTYP read() throws IOException {
+                return src.read();
+            }
+
+            @Override
+            public int read(PRIMTYP[] dst, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext())
+                    dst[off + n++] = src.read();
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Box the values produced by the given TYPNAMESource.
+     *
+     * @param src source of primitive values
+     * @return source of boxed values
+     */
+    public static BatchObjectSource<BOXTYPE> asObjectSource(final TYPNAMESource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingTYPNAMESource(src);
+    }
+
+    private static final class BoxingTYPNAMESource
+            implements BatchObjectSource<BOXTYPE> {
+
+        private final TYPNAMESource src;
+
+        private PRIMTYP[] buffer = null;
+
+        BoxingTYPNAMESource(TYPNAMESource src) {
+            this.src = src;
+        }
+
+        @Override
+        public BOXTYPE read() throws IOException {
+            return BOXTYPE.valueOf(src.read());
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new PRIMTYP[len];
+            final int n = src.read(buffer, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = BOXTYPE.valueOf(buffer[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Box the values consumed by the returned sink, and write them to the
+     * given ObjectSink.
+     *
+     * @param sink sink of boxed values
+     * @return sink of primitive values
+     */
+    public static TYPNAMESink asTYPNAMESink(final ObjectSink<? super BOXTYPE> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new TYPNAMESink() {
+
+            @Override
+            public void write(PRIMTYP value) throws IOException {
+                sink.write(value);
+            }
+
+            @Override
+            public void write(PRIMTYP[] src, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(src[i]);
+            }
+
+        };
+    }
+
+    /**
+     * Unbox the values consumed by the returned sink, and write them to the
+     * given TYPNAMESink.
+     *
+     * @param sink sink of primitive values
+     * @return sink of boxed values
+     */
+    public static BatchObjectSink<BOXTYPE> asObjectSink(final TYPNAMESink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingTYPNAMESink(sink);
+    }
+
+    private static final class UnboxingTYPNAMESink
+            implements BatchObjectSink<BOXTYPE> {
+
+        private final TYPNAMESink sink;
+
+        private PRIMTYP[] buffer = null;
+
+        UnboxingTYPNAMESink(TYPNAMESink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(BOXTYPE record) throws IOException {
+            sink.write(record);
+        }
+
+        @Override
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (buffer == null || buffer.length < len)
+                buffer = new PRIMTYP[len];
+            for (int i = 0; i < len; i++)
+                buffer[i] = (BOXTYPE) src[off + i];
+            sink.write(buffer, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the values from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of values copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(TYPNAMESource src, TYPNAMESink sink) throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final PRIMTYP[] batch = new PRIMTYP[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(batch, 0, batch.length)) > 0) {
+            sink.write(batch, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Read all the remaining values from {@code src} into an array.
+     *
+     * @param src source to read from
+     * @return array of all the values read
+     * @throws IOException if some I/O error occurs
+     */
+    public static PRIMTYP[] readAll(TYPNAMESource src) throws IOException {
+        Checks.checkNotNull("src", src);
+        PRIMTYP[] values = new PRIMTYP[ObjectIO.COPY_BATCH_SIZE];
+        int size = 0;
+        int n;
+        while ((n = src.read(values, size, values.length - size)) > 0) {
+            size += n;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+---EOF---
+
+
+if (( ${paired[i]} == 1 ))
+then
+cat << "---EOF---" | subst $i
+    /**
+     * Produce the {@code len} pairs held in {@code keys} and {@code values},
+     * starting at offset {@code off} in both. The arrays are not copied.
+     *
+     * @param keys array of keys to produce
+     * @param values array of values to produce
+     * @param off offset of the first pair
+     * @param len number of pairs to produce
+     * @return source of the pairs
+     */
+    public static IntTYPNAMESource asSource(final int[] keys,
+                                            final PRIMTYP[] values,
+                                            final int off, final int len) {
+        Checks.checkNotNull("keys", keys);
+        Checks.checkNotNull("values", values);
+        checkBounds(off, len, keys.length);
+        checkBounds(off, len, values.length);
+        return new IntTYPNAMESource() {
+
+            private int pos = off;
+
+            @Override
+            public int read(int[] dstKeys, PRIMTYP[] dstValues, int dstOff,
+                            int n) {
+                n = Math.min(n, off + len - pos);
+                System.arraycopy(keys, pos, dstKeys, dstOff, n);
+                System.arraycopy(values, pos, dstValues, dstOff, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < off + len;
+            }
+
+        };
+    }
+
+    public static IntTYPNAMESource asSource(final int[] keys,
+                                            final PRIMTYP[] values) {
+        Checks.checkNotNull("keys", keys);
+        return asSource(keys, values, 0, keys.length);
+    }
+
+    /**
+     * Unwrap the Indexed pairs produced by the given ObjectSource.
+     *
+     * @param src source of Indexed pairs
+     * @return source of primitive pairs
+     */
+    public static IntTYPNAMESource asIntTYPNAMESource(
+            final ObjectSource<Indexed<BOXTYPE>> src) {
+        Checks.checkNotNull("src", src);
+        return new IntTYPNAMESource() {
+
+            @Override
+            public int read(int[] keys, PRIMTYP[] values, int off, int len)
+                    throws IOException {
+                int n = 0;
+                while (n < len && src.hasNext()) {
+                    final Indexed<BOXTYPE> pair = src.read();
+                    keys[off + n] = pair.key();
+                    values[off + n] = pair.value();
+                    ++n;
+                }
+                return n;
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return src.hasNext();
+            }
+
+        };
+    }
+
+    /**
+     * Wrap the pairs produced by the given IntTYPNAMESource in Indexed
+     * instances.
+     *
+     * @param src source of primitive pairs
+     * @return source of Indexed pairs
+     */
+    public static BatchObjectSource<Indexed<BOXTYPE>> asObjectSource(
+            final IntTYPNAMESource src) {
+        Checks.checkNotNull("src", src);
+        return new BoxingIntTYPNAMESource(src);
+    }
+
+    private static final class BoxingIntTYPNAMESource
+            implements BatchObjectSource<Indexed<BOXTYPE>> {
+
+        private final IntTYPNAMESource src;
+
+        private int[] keys = null;
+
+        private PRIMTYP[] values = null;
+
+        BoxingIntTYPNAMESource(IntTYPNAMESource src) {
+            this.src = src;
+        }
+
+        private void ensureCapacity(int len) {
+            if (keys == null || keys.length < len) {
+                keys = new int[len];
+                values = new PRIMTYP[len];
+            }
+        }
+
+        @Override
+        public Indexed<BOXTYPE> read() throws IOException {
+            ensureCapacity(1);
+            if (src.read(keys, values, 0, 1) == 0)
+                throw new NoSuchElementException();
+            return new Indexed<BOXTYPE>(keys[0], values[0]);
+        }
+
+        @Override
+        public int read(Object[] dst, int off, int len) throws IOException {
+            ensureCapacity(len);
+            final int n = src.read(keys, values, 0, len);
+            for (int i = 0; i < n; i++)
+                dst[off + i] = new Indexed<BOXTYPE>(keys[i], values[i]);
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return src.hasNext();
+        }
+
+    }
+
+    /**
+     * Wrap the pairs consumed by the returned sink in Indexed instances, and
+     * write them to the given ObjectSink.
+     *
+     * @param sink sink of Indexed pairs
+     * @return sink of primitive pairs
+     */
+    public static IntTYPNAMESink asIntTYPNAMESink(
+            final ObjectSink<? super Indexed<BOXTYPE>> sink) {
+        Checks.checkNotNull("sink", sink);
+        return new IntTYPNAMESink() {
+
+            @Override
+            public void write(int key, PRIMTYP value) throws IOException {
+                sink.write(new Indexed<BOXTYPE>(key, value));
+            }
+
+            @Override
+            public void write(int[] keys, PRIMTYP[] values, int off, int len)
+                    throws IOException {
+                for (int i = off; i < off + len; i++)
+                    sink.write(new Indexed<BOXTYPE>(keys[i], values[i]));
+            }
+
+        };
+    }
+
+    /**
+     * Unwrap the Indexed pairs consumed by the returned sink, and write them
+     * to the given IntTYPNAMESink.
+     *
+     * @param sink sink of primitive pairs
+     * @return sink of Indexed pairs
+     */
+    public static BatchObjectSink<Indexed<BOXTYPE>> asObjectSink(
+            final IntTYPNAMESink sink) {
+        Checks.checkNotNull("sink", sink);
+        return new UnboxingIntTYPNAMESink(sink);
+    }
+
+    private static final class UnboxingIntTYPNAMESink
+            implements BatchObjectSink<Indexed<BOXTYPE>> {
+
+        private final IntTYPNAMESink sink;
+
+        private int[] keys = null;
+
+        private PRIMTYP[] values = null;
+
+        UnboxingIntTYPNAMESink(IntTYPNAMESink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Indexed<BOXTYPE> record) throws IOException {
+            sink.write(record.key(), record.value());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(Object[] src, int off, int len) throws IOException {
+            if (keys == null || keys.length < len) {
+                keys = new int[len];
+                values = new PRIMTYP[len];
+            }
+            for (int i = 0; i < len; i++) {
+                final Indexed<BOXTYPE> pair = (Indexed<BOXTYPE>) src[off + i];
+                keys[i] = pair.key();
+                values[i] = pair.value();
+            }
+            sink.write(keys, values, 0, len);
+        }
+
+    }
+
+    /**
+     * Copy all the pairs from {@code src} to {@code sink}, in batches.
+     *
+     * @param src source to read from
+     * @param sink sink to write to
+     * @return number of pairs copied
+     * @throws IOException if some I/O error occurs
+     */
+    public static long copy(IntTYPNAMESource src, IntTYPNAMESink sink)
+            throws IOException {
+        Checks.checkNotNull("src", src);
+        Checks.checkNotNull("sink", sink);
+        final int[] keys = new int[ObjectIO.COPY_BATCH_SIZE];
+        final PRIMTYP[] values = new PRIMTYP[ObjectIO.COPY_BATCH_SIZE];
+        long count = 0;
+        int n;
+        while ((n = src.read(keys, values, 0, keys.length)) > 0) {
+            sink.write(keys, values, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+---EOF---
+fi
+
+done >> ${outfile}
+
+cat << "---EOF---" >> ${outfile}
+}
+---EOF---
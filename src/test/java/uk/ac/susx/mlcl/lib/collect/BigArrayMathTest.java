@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the long indexed arrays and {@link BigArrayMath}.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class BigArrayMathTest {
+
+    private static BigDoubleArray randomArray(double[] values, int shift,
+                                              boolean direct, long seed) {
+        final Random rand = new Random(seed);
+        final BigDoubleArray big =
+                new BigDoubleArray(values.length, shift, direct);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextGaussian();
+            big.set(i, values[i]);
+        }
+        return big;
+    }
+
+    @Test
+    public void testSegmentedStorage() {
+        System.out.println("Testing segmented storage");
+        for (boolean direct : new boolean[]{false, true}) {
+            final BigLongArray arr = new BigLongArray(10, 3, direct);
+            assertEquals(2, arr.getSegmentCount());
+            for (long i = 0; i < arr.length(); i++)
+                arr.set(i, i * 1000000000000L);
+            assertEquals(9000000000000L, arr.get(9));
+            assertEquals(5, arr.add(0, 5));
+
+            arr.setLength(100);
+            assertEquals(13, arr.getSegmentCount());
+            assertEquals(9000000000000L, arr.get(9));
+            assertEquals(0, arr.get(99));
+
+            arr.setLength(9);
+            arr.setLength(20);
+            assertEquals(0, arr.get(9));
+            assertEquals(8000000000000L, arr.get(8));
+            try {
+                arr.get(20);
+                fail("Expected IndexOutOfBoundsException");
+            } catch (IndexOutOfBoundsException ex) {
+                // expected
+            }
+
+            arr.fill(-1);
+            assertEquals(-20, BigArrayMath.sum(arr));
+            arr.setLength(22);
+            assertEquals(-20, BigArrayMath.sum(arr));
+        }
+    }
+
+    @Test
+    public void testIntSumDoesNotOverflow() throws InterruptedException {
+        System.out.println("Testing int sum does not overflow");
+        final BigIntArray arr = new BigIntArray(1000, 4, false);
+        arr.fill(Integer.MAX_VALUE);
+        assertEquals(1000L * Integer.MAX_VALUE, BigArrayMath.sum(arr));
+        assertArrayEquals(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE},
+                          BigArrayMath.minmax(arr));
+    }
+
+    @Test
+    public void testMatchesArrayMath() throws InterruptedException {
+        System.out.println("Testing reductions and element-wise operations");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final double[] a = new double[10000];
+            final double[] b = new double[10000];
+            final BigDoubleArray bigA = randomArray(a, 10, false, 1);
+            final BigDoubleArray bigB = randomArray(b, 10, true, 2);
+
+            double expected = 0;
+            for (int i = 0; i < a.length; i++)
+                expected += a[i];
+            assertEquals(expected, BigArrayMath.sum(bigA), 1e-9);
+            assertEquals(BigArrayMath.sum(bigA),
+                         BigArrayMath.sum(bigA, executor), 0);
+            assertEquals(ArrayMath.variance(a), BigArrayMath.variance(bigA),
+                         1e-9);
+            assertEquals(BigArrayMath.variance(bigA),
+                         BigArrayMath.variance(bigA, executor), 0);
+            assertArrayEquals(
+                    new double[]{ArrayUtil.min(a), ArrayUtil.max(a)},
+                    BigArrayMath.minmax(bigA, executor), 0);
+
+            final BigDoubleArray dst =
+                    new BigDoubleArray(a.length, 10, false);
+            BigArrayMath.mul(bigA, bigB, dst, executor);
+            BigArrayMath.add(dst, 1.0, dst);
+            final double[] product = ArrayMath.add(ArrayMath.mul(a, b), 1.0);
+            for (int i = 0; i < product.length; i++)
+                assertEquals(product[i], dst.get(i), 0);
+
+            try {
+                BigArrayMath.add(bigA, new BigDoubleArray(a.length), dst);
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.collect;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link DirectSparseDoubleVector} and
+ * {@link DirectMemoryArena}.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class DirectSparseDoubleVectorTest {
+
+    @Test
+    public void testMatchesHeapVector() {
+        System.out.println("Testing off-heap vector matches heap vector");
+        final Random rand = new Random(1);
+        final SparseDoubleVector heap = new SparseDoubleVector(1000);
+        final DirectSparseDoubleVector direct =
+                new DirectSparseDoubleVector(1000);
+        for (int i = 0; i < 5000; i++) {
+            final int key = rand.nextInt(1200);
+            final double value = rand.nextInt(4) == 0 ? 0 : rand.nextGaussian();
+            heap.set(key, value);
+            direct.set(key, value);
+        }
+        assertEquals(heap.cardinality(), direct.cardinality());
+        assertEquals(heap.size(), direct.size());
+        assertEquals(heap.sum, direct.sum(), 1e-9);
+        for (int key = 0; key < heap.cardinality(); key++)
+            assertEquals(heap.get(key), direct.get(key), 0);
+
+        heap.compact();
+        direct.compact();
+        assertEquals(heap.size(), direct.capacity());
+        assertEquals(heap, direct.toSparseDoubleVector());
+        assertEquals(heap.magnitude(), direct.magnitude(), 0);
+        assertEquals(heap.slice(100, 700),
+                     direct.slice(100, 700).toSparseDoubleVector());
+        assertEquals(heap.slice(500), direct.slice(500).toSparseDoubleVector());
+
+        direct.release();
+        assertTrue(direct.isReleased());
+        try {
+            direct.get(0);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSharedArena() {
+        System.out.println("Testing shared arena");
+        final DirectMemoryArena arena = new DirectMemoryArena(1 << 16);
+        final SparseDoubleVector heap =
+                SparseDoubleVector.from(new double[]{0, 1, 0, 2, 3, 0});
+        final DirectSparseDoubleVector[] vecs = new DirectSparseDoubleVector[100];
+        for (int i = 0; i < vecs.length; i++)
+            vecs[i] = DirectSparseDoubleVector.copyOf(heap, arena);
+        assertEquals(1 << 16, arena.getReservedBytes());
+        assertEquals(vecs[0], vecs[99]);
+        assertEquals(heap, vecs[50].toSparseDoubleVector());
+
+        // Blocks larger than a quarter of a chunk are freed individually
+        final DirectSparseDoubleVector big =
+                new DirectSparseDoubleVector(100000, 10000, arena);
+        assertEquals((1 << 16) + 120000, arena.getReservedBytes());
+        big.release();
+        assertEquals(1 << 16, arena.getReservedBytes());
+
+        arena.close();
+        assertEquals(0, arena.getReservedBytes());
+        assertTrue(vecs[0].isReleased());
+        try {
+            vecs[0].magnitude();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+}
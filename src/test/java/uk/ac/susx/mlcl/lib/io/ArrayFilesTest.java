@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import uk.ac.susx.mlcl.lib.collect.ArrayMath;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.makeTempDir;
+
+/**
+ * Test cases for the memory mapped primitive array files of
+ * {@link ArrayFiles}, and the buffer operations of {@link ArrayMath}.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ArrayFilesTest {
+
+    private static double[] randomDoubles(int n, long seed) {
+        final Random rand = new Random(seed);
+        final double[] arr = new double[n];
+        for (int i = 0; i < n; i++)
+            arr[i] = rand.nextGaussian();
+        return arr;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("Testing array file round trip");
+        final File dir = makeTempDir();
+        final double[] doubles = randomDoubles(100000, 1);
+        final int[] ints = ArrayMath.range(-5000, 3, 100000);
+        final long[] longs = {Long.MIN_VALUE, 0, Long.MAX_VALUE};
+        final float[] floats = {};
+
+        ArrayFiles.write(new File(dir, "d.arr"), doubles);
+        ArrayFiles.write(new File(dir, "i.arr"), ints);
+        ArrayFiles.write(new File(dir, "l.arr"), longs);
+        ArrayFiles.write(new File(dir, "f.arr"), floats);
+
+        assertTrue(Arrays.equals(doubles,
+                ArrayFiles.readDoubles(new File(dir, "d.arr"))));
+        assertArrayEquals(ints, ArrayFiles.readInts(new File(dir, "i.arr")));
+        assertArrayEquals(longs, ArrayFiles.readLongs(new File(dir, "l.arr")));
+        assertEquals(0, ArrayFiles.readFloats(new File(dir, "f.arr")).length);
+        assertEquals(ArrayFiles.HEADER_SIZE + doubles.length * 8,
+                     new File(dir, "d.arr").length());
+
+        try {
+            ArrayFiles.mapInts(new File(dir, "d.arr"));
+            fail("Expected IOException for the wrong element type");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMappedArithmetic() throws IOException {
+        System.out.println("Testing arithmetic over mapped arrays");
+        final File dir = makeTempDir();
+        final double[] a = randomDoubles(10000, 2);
+        final double[] b = randomDoubles(10000, 3);
+        ArrayFiles.write(new File(dir, "a.arr"), a);
+        ArrayFiles.write(new File(dir, "b.arr"), b);
+        ArrayFiles.write(new File(dir, "c.arr"), new double[a.length]);
+
+        final DoubleBuffer ma = ArrayFiles.mapDoubles(new File(dir, "a.arr"));
+        final DoubleBuffer mb = ArrayFiles.mapDoubles(new File(dir, "b.arr"));
+        assertEquals(ArrayMath.sum(a), ArrayMath.sum(ma), 0);
+        assertEquals(ArrayMath.mean(a), ArrayMath.mean(ma), 0);
+        assertEquals(ArrayMath.variance(a), ArrayMath.variance(ma), 0);
+
+        final DoubleBuffer mc =
+                ArrayFiles.mapDoubles(new File(dir, "c.arr"), true);
+        ArrayMath.mul(ma, mb, mc);
+        ArrayMath.add(mc, 1.0, mc);
+        assertTrue(Arrays.equals(
+                ArrayMath.add(ArrayMath.mul(a, b), 1.0),
+                ArrayFiles.readDoubles(new File(dir, "c.arr"))));
+
+        final IntBuffer ints = IntBuffer.wrap(new int[]{9, 1, 2, 3, 9});
+        ints.position(1).limit(4);
+        assertEquals(6, ArrayMath.sum(ints));
+        assertEquals(1, ints.position());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the AsyncObjectSink class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class AsyncObjectSinkTest {
+
+    @Test
+    public void testWriteOrder() throws IOException {
+        System.out.println("Testing asynchronous sink preserves order");
+        final List<Integer> output = new ArrayList<Integer>();
+        final AsyncObjectSink<Integer> sink = new AsyncObjectSink<Integer>(
+                ObjectIO.asSink(output), 100);
+        for (int i = 0; i < 1050; i++)
+            sink.write(i);
+        sink.flush();
+        assertEquals(1050, output.size());
+        for (int i = 1050; i < 2000; i++)
+            sink.write(i);
+        sink.close();
+        assertEquals(2000, output.size());
+        for (int i = 0; i < output.size(); i++)
+            assertEquals(i, (int) output.get(i));
+        assertEquals(21, sink.getBatchCount());
+    }
+
+    @Test
+    public void testBlockedTime() throws IOException {
+        System.out.println("Testing asynchronous sink reports blocked time");
+        final List<Integer> output = new ArrayList<Integer>();
+        final ObjectSink<Integer> slow = new ObjectSink<Integer>() {
+
+            @Override
+            public void write(Integer record) throws IOException {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                output.add(record);
+            }
+
+        };
+        final AsyncObjectSink<Integer> sink =
+                new AsyncObjectSink<Integer>(slow, 10);
+        for (int i = 0; i < 100; i++)
+            sink.write(i);
+        sink.close();
+        assertEquals(100, output.size());
+        assertTrue(sink.getBlockedNanos() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws IOException {
+        System.out.println("Testing asynchronous sink re-throws failures");
+        final AsyncObjectSink<Integer> sink = new AsyncObjectSink<Integer>(
+                new ObjectSink<Integer>() {
+
+                    @Override
+                    public void write(Integer record) throws IOException {
+                        throw new IOException("failed");
+                    }
+
+                }, 10);
+        for (int i = 0; i < 10; i++)
+            sink.write(i);
+        sink.close();
+    }
+
+    @Test
+    public void testFailureOnNextWrite() throws IOException,
+            InterruptedException {
+        System.out.println("Testing asynchronous sink failure on next write");
+        final AsyncObjectSink<Integer> sink = new AsyncObjectSink<Integer>(
+                new ObjectSink<Integer>() {
+
+                    @Override
+                    public void write(Integer record) throws IOException {
+                        throw new IOException("failed");
+                    }
+
+                }, 1000);
+        for (int i = 0; i < 1000; i++)
+            sink.write(i);
+        // The failure surfaces long before the second batch is handed off
+        boolean failed = false;
+        for (int i = 0; i < 500 && !failed; i++) {
+            Thread.sleep(1);
+            try {
+                sink.write(i);
+            } catch (IOException ex) {
+                failed = true;
+            }
+        }
+        assertTrue(failed);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the BinaryDataSource and BinaryDataSink classes.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class BinaryDataSourceTest {
+
+    private static final String[] STRINGS = {
+        "", "a", "hello world", "\u0000nul", "café",
+        "日本語", "𝄞 clef"
+    };
+
+    private static void writeRecord(DataSink sink, Random rand)
+            throws IOException {
+        sink.writeInt(rand.nextInt());
+        sink.writeInt(rand.nextInt(256) - 128);
+        sink.writeLong(rand.nextLong());
+        sink.writeLong(Long.MIN_VALUE);
+        sink.writeDouble(rand.nextGaussian());
+        sink.writeFloat(rand.nextFloat());
+        sink.writeByte((byte) rand.nextInt());
+        sink.writeChar((char) rand.nextInt(Character.MAX_VALUE + 1));
+        sink.writeShort((short) rand.nextInt());
+        sink.writeString(STRINGS[rand.nextInt(STRINGS.length)]);
+        sink.endOfRecord();
+    }
+
+    private static void checkRecord(DataSource src, Random rand)
+            throws IOException {
+        assertFalse(src.isEndOfRecordNext());
+        assertEquals(rand.nextInt(), src.readInt());
+        assertEquals(rand.nextInt(256) - 128, src.readInt());
+        assertEquals(rand.nextLong(), src.readLong());
+        assertEquals(Long.MIN_VALUE, src.readLong());
+        assertEquals(rand.nextGaussian(), src.readDouble(), 0);
+        assertEquals(rand.nextFloat(), src.readFloat(), 0);
+        assertEquals((byte) rand.nextInt(), src.readByte());
+        assertEquals((char) rand.nextInt(Character.MAX_VALUE + 1),
+                     src.readChar());
+        assertEquals((short) rand.nextInt(), src.readShort());
+        assertEquals(STRINGS[rand.nextInt(STRINGS.length)], src.readString());
+        assertTrue(src.isEndOfRecordNext());
+        src.endOfRecord();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("Testing binary data round trip");
+        final int n = 1000;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BinaryDataSink sink = new BinaryDataSink(
+                Channels.newChannel(bytes), 100);
+        Random rand = new Random(0);
+        for (int i = 0; i < n; i++)
+            writeRecord(sink, rand);
+        sink.endOfRecord();
+        final StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            big.append(STRINGS[i % STRINGS.length]);
+        sink.writeString(big.toString());
+        sink.endOfRecord();
+        sink.close();
+
+        final BinaryDataSource src = new BinaryDataSource(
+                Channels.newChannel(new ByteArrayInputStream(
+                bytes.toByteArray())), 16);
+        rand = new Random(0);
+        for (int i = 0; i < n; i++)
+            checkRecord(src, rand);
+        assertTrue(src.canRead());
+        assertTrue(src.isEndOfRecordNext());
+        src.endOfRecord();
+        assertEquals(big.toString(), src.readString());
+        src.endOfRecord();
+        assertFalse(src.canRead());
+        src.close();
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        System.out.println("Testing binary data seeking");
+        final File file = File.createTempFile(
+                BinaryDataSourceTest.class.getName(), ".tmp");
+        file.deleteOnExit();
+        final int n = 500;
+        final BinaryDataSink sink = new BinaryDataSink(
+                new FileOutputStream(file).getChannel());
+        final Random rand = new Random(1);
+        for (int i = 0; i < n; i++)
+            writeRecord(sink, rand);
+        sink.close();
+
+        final BinaryDataSource src = new BinaryDataSource(
+                new FileInputStream(file).getChannel(), 64);
+        final List<Tell> tells = new ArrayList<Tell>();
+        for (int i = 0; i < n; i++) {
+            tells.add(src.position());
+            src.readInt();
+            src.readInt();
+            src.readLong();
+            src.readLong();
+            src.readDouble();
+            src.readFloat();
+            src.readByte();
+            src.readChar();
+            src.readShort();
+            src.readString();
+            src.endOfRecord();
+        }
+        assertFalse(src.canRead());
+
+        final Random order = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            final int j = order.nextInt(n);
+            src.position(tells.get(j));
+            assertEquals(tells.get(j), src.position());
+            // Replay the generator up to the start of record j
+            final Random replay = new Random(1);
+            for (int k = 0; k < j; k++)
+                writeRecord(new BinaryDataSink(Channels.newChannel(
+                        new ByteArrayOutputStream())), replay);
+            checkRecord(src, replay);
+        }
+        src.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipException;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.INTEGER_CODEC;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.readFully;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.sampleData;
+
+/**
+ * Test cases for the BlockGzipOutputStream and BlockGzipChannel classes.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class BlockGzipChannelTest {
+
+    private static final int STEP = 37000;
+
+    @Test
+    public void testSeekVirtualOffsets() throws IOException {
+        System.out.println("Testing block gzip virtual offsets");
+        final File file = File.createTempFile("bgz", ".bgz");
+        file.deleteOnExit();
+        final byte[] data = sampleData(300000);
+
+        final BlockGzipOutputStream out =
+                new BlockGzipOutputStream(new FileOutputStream(file), 3);
+        final List<Long> offsets = new ArrayList<Long>();
+        for (int pos = 0; pos < data.length; pos += STEP) {
+            offsets.add(out.getVirtualOffset());
+            out.write(data, pos, Math.min(STEP, data.length - pos));
+        }
+        out.close();
+
+        // Readable as an ordinary multi-member gzip file
+        assertArrayEquals(data, readFully(
+                new GZIPInputStream(new FileInputStream(file))));
+        assertArrayEquals(data, readFully(Files.openInputStream(file)));
+
+        final BlockGzipChannel in = new BlockGzipChannel(
+                new FileInputStream(file).getChannel());
+        final ByteBuffer buf = ByteBuffer.allocate(100);
+        for (int i = offsets.size() - 1; i >= 0; i--) {
+            in.position(offsets.get(i));
+            assertEquals(offsets.get(i), in.position());
+            buf.clear();
+            while (buf.hasRemaining() && in.read(buf) != -1) {
+            }
+            buf.flip();
+            for (int j = 0; j < buf.limit(); j++)
+                assertEquals(data[i * STEP + j], buf.get(j));
+        }
+        in.close();
+        file.delete();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        System.out.println("Testing empty block gzip");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BlockGzipOutputStream(bytes).close();
+        assertArrayEquals(ParallelGzipOutputStream.BLOCK_EOF_MARKER,
+                          bytes.toByteArray());
+    }
+
+    @Test
+    public void testSeekableRecords() throws IOException {
+        System.out.println("Testing block gzip seekable records");
+        final File file = File.createTempFile("bgz", ".bgz");
+        file.deleteOnExit();
+        final int n = 50000;
+        final CodecObjectSink<Integer> sink = new CodecObjectSink<Integer>(
+                new BinaryDataSink(Files.openWritableByteChannel(file)),
+                INTEGER_CODEC);
+        for (int i = 0; i < n; i++)
+            sink.write(i);
+        sink.close();
+
+        final SeekableCodecObjectSource<Integer> src =
+                new SeekableCodecObjectSource<Integer>(new BinaryDataSource(
+                Files.openReadableByteChannel(file), 1024), INTEGER_CODEC);
+        final List<Tell> tells = new ArrayList<Tell>();
+        int count = 0;
+        while (src.hasNext()) {
+            tells.add(src.position());
+            assertEquals(count++, (int) src.read());
+        }
+        assertEquals(n, count);
+
+        final Random rand = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            final int k = rand.nextInt(n);
+            src.position(tells.get(k));
+            assertEquals(k, (int) src.read());
+            if (src.hasNext())
+                assertEquals(k + 1, (int) src.read());
+        }
+        src.close();
+        file.delete();
+    }
+
+    @Test(timeout = 10000)
+    public void testTruncatedMember() throws IOException {
+        System.out.println("Testing block gzip truncated member");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BlockGzipOutputStream out = new BlockGzipOutputStream(bytes);
+        out.write(sampleData(5000));
+        out.close();
+        final byte[] valid = bytes.toByteArray();
+
+        // Drop part of the deflate data from the first member, keeping its
+        // trailer, and shorten BSIZE to match.
+        final int header = ParallelGzipOutputStream.BLOCK_HEADER_SIZE;
+        final int memberSize = (valid[16] & 0xff | (valid[17] & 0xff) << 8) + 1;
+        final int dropped = (memberSize - header) / 2;
+        final byte[] truncated = new byte[memberSize - dropped];
+        System.arraycopy(valid, 0, truncated, 0, truncated.length - 8);
+        System.arraycopy(valid, memberSize - 8, truncated,
+                         truncated.length - 8, 8);
+        truncated[16] = (byte) (truncated.length - 1);
+        truncated[17] = (byte) ((truncated.length - 1) >>> 8);
+
+        final File file = File.createTempFile("bgz", ".bgz");
+        file.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(file);
+        fos.write(truncated);
+        fos.close();
+        final BlockGzipChannel channel =
+                new BlockGzipChannel(new FileInputStream(file).getChannel());
+        try {
+            channel.read(ByteBuffer.allocate(5000));
+            fail("Expected ZipException");
+        } catch (ZipException ex) {
+            // expected
+        } finally {
+            channel.close();
+            file.delete();
+        }
+    }
+}
@@ -31,6 +31,7 @@
 package uk.ac.susx.mlcl.lib.io;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
@@ -44,7 +45,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
 import java.nio.channels.ClosedChannelException;
 import java.util.HashMap;
 import org.junit.BeforeClass;
@@ -187,6 +191,169 @@ public class CharFileChannelTest {
         }
     }
 
+    @Test
+    public void testReadAheadSlidingWindow() throws Exception {
+        System.out.println("Testing read(CharBuffer) with sliding window read-ahead");
+
+        CharFileChannel expected = new CharFileChannel(
+                new FileInputStream(SMALL_SAMPLE_FILE).getChannel(),
+                Files.DEFAULT_CHARSET);
+        CharFileChannel actual = new CharFileChannel(
+                new FileInputStream(SMALL_SAMPLE_FILE).getChannel(),
+                Files.DEFAULT_CHARSET);
+        actual.setMaxMappedBytes(1 << 16);
+        actual.setReadAhead(true);
+
+        final CharBuffer expectedDst = CharBuffer.allocate(1001);
+        final CharBuffer actualDst = CharBuffer.allocate(1001);
+        long n;
+        while ((n = expected.read(expectedDst)) != 0) {
+            assertEquals(n, actual.read(actualDst));
+            assertEquals(expected.position(), actual.position());
+            expectedDst.flip();
+            actualDst.flip();
+            assertEquals(expectedDst, actualDst);
+            expectedDst.clear();
+            actualDst.clear();
+        }
+        assertFalse(actual.hasBytesRemaining());
+
+        expected.close();
+        actual.close();
+    }
+
+    private static String readFully(CharFileChannel channel, int bufferSize)
+            throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final CharBuffer dst = CharBuffer.allocate(bufferSize);
+        while (channel.read(dst) != 0) {
+            dst.flip();
+            sb.append(dst);
+            dst.clear();
+        }
+        channel.close();
+        return sb.toString();
+    }
+
+    @Test
+    public void testReadAsciiFastPath() throws Exception {
+        System.out.println("Testing read(CharBuffer) ASCII fast path");
+
+        // Mostly ASCII, with multi-byte sequences, malformed bytes, and
+        // sequences truncated by ASCII.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Random rand = new Random(1);
+        final byte[][] fragments = new byte[][]{
+            "the quick brown fox ".getBytes("US-ASCII"),
+            "été 中文 😀 ".getBytes("UTF-8"),
+            new byte[]{(byte) 0xff},
+            new byte[]{(byte) 0xe2, (byte) 0x82, 'x'},
+            new byte[]{(byte) 0x80, (byte) 0x80},
+            "\t12345\n".getBytes("US-ASCII")
+        };
+        for (int i = 0; i < 5000; i++) {
+            final byte[] fragment = fragments[rand.nextInt(10) < 7
+                    ? rand.nextInt(2) * 5 : rand.nextInt(fragments.length)];
+            bytes.write(fragment, 0, fragment.length);
+        }
+        final File file = File.createTempFile(getClass().getName(), ".tmp");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes.toByteArray());
+        out.close();
+
+        final Charset utf8 = Charset.forName("UTF-8");
+        final String expected = utf8.newDecoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                decode(ByteBuffer.wrap(bytes.toByteArray())).toString();
+
+        for (int window : new int[]{61, 4096, Integer.MAX_VALUE}) {
+            for (int bufferSize : new int[]{2, 7, 1001}) {
+                CharFileChannel instance = new CharFileChannel(
+                        new FileInputStream(file).getChannel(),
+                        utf8.newDecoder().onMalformedInput(
+                        CodingErrorAction.REPLACE));
+                instance.setMaxMappedBytes(window);
+                assertEquals(expected, readFully(instance, bufferSize));
+            }
+        }
+
+        CharFileChannel instance = new CharFileChannel(
+                new FileInputStream(file).getChannel(),
+                utf8.newDecoder().onMalformedInput(CodingErrorAction.REPORT));
+        try {
+            readFully(instance, 1001);
+            fail("Exception should have been thrown.");
+        } catch (MalformedInputException ex) {
+            // Yay (this is supposed to happen)
+        }
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("Testing write(CharBuffer)");
+
+        final File in = new File(
+                "src/test/resources/uk/ac/susx/mlcl/lib/io/UTF-8-demo.txt");
+        final StringBuilder expected = new StringBuilder();
+        Files.readAll(in, Files.DEFAULT_CHARSET, expected);
+
+        final File out = File.createTempFile(getClass().getName(), ".tmp");
+        out.deleteOnExit();
+
+        CharFileChannel instance = new CharFileChannel(
+                new RandomAccessFile(out, "rw").getChannel(),
+                Files.DEFAULT_CHARSET);
+        // Force many re-mappings
+        instance.setMaxMappedBytes(101);
+
+        final CharBuffer src = CharBuffer.wrap(expected);
+        long bytesWritten = 0;
+        while (src.hasRemaining()) {
+            final int end = Math.min(src.position() + 37, src.limit());
+            final CharBuffer part = CharBuffer.wrap(expected, src.position(), end);
+            instance.write(part);
+            src.position(part.position());
+            bytesWritten = instance.position();
+        }
+        instance.close();
+
+        assertEquals(expected.toString().getBytes(Files.DEFAULT_CHARSET).length,
+                     bytesWritten);
+        assertEquals(bytesWritten, out.length());
+
+        final StringBuilder actual = new StringBuilder();
+        Files.readAll(out, Files.DEFAULT_CHARSET, actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testWriteThenRead() throws Exception {
+        System.out.println("Testing write(CharBuffer) followed by read(CharBuffer)");
+
+        final File out = File.createTempFile(getClass().getName(), ".tmp");
+        out.deleteOnExit();
+
+        CharFileChannel instance = new CharFileChannel(
+                new RandomAccessFile(out, "rw").getChannel(),
+                Files.DEFAULT_CHARSET);
+
+        final String text = "The quick brown fox jumps over the lazy dög.";
+        instance.write(CharBuffer.wrap(text));
+        final long end = instance.position();
+        assertEquals(end, instance.size());
+
+        instance.position(0L);
+        final CharBuffer dst = CharBuffer.allocate(text.length() * 2);
+        instance.read(dst);
+        dst.flip();
+        assertEquals(text, dst.toString());
+        assertEquals(end, (long) instance.position());
+
+        instance.close();
+        assertEquals(end, out.length());
+    }
+
     @Test
     public void testIsOpen() throws FileNotFoundException, IOException {
         System.out.println("Testing isOpen() and close()");
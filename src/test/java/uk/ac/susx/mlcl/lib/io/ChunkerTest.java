@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the Chunker class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ChunkerTest {
+
+    /**
+     * Source of the integers from 0 until limit, that throws an IOException
+     * instead of producing failAt, and records whether it has been closed.
+     */
+    static final class RangeSource implements ObjectSource<Integer>, Closeable {
+
+        final int limit;
+
+        final int failAt;
+
+        int next = 0;
+
+        volatile boolean closed = false;
+
+        RangeSource(int limit, int failAt) {
+            this.limit = limit;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public Integer read() throws IOException {
+            if (next == failAt)
+                throw new IOException("Failed at " + failAt);
+            return next++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < limit;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static List<Integer> flatten(ObjectSource<Chunk<Integer>> chunks)
+            throws IOException {
+        final List<Integer> items = new ArrayList<Integer>();
+        while (chunks.hasNext())
+            items.addAll(chunks.read());
+        return items;
+    }
+
+    @Test
+    public void testPrefetching() throws IOException {
+        System.out.println("Testing prefetching chunker");
+        final RangeSource src = new RangeSource(10007, -1);
+        final ObjectSource<Chunk<Integer>> chunks =
+                Chunker.newPrefetchingInstance(src, 100, 2);
+        final List<Integer> items = flatten(chunks);
+        assertEquals(10007, items.size());
+        for (int i = 0; i < items.size(); i++)
+            assertEquals(i, items.get(i).intValue());
+        ((Closeable) chunks).close();
+        assertTrue(src.closed);
+    }
+
+    @Test
+    public void testPrefetchingFailure() throws IOException {
+        System.out.println("Testing prefetching chunker failure");
+        final RangeSource src = new RangeSource(10000, 5555);
+        final ObjectSource<Chunk<Integer>> chunks =
+                Chunker.newPrefetchingInstance(src, 100, 2);
+        int count = 0;
+        try {
+            while (chunks.hasNext())
+                count += chunks.read().size();
+            fail("Expecting IOException");
+        } catch (IOException ex) {
+            assertEquals("Failed at 5555", ex.getMessage());
+        }
+        assertEquals(5500, count);
+        ((Closeable) chunks).close();
+        assertTrue(src.closed);
+    }
+
+    @Test
+    public void testPrefetchingClose() throws IOException {
+        System.out.println("Testing prefetching chunker early close");
+        final RangeSource src = new RangeSource(Integer.MAX_VALUE, -1);
+        final ObjectSource<Chunk<Integer>> chunks =
+                Chunker.newPrefetchingInstance(src, 100, 2);
+        assertEquals(0, chunks.read().get(0).intValue());
+        ((Closeable) chunks).close();
+        assertTrue(src.closed);
+        assertFalse(chunks.hasNext());
+    }
+
+    @Test
+    public void testParallelProcessing() throws IOException {
+        System.out.println("Testing parallel chunk processing");
+        final ParallelChunkProcessor<Integer, Integer> processor =
+                new ParallelChunkProcessor<Integer, Integer>(
+                new ParallelChunkProcessor.ChunkFunction<Integer, Integer>() {
+
+            @Override
+            public List<Integer> apply(Chunk<Integer> chunk) throws IOException {
+                final List<Integer> result = new ArrayList<Integer>();
+                // Vary the processing time, so chunks complete out of order
+                try {
+                    Thread.sleep(chunk.getSequence() % 3);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                for (Integer x : chunk)
+                    if (x % 2 == 0)
+                        result.add(x * 10);
+                return result;
+            }
+
+        });
+        processor.setMaxInFlight(5);
+        final List<Integer> output = new ArrayList<Integer>();
+        final long chunks = processor.run(
+                Chunker.newInstance(new RangeSource(10000, -1), 97),
+                ObjectIO.asSink(output));
+        assertEquals(104, chunks);
+        assertEquals(5000, output.size());
+        for (int i = 0; i < output.size(); i++)
+            assertEquals(i * 20, output.get(i).intValue());
+        assertEquals(10000, processor.getProcessStatistics().getItemCount());
+        assertEquals(104, processor.getReadStatistics().getChunkCount());
+        assertEquals(5000, processor.getWriteStatistics().getItemCount());
+    }
+
+    @Test
+    public void testChunkPool() throws IOException {
+        System.out.println("Testing chunk pool reuse and leak detection");
+        final ChunkPool<Integer> pool = new ChunkPool<Integer>(2);
+        pool.setDebug(true);
+        final ObjectSource<Chunk<Integer>> chunks = Chunker.newInstance(
+                new RangeSource(1000, -1), 10, pool);
+        int expected = 0;
+        Chunk<Integer> leaked = null;
+        while (chunks.hasNext()) {
+            final Chunk<Integer> chunk = chunks.read();
+            assertEquals(0, chunk.position().intValue());
+            while (chunk.hasNext())
+                assertEquals(expected++, chunk.read().intValue());
+            if (leaked == null)
+                leaked = chunk;
+            else
+                chunk.close();
+        }
+        assertEquals(1000, expected);
+        assertEquals(2, pool.getMissCount());
+        assertEquals(98, pool.getReuseCount());
+        assertEquals(1, pool.getLeaks().size());
+
+        leaked.close();
+        assertEquals(0, pool.getLeaks().size());
+        final int pooled = pool.size();
+        leaked.close();
+        assertEquals(pooled, pool.size());
+        assertNotSame(pool.acquire("a"), pool.acquire("b"));
+
+        // A chunk acquired before debug mode was enabled is still recycled
+        final ChunkPool<Integer> late = new ChunkPool<Integer>();
+        final Chunk<Integer> early = late.acquire("early");
+        late.setDebug(true);
+        early.close();
+        assertEquals(1, late.size());
+        assertEquals(0, late.getLeaks().size());
+    }
+
+    @Test
+    public void testParallelProcessingPool() throws IOException {
+        System.out.println("Testing parallel chunk processing with a pool");
+        final ChunkPool<Integer> pool = new ChunkPool<Integer>();
+        pool.setDebug(true);
+        final ParallelChunkProcessor<Integer, Integer> processor =
+                new ParallelChunkProcessor<Integer, Integer>(
+                new ParallelChunkProcessor.ChunkFunction<Integer, Integer>() {
+
+            @Override
+            public List<Integer> apply(Chunk<Integer> chunk) throws IOException {
+                final List<Integer> result = new ArrayList<Integer>();
+                for (Integer x : chunk)
+                    result.add(x);
+                return result;
+            }
+
+        });
+        processor.setMaxInFlight(4);
+        final List<Integer> output = new ArrayList<Integer>();
+        assertEquals(104, processor.run(
+                Chunker.newInstance(new RangeSource(10000, -1), 97, pool),
+                ObjectIO.asSink(output)));
+        assertEquals(10000, output.size());
+        assertEquals(0, pool.getLeaks().size());
+        assertEquals(104, pool.getMissCount() + pool.getReuseCount());
+        assertTrue(pool.getMissCount() <= 4);
+
+        // Chunks read ahead by a prefetching chunker are returned on close
+        final Chunker<Integer, ?> prefetching = (Chunker<Integer, ?>)
+                Chunker.newPrefetchingInstance(
+                new RangeSource(Integer.MAX_VALUE, -1), 10, 4);
+        prefetching.setChunkPool(pool);
+        prefetching.read().close();
+        prefetching.close();
+        assertEquals(0, pool.getLeaks().size());
+    }
+
+    @Test
+    public void testAdaptiveBytes() throws IOException {
+        System.out.println("Testing adaptive chunk sizing by bytes");
+        final AdaptiveChunkSizer<Integer> sizer = AdaptiveChunkSizer.forBytes(
+                8000, new AdaptiveChunkSizer.SizeEstimator<Integer>() {
+
+            @Override
+            public long sizeOf(Integer item) {
+                return 40;
+            }
+
+        });
+        final ObjectSource<Chunk<Integer>> chunks = Chunker.newAdaptiveInstance(
+                new RangeSource(100000, -1), sizer);
+        final List<Integer> sizes = new ArrayList<Integer>();
+        int total = 0;
+        while (chunks.hasNext()) {
+            final Chunk<Integer> chunk = chunks.read();
+            sizes.add(chunk.size());
+            total += chunk.size();
+        }
+        assertEquals(100000, total);
+        // Doubling from the minimum of 16 reaches the target of 200 items
+        assertEquals(Arrays.asList(16, 32, 64, 128, 200, 200),
+                     sizes.subList(0, 6));
+        assertEquals(40, sizer.getBytesPerItem(), 0);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import uk.ac.susx.mlcl.lib.collect.Indexed;
+import uk.ac.susx.mlcl.lib.collect.SparseDoubleVector;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.makeTempDir;
+
+/**
+ * Test cases for the tagged object encoding of {@link CodecRegistry}.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class CodecRegistryTest {
+
+    private static SparseDoubleVector randomVector(int entries, long seed) {
+        final Random rand = new Random(seed);
+        final SparseDoubleVector vec = new SparseDoubleVector(1000000);
+        for (int i = 0; i < entries; i++)
+            vec.set(rand.nextInt(vec.cardinality), rand.nextGaussian());
+        vec.compact();
+        return vec;
+    }
+
+    @Test
+    public void testLibraryTypes() throws IOException {
+        System.out.println("Testing library types");
+        final File file = new File(makeTempDir(), "objects.bin");
+        final TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+        map.put("fallback", 1);
+        final List<Object> input = Arrays.<Object>asList(
+                null, "text", Boolean.TRUE, -7, Long.MIN_VALUE, 0.5,
+                new Indexed<String>(3, "three"),
+                new Indexed<Long>(4, 5L),
+                randomVector(100, 1),
+                new SparseDoubleVector(10, 0),
+                map);
+
+        final CodecObjectSink<Object> sink =
+                Files.openEncodedSink(file, new CodecRegistry());
+        ObjectIO.copy(ObjectIO.asSource((Iterable<Object>) input), sink);
+        sink.write(new ArrayList<Object>(input));
+        sink.write(new int[]{1, -2, Integer.MAX_VALUE});
+        sink.write(new long[]{Long.MAX_VALUE, 0});
+        sink.write(new double[]{Double.NaN, -0.0});
+        sink.write(new byte[]{-128, 127});
+        sink.close();
+
+        final List<Object> output = ObjectIO.readAll(
+                Files.openEncodedSource(file, new CodecRegistry()));
+        assertEquals(input, output.subList(0, input.size()));
+        assertEquals(input, output.get(input.size()));
+        assertArrayEquals(new int[]{1, -2, Integer.MAX_VALUE},
+                          (int[]) output.get(input.size() + 1));
+        assertArrayEquals(new long[]{Long.MAX_VALUE, 0},
+                          (long[]) output.get(input.size() + 2));
+        assertTrue(Arrays.equals(new double[]{Double.NaN, -0.0},
+                                 (double[]) output.get(input.size() + 3)));
+        assertArrayEquals(new byte[]{-128, 127},
+                          (byte[]) output.get(input.size() + 4));
+        assertEquals(input.size() + 5, output.size());
+    }
+
+    @Test
+    public void testSmallerThanSerialized() throws IOException {
+        System.out.println("Testing size of encoded vectors");
+        final File dir = makeTempDir();
+        final List<Indexed<SparseDoubleVector>> vectors =
+                new ArrayList<Indexed<SparseDoubleVector>>();
+        for (int i = 0; i < 20; i++)
+            vectors.add(new Indexed<SparseDoubleVector>(
+                    i, randomVector(1000, i)));
+
+        final File encoded = new File(dir, "vectors.bin");
+        Files.writeEncoded(vectors, encoded);
+        final File serialized = new File(dir, "vectors.ser");
+        Files.writeSerialized(vectors, serialized);
+
+        assertEquals(vectors, Files.readEncoded(encoded));
+        assertTrue(encoded.length() < serialized.length());
+    }
+
+    @Test
+    public void testRegisteredCodec() throws IOException {
+        System.out.println("Testing registered codec");
+        final CodecRegistry registry = new CodecRegistry();
+        final Object unserializable = new Object();
+        final File file = new File(makeTempDir(), "custom.bin");
+        try {
+            Files.writeEncoded(unserializable, file, registry);
+            fail("Expected NotSerializableException");
+        } catch (NotSerializableException ex) {
+            // expected
+        }
+
+        registry.register(CodecRegistry.MIN_USER_TAG, Object.class,
+                          new ObjectCodec<Object>() {
+
+            @Override
+            public void encode(Object obj, DataSink sink) {
+            }
+
+            @Override
+            public Object decode(DataSource src) {
+                return unserializable;
+            }
+        });
+        assertTrue(registry.isRegistered(Object.class));
+        Files.writeEncoded(unserializable, file, registry);
+        assertSame(unserializable, Files.readEncoded(file, registry));
+
+        try {
+            Files.readEncoded(file);
+            fail("Expected IOException for an unknown tag");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the ExternalSorter class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ExternalSorterTest {
+
+    static final ObjectCodec<Integer> INTEGER_CODEC = new ObjectCodec<Integer>() {
+
+        @Override
+        public void encode(Integer obj, DataSink sink) throws IOException {
+            sink.writeInt(obj);
+        }
+
+        @Override
+        public Integer decode(DataSource src) throws IOException {
+            return src.readInt();
+        }
+
+    };
+
+    static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+
+        @Override
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+
+    };
+
+    static File makeTempDir() throws IOException {
+        final File dir = File.createTempFile(
+                ExternalSorterTest.class.getName(), "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static List<Integer> randomList(int n, long seed) {
+        final Random rand = new Random(seed);
+        final List<Integer> list = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++)
+            list.add(rand.nextInt(n));
+        return list;
+    }
+
+    @Test
+    public void testSortInMemory() throws IOException {
+        System.out.println("Testing external sort of a single run");
+        final List<Integer> input = randomList(1000, 0);
+        final ExternalSorter<Integer> sorter =
+                new ExternalSorter<Integer>(NATURAL, INTEGER_CODEC);
+        final List<Integer> actual = ObjectIO.readAll(
+                sorter.sort(ObjectIO.asSource((Iterable<Integer>) input)));
+        Collections.sort(input);
+        assertEquals(input, actual);
+    }
+
+    @Test
+    public void testSortSpilled() throws IOException {
+        System.out.println("Testing external sort of spilled runs");
+        final File dir = makeTempDir();
+        final List<Integer> input = randomList(100000, 1);
+        final ExternalSorter<Integer> sorter =
+                new ExternalSorter<Integer>(NATURAL, INTEGER_CODEC);
+        sorter.setFileFactory(new TempFileFactory(dir));
+        sorter.setMaxRunSize(1000);
+        sorter.setMaxConcurrentRuns(3);
+        sorter.setBlockSize(17);
+        final ObjectSource<Integer> sorted =
+                sorter.sort(ObjectIO.asSource((Iterable<Integer>) input));
+        assertEquals(100, dir.list().length);
+        final List<Integer> actual = ObjectIO.readAll(sorted);
+        Collections.sort(input);
+        assertEquals(input, actual);
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testCloseDeletesRuns() throws IOException {
+        System.out.println("Testing external sort deletes runs on close");
+        final File dir = makeTempDir();
+        final ExternalSorter<Integer> sorter =
+                new ExternalSorter<Integer>(NATURAL, INTEGER_CODEC);
+        sorter.setFileFactory(new TempFileFactory(dir));
+        sorter.setMaxRunSize(100);
+        final List<Integer> input = randomList(1050, 2);
+        final ObjectSource<Integer> sorted =
+                sorter.sort(ObjectIO.asSource((Iterable<Integer>) input));
+        assertEquals(Collections.min(input), sorted.read());
+        ((Closeable) sorted).close();
+        assertEquals(0, dir.list().length);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.readFully;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.sampleData;
+
+/**
+ * Test cases for the LZ4 frame format streams.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class LZ4StreamTest {
+
+    private static byte[] compress(byte[] data, int blockSize)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream out = new LZ4OutputStream(bytes, blockSize);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        return readFully(new LZ4InputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testXXHash32() {
+        System.out.println("Testing xxHash32");
+        final byte[] text =
+                "Nobody inspects the spammish repetition".getBytes();
+        assertEquals(0x02CC5D05, XXHash32.hash(new byte[0], 0, 0, 0));
+        assertEquals(0xE2293B2F, XXHash32.hash(text, 0, text.length, 0));
+        final XXHash32 h = new XXHash32();
+        for (int i = 0; i < text.length; i += 7)
+            h.update(text, i, Math.min(7, text.length - i));
+        assertEquals(0xE2293B2F, h.getValue());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("Testing LZ4 round trip");
+        final byte[] text = sampleData(1000000);
+        final byte[] random = new byte[300000];
+        new Random(0).nextBytes(random);
+        for (byte[] data : new byte[][]{new byte[0], new byte[5], text, random}) {
+            for (int blockSize : new int[]{LZ4OutputStream.BLOCK_SIZE_64KB,
+                                           LZ4OutputStream.BLOCK_SIZE_4MB}) {
+                final byte[] compressed = compress(data, blockSize);
+                assertArrayEquals(data, decompress(compressed));
+            }
+        }
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            lines.append("record\t").append(i % 1000).append("\tvalue\n");
+        final byte[] repetitive = lines.toString().getBytes();
+        final byte[] compressed =
+                compress(repetitive, LZ4OutputStream.DEFAULT_BLOCK_SIZE);
+        assertTrue(compressed.length < repetitive.length / 4);
+        assertArrayEquals(repetitive, decompress(compressed));
+    }
+
+    @Test
+    public void testLinkedBlocks() throws IOException {
+        System.out.println("Testing LZ4 linked blocks");
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        final byte[] header = new byte[7];
+        LZ4OutputStream.putIntLE(header, 0, LZ4OutputStream.MAGIC);
+        header[4] = (byte) LZ4OutputStream.FLAG_VERSION;
+        header[5] = (byte) (4 << 4);
+        header[6] = LZ4OutputStream.headerChecksum(header, 4, 2);
+        frame.write(header);
+        // A stored block, then a block that copies 8 bytes from it
+        final byte[] size = new byte[4];
+        LZ4OutputStream.putIntLE(size, 0, 10 | 0x80000000);
+        frame.write(size);
+        frame.write("abcdefghij".getBytes());
+        final byte[] block = {0x04, 0x08, 0x00, 0x50, '1', '2', '3', '4', '5'};
+        LZ4OutputStream.putIntLE(size, 0, block.length);
+        frame.write(size);
+        frame.write(block);
+        frame.write(new byte[4]);
+
+        assertEquals("abcdefghijcdefghij12345",
+                     new String(decompress(frame.toByteArray())));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorrupt() throws IOException {
+        System.out.println("Testing LZ4 corrupt input");
+        final byte[] compressed = compress(sampleData(10000),
+                                           LZ4OutputStream.BLOCK_SIZE_64KB);
+        compressed[compressed.length / 2] ^= 0x55;
+        decompress(compressed);
+    }
+
+    @Test
+    public void testFilesAndSpills() throws IOException {
+        System.out.println("Testing LZ4 through Files and sorter spills");
+        final File dir = ExternalSorterTest.makeTempDir();
+        final File file = new File(dir, "data.lz4");
+        final byte[] data = sampleData(100000);
+        final OutputStream out = Files.openOutputStream(file);
+        out.write(data);
+        out.close();
+        final InputStream in = Files.openInputStream(file);
+        assertArrayEquals(data, readFully(in));
+        file.delete();
+
+        final ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(
+                ExternalSorterTest.NATURAL, ExternalSorterTest.INTEGER_CODEC);
+        sorter.setFileFactory(new TempFileFactory("spill-", ".lz4", dir));
+        sorter.setMaxRunSize(1000);
+        sorter.setBlockSize(17);
+        final List<Integer> input = new ArrayList<Integer>();
+        final Random rand = new Random(0);
+        for (int i = 0; i < 10000; i++)
+            input.add(rand.nextInt());
+        final ObjectSource<Integer> sorted =
+                sorter.sort(ObjectIO.asSource((Iterable<Integer>) input));
+        assertEquals(10, dir.list().length);
+        assertTrue(dir.list()[0].endsWith(".lz4"));
+        final List<Integer> actual = ObjectIO.readAll(sorted);
+        Collections.sort(input);
+        assertEquals(input, actual);
+        assertEquals(0, dir.list().length);
+        dir.delete();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.NATURAL;
+
+/**
+ * Test cases for the MergingObjectSource class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class MergingObjectSourceTest {
+
+    private static List<List<Integer>> sortedLists(int k, int n, Random rand) {
+        final List<List<Integer>> lists = new ArrayList<List<Integer>>();
+        for (int i = 0; i < k; i++) {
+            final List<Integer> list = new ArrayList<Integer>();
+            final int size = rand.nextInt(n + 1);
+            for (int j = 0; j < size; j++)
+                list.add(rand.nextInt(n));
+            Collections.sort(list);
+            lists.add(list);
+        }
+        return lists;
+    }
+
+    private static List<ObjectSource<Integer>> sources(List<List<Integer>> lists) {
+        final List<ObjectSource<Integer>> sources =
+                new ArrayList<ObjectSource<Integer>>();
+        for (List<Integer> list : lists)
+            sources.add(ObjectIO.asSource((Iterable<Integer>) list));
+        return sources;
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        System.out.println("Testing loser tree merge");
+        final Random rand = new Random(0);
+        for (int k : new int[]{0, 1, 2, 3, 7, 8, 100}) {
+            final List<List<Integer>> lists = sortedLists(k, 200, rand);
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (List<Integer> list : lists)
+                expected.addAll(list);
+            Collections.sort(expected);
+            final List<Integer> actual = ObjectIO.readAll(
+                    ObjectIO.merge(sources(lists), NATURAL));
+            assertEquals("k=" + k, expected, actual);
+        }
+    }
+
+    @Test
+    public void testMergeReduce() throws IOException {
+        System.out.println("Testing loser tree merge with reducer");
+        final Random rand = new Random(1);
+        final List<List<Integer>> lists = sortedLists(50, 100, rand);
+        final TreeMap<Integer, Integer> counts = new TreeMap<Integer, Integer>();
+        final List<ObjectSource<int[]>> sources =
+                new ArrayList<ObjectSource<int[]>>();
+        for (List<Integer> list : lists) {
+            final List<int[]> pairs = new ArrayList<int[]>();
+            for (Integer x : list) {
+                counts.put(x, counts.containsKey(x) ? counts.get(x) + 1 : 1);
+                pairs.add(new int[]{x, 1});
+            }
+            sources.add(ObjectIO.asSource((Iterable<int[]>) pairs));
+        }
+
+        final ObjectSource<int[]> merged = ObjectIO.merge(
+                sources, new Comparator<int[]>() {
+
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+            }
+
+        }, new Reducer<int[]>() {
+
+            @Override
+            public int[] reduce(int[] a, int[] b) {
+                return new int[]{a[0], a[1] + b[1]};
+            }
+
+        });
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            assertTrue(merged.hasNext());
+            final int[] pair = merged.read();
+            assertEquals(e.getKey().intValue(), pair[0]);
+            assertEquals(e.getValue().intValue(), pair[1]);
+        }
+        assertFalse(merged.hasNext());
+    }
+}
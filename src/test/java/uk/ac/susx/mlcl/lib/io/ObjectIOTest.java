@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the ObjectIO class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ObjectIOTest {
+
+    private static List<Integer> range(int n) {
+        final List<Integer> list = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++)
+            list.add(i);
+        return list;
+    }
+
+    @Test
+    public void testBatchCopy() throws IOException {
+        System.out.println("Testing batch copy through counting wrappers");
+        final List<Integer> input = range(1000);
+        final List<Integer> output = new ArrayList<Integer>();
+
+        final CountingObjectSource<ObjectSource<Integer>, Integer> src =
+                new CountingObjectSource<ObjectSource<Integer>, Integer>(
+                ObjectIO.asSource((Iterable<Integer>) input));
+        final CountingObjectSink<ObjectSink<Integer>, Integer> sink =
+                new CountingObjectSink<ObjectSink<Integer>, Integer>(
+                ObjectIO.asSink(output));
+        ObjectIO.copy(src, sink);
+
+        assertEquals(input, output);
+        assertEquals(1000, src.getCount());
+        assertEquals(1000, sink.getCount());
+    }
+
+    @Test
+    public void testBatchRead() throws IOException {
+        System.out.println("Testing batch read");
+        final ObjectSource<Integer> src =
+                ObjectIO.asSource((Iterable<Integer>) range(10));
+        final Integer[] dst = new Integer[8];
+        assertEquals(6, ObjectIO.read(src, dst, 2, 6));
+        assertNull(dst[0]);
+        assertEquals(0, (int) dst[2]);
+        assertEquals(5, (int) dst[7]);
+        assertEquals(4, ObjectIO.read(src, dst, 0, 8));
+        assertEquals(9, (int) dst[3]);
+        assertEquals(0, ObjectIO.read(src, dst, 0, 8));
+    }
+
+    @Test
+    public void testBatchWriteReducing() throws IOException {
+        System.out.println("Testing batch write to reducing sink");
+        final Integer[] src = {1, 1, 1, 2, 3, 3, 3, 3};
+        final List<Integer> output = new ArrayList<Integer>();
+        final KFirstReducingObjectSink<Integer> sink =
+                new KFirstReducingObjectSink<Integer>(
+                ObjectIO.asSink(output), ExternalSorterTest.NATURAL, 2);
+        ObjectIO.write(sink, src, 0, src.length);
+        sink.close();
+        assertEquals(5, output.size());
+    }
+
+    @Test
+    public void testBatchCopyThroughFilteringSink() throws IOException {
+        System.out.println("Testing batch copy through a filtering sink");
+        final List<Integer> output = new ArrayList<Integer>();
+        final ObjectSink<Integer> evens =
+                new ForwardingObjectSink<ObjectSink<Integer>, Integer>(
+                ObjectIO.asSink(output)) {
+
+                    @Override
+                    public void write(Integer record) throws IOException {
+                        if (record % 2 == 0)
+                            super.write(record);
+                    }
+                };
+        final CountingObjectSource<ObjectSource<Integer>, Integer> src =
+                new CountingObjectSource<ObjectSource<Integer>, Integer>(
+                ObjectIO.asSource((Iterable<Integer>) range(1000)));
+        ObjectIO.copy(src, evens);
+        assertEquals(1000, src.getCount());
+        assertEquals(500, output.size());
+        assertEquals(998, (int) output.get(499));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the ParallelGzipOutputStream class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ParallelGzipOutputStreamTest {
+
+    static byte[] sampleData(int n) {
+        final Random rand = new Random(0);
+        final byte[] data = new byte[n];
+        for (int i = 0; i < n; i++)
+            data[i] = (byte) ('a' + (int) Math.abs(rand.nextGaussian() * 4));
+        return data;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            out.write(buf, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("Testing parallel gzip round trip");
+        final byte[] data = sampleData(100000);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                bytes, 4096, 3, Deflater.DEFAULT_COMPRESSION,
+                BackgroundTasks.executor());
+        int pos = 0;
+        final Random rand = new Random(1);
+        while (pos < data.length) {
+            if (rand.nextInt(10) == 0) {
+                out.write(data[pos++]);
+            } else {
+                final int n = Math.min(rand.nextInt(10000), data.length - pos);
+                out.write(data, pos, n);
+                pos += n;
+            }
+        }
+        out.close();
+        assertEquals((data.length + 4095) / 4096, out.getMemberCount());
+        assertTrue(bytes.size() < data.length / 2);
+
+        final byte[] result = readFully(new GZIPInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertArrayEquals(data, result);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        System.out.println("Testing parallel gzip of empty stream");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(bytes, 2).close();
+        final byte[] result = readFully(new GZIPInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(0, result.length);
+    }
+
+    @Test
+    public void testFilesDispatch() throws IOException {
+        System.out.println("Testing parallel gzip through Files");
+        final File file = File.createTempFile("pgz", ".gz");
+        file.deleteOnExit();
+        final byte[] data = sampleData(300000);
+        final int threads = Files.getGzipThreads();
+        Files.setGzipThreads(4);
+        try {
+            final OutputStream out = Files.openOutputStream(file);
+            assertTrue(out instanceof ParallelGzipOutputStream);
+            out.write(data);
+            out.close();
+        } finally {
+            Files.setGzipThreads(threads);
+        }
+        assertArrayEquals(data, readFully(Files.openInputStream(file)));
+        file.delete();
+    }
+}
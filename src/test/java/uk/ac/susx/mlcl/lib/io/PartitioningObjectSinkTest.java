@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.INTEGER_CODEC;
+
+/**
+ * Test cases for the PartitioningObjectSink class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class PartitioningObjectSinkTest {
+
+    @Test
+    public void testPartition() throws IOException {
+        System.out.println("Testing hash partitioning sink");
+        final File dir = ExternalSorterTest.makeTempDir();
+        final int n = 20000;
+        final PartitioningObjectSink<Integer, Integer> sink =
+                new PartitioningObjectSink<Integer, Integer>(
+                7, new KeyFunction<Integer, Integer>() {
+
+            @Override
+            public Integer keyOf(Integer record) {
+                return record / 10;
+            }
+
+        }, INTEGER_CODEC, new TempFileFactory(dir));
+
+        final Random rand = new Random(0);
+        final List<Integer> input = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            input.add(rand.nextInt(1000));
+            sink.write(input.get(i));
+        }
+        sink.close();
+        assertEquals(7, dir.list().length);
+
+        final List<Integer> output = new ArrayList<Integer>();
+        final List<SeekableObjectSource<Integer, Tell>> partitions =
+                sink.openPartitions();
+        for (int p = 0; p < partitions.size(); p++) {
+            final SeekableObjectSource<Integer, Tell> src = partitions.get(p);
+            final Tell start = src.position();
+            long count = 0;
+            while (src.hasNext()) {
+                final Integer x = src.read();
+                assertEquals(p, sink.partitionOf(x / 10));
+                output.add(x);
+                ++count;
+            }
+            assertEquals(sink.getCount(p), count);
+            if (count > 0) {
+                src.position(start);
+                assertEquals(output.get(output.size() - (int) count),
+                             src.read());
+            }
+            ((Closeable) src).close();
+        }
+        Collections.sort(input);
+        Collections.sort(output);
+        assertEquals(input, output);
+        for (File file : sink.getFiles())
+            assertTrue(file.delete());
+    }
+
+    @Test
+    public void testCompressedPartitions() throws IOException {
+        System.out.println("Testing hash partitioning sink with lz4 files");
+        final File dir = ExternalSorterTest.makeTempDir();
+        final PartitioningObjectSink<Integer, Integer> sink =
+                new PartitioningObjectSink<Integer, Integer>(
+                3, new KeyFunction<Integer, Integer>() {
+
+            @Override
+            public Integer keyOf(Integer record) {
+                return record;
+            }
+
+        }, INTEGER_CODEC, new TempFileFactory("part", ".lz4", dir));
+
+        final List<Integer> input = new ArrayList<Integer>();
+        for (int i = 0; i < 5000; i++) {
+            input.add(i % 100);
+            sink.write(i % 100);
+        }
+        sink.close();
+
+        for (File file : sink.getFiles()) {
+            final FileInputStream in = new FileInputStream(file);
+            int magic = 0;
+            for (int i = 0; i < 4; i++)
+                magic |= in.read() << (8 * i);
+            in.close();
+            assertEquals(LZ4OutputStream.MAGIC, magic);
+        }
+
+        final List<Integer> output = new ArrayList<Integer>();
+        for (SeekableObjectSource<Integer, Tell> src : sink.openPartitions()) {
+            while (src.hasNext())
+                output.add(src.read());
+            ((Closeable) src).close();
+        }
+        Collections.sort(input);
+        Collections.sort(output);
+        assertEquals(input, output);
+        for (File file : sink.getFiles())
+            assertTrue(file.delete());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import uk.ac.susx.mlcl.lib.collect.Indexed;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PrimitiveIO class, and the primitive sources and sinks.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class PrimitiveIOTest {
+
+    private static int[] range(int n) {
+        final int[] values = new int[n];
+        for (int i = 0; i < n; i++)
+            values[i] = i;
+        return values;
+    }
+
+    @Test
+    public void testCopyCounting() throws IOException {
+        System.out.println("Testing primitive copy through counting wrappers");
+        final int[] input = range(1000);
+        final List<Integer> output = new ArrayList<Integer>();
+        final CountingIntSource<IntSource> src =
+                new CountingIntSource<IntSource>(PrimitiveIO.asSource(input));
+        final CountingIntSink<IntSink> sink = new CountingIntSink<IntSink>(
+                PrimitiveIO.asIntSink(ObjectIO.asSink(output)));
+        assertEquals(1000, PrimitiveIO.copy(src, sink));
+        assertEquals(1000, src.getCount());
+        assertEquals(1000, sink.getCount());
+        for (int i = 0; i < input.length; i++)
+            assertEquals(input[i], (int) output.get(i));
+    }
+
+    @Test
+    public void testForwardingBatchUsesRead() throws IOException {
+        System.out.println("Testing primitive forwarding batch default");
+        final IntSource doubled = new ForwardingIntSource<IntSource>(
+                PrimitiveIO.asSource(range(100))) {
+
+            @Override
+            public int read() throws IOException {
+                return 2 * super.read();
+            }
+
+        };
+        final CountingIntSource<IntSource> src =
+                new CountingIntSource<IntSource>(doubled);
+        final int[] output = PrimitiveIO.readAll(src);
+        assertEquals(100, output.length);
+        assertEquals(100, src.getCount());
+        for (int i = 0; i < output.length; i++)
+            assertEquals(2 * i, output[i]);
+    }
+
+    @Test
+    public void testObjectAdapters() throws IOException {
+        System.out.println("Testing primitive to object adapters");
+        final double[] input = {0.5, -1, 3e10, Double.NaN, 7};
+        final List<Double> boxed = new ArrayList<Double>();
+        ObjectIO.copy(PrimitiveIO.asObjectSource(PrimitiveIO.asSource(input)),
+                      ObjectIO.asSink(boxed));
+        assertEquals(input.length, boxed.size());
+
+        final double[] output = PrimitiveIO.readAll(
+                PrimitiveIO.asDoubleSource(
+                ObjectIO.asSource((Iterable<Double>) boxed)));
+        assertArrayEquals(input, output, 0);
+
+        final long[] longs = new long[3];
+        final LongSource ls = PrimitiveIO.asSource(new long[]{1, 2, 3, 4, 5});
+        assertEquals(1, ls.read());
+        assertEquals(3, ls.read(longs, 0, 3));
+        assertArrayEquals(new long[]{2, 3, 4}, longs);
+        assertEquals(1, ls.read(longs, 0, 3));
+        assertFalse(ls.hasNext());
+        assertEquals(0, ls.read(longs, 0, 3));
+    }
+
+    @Test
+    public void testChunk() throws IOException {
+        System.out.println("Testing primitive chunking");
+        final ObjectSource<int[]> chunks =
+                IntChunker.newInstance(PrimitiveIO.asSource(range(25)), 10);
+        final List<int[]> output = ObjectIO.readAll(chunks);
+        assertEquals(3, output.size());
+        assertEquals(10, output.get(0).length);
+        assertEquals(10, output.get(1).length);
+        assertEquals(5, output.get(2).length);
+        assertEquals(24, output.get(2)[4]);
+    }
+
+    @Test
+    public void testPairs() throws IOException {
+        System.out.println("Testing (int, double) pair streams");
+        final int[] keys = range(1000);
+        final double[] values = new double[keys.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i * 0.5;
+
+        final List<Indexed<Double>> boxed = new ArrayList<Indexed<Double>>();
+        final CountingIntDoubleSource<IntDoubleSource> src =
+                new CountingIntDoubleSource<IntDoubleSource>(
+                PrimitiveIO.asSource(keys, values));
+        ObjectIO.copy(PrimitiveIO.asObjectSource(src), ObjectIO.asSink(boxed));
+        assertEquals(1000, src.getCount());
+        assertEquals(new Indexed<Double>(999, 499.5), boxed.get(999));
+        assertEquals(499.5, boxed.get(999).value(), 0);
+
+        final int[] outKeys = new int[keys.length];
+        final double[] outValues = new double[values.length];
+        final IntDoubleSource unboxed = PrimitiveIO.asIntDoubleSource(
+                ObjectIO.asSource((Iterable<Indexed<Double>>) boxed));
+        int size = 0;
+        int n;
+        while ((n = unboxed.read(outKeys, outValues, size,
+                                 outKeys.length - size)) > 0)
+            size += n;
+        assertEquals(1000, size);
+        assertFalse(unboxed.hasNext());
+        assertArrayEquals(keys, outKeys);
+        assertArrayEquals(values, outValues, 0);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.readFully;
+import static uk.ac.susx.mlcl.lib.io.ParallelGzipOutputStreamTest.sampleData;
+
+/**
+ * Test cases for the ReadAheadInputStream class, and the gzip input streams
+ * opened by Files.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void testReadAhead() throws IOException {
+        System.out.println("Testing read-ahead input stream");
+        final byte[] data = sampleData(100000);
+        final InputStream in = new ReadAheadInputStream(
+                new ByteArrayInputStream(data), 1000, 3);
+        assertEquals(data[0], (byte) in.read());
+        final byte[] rest = readFully(in);
+        assertEquals(data.length - 1, rest.length);
+        for (int i = 0; i < rest.length; i++)
+            assertEquals(data[i + 1], rest[i]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws IOException {
+        System.out.println("Testing read-ahead input stream failure");
+        final InputStream in = new ReadAheadInputStream(new InputStream() {
+
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (++count > 5000)
+                    throw new IOException("failed");
+                return 0;
+            }
+
+        }, 1000, 2);
+        readFully(in);
+    }
+
+    @Test
+    public void testCloseEarly() throws IOException {
+        System.out.println("Testing read-ahead input stream closed early");
+        final InputStream in = new ReadAheadInputStream(
+                new ByteArrayInputStream(sampleData(100000)), 100, 2);
+        in.read(new byte[10]);
+        in.close();
+    }
+
+    @Test
+    public void testGzipFiles() throws IOException {
+        System.out.println("Testing gzip and block gzip input through Files");
+        final byte[] data = sampleData(300000);
+
+        final File gz = File.createTempFile("rai", ".gz");
+        gz.deleteOnExit();
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(gz));
+        out.write(data);
+        out.close();
+        final InputStream in = Files.openInputStream(gz);
+        assertTrue(in instanceof ReadAheadInputStream);
+        assertArrayEquals(data, readFully(in));
+        assertArrayEquals(data, readFully(Channels.newInputStream(
+                Files.openReadableByteChannel(gz))));
+
+        final File bgz = File.createTempFile("rai", ".gz");
+        bgz.deleteOnExit();
+        out = new BlockGzipOutputStream(new FileOutputStream(bgz));
+        out.write(data);
+        out.close();
+        final ReadableByteChannel channel = Files.openReadableByteChannel(bgz);
+        assertTrue(channel instanceof BlockGzipChannel);
+        assertArrayEquals(data, readFully(Channels.newInputStream(channel)));
+        assertArrayEquals(data, readFully(Files.openInputStream(bgz)));
+
+        gz.delete();
+        bgz.delete();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the RecordScanner class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class RecordScannerTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final File UTF8_DEMO = new File(
+            "src/test/resources/uk/ac/susx/mlcl/lib/io/UTF-8-demo.txt");
+
+    private static List<String> readLines(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF8));
+        final List<String> lines = new ArrayList<String>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static List<String> scanLines(File file, long windowBytes)
+            throws IOException {
+        final RecordScanner scanner = new RecordScanner(
+                new FileInputStream(file).getChannel(), (byte) '\n', UTF8);
+        scanner.setWindowBytes(windowBytes);
+        final List<String> lines = new ArrayList<String>();
+        try {
+            while (scanner.next())
+                lines.add(scanner.text().toString());
+        } finally {
+            scanner.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void testScanLines() throws IOException {
+        System.out.println("Testing scanning lines");
+        final List<String> expected = readLines(UTF8_DEMO);
+        for (long windowBytes : new long[]{1, 7, 100, 4096, 1 << 26}) {
+            assertEquals("windowBytes=" + windowBytes,
+                         expected, scanLines(UTF8_DEMO, windowBytes));
+        }
+        assertEquals(expected.size(), RecordScanner.countLines(UTF8_DEMO));
+    }
+
+    @Test
+    public void testScanRecords() throws IOException {
+        System.out.println("Testing scanning random records");
+        final File file = File.createTempFile(
+                RecordScannerTest.class.getName(), ".tmp");
+        file.deleteOnExit();
+        final byte[] data = new byte[10000];
+        new Random(0).nextBytes(data);
+        final OutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+
+        final byte delimiter = 42;
+        int expectedCount = 0;
+        for (byte b : data)
+            if (b == delimiter)
+                ++expectedCount;
+        if (data[data.length - 1] != delimiter)
+            ++expectedCount;
+
+        final FileInputStream in = new FileInputStream(file);
+        assertEquals(expectedCount,
+                     RecordScanner.countRecords(in.getChannel(), delimiter));
+        in.close();
+
+        for (long windowBytes : new long[]{3, 64, 1 << 20}) {
+            final RecordScanner scanner = new RecordScanner(
+                    new FileInputStream(file).getChannel(), delimiter, UTF8);
+            scanner.setWindowBytes(windowBytes);
+            int count = 0;
+            int offset = 0;
+            while (scanner.next()) {
+                assertEquals(offset, scanner.recordOffset());
+                final ByteBuffer record = scanner.record();
+                while (record.hasRemaining())
+                    assertEquals(data[offset++], record.get());
+                if (offset < data.length)
+                    assertEquals(delimiter, data[offset++]);
+                ++count;
+            }
+            scanner.close();
+            assertEquals(expectedCount, count);
+            assertEquals(data.length, offset);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the TSVDataSource and TSVDataSink classes.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class TSVDataSourceTest {
+
+    private static final String[] STRINGS = {
+        "", "a", "hello world", "tab\tnewline\nreturn\rslash\\", "\\t",
+        "café", "日本語", "𝄞 clef", "1.5"
+    };
+
+    private static final double[] DOUBLES = {
+        0.0, -0.0, 1.0, -1.0, 0.1, 0.3, 1.0 / 3, Math.PI, 1e22, 1e23,
+        1e-7, 4.9e-324, Double.MIN_NORMAL, Double.MAX_VALUE, 123456789.125,
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    private static double nextDouble(Random rand) {
+        switch (rand.nextInt(4)) {
+            case 0:
+                return DOUBLES[rand.nextInt(DOUBLES.length)];
+            case 1:
+                return rand.nextInt(100000) / 1000.0;
+            case 2:
+                return rand.nextGaussian();
+            default:
+                return Double.longBitsToDouble(rand.nextLong());
+        }
+    }
+
+    private static void writeRecord(DataSink sink, Random rand)
+            throws IOException {
+        sink.writeInt(rand.nextInt());
+        sink.writeLong(rand.nextLong());
+        sink.writeLong(Long.MIN_VALUE);
+        sink.writeDouble(nextDouble(rand));
+        sink.writeDouble(nextDouble(rand));
+        sink.writeFloat((float) nextDouble(rand));
+        sink.writeFloat(rand.nextInt(1000) / 100f);
+        sink.writeByte((byte) rand.nextInt());
+        sink.writeShort((short) rand.nextInt());
+        sink.writeChar(rand.nextBoolean() ? '\t' : 'x');
+        sink.writeString(STRINGS[rand.nextInt(STRINGS.length)]);
+        sink.endOfRecord();
+    }
+
+    private static void checkRecord(DataSource src, Random rand)
+            throws IOException {
+        assertFalse(src.isEndOfRecordNext());
+        assertEquals(rand.nextInt(), src.readInt());
+        assertEquals(rand.nextLong(), src.readLong());
+        assertEquals(Long.MIN_VALUE, src.readLong());
+        assertEquals(Double.doubleToLongBits(nextDouble(rand)),
+                     Double.doubleToLongBits(src.readDouble()));
+        assertEquals(Double.doubleToLongBits(nextDouble(rand)),
+                     Double.doubleToLongBits(src.readDouble()));
+        assertEquals(Float.floatToIntBits((float) nextDouble(rand)),
+                     Float.floatToIntBits(src.readFloat()));
+        assertEquals(rand.nextInt(1000) / 100f, src.readFloat(), 0);
+        assertEquals((byte) rand.nextInt(), src.readByte());
+        assertEquals((short) rand.nextInt(), src.readShort());
+        assertEquals(rand.nextBoolean() ? '\t' : 'x', src.readChar());
+        assertEquals(STRINGS[rand.nextInt(STRINGS.length)], src.readString());
+        assertTrue(src.isEndOfRecordNext());
+        src.endOfRecord();
+    }
+
+    @Test
+    public void testRoundTripAndSeek() throws IOException {
+        System.out.println("Testing TSV data round trip and seeking");
+        final File file = File.createTempFile(
+                TSVDataSourceTest.class.getName(), ".tsv");
+        file.deleteOnExit();
+        final Charset charset = Charset.forName("UTF-8");
+        final int n = 2000;
+
+        final TSVDataSink sink = new TSVDataSink(new CharFileChannel(
+                new RandomAccessFile(file, "rw").getChannel(), charset));
+        for (int i = 0; i < n; i++)
+            writeRecord(sink, new Random(i));
+        sink.close();
+
+        final TSVDataSource src = new TSVDataSource(new CharFileChannel(
+                new FileInputStream(file).getChannel(), charset), 16);
+        final List<Tell> tells = new ArrayList<Tell>();
+        for (int i = 0; i < n; i++) {
+            tells.add(src.position());
+            checkRecord(src, new Random(i));
+        }
+        assertFalse(src.canRead());
+
+        final Random order = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            final int j = order.nextInt(n);
+            src.position(tells.get(j));
+            assertEquals(tells.get(j), src.position());
+            checkRecord(src, new Random(j));
+        }
+        src.close();
+    }
+}
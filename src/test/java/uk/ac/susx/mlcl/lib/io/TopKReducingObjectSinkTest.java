@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2011-2012, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.susx.mlcl.lib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.INTEGER_CODEC;
+import static uk.ac.susx.mlcl.lib.io.ExternalSorterTest.NATURAL;
+
+/**
+ * Test cases for the TopKReducingObjectSink class.
+ *
+ * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
+ */
+public class TopKReducingObjectSinkTest {
+
+    private static final int LIMIT = 3;
+
+    private static final KeyFunction<Integer, Integer> KEY =
+            new KeyFunction<Integer, Integer>() {
+
+                @Override
+                public Integer keyOf(Integer record) {
+                    return record / 100;
+                }
+
+            };
+
+    private static final Comparator<Integer> DESCENDING =
+            Collections.reverseOrder(NATURAL);
+
+    private static final Comparator<Integer> KEY_THEN_RANK =
+            new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer a, Integer b) {
+                    final int c = KEY.keyOf(a).compareTo(KEY.keyOf(b));
+                    return c != 0 ? c : DESCENDING.compare(a, b);
+                }
+
+            };
+
+    private static List<Integer> input(int n) {
+        final Random rand = new Random(0);
+        final List<Integer> input = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++)
+            input.add(rand.nextInt(10000));
+        return input;
+    }
+
+    private static List<Integer> expected(List<Integer> input) {
+        final List<Integer> sorted = new ArrayList<Integer>(input);
+        Collections.sort(sorted, KEY_THEN_RANK);
+        final List<Integer> expected = new ArrayList<Integer>();
+        int count = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i == 0 || !KEY.keyOf(sorted.get(i)).equals(
+                    KEY.keyOf(sorted.get(i - 1))))
+                count = 0;
+            if (count++ < LIMIT)
+                expected.add(sorted.get(i));
+        }
+        return expected;
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        System.out.println("Testing top-k reducing sink in memory");
+        final List<Integer> input = input(20000);
+        final List<Integer> output = new ArrayList<Integer>();
+        final TopKReducingObjectSink<Integer, Integer> sink =
+                new TopKReducingObjectSink<Integer, Integer>(
+                ObjectIO.asSink(output), KEY, DESCENDING, LIMIT);
+        for (Integer i : input)
+            sink.write(i);
+        sink.flush();
+        assertTrue(output.isEmpty());
+        sink.close();
+
+        Collections.sort(output, KEY_THEN_RANK);
+        assertEquals(expected(input), output);
+    }
+
+    @Test
+    public void testSpilling() throws IOException {
+        System.out.println("Testing top-k reducing sink with spills");
+        final File dir = ExternalSorterTest.makeTempDir();
+        final List<Integer> input = input(20000);
+        final List<Integer> output = new ArrayList<Integer>();
+        final TopKReducingObjectSink<Integer, Integer> sink =
+                new TopKReducingObjectSink<Integer, Integer>(
+                ObjectIO.asSink(output), KEY, DESCENDING, LIMIT,
+                NATURAL, INTEGER_CODEC, new TempFileFactory(dir), 100);
+        for (Integer i : input)
+            sink.write(i);
+        assertTrue(sink.getSpillCount() > 0);
+        assertTrue(sink.getHeldCount() <= 100);
+        sink.close();
+
+        assertEquals(expected(input), output);
+        assertEquals(0, dir.list().length);
+        dir.delete();
+    }
+}